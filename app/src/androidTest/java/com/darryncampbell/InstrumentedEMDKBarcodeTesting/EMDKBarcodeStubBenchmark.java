@@ -0,0 +1,182 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.com.symbol.emdk.barcode.test.EMDKBarcodeStub;
+import com.symbol.emdk.barcode.ScanDataCollection;
+import com.symbol.emdk.barcode.ScannerResults;
+import com.symbol.emdk.barcode.StatusData;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the cost of fabricating a scan event with EMDKBarcodeStub, comparing the previous
+ * approach of resolving every constructor and field on each call against the cached handles, and
+ * the stub's pooled mode against creating new objects for every event.
+ * Results are written to logcat under the "Stub Benchmark" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EMDKBarcodeStubBenchmark {
+
+    private static final String TAG = "Stub Benchmark";
+    private static final int WARM_UP_EVENTS = 2000;
+    private static final int MEASURED_EVENTS = 20000;
+    private static final int POOL_SIZE = 16;
+
+    private final String friendlyName = "2D Barcode Imager";
+    private final byte[] barcode = "0123456789012".getBytes();
+    private final ScanDataCollection.LabelType labelType = ScanDataCollection.LabelType.EAN13;
+    private final String charsetName = "UTF-8";
+    private final String timestamp = "2017-02-27 12:58:51.238";
+
+    private interface EventFactory {
+        ScanDataCollection create() throws Exception;
+    }
+
+    @Test
+    public void costPerScanEvent() throws Exception
+    {
+        final EMDKBarcodeStub stub = new EMDKBarcodeStub(friendlyName);
+
+        long uncached = nanosPerEvent(new EventFactory() {
+            @Override
+            public ScanDataCollection create() throws Exception {
+                return uncachedReportScan();
+            }
+        });
+        long cached = nanosPerEvent(new EventFactory() {
+            @Override
+            public ScanDataCollection create() throws Exception {
+                stub.AddScanData(barcode, labelType, charsetName, timestamp);
+                return stub.ReportScan(ScannerResults.SUCCESS);
+            }
+        });
+        long factory = nanosPerEvent(new EventFactory() {
+            @Override
+            public ScanDataCollection create() throws Exception {
+                return stub.CreateScan(ScannerResults.SUCCESS, barcode, labelType, charsetName, timestamp);
+            }
+        });
+
+        Log.i(TAG, "Reflection resolved per call: " + uncached + " ns/event");
+        Log.i(TAG, "Cached handles, AddScanData + ReportScan: " + cached + " ns/event (" + eventsPerSecond(cached) + " events/s)");
+        Log.i(TAG, "Cached handles, CreateScan: " + factory + " ns/event (" + eventsPerSecond(factory) + " events/s)");
+
+        final EMDKBarcodeStub pooledStub = new EMDKBarcodeStub(friendlyName, POOL_SIZE);
+        long pooled = nanosPerEvent(new EventFactory() {
+            @Override
+            public ScanDataCollection create() throws Exception {
+                pooledStub.AddScanData(barcode, labelType, charsetName, timestamp);
+                return pooledStub.ReportScan(ScannerResults.SUCCESS);
+            }
+        });
+        Log.i(TAG, "Pooled, AddScanData + ReportScan: " + pooled + " ns/event (" + eventsPerSecond(pooled) + " events/s)");
+
+        ScanDataCollection scan = stub.CreateScan(ScannerResults.SUCCESS, barcode, labelType, charsetName, timestamp);
+        assertEquals(1, scan.getScanData().size());
+        assertArrayEquals(barcode, scan.getScanData().get(0).getRawData());
+        assertEquals(friendlyName, scan.getFriendlyName());
+    }
+
+    @Test
+    public void pooledStubAllocatesNothingAfterWarmUp() throws Exception
+    {
+        EMDKBarcodeStub stub = new EMDKBarcodeStub(friendlyName, POOL_SIZE);
+        byte[] second = "5012345678900".getBytes();
+        for (int i = 0; i < POOL_SIZE; i++)
+            report(stub, 2, second);
+        long warmedUp = stub.getAllocations();
+        assertTrue(warmedUp > 0);
+
+        for (int i = 0; i < MEASURED_EVENTS; i++) {
+            ScanDataCollection scan = report(stub, (i % 2) + 1, second);
+            assertEquals((i % 2) + 1, scan.getScanData().size());
+            stub.CreateScan(ScannerResults.SUCCESS, barcode, labelType, charsetName, timestamp);
+        }
+        assertEquals(warmedUp, stub.getAllocations());
+
+        //  The same objects come round again once the pool has been cycled
+        ScanDataCollection first = stub.CreateScan(ScannerResults.SUCCESS, barcode, labelType, charsetName, timestamp);
+        for (int i = 1; i < POOL_SIZE; i++)
+            stub.CreateScan(ScannerResults.SUCCESS, barcode, labelType, charsetName, timestamp);
+        ScanDataCollection reused = stub.CreateScan(ScannerResults.FAILURE, second, labelType, charsetName, timestamp);
+        assertSame(first, reused);
+        assertEquals(ScannerResults.FAILURE, reused.getResult());
+        assertArrayEquals(second, reused.getScanData().get(0).getRawData());
+    }
+
+    //  A status report, then one or two barcodes, as a pooled producer sends them
+    private ScanDataCollection report(EMDKBarcodeStub stub, int barcodes, byte[] second) throws Exception
+    {
+        assertSame(stub.ReportStatus(StatusData.ScannerStates.SCANNING), stub.ReportStatus(StatusData.ScannerStates.SCANNING));
+        stub.AddScanData(barcode, labelType, charsetName, timestamp);
+        if (barcodes > 1)
+            stub.AddScanData(second, labelType, charsetName, timestamp);
+        return stub.ReportScan(ScannerResults.SUCCESS);
+    }
+
+    private long nanosPerEvent(EventFactory factory) throws Exception
+    {
+        for (int i = 0; i < WARM_UP_EVENTS; i++)
+            assertNotNull(factory.create());
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_EVENTS; i++)
+            factory.create();
+        return (System.nanoTime() - start) / MEASURED_EVENTS;
+    }
+
+    private static long eventsPerSecond(long nanosPerEvent)
+    {
+        return nanosPerEvent == 0 ? 0 : 1000000000L / nanosPerEvent;
+    }
+
+    /**
+     * The stub's original ReportScan, which looked up and opened every constructor and field for
+     * every event.  Kept here only as the baseline for comparison.
+     */
+    @SuppressWarnings("unchecked")
+    private ScanDataCollection uncachedReportScan() throws Exception
+    {
+        Constructor<ScanDataCollection> scanDataCollectionConstructor = ScanDataCollection.class.getDeclaredConstructor(new Class<?>[0]);
+        scanDataCollectionConstructor.setAccessible(true);
+        ScanDataCollection scanDataCollection = scanDataCollectionConstructor.newInstance(new Object[0]);
+        Field fieldFriendlyName = ScanDataCollection.class.getDeclaredField("friendlyName");
+        fieldFriendlyName.setAccessible(true);
+        fieldFriendlyName.set(scanDataCollection, friendlyName);
+        Field fieldScannerResult = ScanDataCollection.class.getDeclaredField("result");
+        fieldScannerResult.setAccessible(true);
+        fieldScannerResult.set(scanDataCollection, ScannerResults.SUCCESS);
+
+        ArrayList<ScanDataCollection.ScanData> scannedData = new ArrayList<>();
+        Constructor[] scanDataConstructors = ScanDataCollection.ScanData.class.getDeclaredConstructors();
+        Constructor scanDataConstructor = scanDataConstructors[0];
+        scanDataConstructor.setAccessible(true);
+        ScanDataCollection.ScanData data = (ScanDataCollection.ScanData) scanDataConstructor.newInstance(scanDataCollection);
+        Field fieldScanDataRawData = ScanDataCollection.ScanData.class.getDeclaredField("rawData");
+        fieldScanDataRawData.setAccessible(true);
+        fieldScanDataRawData.set(data, barcode);
+        Field fieldScanDataCharsetName = ScanDataCollection.ScanData.class.getDeclaredField("charsetName");
+        fieldScanDataCharsetName.setAccessible(true);
+        fieldScanDataCharsetName.set(data, charsetName);
+        Field fieldScanDataTimestamp = ScanDataCollection.ScanData.class.getDeclaredField("timeStamp");
+        fieldScanDataTimestamp.setAccessible(true);
+        fieldScanDataTimestamp.set(data, timestamp);
+        Field fieldScanDataLabelType = ScanDataCollection.ScanData.class.getDeclaredField("labelType");
+        fieldScanDataLabelType.setAccessible(true);
+        fieldScanDataLabelType.set(data, labelType);
+        scannedData.add(data);
+
+        Field fieldScannedData = ScanDataCollection.class.getDeclaredField("scanData");
+        fieldScannedData.setAccessible(true);
+        fieldScannedData.set(scanDataCollection, scannedData);
+        return scanDataCollection;
+    }
+}
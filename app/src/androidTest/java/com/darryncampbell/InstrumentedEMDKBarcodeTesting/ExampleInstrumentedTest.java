@@ -1,5 +1,7 @@
 package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
 
+import android.support.test.espresso.Espresso;
+import android.support.test.espresso.IdlingResource;
 import android.support.test.espresso.ViewInteraction;
 import android.support.test.rule.ActivityTestRule;
 import android.support.test.runner.AndroidJUnit4;
@@ -7,9 +9,11 @@ import android.support.test.runner.AndroidJUnit4;
 import static android.support.test.espresso.Espresso.onView;
 import static android.support.test.espresso.action.ViewActions.click;
 import static android.support.test.espresso.assertion.ViewAssertions.matches;
+import static android.support.test.espresso.matcher.ViewMatchers.hasDescendant;
 import static android.support.test.espresso.matcher.ViewMatchers.isDisplayed;
 import static android.support.test.espresso.matcher.ViewMatchers.withId;
 import static android.support.test.espresso.matcher.ViewMatchers.withText;
+import static org.hamcrest.Matchers.not;
 
 import com.darryncampbell.InstrumentedEMDKBarcodeTesting.com.symbol.emdk.barcode.test.EMDKBarcodeStub;
 import com.symbol.emdk.barcode.BarcodeManager;
@@ -19,6 +23,8 @@ import com.symbol.emdk.barcode.ScannerResults;
 import com.symbol.emdk.barcode.StatusData;
 
 import org.hamcrest.Matchers;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -46,6 +52,23 @@ public class ExampleInstrumentedTest {
     public ActivityTestRule<MainActivity> mActivityRule =
             new ActivityTestRule<>(MainActivity.class);
 
+    private IdlingResource dataDispatcherIdlingResource;
+
+    @Before
+    public void registerIdlingResources()
+    {
+        //  Scans and status changes reach the views on the next display frame, make Espresso wait for them
+        dataDispatcherIdlingResource = new FrameBatchDispatcherIdlingResource(mActivityRule.getActivity().getDataDispatcher(),
+                mActivityRule.getActivity().getScanProcessor(), mActivityRule.getActivity().getStatusApplier());
+        Espresso.registerIdlingResources(dataDispatcherIdlingResource);
+    }
+
+    @After
+    public void unregisterIdlingResources()
+    {
+        Espresso.unregisterIdlingResources(dataDispatcherIdlingResource);
+    }
+
     @Test
     public void successfulScan() throws Exception
     {
@@ -63,8 +86,8 @@ public class ExampleInstrumentedTest {
         activity.onData(scanDataCollection);
 
         //  Test that the correct data was scanned
-        onView(withId(R.id.textViewData))
-                .check(matches(withText(test_barcode_value_string + "\n")));
+        onView(withId(R.id.listViewData))
+                .check(matches(hasDescendant(withText(test_barcode_value_string))));
 
         //  Click the stop scan button
         onView(withId(R.id.buttonStopScan))
@@ -88,8 +111,8 @@ public class ExampleInstrumentedTest {
         activity.onData(scanDataCollection);
 
         //  Test that no data was shown
-        onView(withId(R.id.textViewData))
-                .check(matches(withText("")));
+        onView(withId(R.id.listViewData))
+                .check(matches(not(hasDescendant(withText(test_barcode_value_string)))));
 
         //  Click the stop scan button
         onView(withId(R.id.buttonStopScan))
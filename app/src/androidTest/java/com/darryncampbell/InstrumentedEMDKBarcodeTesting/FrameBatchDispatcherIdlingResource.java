@@ -0,0 +1,88 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.test.espresso.IdlingResource;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanProcessor;
+
+/**
+ * Lets Espresso wait until scans posted to a FrameBatchDispatcher have reached the view.
+ * Scans are delivered on a display frame rather than through an AsyncTask so Espresso would not
+ * otherwise know to wait for them.  Scans still being validated by the processing stage ahead of
+ * the dispatcher also count as busy, as does a scanner status not yet drawn by the status applier.
+ */
+public class FrameBatchDispatcherIdlingResource implements IdlingResource {
+
+    private static final long POLL_INTERVAL_MS = 16;
+
+    private final FrameBatchDispatcher<?> dispatcher;
+    private final ScanProcessor processor;
+    private final StatusFrameApplier statusApplier;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private volatile ResourceCallback callback;
+
+    private final Runnable poll = new Runnable() {
+        @Override
+        public void run() {
+            if (isIdleNow())
+                notifyIdle();
+            else
+                handler.postDelayed(this, POLL_INTERVAL_MS);
+        }
+    };
+
+    public FrameBatchDispatcherIdlingResource(FrameBatchDispatcher<?> dispatcher)
+    {
+        this(dispatcher, null);
+    }
+
+    /**
+     * @param processor stage feeding the dispatcher, may be null
+     */
+    public FrameBatchDispatcherIdlingResource(FrameBatchDispatcher<?> dispatcher, ScanProcessor processor)
+    {
+        this(dispatcher, processor, null);
+    }
+
+    /**
+     * @param processor stage feeding the dispatcher, may be null
+     * @param statusApplier applies scanner status to the views once per frame, may be null
+     */
+    public FrameBatchDispatcherIdlingResource(FrameBatchDispatcher<?> dispatcher, ScanProcessor processor,
+                                              StatusFrameApplier statusApplier)
+    {
+        this.dispatcher = dispatcher;
+        this.processor = processor;
+        this.statusApplier = statusApplier;
+    }
+
+    @Override
+    public String getName() {
+        return FrameBatchDispatcherIdlingResource.class.getName() + "@" + System.identityHashCode(dispatcher);
+    }
+
+    @Override
+    public boolean isIdleNow() {
+        //  The processor first, it only reports idle once it has posted everything to the dispatcher
+        boolean idle = (processor == null || processor.isIdle()) && dispatcher.isIdle() &&
+                (statusApplier == null || statusApplier.isIdle());
+        if (!idle) {
+            handler.removeCallbacks(poll);
+            handler.postDelayed(poll, POLL_INTERVAL_MS);
+        }
+        return idle;
+    }
+
+    @Override
+    public void registerIdleTransitionCallback(ResourceCallback callback) {
+        this.callback = callback;
+    }
+
+    private void notifyIdle()
+    {
+        ResourceCallback cb = callback;
+        if (cb != null)
+            cb.onTransitionToIdle();
+    }
+}
@@ -0,0 +1,82 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.load.LoadProfile;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.load.LoadReport;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.load.ScanLoadGenerator;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives MainActivity with synthetic load from several threads.  The default profile is short
+ * enough for every test run, longer soaks are configured through instrumentation arguments, e.g.
+ * adb shell am instrument -w -e class com.darryncampbell.InstrumentedEMDKBarcodeTesting.LoadGenerationTest
+ *     -e loadScansPerSecond 50 -e loadDurationSeconds 600 -e loadBarcodesPerCollection 5 ...
+ */
+@RunWith(AndroidJUnit4.class)
+public class LoadGenerationTest {
+
+    @Rule
+    public ActivityTestRule<MainActivity> mActivityRule =
+            new ActivityTestRule<>(MainActivity.class);
+
+    private ScanLoadGenerator createGenerator()
+    {
+        MainActivity activity = mActivityRule.getActivity();
+        return new ScanLoadGenerator(activity, activity, activity, activity.getScanProcessor(), activity.getDataDispatcher(),
+                activity.getLatencyTracker().getLatency().dataTotal, activity.getFanIn(), activity.getDuplicateSuppressor());
+    }
+
+    @Test
+    public void configuredLoad() throws Exception
+    {
+        LoadProfile profile = LoadProfile.fromArguments(InstrumentationRegistry.getArguments());
+        LoadReport report = createGenerator().run(profile);
+
+        assertEquals(0, report.producerErrors);
+        assertEquals(report.scansSent, report.getScansAccountedFor());
+        assertTrue(report.scansDelivered > 0);
+    }
+
+    @Test
+    public void multiBarcodeBursts() throws Exception
+    {
+        LoadProfile profile = new LoadProfile()
+                .setProducerThreads(4)
+                .setScansPerSecond(200)
+                .setBarcodesPerCollection(5)
+                .setShape(LoadProfile.Shape.BURST)
+                .setBurstSize(5)
+                .setConnectionChangeIntervalMillis(500)
+                .setDurationMillis(5000);
+        LoadReport report = createGenerator().run(profile);
+
+        assertEquals(0, report.producerErrors);
+        assertEquals(report.scansSent, report.getScansAccountedFor());
+        assertEquals(report.collectionsSent * 5, report.scansSent);
+    }
+
+    @Test
+    public void pooledLoadCreatesNoGarbageAfterWarmUp() throws Exception
+    {
+        LoadProfile profile = new LoadProfile()
+                .setProducerThreads(4)
+                .setScansPerSecond(400)
+                .setBarcodesPerCollection(3)
+                .setPooled(true)
+                .setDurationMillis(5000);
+        LoadReport report = createGenerator().run(profile);
+
+        assertEquals(0, report.producerErrors);
+        assertEquals(report.scansSent, report.getScansAccountedFor());
+        assertTrue(report.stubAllocations > 0);
+        assertEquals(0, report.stubAllocationsAfterWarmUp);
+    }
+}
@@ -0,0 +1,125 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.widget.TextView;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.scenario.Scenario;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.scenario.ScenarioClock;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.scenario.ScenarioReport;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.scenario.ScenarioRunner;
+import com.symbol.emdk.barcode.ScanDataCollection.LabelType;
+import com.symbol.emdk.barcode.StatusData.ScannerStates;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Plays scripted scanner workflows into MainActivity.  The shift scenario runs on a virtual clock
+ * with every test run; the same scenario can be soaked in real time, or sped up, on a device with
+ * adb shell am instrument -w -e class com.darryncampbell.InstrumentedEMDKBarcodeTesting.ScenarioTest
+ *     -e scenarioSpeed 1 ...
+ */
+@RunWith(AndroidJUnit4.class)
+public class ScenarioTest {
+
+    private static final String IMAGER = "2D Barcode Imager";
+    private static final String BLUETOOTH = "Bluetooth Scanner";
+    private static final String BLUETOOTH_MODEL = "RS6000";
+
+    @Rule
+    public ActivityTestRule<MainActivity> mActivityRule =
+            new ActivityTestRule<>(MainActivity.class);
+
+    @Test
+    public void hourLongShiftOnVirtualClock() throws Exception
+    {
+        ScenarioReport report = createRunner(new ScenarioClock.Virtual()).run(shift());
+
+        assertTrue(report.toString(), report.isPassed());
+        assertEquals(Scenario.HOUR, report.scenarioMillis);
+        assertTrue("Shift took " + report.elapsedMillis + " ms", report.elapsedMillis < Scenario.HOUR / 60);
+    }
+
+    @Test
+    public void shiftInRealTime() throws Exception
+    {
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        String speed = (arguments == null) ? null : arguments.getString("scenarioSpeed");
+        if (speed == null)
+            return;
+        ScenarioReport report = createRunner(new ScenarioClock.RealTime(Double.parseDouble(speed))).run(shift());
+        assertTrue(report.toString(), report.isPassed());
+    }
+
+    //  A picker scanning every 20 seconds for an hour, with a Bluetooth scanner dropping out of range
+    //  for a minute and the imager left waiting on the trigger through a break
+    private static Scenario shift()
+    {
+        return new Scenario("Picking shift")
+                .at(0).status(IMAGER, ScannerStates.IDLE)
+                .expectStatus("Status: " + IMAGER + " is enabled and idle...")
+                .after(Scenario.SECOND).every(20 * Scenario.SECOND, 90).scan(IMAGER, LabelType.CODE128, "PICK-%d")
+                .at(30 * Scenario.MINUTE).expectScansShown(90)
+                .expectStatus("Status: " + IMAGER + " is enabled and idle...")
+
+                .at(31 * Scenario.MINUTE).disconnect(BLUETOOTH, BLUETOOTH_MODEL)
+                .expectStatusContaining(BLUETOOTH + ":DISCONNECTED")
+                .after(Scenario.MINUTE).connect(BLUETOOTH, BLUETOOTH_MODEL)
+                //  The activity re-attaches a reconnected scanner on its own timer, which is not virtual
+                .settle(500)
+                .expectStatusContaining(BLUETOOTH + ":CONNECTED")
+
+                .at(33 * Scenario.MINUTE).status(IMAGER, ScannerStates.WAITING)
+                .expectStatus("Status: Scanner is waiting for trigger press...")
+                .after(15 * Scenario.MINUTE).status(IMAGER, ScannerStates.IDLE)
+                .failedScan(IMAGER)
+
+                .at(48 * Scenario.MINUTE + Scenario.SECOND).every(20 * Scenario.SECOND, 36).scan(IMAGER, LabelType.EAN13, "50123452%05d")
+                .at(Scenario.HOUR).expectScansShown(126)
+                .expectStatus("Status: " + IMAGER + " is enabled and idle...");
+    }
+
+    private ScenarioRunner createRunner(ScenarioClock clock)
+    {
+        final MainActivity activity = mActivityRule.getActivity();
+        final FrameBatchDispatcherIdlingResource idle = new FrameBatchDispatcherIdlingResource(
+                activity.getDataDispatcher(), activity.getScanProcessor(), activity.getStatusApplier());
+        ScenarioRunner.Probe probe = new ScenarioRunner.Probe() {
+            @Override
+            public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+                long deadline = System.currentTimeMillis() + timeoutMillis;
+                while (!idle.isIdleNow()) {
+                    if (System.currentTimeMillis() > deadline)
+                        return false;
+                    Thread.sleep(5);
+                }
+                return true;
+            }
+
+            @Override
+            public String getStatusText() {
+                final String[] text = new String[1];
+                InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                    @Override
+                    public void run() {
+                        text[0] = ((TextView) activity.findViewById(R.id.textViewStatus)).getText().toString();
+                    }
+                });
+                return text[0];
+            }
+
+            @Override
+            public long getScansShown() {
+                //  Counted as batches are drawn, journal recovery is left out
+                return activity.getMetrics().scansDisplayed.get();
+            }
+        };
+        return new ScenarioRunner(activity, activity, activity, probe, clock);
+    }
+}
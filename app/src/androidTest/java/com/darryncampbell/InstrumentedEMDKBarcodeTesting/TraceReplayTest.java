@@ -0,0 +1,87 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.CallbackTraceWriter;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.replay.TraceReplayer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays callback traces into MainActivity.  A trace recorded on a device (menu, Record trace)
+ * can be pushed and replayed with
+ * adb shell am instrument -w -e class com.darryncampbell.InstrumentedEMDKBarcodeTesting.TraceReplayTest
+ *     -e traceFile /sdcard/Android/data/.../files/traces/trace-....emdktrace -e traceRealTime true ...
+ */
+@RunWith(AndroidJUnit4.class)
+public class TraceReplayTest {
+
+    private static final String FRIENDLY_NAME = "2D Barcode Imager";
+    private static final String TIMESTAMP = "2017-02-27 12:58:51.238";
+
+    @Rule
+    public ActivityTestRule<MainActivity> mActivityRule =
+            new ActivityTestRule<>(MainActivity.class);
+
+    @Test
+    public void replaySyntheticTrace() throws Exception
+    {
+        File trace = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "synthetic.emdktrace");
+        int scans = 1000;
+        writeSyntheticTrace(trace, scans);
+
+        MainActivity activity = mActivityRule.getActivity();
+        TraceReplayer replayer = new TraceReplayer(activity, activity, activity);
+        replayer.replay(trace, false);
+
+        assertEquals(scans, replayer.getScansReplayed());
+        assertEquals(scans * 2, replayer.getStatusReplayed());
+        assertEquals(1, replayer.getConnectionsReplayed());
+        assertEquals(1, replayer.getEmptyDataSkipped());
+        trace.delete();
+    }
+
+    @Test
+    public void replayRecordedTrace() throws Exception
+    {
+        String traceFile = InstrumentationRegistry.getArguments().getString("traceFile");
+        if (traceFile == null)
+            return;
+        boolean bRealTime = Boolean.parseBoolean(InstrumentationRegistry.getArguments().getString("traceRealTime"));
+        MainActivity activity = mActivityRule.getActivity();
+        TraceReplayer replayer = new TraceReplayer(activity, activity, activity);
+        assertTrue(replayer.replay(new File(traceFile), bRealTime) > 0);
+    }
+
+    private static void writeSyntheticTrace(File trace, int scans) throws Exception
+    {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(trace));
+        try {
+            long nanos = 0;
+            CallbackTraceWriter writer = new CallbackTraceWriter(out, System.currentTimeMillis(), nanos);
+            writer.writeConnection(nanos, "RS6000", "CONNECTED", "RS6000", "IMAGER", "BLUETOOTH_SSI",
+                    "BLUETOOTH_IMAGER1", "TWO_DIMENSIONAL", 1, CallbackTraceWriter.FLAG_CONNECTED);
+            writer.beginData(nanos, FRIENDLY_NAME, "SUCCESS", 0);
+            for (int i = 0; i < scans; i++) {
+                nanos += 2000000L;
+                writer.writeStatus(nanos, FRIENDLY_NAME, "SCANNING");
+                writer.beginData(nanos, FRIENDLY_NAME, "SUCCESS", 1);
+                writer.addScan("CODE128", "UTF-8", TIMESTAMP, ("TRACE-" + i).getBytes());
+                writer.writeStatus(nanos, FRIENDLY_NAME, "IDLE");
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -12,17 +12,38 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Created by darry on 27/02/2017.
  * Class designed to stub out the functionality of the Zebra EMDK barcode scanner.
  * Use during automated testing on real hardware to simulate barcodes being scanned and the
- * hardware reporting various statuses
+ * hardware reporting various statuses.
+ * In pooled mode the stub recycles the objects it hands out so that a load generator creates no
+ * garbage once warmed up, see {@link #EMDKBarcodeStub(String, int)}.
  */
 public class EMDKBarcodeStub {
 
     private String reportedFriendlyName;
-    private ArrayList<ScanDataStub> bufferedScans = new ArrayList<>();
+    //  Scans added with AddScanData are buffered per thread so several producer threads can share
+    //  one stub, each reporting only the scans it added itself
+    private final ThreadLocal<ArrayList<ScanDataStub>> bufferedScans = new ThreadLocal<ArrayList<ScanDataStub>>() {
+        @Override
+        protected ArrayList<ScanDataStub> initialValue() {
+            return new ArrayList<>();
+        }
+    };
+    //  Pooled mode only: scan events per producer thread and one shared StatusData per state
+    private final int poolSize;
+    private final ThreadLocal<ScanPool> scanPools = new ThreadLocal<ScanPool>() {
+        @Override
+        protected ScanPool initialValue() {
+            return new ScanPool(poolSize);
+        }
+    };
+    private final AtomicReferenceArray<StatusData> pooledStatus;
+    private final AtomicLong allocations = new AtomicLong();
     private static final String TAG = "Barcode Stub";
     private static final String FIELD_FRIENDLY_NAME = "friendlyName";
     private static final String FIELD_SCANNER_STATE = "scannerState";
@@ -39,6 +60,7 @@ public class EMDKBarcodeStub {
     private static final String FIELD_DECODER_TYPE = "decoderType";
     private static final String FIELD_IS_DEFAULT_SCANNER = "isDefaultScanner";
     private static final String FIELD_IS_CONNECTED = "isConnected";
+    private static final String FIELD_SCAN_DATA = "scanData";
 
     /**
      * Constructor
@@ -47,6 +69,149 @@ public class EMDKBarcodeStub {
     public EMDKBarcodeStub(String scannerFriendlyName)
     {
         this.reportedFriendlyName = scannerFriendlyName;
+        this.poolSize = 0;
+        this.pooledStatus = null;
+    }
+
+    /**
+     * Constructor for pooled mode, in which the stub reuses the objects it returns rather than
+     * creating new ones.  Each producer thread cycles through its own poolSize ScanDataCollections,
+     * rewriting one in place on every ReportScan or CreateScan, and every StatusData for a given state
+     * is the same object.  Listeners must therefore be finished with a collection before the same
+     * thread reports poolSize more scans, and must not keep a StatusData at all.  Raw data arrays and
+     * strings passed in belong to the caller and are never modified.
+     * @param scannerFriendlyName Scanner friendly name.  Shared between the onStatus and onData callbacks.
+     * @param poolSize collections each thread cycles through, at least 1
+     */
+    public EMDKBarcodeStub(String scannerFriendlyName, int poolSize)
+    {
+        if (poolSize < 1)
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        this.reportedFriendlyName = scannerFriendlyName;
+        this.poolSize = poolSize;
+        this.pooledStatus = new AtomicReferenceArray<StatusData>(StatusData.ScannerStates.values().length);
+    }
+
+    public boolean isPooled() {return poolSize > 0;}
+
+    /**
+     * @return EMDK objects and scan buffers this stub has created.  In pooled mode this stops
+     * increasing once every pooled object has been created, so a load test can check that
+     * generating events produces no garbage after warm-up.
+     */
+    public long getAllocations() {return allocations.get();}
+
+    /**
+     * Constructors and fields of the EMDK classes, looked up and made accessible once and then
+     * shared by every stub instance.  Resolving these on every call made fabricating an event far
+     * more expensive than the activity processing it.
+     */
+    private static class ReflectionHandles
+    {
+        final Constructor<StatusData> statusDataConstructor;
+        final Field statusDataFriendlyName;
+        final Field statusDataScannerState;
+
+        final Constructor<ScanDataCollection> scanDataCollectionConstructor;
+        final Field scanDataCollectionFriendlyName;
+        final Field scanDataCollectionResult;
+        final Field scanDataCollectionScanData;
+
+        final Constructor<?> scanDataConstructor;
+        final Field scanDataRawData;
+        final Field scanDataCharsetName;
+        final Field scanDataTimestamp;
+        final Field scanDataLabelType;
+
+        final Constructor<ScannerInfo> scannerInfoConstructor;
+        final Field scannerInfoFriendlyName;
+        final Field scannerInfoScannerIndex;
+        final Field scannerInfoDeviceType;
+        final Field scannerInfoConnectionType;
+        final Field scannerInfoDeviceIdentifier;
+        final Field scannerInfoDecoderType;
+        final Field scannerInfoIsDefaultScanner;
+        final Field scannerInfoIsConnected;
+        final Field scannerInfoModelNumber;
+
+        ReflectionHandles() throws NoSuchMethodException, NoSuchFieldException
+        {
+            statusDataConstructor = accessible(StatusData.class.getDeclaredConstructor(new Class<?>[0]));
+            statusDataFriendlyName = field(StatusData.class, FIELD_FRIENDLY_NAME);
+            statusDataScannerState = field(StatusData.class, FIELD_SCANNER_STATE);
+
+            scanDataCollectionConstructor = accessible(ScanDataCollection.class.getDeclaredConstructor(new Class<?>[0]));
+            scanDataCollectionFriendlyName = field(ScanDataCollection.class, FIELD_FRIENDLY_NAME);
+            scanDataCollectionResult = field(ScanDataCollection.class, FIELD_RESULT);
+            scanDataCollectionScanData = field(ScanDataCollection.class, FIELD_SCAN_DATA);
+
+            scanDataConstructor = accessible(ScanDataCollection.ScanData.class.getDeclaredConstructors()[0]);
+            scanDataRawData = field(ScanDataCollection.ScanData.class, FIELD_RAW_DATA);
+            scanDataCharsetName = field(ScanDataCollection.ScanData.class, FIELD_CHARSET_NAME);
+            scanDataTimestamp = field(ScanDataCollection.ScanData.class, FIELD_TIMESTAMP);
+            scanDataLabelType = field(ScanDataCollection.ScanData.class, FIELD_LABEL_TYPE);
+
+            scannerInfoConstructor = accessible(ScannerInfo.class.getDeclaredConstructor(new Class<?>[0]));
+            scannerInfoFriendlyName = field(ScannerInfo.class, FIELD_FRIENDLY_NAME);
+            scannerInfoScannerIndex = field(ScannerInfo.class, FIELD_SCANNER_INDEX);
+            scannerInfoDeviceType = field(ScannerInfo.class, FIELD_DEVICE_TYPE);
+            scannerInfoConnectionType = field(ScannerInfo.class, FIELD_CONNECTION_TYPE);
+            scannerInfoDeviceIdentifier = field(ScannerInfo.class, FIELD_DEVICE_IDENTIFIER);
+            scannerInfoDecoderType = field(ScannerInfo.class, FIELD_DECODER_TYPE);
+            scannerInfoIsDefaultScanner = field(ScannerInfo.class, FIELD_IS_DEFAULT_SCANNER);
+            scannerInfoIsConnected = field(ScannerInfo.class, FIELD_IS_CONNECTED);
+            scannerInfoModelNumber = field(ScannerInfo.class, FIELD_MODEL_NUMBER);
+        }
+
+        private static <T> Constructor<T> accessible(Constructor<T> constructor)
+        {
+            constructor.setAccessible(true);
+            return constructor;
+        }
+
+        private static Field field(Class<?> clazz, String name) throws NoSuchFieldException
+        {
+            Field field = clazz.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        }
+    }
+
+    /**
+     * Resolved by the class loader the first time an event is fabricated, so the producer threads
+     * of a load test read the handles without taking a lock
+     */
+    private static class HandlesHolder
+    {
+        static final ReflectionHandles HANDLES;
+        static final Exception FAILURE;
+
+        static {
+            ReflectionHandles handles = null;
+            Exception failure = null;
+            try {
+                handles = new ReflectionHandles();
+            } catch (NoSuchMethodException e) {
+                failure = e;
+            } catch (NoSuchFieldException e) {
+                failure = e;
+            }
+            if (failure != null)
+                Log.e(TAG, "Problem with reflecting on Zebra EMDK API" + failure.getMessage());
+            HANDLES = handles;
+            FAILURE = failure;
+        }
+    }
+
+    private static ReflectionHandles getReflectionHandles() throws NoSuchMethodException, NoSuchFieldException
+    {
+        ReflectionHandles handles = HandlesHolder.HANDLES;
+        if (handles == null) {
+            if (HandlesHolder.FAILURE instanceof NoSuchMethodException)
+                throw (NoSuchMethodException) HandlesHolder.FAILURE;
+            throw (NoSuchFieldException) HandlesHolder.FAILURE;
+        }
+        return handles;
     }
 
     /**
@@ -62,16 +227,19 @@ public class EMDKBarcodeStub {
      */
     public StatusData ReportStatus(StatusData.ScannerStates statusToReport) throws InstantiationException, IllegalAccessException, InvocationTargetException, NoSuchFieldException, NoSuchMethodException {
         StatusData statusData = null;
+        if (pooledStatus != null) {
+            statusData = pooledStatus.get(statusToReport.ordinal());
+            if (statusData != null)
+                return statusData;
+        }
         try {
-            Constructor<StatusData> scannerStatusDataConstructor = StatusData.class.getDeclaredConstructor(new Class[0]);
-            scannerStatusDataConstructor.setAccessible(true);
-            statusData = scannerStatusDataConstructor.newInstance(new Object[0]);
-            Field fieldStatusDataFriendlyName = StatusData.class.getDeclaredField(FIELD_FRIENDLY_NAME);
-            fieldStatusDataFriendlyName.setAccessible(true);
-            fieldStatusDataFriendlyName.set(statusData, reportedFriendlyName);
-            Field fieldStatusDataScannerState = StatusData.class.getDeclaredField(FIELD_SCANNER_STATE);
-            fieldStatusDataScannerState.setAccessible(true);
-            fieldStatusDataScannerState.set(statusData, statusToReport);
+            ReflectionHandles handles = getReflectionHandles();
+            statusData = handles.statusDataConstructor.newInstance(new Object[0]);
+            handles.statusDataFriendlyName.set(statusData, reportedFriendlyName);
+            handles.statusDataScannerState.set(statusData, statusToReport);
+            allocations.incrementAndGet();
+            if (pooledStatus != null && !pooledStatus.compareAndSet(statusToReport.ordinal(), null, statusData))
+                statusData = pooledStatus.get(statusToReport.ordinal());
             }
             catch (InstantiationException e) {
                 Log.e(TAG, "Problem with reflecting on Zebra EMDK API" + e.getMessage());
@@ -82,12 +250,6 @@ public class EMDKBarcodeStub {
             } catch (InvocationTargetException e) {
                 Log.e(TAG, "Problem with reflecting on Zebra EMDK API" + e.getMessage());
                 throw e;
-            } catch (NoSuchFieldException e) {
-                Log.e(TAG, "Problem with reflecting on Zebra EMDK API" + e.getMessage());
-                throw e;
-            } catch (NoSuchMethodException e) {
-                Log.e(TAG, "Problem with reflecting on Zebra EMDK API" + e.getMessage());
-                throw e;
             }
         return statusData;
     }
@@ -95,6 +257,7 @@ public class EMDKBarcodeStub {
     /**
      * One trigger pull can return multiple barcodes in certain scanner modes.  Simulating a scan
      * is done in two steps, this is the first, to provide the scanned barcodes one by one via this method.
+     * Scans are buffered for the calling thread only.
      * @param scanDataRawBytes barcodeData as byte[]
      * @param scanLabelType e.g. EAN13
      * @param charsetName e.g. UTF-8
@@ -103,15 +266,21 @@ public class EMDKBarcodeStub {
     public void AddScanData(byte[] scanDataRawBytes, ScanDataCollection.LabelType scanLabelType,
                             String charsetName, String timestamp)
     {
+        if (poolSize > 0) {
+            scanPools.get().buffer(scanDataRawBytes, scanLabelType, charsetName, timestamp);
+            return;
+        }
         //  Add a single scan which will be buffered
         ScanDataStub temp = new ScanDataStub(scanDataRawBytes, scanLabelType, charsetName, timestamp);
-        bufferedScans.add(temp);
+        allocations.incrementAndGet();
+        bufferedScans.get().add(temp);
     }
 
     /**
      * The second step in mimicing a barcode scan is to instruct class to parse all the data you
      * previously provided via AddScanData and return a ScanDataCollection object.  The ScanDataCollection
      * object can then be sent to your activity's onData() handler to mimic a barcode being scanned.
+     * Only the scans added by the calling thread are reported.
      * @param scannerResult
      * @return
      * @throws InstantiationException
@@ -121,111 +290,132 @@ public class EMDKBarcodeStub {
      * @throws NoSuchFieldException
      */
     public ScanDataCollection ReportScan(ScannerResults scannerResult) throws InstantiationException, InvocationTargetException, NoSuchMethodException, IllegalAccessException, NoSuchFieldException {
+        if (poolSize > 0)
+            return reportPooledScan(scannerResult);
         ScanDataCollection scanDataCollection = null;
+        ArrayList<ScanDataStub> bufferedScans = this.bufferedScans.get();
         if (bufferedScans.size() == 0)
         {
             Log.e(TAG, "No scans available to report");
             throw new NoSuchFieldException("No scans available to report");
         }
         try {
-            Constructor<ScanDataCollection> scanDataCollectionConstructor = ScanDataCollection.class.getDeclaredConstructor(new Class[0]);
-            scanDataCollectionConstructor.setAccessible(true);
-            scanDataCollection = scanDataCollectionConstructor.newInstance(new Object[0]);
-            Field fieldFriendlyName = ScanDataCollection.class.getDeclaredField(FIELD_FRIENDLY_NAME);
-            fieldFriendlyName.setAccessible(true);
-            fieldFriendlyName.set(scanDataCollection, reportedFriendlyName);
-            Field fieldScannerResult = ScanDataCollection.class.getDeclaredField(FIELD_RESULT);
-            fieldScannerResult.setAccessible(true);
-            fieldScannerResult.set(scanDataCollection, scannerResult);
-
-            ArrayList<ScanDataCollection.ScanData> scannedData = new ArrayList<>();
+            ReflectionHandles handles = getReflectionHandles();
+            scanDataCollection = newScanDataCollection(handles, scannerResult);
 
+            ArrayList<ScanDataCollection.ScanData> scannedData = new ArrayList<>(bufferedScans.size());
             for (int i = 0; i < bufferedScans.size(); i++) {
-                Constructor[] scanDataConstructors = ScanDataCollection.ScanData.class.getDeclaredConstructors();
-                Constructor scanDataConstructor = scanDataConstructors[0];
-                scanDataConstructor.setAccessible(true);
-                ScanDataCollection.ScanData data = (ScanDataCollection.ScanData) scanDataConstructor.newInstance(scanDataCollection);
-                Field fieldScanDataRawData = ScanDataCollection.ScanData.class.getDeclaredField(FIELD_RAW_DATA);
-                fieldScanDataRawData.setAccessible(true);
-                fieldScanDataRawData.set(data, bufferedScans.get(i).getScanDataRawBytes());
-                Field fieldScanDataCharsetName = ScanDataCollection.ScanData.class.getDeclaredField(FIELD_CHARSET_NAME);
-                fieldScanDataCharsetName.setAccessible(true);
-                fieldScanDataCharsetName.set(data, bufferedScans.get(i).getCharsetName());
-                Field fieldScanDataTimestamp = ScanDataCollection.ScanData.class.getDeclaredField(FIELD_TIMESTAMP);
-                fieldScanDataTimestamp.setAccessible(true);
-                fieldScanDataTimestamp.set(data, bufferedScans.get(i).getTimestamp());
-                Field fieldScanDataLabelType = ScanDataCollection.ScanData.class.getDeclaredField(FIELD_LABEL_TYPE);
-                fieldScanDataLabelType.setAccessible(true);
-                fieldScanDataLabelType.set(data, bufferedScans.get(i).getScanLabelType());
-                scannedData.add(data);
+                ScanDataStub scan = bufferedScans.get(i);
+                scannedData.add(newScanData(handles, scanDataCollection, scan.getScanDataRawBytes(),
+                        scan.getScanLabelType(), scan.getCharsetName(), scan.getTimestamp()));
             }
-
-            Field fieldScannedData = ScanDataCollection.class.getDeclaredField("scanData");
-            fieldScannedData.setAccessible(true);
-            fieldScannedData.set(scanDataCollection, scannedData);
+            handles.scanDataCollectionScanData.set(scanDataCollection, scannedData);
+            allocations.addAndGet(2 + bufferedScans.size());
         } catch (InstantiationException e) {
             Log.e(TAG, "Problem with reflecting on Zebra EMDK API" + e.getMessage());
             throw e;
         } catch (InvocationTargetException e) {
             Log.e(TAG, "Problem with reflecting on Zebra EMDK API" + e.getMessage());
             throw e;
-        } catch (NoSuchMethodException e) {
-            Log.e(TAG, "Problem with reflecting on Zebra EMDK API" + e.getMessage());
-            throw e;
         } catch (IllegalAccessException e) {
             Log.e(TAG, "Problem with reflecting on Zebra EMDK API" + e.getMessage());
             throw e;
-        } catch (NoSuchFieldException e) {
-            Log.e(TAG, "Problem with reflecting on Zebra EMDK API" + e.getMessage());
-            throw e;
         }
         bufferedScans.clear();
         return scanDataCollection;
     }
 
+    /**
+     * High rate alternative to AddScanData followed by ReportScan for the common case of a trigger
+     * pull returning a single barcode.  Nothing is buffered so the call is independent of any
+     * scans previously added with AddScanData.
+     * @param scannerResult
+     * @param scanDataRawBytes barcodeData as byte[]
+     * @param scanLabelType e.g. EAN13
+     * @param charsetName e.g. UTF-8
+     * @param timestamp e.g. "2017-02-27 12:58:51.238"
+     * @return a ScanDataCollection holding the single barcode, ready to send to onData()
+     */
+    public ScanDataCollection CreateScan(ScannerResults scannerResult, byte[] scanDataRawBytes,
+                                         ScanDataCollection.LabelType scanLabelType, String charsetName,
+                                         String timestamp) throws InstantiationException, InvocationTargetException, NoSuchMethodException, IllegalAccessException, NoSuchFieldException {
+        ReflectionHandles handles = getReflectionHandles();
+        if (poolSize > 0) {
+            PooledCollection pooled = scanPools.get().nextCollection(handles, scannerResult);
+            setScanData(handles, pooled.entry(handles, 0), scanDataRawBytes, scanLabelType, charsetName, timestamp);
+            return pooled.collection;
+        }
+        ScanDataCollection scanDataCollection = newScanDataCollection(handles, scannerResult);
+        ArrayList<ScanDataCollection.ScanData> scannedData = new ArrayList<>(1);
+        scannedData.add(newScanData(handles, scanDataCollection, scanDataRawBytes, scanLabelType, charsetName, timestamp));
+        handles.scanDataCollectionScanData.set(scanDataCollection, scannedData);
+        allocations.addAndGet(3);
+        return scanDataCollection;
+    }
+
+    private ScanDataCollection reportPooledScan(ScannerResults scannerResult) throws InstantiationException, InvocationTargetException, NoSuchMethodException, IllegalAccessException, NoSuchFieldException {
+        ScanPool pool = scanPools.get();
+        if (pool.bufferedCount == 0)
+        {
+            Log.e(TAG, "No scans available to report");
+            throw new NoSuchFieldException("No scans available to report");
+        }
+        ReflectionHandles handles = getReflectionHandles();
+        PooledCollection pooled = pool.nextCollection(handles, scannerResult);
+        for (int i = 0; i < pool.bufferedCount; i++) {
+            ScanDataStub scan = pool.buffered.get(i);
+            setScanData(handles, pooled.entry(handles, i), scan.getScanDataRawBytes(), scan.getScanLabelType(),
+                    scan.getCharsetName(), scan.getTimestamp());
+        }
+        pool.bufferedCount = 0;
+        return pooled.collection;
+    }
+
+    private ScanDataCollection newScanDataCollection(ReflectionHandles handles, ScannerResults scannerResult) throws InstantiationException, InvocationTargetException, IllegalAccessException
+    {
+        ScanDataCollection scanDataCollection = handles.scanDataCollectionConstructor.newInstance(new Object[0]);
+        handles.scanDataCollectionFriendlyName.set(scanDataCollection, reportedFriendlyName);
+        handles.scanDataCollectionResult.set(scanDataCollection, scannerResult);
+        return scanDataCollection;
+    }
+
+    private static ScanDataCollection.ScanData newScanData(ReflectionHandles handles, ScanDataCollection owner,
+                                                           byte[] scanDataRawBytes, ScanDataCollection.LabelType scanLabelType,
+                                                           String charsetName, String timestamp) throws InstantiationException, InvocationTargetException, IllegalAccessException
+    {
+        ScanDataCollection.ScanData data = (ScanDataCollection.ScanData) handles.scanDataConstructor.newInstance(owner);
+        setScanData(handles, data, scanDataRawBytes, scanLabelType, charsetName, timestamp);
+        return data;
+    }
+
+    private static void setScanData(ReflectionHandles handles, ScanDataCollection.ScanData data,
+                                    byte[] scanDataRawBytes, ScanDataCollection.LabelType scanLabelType,
+                                    String charsetName, String timestamp) throws IllegalAccessException
+    {
+        handles.scanDataRawData.set(data, scanDataRawBytes);
+        handles.scanDataCharsetName.set(data, charsetName);
+        handles.scanDataTimestamp.set(data, timestamp);
+        handles.scanDataLabelType.set(data, scanLabelType);
+    }
+
     public ScannerInfo CreateScannerInfo(ScannerInfo.DeviceType deviceType, ScannerInfo.ConnectionType connectionType,
                                          BarcodeManager.DeviceIdentifier deviceIdentifier, ScannerInfo.DecoderType decoderType, Boolean isDefaultScanner,
                                          Boolean isConnected, String modelNumber, int scannerIndex)
     {
         ScannerInfo scannerInfo = null;
         try {
-            Constructor<ScannerInfo> scanInfoConstructor = ScannerInfo.class.getDeclaredConstructor(new Class[0]);
-            scanInfoConstructor.setAccessible(true);
-            scannerInfo = scanInfoConstructor.newInstance(new Object[0]);
-            Field fieldFriendlyName = ScannerInfo.class.getDeclaredField(FIELD_FRIENDLY_NAME);
-            fieldFriendlyName.setAccessible(true);
-            fieldFriendlyName.set(scannerInfo, reportedFriendlyName);
-            Field fieldScannerIndex = ScannerInfo.class.getDeclaredField(FIELD_SCANNER_INDEX);
-            fieldScannerIndex.setAccessible(true);
-            fieldScannerIndex.set(scannerInfo, scannerIndex);
-
-            Field fieldDeviceType = ScannerInfo.class.getDeclaredField(FIELD_DEVICE_TYPE);
-            fieldDeviceType.setAccessible(true);
-            fieldDeviceType.set(scannerInfo, deviceType);
-
-            Field fieldConnectionType = ScannerInfo.class.getDeclaredField(FIELD_CONNECTION_TYPE);
-            fieldConnectionType.setAccessible(true);
-            fieldConnectionType.set(scannerInfo, connectionType);
-
-            Field fieldDeviceIdentifier = ScannerInfo.class.getDeclaredField(FIELD_DEVICE_IDENTIFIER);
-            fieldDeviceIdentifier.setAccessible(true);
-            fieldDeviceIdentifier.set(scannerInfo, deviceIdentifier);
-
-            Field fieldDecoderType = ScannerInfo.class.getDeclaredField(FIELD_DECODER_TYPE);
-            fieldDecoderType.setAccessible(true);
-            fieldDecoderType.set(scannerInfo, decoderType);
-
-            Field fieldIsDefaultScanner = ScannerInfo.class.getDeclaredField(FIELD_IS_DEFAULT_SCANNER);
-            fieldIsDefaultScanner.setAccessible(true);
-            fieldIsDefaultScanner.set(scannerInfo, isDefaultScanner);
-
-            Field fieldIsConnected = ScannerInfo.class.getDeclaredField(FIELD_IS_CONNECTED);
-            fieldIsConnected.setAccessible(true);
-            fieldIsConnected.set(scannerInfo, isConnected);
-
-            Field fieldModelNumber = ScannerInfo.class.getDeclaredField(FIELD_MODEL_NUMBER);
-            fieldModelNumber.setAccessible(true);
-            fieldModelNumber.set(scannerInfo, modelNumber);
+            ReflectionHandles handles = getReflectionHandles();
+            scannerInfo = handles.scannerInfoConstructor.newInstance(new Object[0]);
+            handles.scannerInfoFriendlyName.set(scannerInfo, reportedFriendlyName);
+            handles.scannerInfoScannerIndex.set(scannerInfo, scannerIndex);
+            handles.scannerInfoDeviceType.set(scannerInfo, deviceType);
+            handles.scannerInfoConnectionType.set(scannerInfo, connectionType);
+            handles.scannerInfoDeviceIdentifier.set(scannerInfo, deviceIdentifier);
+            handles.scannerInfoDecoderType.set(scannerInfo, decoderType);
+            handles.scannerInfoIsDefaultScanner.set(scannerInfo, isDefaultScanner);
+            handles.scannerInfoIsConnected.set(scannerInfo, isConnected);
+            handles.scannerInfoModelNumber.set(scannerInfo, modelNumber);
+            allocations.incrementAndGet();
 
         } catch (NoSuchMethodException e) {
             e.printStackTrace();
@@ -243,6 +433,80 @@ public class EMDKBarcodeStub {
         return scannerInfo;
     }
 
+    /**
+     * One producer thread's pooled objects: the scans it has buffered with AddScanData, reused from
+     * the start after each report, and the ring of collections it reports them in
+     */
+    private class ScanPool
+    {
+        final ArrayList<ScanDataStub> buffered = new ArrayList<>();
+        int bufferedCount = 0;
+        final PooledCollection[] ring;
+        int next = 0;
+
+        ScanPool(int size)
+        {
+            ring = new PooledCollection[size];
+        }
+
+        void buffer(byte[] scanDataRawBytes, ScanDataCollection.LabelType scanLabelType, String charsetName, String timestamp)
+        {
+            if (bufferedCount == buffered.size()) {
+                buffered.add(new ScanDataStub(scanDataRawBytes, scanLabelType, charsetName, timestamp));
+                allocations.incrementAndGet();
+            }
+            else {
+                buffered.get(bufferedCount).set(scanDataRawBytes, scanLabelType, charsetName, timestamp);
+            }
+            bufferedCount++;
+        }
+
+        //  The collection whose turn it is, emptied and carrying the given result
+        PooledCollection nextCollection(ReflectionHandles handles, ScannerResults scannerResult) throws InstantiationException, InvocationTargetException, IllegalAccessException
+        {
+            PooledCollection pooled = ring[next];
+            if (pooled == null) {
+                pooled = new PooledCollection(newScanDataCollection(handles, scannerResult));
+                handles.scanDataCollectionScanData.set(pooled.collection, pooled.scanData);
+                allocations.addAndGet(2);
+                ring[next] = pooled;
+            }
+            else {
+                handles.scanDataCollectionResult.set(pooled.collection, scannerResult);
+                pooled.scanData.clear();
+            }
+            next = (next + 1) % ring.length;
+            return pooled;
+        }
+    }
+
+    /**
+     * A collection handed out in pooled mode, with every ScanData ever created for it
+     */
+    private class PooledCollection
+    {
+        final ScanDataCollection collection;
+        final ArrayList<ScanDataCollection.ScanData> scanData = new ArrayList<>();
+        private final ArrayList<ScanDataCollection.ScanData> entries = new ArrayList<>();
+
+        PooledCollection(ScanDataCollection collection)
+        {
+            this.collection = collection;
+        }
+
+        //  The position'th scan of the collection being built, which must be requested in order
+        ScanDataCollection.ScanData entry(ReflectionHandles handles, int position) throws InstantiationException, InvocationTargetException, IllegalAccessException
+        {
+            if (position == entries.size()) {
+                entries.add((ScanDataCollection.ScanData) handles.scanDataConstructor.newInstance(collection));
+                allocations.incrementAndGet();
+            }
+            ScanDataCollection.ScanData data = entries.get(position);
+            scanData.add(data);
+            return data;
+        }
+    }
+
     /**
      * Private class used to buffer the scan data
      */
@@ -254,6 +518,11 @@ public class EMDKBarcodeStub {
         private String timestamp;
         ScanDataStub(byte[] scanDataRawBytes, ScanDataCollection.LabelType scanLabelType,
                      String charsetName, String timestamp)
+        {
+            set(scanDataRawBytes, scanLabelType, charsetName, timestamp);
+        }
+        void set(byte[] scanDataRawBytes, ScanDataCollection.LabelType scanLabelType,
+                 String charsetName, String timestamp)
         {
             this.scanDataRawBytes = scanDataRawBytes;
             this.scanLabelType = scanLabelType;
@@ -0,0 +1,95 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.load;
+
+import android.os.Bundle;
+
+/**
+ * Describes the synthetic load a {@link ScanLoadGenerator} drives through the activity, e.g.
+ * 50 scans/s for 10 minutes in collections of 5 barcodes spread over 4 producer threads.
+ */
+public class LoadProfile {
+
+    public enum Shape {
+        /** Collections are spaced evenly */
+        STEADY,
+        /** burstSize collections are delivered back to back, then the producer idles */
+        BURST
+    }
+
+    private int producerThreads = 2;
+    private int scansPerSecond = 50;
+    private int barcodesPerCollection = 1;
+    private long durationMillis = 10000;
+    private Shape shape = Shape.STEADY;
+    private int burstSize = 10;
+    private boolean bReportStatus = true;
+    private long connectionChangeIntervalMillis = 0;
+    private boolean bPooled = false;
+
+    /**
+     * Build a profile from instrumentation arguments, e.g.
+     * adb shell am instrument -e loadScansPerSecond 50 -e loadDurationSeconds 600 -e loadBarcodesPerCollection 5 ...
+     * Any argument not supplied keeps its default.
+     */
+    public static LoadProfile fromArguments(Bundle arguments)
+    {
+        LoadProfile profile = new LoadProfile();
+        if (arguments == null)
+            return profile;
+        profile.producerThreads = intArgument(arguments, "loadProducers", profile.producerThreads);
+        profile.scansPerSecond = intArgument(arguments, "loadScansPerSecond", profile.scansPerSecond);
+        profile.barcodesPerCollection = intArgument(arguments, "loadBarcodesPerCollection", profile.barcodesPerCollection);
+        profile.durationMillis = intArgument(arguments, "loadDurationSeconds", (int) (profile.durationMillis / 1000)) * 1000L;
+        profile.burstSize = intArgument(arguments, "loadBurstSize", profile.burstSize);
+        profile.connectionChangeIntervalMillis = intArgument(arguments, "loadConnectionChangeIntervalMs", (int) profile.connectionChangeIntervalMillis);
+        profile.bPooled = Boolean.parseBoolean(arguments.getString("loadPooled"));
+        String shape = arguments.getString("loadShape");
+        if (shape != null)
+            profile.shape = Shape.valueOf(shape.toUpperCase());
+        return profile;
+    }
+
+    private static int intArgument(Bundle arguments, String key, int defaultValue)
+    {
+        String value = arguments.getString(key);
+        return (value == null) ? defaultValue : Integer.parseInt(value);
+    }
+
+    public LoadProfile setProducerThreads(int producerThreads) {this.producerThreads = producerThreads; return this;}
+    public LoadProfile setScansPerSecond(int scansPerSecond) {this.scansPerSecond = scansPerSecond; return this;}
+    public LoadProfile setBarcodesPerCollection(int barcodesPerCollection) {this.barcodesPerCollection = barcodesPerCollection; return this;}
+    public LoadProfile setDurationMillis(long durationMillis) {this.durationMillis = durationMillis; return this;}
+    public LoadProfile setShape(Shape shape) {this.shape = shape; return this;}
+    public LoadProfile setBurstSize(int burstSize) {this.burstSize = burstSize; return this;}
+    public LoadProfile setReportStatus(boolean bReportStatus) {this.bReportStatus = bReportStatus; return this;}
+    public LoadProfile setConnectionChangeIntervalMillis(long connectionChangeIntervalMillis) {this.connectionChangeIntervalMillis = connectionChangeIntervalMillis; return this;}
+    /** Generate events from a pooled stub and a fixed set of barcodes so producers create no garbage once warmed up */
+    public LoadProfile setPooled(boolean bPooled) {this.bPooled = bPooled; return this;}
+
+    public int getProducerThreads() {return producerThreads;}
+    public int getScansPerSecond() {return scansPerSecond;}
+    public int getBarcodesPerCollection() {return barcodesPerCollection;}
+    public long getDurationMillis() {return durationMillis;}
+    public Shape getShape() {return shape;}
+    public int getBurstSize() {return burstSize;}
+    public boolean isReportStatus() {return bReportStatus;}
+    public long getConnectionChangeIntervalMillis() {return connectionChangeIntervalMillis;}
+    public boolean isPooled() {return bPooled;}
+
+    /**
+     * @return nanoseconds between collections for a single producer, or between bursts for BURST
+     */
+    long producerIntervalNanos()
+    {
+        double collectionsPerSecond = (double) scansPerSecond / barcodesPerCollection / producerThreads;
+        if (shape == Shape.BURST)
+            collectionsPerSecond /= burstSize;
+        return (long) (1e9 / collectionsPerSecond);
+    }
+
+    @Override
+    public String toString() {
+        return scansPerSecond + " scans/s for " + (durationMillis / 1000) + "s, " + barcodesPerCollection +
+                " barcodes per collection, " + producerThreads + " producers, " + shape +
+                (shape == Shape.BURST ? " of " + burstSize : "") + (bPooled ? ", pooled" : "");
+    }
+}
@@ -0,0 +1,81 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.load;
+
+/**
+ * Outcome of a {@link ScanLoadGenerator} run
+ */
+public class LoadReport {
+
+    public final LoadProfile profile;
+    public final long elapsedMillis;
+    public final long collectionsSent;
+    public final long scansSent;
+    public final long scansDelivered;
+    public final long scansDropped;
+    /** Scans the fan in dropped from a scanner over its fair share of a saturated pipeline */
+    public final long scansShed;
+    /** Scans suppressed as continuous mode re-reads of a label */
+    public final long scansSuppressed;
+    public final int peakQueueDepth;
+    public final long latencyP50Nanos;
+    public final long latencyP99Nanos;
+    public final long latencyMaxNanos;
+    public final long maxProducerLagNanos;
+    public final long producerErrors;
+    /** Objects the stub created over the whole run */
+    public final long stubAllocations;
+    /** Objects the stub created after every producer had warmed up, -1 if they never did */
+    public final long stubAllocationsAfterWarmUp;
+
+    LoadReport(LoadProfile profile, long elapsedMillis, long collectionsSent, long scansSent,
+               long scansDelivered, long scansDropped, long scansShed, long scansSuppressed, int peakQueueDepth, long latencyP50Nanos,
+               long latencyP99Nanos, long latencyMaxNanos, long maxProducerLagNanos, long producerErrors,
+               long stubAllocations, long stubAllocationsAfterWarmUp)
+    {
+        this.profile = profile;
+        this.elapsedMillis = elapsedMillis;
+        this.collectionsSent = collectionsSent;
+        this.scansSent = scansSent;
+        this.scansDelivered = scansDelivered;
+        this.scansDropped = scansDropped;
+        this.scansShed = scansShed;
+        this.scansSuppressed = scansSuppressed;
+        this.peakQueueDepth = peakQueueDepth;
+        this.latencyP50Nanos = latencyP50Nanos;
+        this.latencyP99Nanos = latencyP99Nanos;
+        this.latencyMaxNanos = latencyMaxNanos;
+        this.maxProducerLagNanos = maxProducerLagNanos;
+        this.producerErrors = producerErrors;
+        this.stubAllocations = stubAllocations;
+        this.stubAllocationsAfterWarmUp = stubAllocationsAfterWarmUp;
+    }
+
+    /**
+     * @return scans delivered or dropped at any stage of the pipeline, equal to scansSent once the
+     * pipeline has drained
+     */
+    public long getScansAccountedFor()
+    {
+        return scansDelivered + scansDropped + scansShed + scansSuppressed;
+    }
+
+    /**
+     * @return scans per second actually sent through onData
+     */
+    public double getAchievedScansPerSecond()
+    {
+        return elapsedMillis == 0 ? 0 : scansSent * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "Load [" + profile + "]: sent " + scansSent + " scans in " + collectionsSent + " collections over " +
+                elapsedMillis + " ms (" + String.format("%.1f", getAchievedScansPerSecond()) + " scans/s), delivered " +
+                scansDelivered + ", dropped " + scansDropped + ", shed " + scansShed + ", suppressed " + scansSuppressed + ", peak queue depth " + peakQueueDepth +
+                ", scan to screen p50 " + micros(latencyP50Nanos) + " us p99 " + micros(latencyP99Nanos) +
+                " us max " + micros(latencyMaxNanos) + " us, max producer lag " + micros(maxProducerLagNanos) +
+                " us, producer errors " + producerErrors + ", stub allocations " + stubAllocations +
+                " (" + stubAllocationsAfterWarmUp + " after warm-up)";
+    }
+
+    private static long micros(long nanos) {return nanos / 1000;}
+}
@@ -0,0 +1,237 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.load;
+
+import android.util.Log;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.FrameBatchDispatcher;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.com.symbol.emdk.barcode.test.EMDKBarcodeStub;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.DuplicateSuppressor;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.LatencyHistogram;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanBatchBuffer;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanProcessor;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScannerFanIn;
+import com.symbol.emdk.barcode.BarcodeManager;
+import com.symbol.emdk.barcode.ScanDataCollection;
+import com.symbol.emdk.barcode.Scanner;
+import com.symbol.emdk.barcode.ScannerInfo;
+import com.symbol.emdk.barcode.ScannerResults;
+import com.symbol.emdk.barcode.StatusData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives onData, onStatus and onConnectionChange from several producer threads using
+ * {@link EMDKBarcodeStub}, to the shape described by a {@link LoadProfile}, and reports how the
+ * scan pipeline coped.
+ */
+public class ScanLoadGenerator {
+
+    private static final String TAG = "Load Generator";
+    private static final String FRIENDLY_NAME = "2D Barcode Imager";
+    private static final String CONNECTION_FRIENDLY_NAME = "Load Generator Scanner";
+    private static final String CHARSET_NAME = "UTF-8";
+    private static final String TIMESTAMP = "2017-02-27 12:58:51.238";
+    private static final long DRAIN_TIMEOUT_MS = 10000;
+    private static final int STUB_POOL_SIZE = 64;                // Collections each producer cycles through in pooled mode
+    private static final int POOLED_BARCODES_PER_PRODUCER = 4096; // Distinct barcodes each producer cycles through in pooled mode
+
+    private final Scanner.DataListener dataListener;
+    private final Scanner.StatusListener statusListener;
+    private final BarcodeManager.ScannerConnectionListener connectionListener;
+    private final ScanProcessor processor;
+    private final FrameBatchDispatcher<?> dispatcher;
+    private final LatencyHistogram scanToScreen;
+    private final ScannerFanIn fanIn;
+    private final DuplicateSuppressor duplicateSuppressor;
+
+    private final AtomicLong collectionsSent = new AtomicLong();
+    private final AtomicLong scansSent = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+    private final AtomicLong producerErrors = new AtomicLong();
+    private final AtomicInteger producersWarmedUp = new AtomicInteger();
+    private final AtomicLong stubAllocationsAtWarmUp = new AtomicLong(-1);
+
+    /**
+     * @param dataListener receives the synthetic scans, normally the activity
+     * @param statusListener receives the synthetic status changes
+     * @param connectionListener receives the synthetic connection changes
+     * @param processor the activity's processing stage, waited on before measuring delivery
+     * @param dispatcher the activity's scan dispatcher, used to measure delivery and queue depth
+     * @param scanToScreen histogram the activity records scan to screen latency in, reset at the start of the run
+     * @param fanIn the activity's admission control, whose drops are counted
+     * @param duplicateSuppressor the activity's duplicate suppression, whose suppressed scans are counted
+     */
+    public ScanLoadGenerator(Scanner.DataListener dataListener, Scanner.StatusListener statusListener,
+                             BarcodeManager.ScannerConnectionListener connectionListener,
+                             ScanProcessor processor, FrameBatchDispatcher<?> dispatcher,
+                             LatencyHistogram scanToScreen, ScannerFanIn fanIn, DuplicateSuppressor duplicateSuppressor)
+    {
+        this.processor = processor;
+        this.dataListener = dataListener;
+        this.statusListener = statusListener;
+        this.connectionListener = connectionListener;
+        this.dispatcher = dispatcher;
+        this.scanToScreen = scanToScreen;
+        this.fanIn = fanIn;
+        this.duplicateSuppressor = duplicateSuppressor;
+    }
+
+    /**
+     * Run the profile to completion, blocking the calling thread (which must not be the UI thread)
+     */
+    public LoadReport run(final LoadProfile profile) throws InterruptedException
+    {
+        ScanBatchBuffer<?> buffer = dispatcher.getBuffer();
+        long flushedBefore = buffer.getScansFlushed();
+        long droppedBefore = buffer.getScansDropped();
+        long shedBefore = fanIn.getTotalDropped();
+        long suppressedBefore = duplicateSuppressor.getSuppressed();
+        buffer.resetPeakDepth();
+        scanToScreen.reset();
+        producersWarmedUp.set(0);
+        stubAllocationsAtWarmUp.set(-1);
+
+        final EMDKBarcodeStub stub = profile.isPooled() ? new EMDKBarcodeStub(FRIENDLY_NAME, STUB_POOL_SIZE) :
+                new EMDKBarcodeStub(FRIENDLY_NAME);
+        final long start = System.nanoTime();
+        final long end = start + profile.getDurationMillis() * 1000000L;
+
+        List<Thread> producers = new ArrayList<Thread>();
+        for (int i = 0; i < profile.getProducerThreads(); i++) {
+            final int producerId = i;
+            Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    produce(stub, profile, producerId, start, end);
+                }
+            }, "LoadProducer-" + i);
+            producers.add(producer);
+        }
+        Thread connections = null;
+        if (profile.getConnectionChangeIntervalMillis() > 0) {
+            connections = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    produceConnectionChanges(profile, end);
+                }
+            }, "LoadConnections");
+            producers.add(connections);
+        }
+
+        for (Thread producer : producers)
+            producer.start();
+        for (Thread producer : producers)
+            producer.join();
+        long elapsedMillis = (System.nanoTime() - start) / 1000000L;
+
+        //  Let the UI catch up with everything that was sent, then allow a frame for the draw stamps
+        long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        while (!(processor.isIdle() && dispatcher.isIdle()) && System.currentTimeMillis() < drainDeadline)
+            Thread.sleep(10);
+        Thread.sleep(100);
+
+        LoadReport report = new LoadReport(profile, elapsedMillis, collectionsSent.get(), scansSent.get(),
+                buffer.getScansFlushed() - flushedBefore, buffer.getScansDropped() - droppedBefore,
+                fanIn.getTotalDropped() - shedBefore, duplicateSuppressor.getSuppressed() - suppressedBefore,
+                buffer.getPeakDepth(), scanToScreen.getPercentileNanos(50), scanToScreen.getPercentileNanos(99),
+                scanToScreen.getMaxNanos(), maxLagNanos.get(), producerErrors.get(), stub.getAllocations(),
+                stubAllocationsAtWarmUp.get() < 0 ? -1 : stub.getAllocations() - stubAllocationsAtWarmUp.get());
+        Log.i(TAG, report.toString());
+        return report;
+    }
+
+    private void produce(EMDKBarcodeStub stub, LoadProfile profile, int producerId, long start, long end)
+    {
+        long interval = profile.producerIntervalNanos();
+        int collectionsPerWakeUp = (profile.getShape() == LoadProfile.Shape.BURST) ? profile.getBurstSize() : 1;
+        //  Stagger producers so they do not all fire on the same instant
+        long next = start + interval * producerId / profile.getProducerThreads();
+        long sequence = 0;
+        long collections = 0;
+        //  Built before the clock starts so producing a pooled scan allocates nothing
+        byte[][] pooledBarcodes = null;
+        if (profile.isPooled()) {
+            pooledBarcodes = new byte[POOLED_BARCODES_PER_PRODUCER][];
+            for (int i = 0; i < pooledBarcodes.length; i++)
+                pooledBarcodes[i] = barcode(producerId, i);
+        }
+
+        while (next < end) {
+            long now = System.nanoTime();
+            if (now < next) {
+                sleepNanos(next - now);
+                now = System.nanoTime();
+            }
+            recordLag(now - next);
+
+            for (int c = 0; c < collectionsPerWakeUp; c++) {
+                try {
+                    if (profile.isReportStatus())
+                        statusListener.onStatus(stub.ReportStatus(StatusData.ScannerStates.SCANNING));
+                    for (int b = 0; b < profile.getBarcodesPerCollection(); b++) {
+                        byte[] barcode = (pooledBarcodes != null) ?
+                                pooledBarcodes[(int) (sequence++ % pooledBarcodes.length)] : barcode(producerId, sequence++);
+                        stub.AddScanData(barcode, ScanDataCollection.LabelType.CODE128, CHARSET_NAME, TIMESTAMP);
+                    }
+                    dataListener.onData(stub.ReportScan(ScannerResults.SUCCESS));
+                    collectionsSent.incrementAndGet();
+                    scansSent.addAndGet(profile.getBarcodesPerCollection());
+                    if (profile.isReportStatus())
+                        statusListener.onStatus(stub.ReportStatus(StatusData.ScannerStates.IDLE));
+                    //  Once every producer has been round its pool the stub should create nothing more
+                    if (++collections == STUB_POOL_SIZE &&
+                            producersWarmedUp.incrementAndGet() == profile.getProducerThreads())
+                        stubAllocationsAtWarmUp.set(stub.getAllocations());
+                } catch (Exception e) {
+                    producerErrors.incrementAndGet();
+                    Log.e(TAG, "Producer " + producerId + " failed: " + e.getMessage());
+                }
+            }
+            next += interval;
+        }
+    }
+
+    private void produceConnectionChanges(LoadProfile profile, long end)
+    {
+        EMDKBarcodeStub stub = new EMDKBarcodeStub(CONNECTION_FRIENDLY_NAME);
+        ScannerInfo scannerInfo = stub.CreateScannerInfo(ScannerInfo.DeviceType.IMAGER, ScannerInfo.ConnectionType.BLUETOOTH_SSI,
+                BarcodeManager.DeviceIdentifier.BLUETOOTH_IMAGER1, ScannerInfo.DecoderType.TWO_DIMENSIONAL,
+                false, true, "RS6000", 0);
+        long interval = profile.getConnectionChangeIntervalMillis() * 1000000L;
+        boolean bConnected = false;
+        long next = System.nanoTime() + interval;
+        while (next < end) {
+            long now = System.nanoTime();
+            if (now < next)
+                sleepNanos(next - now);
+            bConnected = !bConnected;
+            connectionListener.onConnectionChange(scannerInfo, bConnected ?
+                    BarcodeManager.ConnectionState.CONNECTED : BarcodeManager.ConnectionState.DISCONNECTED);
+            next += interval;
+        }
+    }
+
+    //  Unique, human readable barcode for each scan so every one is distinct downstream
+    private static byte[] barcode(int producerId, long sequence)
+    {
+        return ("LOAD" + producerId + "-" + sequence).getBytes();
+    }
+
+    private void recordLag(long lagNanos)
+    {
+        long current = maxLagNanos.get();
+        while (lagNanos > current && !maxLagNanos.compareAndSet(current, lagNanos))
+            current = maxLagNanos.get();
+    }
+
+    private static void sleepNanos(long nanos)
+    {
+        try {
+            Thread.sleep(nanos / 1000000L, (int) (nanos % 1000000L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
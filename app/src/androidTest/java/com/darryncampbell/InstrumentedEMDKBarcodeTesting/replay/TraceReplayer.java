@@ -0,0 +1,181 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.replay;
+
+import android.util.Log;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.com.symbol.emdk.barcode.test.EMDKBarcodeStub;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.CallbackTraceReader;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.CallbackTraceWriter;
+import com.symbol.emdk.barcode.BarcodeManager;
+import com.symbol.emdk.barcode.ScanDataCollection;
+import com.symbol.emdk.barcode.Scanner;
+import com.symbol.emdk.barcode.ScannerInfo;
+import com.symbol.emdk.barcode.ScannerResults;
+import com.symbol.emdk.barcode.StatusData;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Feeds a trace recorded by CallbackTraceRecorder back through {@link EMDKBarcodeStub} to the
+ * activity's listeners, either with the recorded timing or as fast as possible.  The trace is
+ * streamed from a memory mapped file so its size is not limited by the heap.
+ */
+public class TraceReplayer {
+
+    private static final String TAG = "Trace Replayer";
+
+    private final Scanner.DataListener dataListener;
+    private final Scanner.StatusListener statusListener;
+    private final BarcodeManager.ScannerConnectionListener connectionListener;
+    private final Map<String, EMDKBarcodeStub> stubs = new HashMap<String, EMDKBarcodeStub>();
+
+    private long dataReplayed = 0;
+    private long scansReplayed = 0;
+    private long statusReplayed = 0;
+    private long connectionsReplayed = 0;
+    private long emptyDataSkipped = 0;
+    private long maxLagNanos = 0;
+
+    /**
+     * @param dataListener receives the recorded scans, normally the activity
+     * @param statusListener receives the recorded status changes
+     * @param connectionListener receives the recorded connection changes
+     */
+    public TraceReplayer(Scanner.DataListener dataListener, Scanner.StatusListener statusListener,
+                         BarcodeManager.ScannerConnectionListener connectionListener)
+    {
+        this.dataListener = dataListener;
+        this.statusListener = statusListener;
+        this.connectionListener = connectionListener;
+    }
+
+    /**
+     * Replay the whole trace, blocking the calling thread (which must not be the UI thread)
+     * @param trace file written by CallbackTraceRecorder
+     * @param bRealTime true to reproduce the recorded gaps between callbacks, false to send them back to back
+     * @return the number of events replayed
+     */
+    public long replay(File trace, boolean bRealTime) throws Exception
+    {
+        CallbackTraceReader reader = new CallbackTraceReader(trace);
+        try {
+            long start = System.nanoTime();
+            long events = 0;
+            while (reader.next()) {
+                if (bRealTime) {
+                    long due = start + reader.getNanos();
+                    long now = System.nanoTime();
+                    if (now < due)
+                        sleepNanos(due - now);
+                    else
+                        maxLagNanos = Math.max(maxLagNanos, now - due);
+                }
+                if (dispatch(reader))
+                    events++;
+            }
+            Log.i(TAG, "Replayed " + events + " events from " + trace + " in " +
+                    (System.nanoTime() - start) / 1000000L + "ms: " + dataReplayed + " onData (" + scansReplayed +
+                    " scans), " + statusReplayed + " onStatus, " + connectionsReplayed + " onConnectionChange, " +
+                    emptyDataSkipped + " empty onData skipped, max lag " + maxLagNanos / 1000 + "us");
+            return events;
+        } finally {
+            reader.close();
+        }
+    }
+
+    public long getDataReplayed() {return dataReplayed;}
+    public long getScansReplayed() {return scansReplayed;}
+    public long getStatusReplayed() {return statusReplayed;}
+    public long getConnectionsReplayed() {return connectionsReplayed;}
+
+    /**
+     * @return onData callbacks in the trace which carried no scans.  The stub cannot fabricate an
+     * empty ScanDataCollection so these are not replayed.
+     */
+    public long getEmptyDataSkipped() {return emptyDataSkipped;}
+
+    /**
+     * @return the furthest a real time replay fell behind the recorded timing
+     */
+    public long getMaxLagNanos() {return maxLagNanos;}
+
+    private boolean dispatch(CallbackTraceReader reader) throws Exception
+    {
+        EMDKBarcodeStub stub = stub(reader.getFriendlyName());
+        switch (reader.getType()) {
+            case CallbackTraceWriter.RECORD_DATA:
+                if (reader.getScanCount() == 0) {
+                    emptyDataSkipped++;
+                    return false;
+                }
+                for (int i = 0; i < reader.getScanCount(); i++) {
+                    stub.AddScanData(reader.getScanData(i), labelType(reader.getScanLabelType(i)),
+                            reader.getScanCharsetName(i), reader.getScanTimestamp(i));
+                }
+                dataListener.onData(stub.ReportScan(valueOf(ScannerResults.class, reader.getResult())));
+                dataReplayed++;
+                scansReplayed += reader.getScanCount();
+                return true;
+            case CallbackTraceWriter.RECORD_STATUS:
+                statusListener.onStatus(stub.ReportStatus(valueOf(StatusData.ScannerStates.class, reader.getState())));
+                statusReplayed++;
+                return true;
+            case CallbackTraceWriter.RECORD_CONNECTION:
+                int flags = reader.getFlags();
+                ScannerInfo scannerInfo = stub.CreateScannerInfo(
+                        valueOf(ScannerInfo.DeviceType.class, reader.getDeviceType()),
+                        valueOf(ScannerInfo.ConnectionType.class, reader.getConnectionType()),
+                        valueOf(BarcodeManager.DeviceIdentifier.class, reader.getDeviceIdentifier()),
+                        valueOf(ScannerInfo.DecoderType.class, reader.getDecoderType()),
+                        (flags & CallbackTraceWriter.FLAG_DEFAULT_SCANNER) != 0,
+                        (flags & CallbackTraceWriter.FLAG_CONNECTED) != 0,
+                        reader.getModelNumber(), reader.getScannerIndex());
+                connectionListener.onConnectionChange(scannerInfo,
+                        valueOf(BarcodeManager.ConnectionState.class, reader.getState()));
+                connectionsReplayed++;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    //  One stub per scanner so each callback reports the friendly name it was recorded with
+    private EMDKBarcodeStub stub(String friendlyName)
+    {
+        EMDKBarcodeStub stub = stubs.get(friendlyName);
+        if (stub == null) {
+            stub = new EMDKBarcodeStub(friendlyName);
+            stubs.put(friendlyName, stub);
+        }
+        return stub;
+    }
+
+    private static ScanDataCollection.LabelType labelType(String name)
+    {
+        ScanDataCollection.LabelType labelType = valueOf(ScanDataCollection.LabelType.class, name);
+        return (labelType == null) ? ScanDataCollection.LabelType.UNDEFINED : labelType;
+    }
+
+    //  Traces may come from a different EMDK version so unknown names become null rather than failing the replay
+    private static <E extends Enum<E>> E valueOf(Class<E> type, String name)
+    {
+        if (name == null)
+            return null;
+        try {
+            return Enum.valueOf(type, name);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Unknown " + type.getSimpleName() + " " + name + " in trace");
+            return null;
+        }
+    }
+
+    private static void sleepNanos(long nanos)
+    {
+        try {
+            Thread.sleep(nanos / 1000000L, (int) (nanos % 1000000L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
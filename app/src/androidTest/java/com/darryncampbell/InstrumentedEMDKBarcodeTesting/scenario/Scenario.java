@@ -0,0 +1,288 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.scenario;
+
+import com.symbol.emdk.barcode.ScanDataCollection;
+import com.symbol.emdk.barcode.StatusData;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A timed sequence of scanner callbacks and expectations, played into the activity by a
+ * {@link ScenarioRunner}, e.g.
+ * <pre>
+ * new Scenario("Reconnect storm")
+ *     .at(0).status(IMAGER, ScannerStates.IDLE)
+ *     .every(30 * Scenario.SECOND, 120).scan(IMAGER, LabelType.CODE128, "PICK-%d")
+ *     .at(15 * Scenario.MINUTE).disconnect(BLUETOOTH, "RS6000")
+ *     .after(5 * Scenario.SECOND).connect(BLUETOOTH, "RS6000")
+ *     .settle(500).expectStatusContaining("Bluetooth Scanner:CONNECTED")
+ * </pre>
+ * Times are milliseconds from the start of the scenario.  Steps due at the same time run in the
+ * order they were added.
+ */
+public class Scenario {
+
+    public static final long SECOND = 1000;
+    public static final long MINUTE = 60 * SECOND;
+    public static final long HOUR = 60 * MINUTE;
+
+    /**
+     * A check made once the activity has caught up with everything sent before it
+     */
+    public interface Expectation {
+        /**
+         * @return null if the expectation holds, otherwise a description of what was found
+         */
+        String check(ScenarioRunner.Probe probe);
+    }
+
+    enum Kind {
+        STATUS,
+        SCAN,
+        FAILED_SCAN,
+        CONNECTION,
+        SETTLE,
+        EXPECT
+    }
+
+    static class Step {
+        final Kind kind;
+        final long atMillis;
+        String friendlyName;
+        StatusData.ScannerStates state;
+        ScanDataCollection.LabelType labelType;
+        String data;
+        boolean bConnected;
+        String modelNumber;
+        long settleMillis;
+        String description;
+        Expectation expectation;
+
+        Step(Kind kind, long atMillis)
+        {
+            this.kind = kind;
+            this.atMillis = atMillis;
+        }
+    }
+
+    /**
+     * The same step repeated at a fixed interval from the current time, "%d" in scanned data is
+     * replaced by the repetition number from 0
+     */
+    public class Repeat {
+
+        private final long intervalMillis;
+        private final int times;
+
+        Repeat(long intervalMillis, int times)
+        {
+            this.intervalMillis = intervalMillis;
+            this.times = times;
+        }
+
+        public Scenario status(String friendlyName, StatusData.ScannerStates state)
+        {
+            long start = cursor;
+            for (int i = 0; i < times; i++) {
+                at(start + i * intervalMillis).status(friendlyName, state);
+            }
+            return at(start);
+        }
+
+        public Scenario scan(String friendlyName, ScanDataCollection.LabelType labelType, String dataFormat)
+        {
+            long start = cursor;
+            for (int i = 0; i < times; i++) {
+                at(start + i * intervalMillis).scan(friendlyName, labelType, String.format(dataFormat, i));
+            }
+            return at(start);
+        }
+
+        public Scenario failedScan(String friendlyName)
+        {
+            long start = cursor;
+            for (int i = 0; i < times; i++) {
+                at(start + i * intervalMillis).failedScan(friendlyName);
+            }
+            return at(start);
+        }
+    }
+
+    private final String name;
+    private final List<Step> steps = new ArrayList<Step>();
+    private long cursor = 0;
+
+    public Scenario(String name)
+    {
+        this.name = name;
+    }
+
+    public String getName() {return name;}
+
+    /**
+     * Following steps happen the given time after the start of the scenario
+     */
+    public Scenario at(long millis)
+    {
+        if (millis < 0)
+            throw new IllegalArgumentException("Scenario time cannot be negative");
+        cursor = millis;
+        return this;
+    }
+
+    /**
+     * Following steps happen the given time after the current step time
+     */
+    public Scenario after(long millis)
+    {
+        return at(cursor + millis);
+    }
+
+    public Repeat every(long intervalMillis, int times)
+    {
+        if (intervalMillis < 0 || times < 0)
+            throw new IllegalArgumentException("Interval and repetitions cannot be negative");
+        return new Repeat(intervalMillis, times);
+    }
+
+    public Scenario status(String friendlyName, StatusData.ScannerStates state)
+    {
+        Step step = add(Kind.STATUS);
+        step.friendlyName = friendlyName;
+        step.state = state;
+        return this;
+    }
+
+    /**
+     * A trigger pull decoding one label: SCANNING, the data and IDLE
+     */
+    public Scenario scan(String friendlyName, ScanDataCollection.LabelType labelType, String data)
+    {
+        Step step = add(Kind.SCAN);
+        step.friendlyName = friendlyName;
+        step.labelType = labelType;
+        step.data = data;
+        return this;
+    }
+
+    /**
+     * A scan reported with ScannerResults.FAILURE, which should never reach the history
+     */
+    public Scenario failedScan(String friendlyName)
+    {
+        Step step = add(Kind.FAILED_SCAN);
+        step.friendlyName = friendlyName;
+        step.labelType = ScanDataCollection.LabelType.UNDEFINED;
+        step.data = "FAILED";
+        return this;
+    }
+
+    public Scenario connect(String friendlyName, String modelNumber)
+    {
+        return connection(friendlyName, modelNumber, true);
+    }
+
+    public Scenario disconnect(String friendlyName, String modelNumber)
+    {
+        return connection(friendlyName, modelNumber, false);
+    }
+
+    /**
+     * Wait in real time, even on a virtual clock, for work the activity does on its own timers
+     * such as re-attaching a reconnected scanner or re-arming a continuous read
+     */
+    public Scenario settle(long millis)
+    {
+        add(Kind.SETTLE).settleMillis = millis;
+        return this;
+    }
+
+    public Scenario expectStatus(final String text)
+    {
+        return expect("status is \"" + text + "\"", new Expectation() {
+            @Override
+            public String check(ScenarioRunner.Probe probe) {
+                String status = probe.getStatusText();
+                return text.equals(status) ? null : "status was \"" + status + "\"";
+            }
+        });
+    }
+
+    public Scenario expectStatusContaining(final String fragment)
+    {
+        return expect("status contains \"" + fragment + "\"", new Expectation() {
+            @Override
+            public String check(ScenarioRunner.Probe probe) {
+                String status = probe.getStatusText();
+                return (status != null && status.contains(fragment)) ? null : "status was \"" + status + "\"";
+            }
+        });
+    }
+
+    /**
+     * @param count scans added to the on screen history since the scenario started
+     */
+    public Scenario expectScansShown(final long count)
+    {
+        return expect(count + " scans shown", new Expectation() {
+            @Override
+            public String check(ScenarioRunner.Probe probe) {
+                long shown = probe.getScansShown();
+                return (shown == count) ? null : shown + " scans were shown";
+            }
+        });
+    }
+
+    public Scenario expect(String description, Expectation expectation)
+    {
+        Step step = add(Kind.EXPECT);
+        step.description = description;
+        step.expectation = expectation;
+        return this;
+    }
+
+    /**
+     * @return time of the last step
+     */
+    public long getDurationMillis()
+    {
+        long duration = 0;
+        for (Step step : steps)
+            duration = Math.max(duration, step.atMillis);
+        return duration;
+    }
+
+    /**
+     * @return the steps in the order they are due
+     */
+    List<Step> getSteps()
+    {
+        List<Step> ordered = new ArrayList<Step>(steps);
+        //  Collections.sort is stable so steps due together keep the order they were added in
+        Collections.sort(ordered, new Comparator<Step>() {
+            @Override
+            public int compare(Step a, Step b) {
+                return (a.atMillis < b.atMillis) ? -1 : ((a.atMillis == b.atMillis) ? 0 : 1);
+            }
+        });
+        return ordered;
+    }
+
+    private Scenario connection(String friendlyName, String modelNumber, boolean bConnected)
+    {
+        Step step = add(Kind.CONNECTION);
+        step.friendlyName = friendlyName;
+        step.modelNumber = modelNumber;
+        step.bConnected = bConnected;
+        return this;
+    }
+
+    private Step add(Kind kind)
+    {
+        Step step = new Step(kind, cursor);
+        steps.add(step);
+        return step;
+    }
+}
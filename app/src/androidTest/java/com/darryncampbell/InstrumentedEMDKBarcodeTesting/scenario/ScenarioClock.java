@@ -0,0 +1,84 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.scenario;
+
+/**
+ * Decides when each step of a {@link Scenario} is played.  A virtual clock jumps straight to the
+ * next step so an hour long shift runs in seconds; a real time clock waits out the gaps, or a
+ * fraction of them, for soak testing on a device.
+ */
+public interface ScenarioClock {
+
+    /**
+     * Called once before the first step
+     */
+    void start();
+
+    /**
+     * Return once the given scenario time is due
+     */
+    void advanceTo(long scenarioMillis);
+
+    /**
+     * @return the furthest the clock has fallen behind the scenario timing, always 0 for a virtual clock
+     */
+    long getMaxLagMillis();
+
+    /**
+     * Steps are played back to back, only the scenario time recorded in reports and timestamps advances
+     */
+    class Virtual implements ScenarioClock {
+
+        @Override
+        public void start() {}
+
+        @Override
+        public void advanceTo(long scenarioMillis) {}
+
+        @Override
+        public long getMaxLagMillis() {return 0;}
+    }
+
+    /**
+     * Steps are played at their scenario time divided by the speed, i.e. speed 1 is wall clock time
+     * and speed 60 plays an hour in a minute
+     */
+    class RealTime implements ScenarioClock {
+
+        private final double speed;
+        private long startNanos = 0;
+        private long maxLagMillis = 0;
+
+        public RealTime(double speed)
+        {
+            if (speed <= 0)
+                throw new IllegalArgumentException("Speed must be positive");
+            this.speed = speed;
+        }
+
+        @Override
+        public void start()
+        {
+            startNanos = System.nanoTime();
+            maxLagMillis = 0;
+        }
+
+        @Override
+        public void advanceTo(long scenarioMillis)
+        {
+            long dueNanos = startNanos + (long) (scenarioMillis * 1000000L / speed);
+            long now = System.nanoTime();
+            if (now >= dueNanos) {
+                maxLagMillis = Math.max(maxLagMillis, (now - dueNanos) / 1000000L);
+                return;
+            }
+            try {
+                long waitNanos = dueNanos - now;
+                Thread.sleep(waitNanos / 1000000L, (int) (waitNanos % 1000000L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public long getMaxLagMillis() {return maxLagMillis;}
+    }
+}
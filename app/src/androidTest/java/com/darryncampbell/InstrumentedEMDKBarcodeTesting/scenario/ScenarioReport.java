@@ -0,0 +1,61 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.scenario;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a {@link ScenarioRunner} run
+ */
+public class ScenarioReport {
+
+    public final String scenario;
+    public final long scenarioMillis;
+    public final long elapsedMillis;
+    public final long statusSent;
+    public final long scansSent;
+    public final long connectionsSent;
+    public final int expectationsChecked;
+    public final long maxLagMillis;
+    /**
+     * One entry per expectation which did not hold, prefixed with the scenario time it was checked at
+     */
+    public final List<String> failures;
+
+    ScenarioReport(String scenario, long scenarioMillis, long elapsedMillis, long statusSent, long scansSent,
+                   long connectionsSent, int expectationsChecked, long maxLagMillis, List<String> failures)
+    {
+        this.scenario = scenario;
+        this.scenarioMillis = scenarioMillis;
+        this.elapsedMillis = elapsedMillis;
+        this.statusSent = statusSent;
+        this.scansSent = scansSent;
+        this.connectionsSent = connectionsSent;
+        this.expectationsChecked = expectationsChecked;
+        this.maxLagMillis = maxLagMillis;
+        this.failures = Collections.unmodifiableList(failures);
+    }
+
+    public boolean isPassed() {return failures.isEmpty();}
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder("Scenario [").append(scenario).append("]: ")
+                .append(formatTime(scenarioMillis)).append(" of scenario time in ").append(elapsedMillis)
+                .append(" ms, sent ").append(statusSent).append(" status, ").append(scansSent).append(" scans, ")
+                .append(connectionsSent).append(" connection changes, ").append(expectationsChecked - failures.size())
+                .append('/').append(expectationsChecked).append(" expectations held, max lag ")
+                .append(maxLagMillis).append(" ms");
+        for (String failure : failures)
+            report.append("\n  ").append(failure);
+        return report.toString();
+    }
+
+    /**
+     * @return the scenario time as h:mm:ss.SSS
+     */
+    static String formatTime(long millis)
+    {
+        return String.format("%d:%02d:%02d.%03d", millis / 3600000L, (millis / 60000L) % 60,
+                (millis / 1000L) % 60, millis % 1000L);
+    }
+}
@@ -0,0 +1,193 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.scenario;
+
+import android.util.Log;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.com.symbol.emdk.barcode.test.EMDKBarcodeStub;
+import com.symbol.emdk.barcode.BarcodeManager;
+import com.symbol.emdk.barcode.ScanDataCollection;
+import com.symbol.emdk.barcode.Scanner;
+import com.symbol.emdk.barcode.ScannerInfo;
+import com.symbol.emdk.barcode.ScannerResults;
+import com.symbol.emdk.barcode.StatusData;
+
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Plays a {@link Scenario} into the activity's listeners through {@link EMDKBarcodeStub}, timed by
+ * a {@link ScenarioClock}, and checks its expectations once the activity has caught up.  Scan
+ * timestamps follow scenario time so the history reads as the shift would have, whichever clock
+ * is used.
+ */
+public class ScenarioRunner {
+
+    /**
+     * What the scenario's expectations can see of the activity
+     */
+    public interface Probe {
+        /**
+         * Wait until everything sent so far has been drawn
+         * @return false on timeout
+         */
+        boolean awaitIdle(long timeoutMillis) throws InterruptedException;
+
+        String getStatusText();
+
+        /**
+         * @return new scans added to the on screen history since the activity started, not
+         * counting scans recovered from the journal, which may arrive at any point
+         */
+        long getScansShown();
+    }
+
+    private static final String TAG = "Scenario Runner";
+    private static final String CHARSET_NAME = "UTF-8";
+    private static final String TIMESTAMP_FORMAT = "yyyy-MM-dd HH:mm:ss.SSS";
+    private static final long IDLE_TIMEOUT_MS = 10000;
+
+    private final Scanner.DataListener dataListener;
+    private final Scanner.StatusListener statusListener;
+    private final BarcodeManager.ScannerConnectionListener connectionListener;
+    private final Probe probe;
+    private final ScenarioClock clock;
+    private final Map<String, EMDKBarcodeStub> stubs = new HashMap<String, EMDKBarcodeStub>();
+    private final Map<String, Integer> scannerIndexes = new HashMap<String, Integer>();
+    private final SimpleDateFormat timestampFormat = new SimpleDateFormat(TIMESTAMP_FORMAT, Locale.US);
+    private final Charset charset = Charset.forName(CHARSET_NAME);
+
+    /**
+     * @param dataListener receives the scenario's scans, normally the activity
+     * @param statusListener receives the scenario's status changes
+     * @param connectionListener receives the scenario's connection changes
+     * @param probe reads back what the activity shows
+     * @param clock virtual to run as fast as possible, real time for soak testing
+     */
+    public ScenarioRunner(Scanner.DataListener dataListener, Scanner.StatusListener statusListener,
+                          BarcodeManager.ScannerConnectionListener connectionListener, Probe probe, ScenarioClock clock)
+    {
+        this.dataListener = dataListener;
+        this.statusListener = statusListener;
+        this.connectionListener = connectionListener;
+        this.probe = probe;
+        this.clock = clock;
+    }
+
+    /**
+     * Play the whole scenario, blocking the calling thread (which must not be the UI thread)
+     */
+    public ScenarioReport run(Scenario scenario) throws Exception
+    {
+        List<Scenario.Step> steps = scenario.getSteps();
+        List<String> failures = new ArrayList<String>();
+        long statusSent = 0;
+        long scansSent = 0;
+        long connectionsSent = 0;
+        int expectationsChecked = 0;
+        long scansShownBefore = probe.getScansShown();
+        long startWallMillis = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+
+        clock.start();
+        for (Scenario.Step step : steps) {
+            clock.advanceTo(step.atMillis);
+            EMDKBarcodeStub stub = (step.friendlyName != null) ? stub(step.friendlyName) : null;
+            switch (step.kind) {
+                case STATUS:
+                    statusListener.onStatus(stub.ReportStatus(step.state));
+                    statusSent++;
+                    break;
+                case SCAN:
+                    statusListener.onStatus(stub.ReportStatus(StatusData.ScannerStates.SCANNING));
+                    dataListener.onData(stub.CreateScan(ScannerResults.SUCCESS, step.data.getBytes(charset),
+                            step.labelType, CHARSET_NAME, timestamp(startWallMillis + step.atMillis)));
+                    statusListener.onStatus(stub.ReportStatus(StatusData.ScannerStates.IDLE));
+                    statusSent += 2;
+                    scansSent++;
+                    break;
+                case FAILED_SCAN:
+                    dataListener.onData(stub.CreateScan(ScannerResults.FAILURE, step.data.getBytes(charset),
+                            step.labelType, CHARSET_NAME, timestamp(startWallMillis + step.atMillis)));
+                    break;
+                case CONNECTION:
+                    connectionListener.onConnectionChange(scannerInfo(stub, step),
+                            step.bConnected ? BarcodeManager.ConnectionState.CONNECTED : BarcodeManager.ConnectionState.DISCONNECTED);
+                    connectionsSent++;
+                    break;
+                case SETTLE:
+                    Thread.sleep(step.settleMillis);
+                    break;
+                case EXPECT:
+                    expectationsChecked++;
+                    String failure;
+                    if (!probe.awaitIdle(IDLE_TIMEOUT_MS))
+                        failure = "activity did not become idle";
+                    else
+                        failure = step.expectation.check(new OffsetProbe(probe, scansShownBefore));
+                    if (failure != null) {
+                        failure = ScenarioReport.formatTime(step.atMillis) + " expected " + step.description + ", " + failure;
+                        Log.w(TAG, failure);
+                        failures.add(failure);
+                    }
+                    break;
+            }
+        }
+
+        ScenarioReport report = new ScenarioReport(scenario.getName(), scenario.getDurationMillis(),
+                (System.nanoTime() - startNanos) / 1000000L, statusSent, scansSent, connectionsSent,
+                expectationsChecked, clock.getMaxLagMillis(), failures);
+        Log.i(TAG, report.toString());
+        return report;
+    }
+
+    //  One stub per scanner so each callback carries the scanner's friendly name
+    private EMDKBarcodeStub stub(String friendlyName)
+    {
+        EMDKBarcodeStub stub = stubs.get(friendlyName);
+        if (stub == null) {
+            stub = new EMDKBarcodeStub(friendlyName);
+            stubs.put(friendlyName, stub);
+            scannerIndexes.put(friendlyName, scannerIndexes.size());
+        }
+        return stub;
+    }
+
+    private ScannerInfo scannerInfo(EMDKBarcodeStub stub, Scenario.Step step)
+    {
+        return stub.CreateScannerInfo(ScannerInfo.DeviceType.IMAGER, ScannerInfo.ConnectionType.BLUETOOTH_SSI,
+                BarcodeManager.DeviceIdentifier.BLUETOOTH_IMAGER1, ScannerInfo.DecoderType.TWO_DIMENSIONAL,
+                false, step.bConnected, step.modelNumber, scannerIndexes.get(step.friendlyName));
+    }
+
+    private String timestamp(long wallMillis)
+    {
+        return timestampFormat.format(new Date(wallMillis));
+    }
+
+    //  Expectations count scans from the start of the scenario rather than from activity start
+    private static class OffsetProbe implements Probe {
+
+        private final Probe probe;
+        private final long scansShownBefore;
+
+        OffsetProbe(Probe probe, long scansShownBefore)
+        {
+            this.probe = probe;
+            this.scansShownBefore = scansShownBefore;
+        }
+
+        @Override
+        public boolean awaitIdle(long timeoutMillis) throws InterruptedException {return probe.awaitIdle(timeoutMillis);}
+
+        @Override
+        public String getStatusText() {return probe.getStatusText();}
+
+        @Override
+        public long getScansShown() {return probe.getScansShown() - scansShownBefore;}
+    }
+}
@@ -0,0 +1,205 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import android.util.Log;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.CallbackTraceWriter;
+import com.symbol.emdk.barcode.BarcodeManager.ConnectionState;
+import com.symbol.emdk.barcode.ScanDataCollection;
+import com.symbol.emdk.barcode.ScanDataCollection.ScanData;
+import com.symbol.emdk.barcode.ScannerInfo;
+import com.symbol.emdk.barcode.StatusData;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records every scanner callback the activity receives into a binary trace file with nanosecond
+ * timing so field problems can be replayed later through EMDKBarcodeStub.  Events are encoded on
+ * the calling thread into memory and written to the file in chunks from a background thread.
+ */
+public class CallbackTraceRecorder {
+
+    private static final String TAG = "Trace Recorder";
+    private static final int CHUNK_BYTES = 64 * 1024;
+
+    private final File file;
+    private final ChunkedFileOutputStream out;
+    private final CallbackTraceWriter writer;
+    private boolean bStopped = false;
+
+    /**
+     * Start recording to the given file, which is overwritten
+     */
+    public CallbackTraceRecorder(File file) throws IOException
+    {
+        this.file = file;
+        this.out = new ChunkedFileOutputStream(file);
+        this.writer = new CallbackTraceWriter(out, System.currentTimeMillis(), System.nanoTime());
+    }
+
+    public File getFile() {return file;}
+
+    public synchronized void recordData(long nanos, ScanDataCollection scanDataCollection)
+    {
+        if (bStopped || scanDataCollection == null)
+            return;
+        try {
+            ArrayList<ScanData> scanData = scanDataCollection.getScanData();
+            int count = (scanData == null) ? 0 : scanData.size();
+            writer.beginData(nanos, scanDataCollection.getFriendlyName(), name(scanDataCollection.getResult()), count);
+            for (int i = 0; i < count; i++) {
+                ScanData data = scanData.get(i);
+                writer.addScan(name(data.getLabelType()), ScanDataCharset.name(data), data.getTimeStamp(), data.getRawData());
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    public synchronized void recordStatus(long nanos, StatusData statusData)
+    {
+        if (bStopped || statusData == null)
+            return;
+        try {
+            writer.writeStatus(nanos, statusData.getFriendlyName(), name(statusData.getState()));
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * @param scannerIndex position of the scanner in the supported devices list, or -1 if not known
+     */
+    public synchronized void recordConnection(long nanos, ScannerInfo scannerInfo, ConnectionState connectionState, int scannerIndex)
+    {
+        if (bStopped || scannerInfo == null)
+            return;
+        try {
+            int flags = (scannerInfo.isDefaultScanner() ? CallbackTraceWriter.FLAG_DEFAULT_SCANNER : 0) |
+                    (scannerInfo.isConnected() ? CallbackTraceWriter.FLAG_CONNECTED : 0);
+            writer.writeConnection(nanos, scannerInfo.getFriendlyName(), name(connectionState),
+                    scannerInfo.getModelNumber(), name(scannerInfo.getDeviceType()), name(scannerInfo.getConnectionType()),
+                    name(scannerInfo.getDeviceIdentifier()), name(scannerInfo.getDecoderType()), scannerIndex + 1, flags);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Stop recording and write any buffered events, blocking until the file is complete
+     */
+    public synchronized void stop()
+    {
+        if (bStopped)
+            return;
+        bStopped = true;
+        try {
+            out.close();
+            Log.d(TAG, "Recorded " + writer.getEventCount() + " events, " + writer.getBytesWritten() + " bytes to " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to complete trace " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void fail(IOException e)
+    {
+        Log.e(TAG, "Trace recording stopped: " + e.getMessage());
+        stop();
+    }
+
+    private static String name(Enum<?> value)
+    {
+        return (value == null) ? null : value.name();
+    }
+
+    /**
+     * Collects writes in memory and hands each full chunk to a background thread so callbacks
+     * never wait on the file system
+     */
+    private static class ChunkedFileOutputStream extends OutputStream {
+
+        private final FileOutputStream file;
+        private final ExecutorService executor;
+        private byte[] chunk = new byte[CHUNK_BYTES];
+        private int length = 0;
+        private volatile IOException failure = null;
+
+        ChunkedFileOutputStream(File destination) throws IOException
+        {
+            file = new FileOutputStream(destination);
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "CallbackTraceRecorder");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            if (length == chunk.length)
+                flushChunk();
+            chunk[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            while (len > 0) {
+                if (length == chunk.length)
+                    flushChunk();
+                int count = Math.min(len, chunk.length - length);
+                System.arraycopy(b, off, chunk, length, count);
+                length += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+        private void flushChunk() throws IOException
+        {
+            if (failure != null)
+                throw failure;
+            final byte[] full = chunk;
+            final int fullLength = length;
+            chunk = new byte[CHUNK_BYTES];
+            length = 0;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        file.write(full, 0, fullLength);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (length > 0)
+                flushChunk();
+            executor.shutdown();
+            try {
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            file.close();
+            if (failure != null)
+                throw failure;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.AdaptiveRearmDelay;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.RateMeter;
+import com.symbol.emdk.barcode.Scanner;
+import com.symbol.emdk.barcode.ScannerException;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-arms the scanner in continuous mode from a dedicated thread so the EMDK callback thread is
+ * never blocked waiting between reads.  The delay before each read is learned per scanner model
+ * by {@link AdaptiveRearmDelay} and the achieved read cycles per second are measured.
+ */
+public class ContinuousReadScheduler {
+
+    public interface Listener {
+        /**
+         * Called on the scheduler thread if the scheduled read could not be submitted
+         */
+        void onRearmFailed(ScannerException e);
+
+        /**
+         * Called on the EMDK callback thread each time a new cycles per second figure is available
+         */
+        void onCycleRate(String model, double cyclesPerSecond, long delayMillis);
+    }
+
+    private static final long RATE_WINDOW_MS = 1000;
+
+    private final AdaptiveRearmDelay delays;
+    private final RateMeter cycles = new RateMeter(RATE_WINDOW_MS);
+    private final Listener listener;
+    private final ScheduledExecutorService executor;
+
+    private ScheduledFuture<?> pendingRead = null;
+    private Scanner scanner = null;
+    private String model = null;
+    private long readSubmittedNanos = 0;
+    private boolean bAwaitingWaiting = false;
+
+    private final Runnable submitRead = new Runnable() {
+        @Override
+        public void run() {
+            Scanner target;
+            String targetModel;
+            synchronized (ContinuousReadScheduler.this) {
+                pendingRead = null;
+                target = scanner;
+                targetModel = model;
+                if (target == null)
+                    return;
+                readSubmittedNanos = System.nanoTime();
+                bAwaitingWaiting = true;
+            }
+            try {
+                target.read();
+            } catch (ScannerException e) {
+                synchronized (ContinuousReadScheduler.this) {
+                    bAwaitingWaiting = false;
+                    if (scanner != target)
+                        return; //  Cancelled while the read was being submitted
+                }
+                delays.onArmFailed(targetModel);
+                listener.onRearmFailed(e);
+            }
+        }
+    };
+
+    /**
+     * @param floorMillis the learned delay between IDLE and the next read never drops below this
+     * @param listener notified of failed reads and of the achieved cycle rate
+     */
+    public ContinuousReadScheduler(long floorMillis, Listener listener)
+    {
+        this.delays = new AdaptiveRearmDelay(floorMillis, AdaptiveRearmDelay.DEFAULT_INITIAL_DELAY_MS);
+        this.listener = listener;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ContinuousReadScheduler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * The scanner has reported IDLE in continuous mode, schedule the next read.  Returns immediately.
+     * @param scanner scanner to read from
+     * @param model scanner model number, the delay is learned separately for each model
+     */
+    public synchronized void onIdle(Scanner scanner, String model)
+    {
+        this.scanner = scanner;
+        this.model = model;
+        bAwaitingWaiting = false;
+        if (pendingRead != null)
+            pendingRead.cancel(false);
+        pendingRead = executor.schedule(submitRead, delays.getDelayMillis(model), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The scanner has reported WAITING, completing a re-arm if one was outstanding
+     */
+    public void onWaiting()
+    {
+        String armedModel;
+        long armLatency;
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (!bAwaitingWaiting)
+                return;
+            bAwaitingWaiting = false;
+            armedModel = model;
+            armLatency = now - readSubmittedNanos;
+        }
+        delays.onArmed(armedModel, armLatency);
+        if (cycles.record(now))
+            listener.onCycleRate(armedModel, cycles.getRatePerSecond(), delays.getDelayMillis(armedModel));
+    }
+
+    /**
+     * Stop re-arming, e.g. when continuous mode is turned off or the scanner is released
+     */
+    public synchronized void cancel()
+    {
+        if (pendingRead != null) {
+            pendingRead.cancel(false);
+            pendingRead = null;
+        }
+        scanner = null;
+        bAwaitingWaiting = false;
+        cycles.restartWindow();
+    }
+
+    /**
+     * @return read cycles per second achieved over the last measurement window
+     */
+    public double getCyclesPerSecond() {return cycles.getRatePerSecond();}
+
+    public long getDelayMillis(String model) {return delays.getDelayMillis(model);}
+
+    public void shutdown()
+    {
+        cancel();
+        executor.shutdownNow();
+    }
+}
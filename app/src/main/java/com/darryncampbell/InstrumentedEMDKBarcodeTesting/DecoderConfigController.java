@@ -0,0 +1,251 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.DecoderSelection;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.Symbology;
+import com.symbol.emdk.barcode.Scanner;
+import com.symbol.emdk.barcode.ScannerConfig;
+import com.symbol.emdk.barcode.ScannerException;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the decoder checkboxes to the scanner from a background thread.  Rapid changes are
+ * debounced into a single getConfig() / setConfig() transaction, which is skipped when the scanner
+ * already holds the requested decoders.  The ScannerConfig read from the scanner is kept as a
+ * shadow copy and edited in place for later transactions, and the last mask applied to each
+ * scanner model is persisted so re-initialising the scanner after a restart does not re-send an
+ * unchanged configuration.
+ */
+public class DecoderConfigController {
+
+    public interface Listener {
+        /**
+         * Called on the configuration thread if the scanner rejected the configuration
+         */
+        void onApplyFailed(ScannerException e);
+    }
+
+    private static final String TAG = "Decoder Config";
+    private static final long DEBOUNCE_MS = 150;
+
+    private final DecoderSelection selection = new DecoderSelection();
+    private final SharedPreferences preferences;
+    private final Listener listener;
+    private final ScheduledExecutorService executor;
+
+    private Scanner scanner = null;
+    private String model = null;
+    private ScannerConfig shadowConfig = null;
+    private ScheduledFuture<?> pendingApply = null;
+
+    private final Runnable apply = new Runnable() {
+        @Override
+        public void run() {
+            applyPending();
+        }
+    };
+
+    /**
+     * @param preferences where the last applied configuration of each scanner model is kept
+     * @param listener notified of configurations the scanner rejects
+     */
+    public DecoderConfigController(SharedPreferences preferences, Listener listener)
+    {
+        this.preferences = preferences;
+        this.listener = listener;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "DecoderConfigController");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * A scanner has been enabled, configure it with the current request as soon as possible.
+     * If the configuration last applied to this model matches the request no transaction is sent.
+     * @param scanner the enabled scanner
+     * @param model scanner model number, configurations are remembered per model
+     */
+    public synchronized void attach(Scanner scanner, String model)
+    {
+        this.scanner = scanner;
+        this.model = model;
+        shadowConfig = null;
+        long persisted = preferences.getLong(model, DecoderSelection.UNKNOWN);
+        if (persisted == DecoderSelection.UNKNOWN)
+            selection.invalidate();
+        else
+            selection.onApplied(persisted, false);
+        schedule(0);
+    }
+
+    /**
+     * The scanner is about to be released, drop anything not yet applied to it
+     */
+    public synchronized void detach()
+    {
+        cancelPending();
+        scanner = null;
+        shadowConfig = null;
+        selection.invalidate();
+    }
+
+    /**
+     * Request the given decoders, applied after a short quiet period so a burst of checkbox
+     * changes costs a single transaction.  Returns immediately.
+     * @param mask DecoderSelection bits of the Symbology codes to enable
+     */
+    public synchronized void request(long mask)
+    {
+        boolean bChanged = selection.setRequested(mask);
+        if (scanner == null)
+            return;
+        //  An unchanged request leaves any pending apply, including an immediate one from attach, alone
+        if (bChanged || (pendingApply == null && selection.needsApply()))
+            schedule(DEBOUNCE_MS);
+    }
+
+    /**
+     * Apply any debounced request now and then run the task on the configuration thread, so a
+     * read is not started with stale decoders.  Never blocks.
+     * @return false if nothing is waiting to be applied, the caller should run the task itself
+     */
+    public synchronized boolean runAfterApply(final Runnable task)
+    {
+        if (pendingApply == null)
+            return false;
+        cancelPending();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    applyPending();
+                    task.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //  Shut down, there is nothing left to apply to
+            return false;
+        }
+        return true;
+    }
+
+    public DecoderSelection getSelection() {return selection;}
+
+    public void shutdown()
+    {
+        detach();
+        executor.shutdownNow();
+    }
+
+    private void schedule(long delayMillis)
+    {
+        cancelPending();
+        pendingApply = executor.schedule(apply, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelPending()
+    {
+        if (pendingApply != null) {
+            pendingApply.cancel(false);
+            pendingApply = null;
+        }
+    }
+
+    //  Runs on the configuration thread
+    private void applyPending()
+    {
+        Scanner target;
+        String targetModel;
+        ScannerConfig config;
+        synchronized (this) {
+            pendingApply = null;
+            target = scanner;
+            targetModel = model;
+            config = shadowConfig;
+            if (target == null || !selection.needsApply())
+                return;
+        }
+
+        long mask = selection.getRequested();
+        try {
+            if (!target.isEnabled())
+                return;
+            if (config == null) {
+                //  First transaction on this scanner, the EMDK state may already be what is wanted
+                config = target.getConfig();
+                long current = readMask(config);
+                synchronized (this) {
+                    if (scanner != target)
+                        return; //  Detached while reading the configuration
+                    shadowConfig = config;
+                    selection.onApplied(current, false);
+                }
+                if (current == mask) {
+                    persist(targetModel, mask);
+                    return;
+                }
+            }
+            writeMask(config, mask);
+            target.setConfig(config);
+        } catch (ScannerException e) {
+            synchronized (this) {
+                if (scanner != target)
+                    return;
+                shadowConfig = null;
+                selection.invalidate();
+            }
+            listener.onApplyFailed(e);
+            return;
+        }
+
+        synchronized (this) {
+            if (scanner != target)
+                return;
+            selection.onApplied(mask, true);
+        }
+        persist(targetModel, mask);
+        Log.d(TAG, "Applied " + Long.toHexString(mask) + " to " + targetModel + ", " + selection.getApplyCount() +
+                " transactions for " + selection.getRequestCount() + " requests");
+    }
+
+    private void persist(String targetModel, long mask)
+    {
+        if (targetModel != null)
+            preferences.edit().putLong(targetModel, mask).apply();
+    }
+
+    //  The decoders offered by the checkboxes
+    private static long readMask(ScannerConfig config)
+    {
+        long mask = 0;
+        if (config.decoderParams.ean8.enabled)
+            mask |= DecoderSelection.bit(Symbology.EAN8);
+        if (config.decoderParams.ean13.enabled)
+            mask |= DecoderSelection.bit(Symbology.EAN13);
+        if (config.decoderParams.code39.enabled)
+            mask |= DecoderSelection.bit(Symbology.CODE39);
+        if (config.decoderParams.code128.enabled)
+            mask |= DecoderSelection.bit(Symbology.CODE128);
+        return mask;
+    }
+
+    private static void writeMask(ScannerConfig config, long mask)
+    {
+        config.decoderParams.ean8.enabled = DecoderSelection.isEnabled(mask, Symbology.EAN8);
+        config.decoderParams.ean13.enabled = DecoderSelection.isEnabled(mask, Symbology.EAN13);
+        config.decoderParams.code39.enabled = DecoderSelection.isEnabled(mask, Symbology.CODE39);
+        config.decoderParams.code128.enabled = DecoderSelection.isEnabled(mask, Symbology.CODE128);
+    }
+}
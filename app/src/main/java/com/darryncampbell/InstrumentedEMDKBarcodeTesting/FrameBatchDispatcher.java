@@ -0,0 +1,94 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanBatchBuffer;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Collects items posted from any thread (typically the EMDK callback thread) and delivers them
+ * to the UI thread at most once per display frame as a single batch.
+ * Must be constructed on the UI thread.
+ */
+public class FrameBatchDispatcher<T> implements Choreographer.FrameCallback {
+
+    public interface BatchListener<T> {
+        /**
+         * Called on the UI thread with every item posted since the previous frame.  The list is
+         * reused between frames so must not be retained.
+         */
+        void onBatch(ArrayList<T> batch);
+    }
+
+    private final ScanBatchBuffer<T> buffer;
+    private final BatchListener<T> listener;
+    private final Choreographer choreographer;
+    private final Handler uiHandler;
+    private final ArrayList<T> batch;
+    private final AtomicBoolean bFrameScheduled = new AtomicBoolean(false);
+    private volatile boolean bDelivering = false;
+
+    private final Runnable scheduleFrame = new Runnable() {
+        @Override
+        public void run() {
+            choreographer.postFrameCallback(FrameBatchDispatcher.this);
+        }
+    };
+
+    /**
+     * @param capacity Maximum number of items which can be pending between two frames
+     * @param listener Receives each batch on the UI thread
+     */
+    public FrameBatchDispatcher(int capacity, BatchListener<T> listener)
+    {
+        this.buffer = new ScanBatchBuffer<T>(capacity);
+        this.listener = listener;
+        this.choreographer = Choreographer.getInstance();
+        this.uiHandler = new Handler(Looper.getMainLooper());
+        this.batch = new ArrayList<T>(capacity);
+    }
+
+    /**
+     * Queue an item for delivery on the next frame.  Safe to call from any thread.
+     */
+    public void post(T item)
+    {
+        buffer.offer(item);
+        if (bFrameScheduled.compareAndSet(false, true)) {
+            if (Looper.myLooper() == Looper.getMainLooper())
+                choreographer.postFrameCallback(this);
+            else
+                uiHandler.post(scheduleFrame);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos)
+    {
+        //  Clear the flag before draining so anything posted during delivery schedules another frame
+        bFrameScheduled.set(false);
+        bDelivering = true;
+        try {
+            batch.clear();
+            if (buffer.drainTo(batch) > 0)
+                listener.onBatch(batch);
+            batch.clear();
+        } finally {
+            bDelivering = false;
+        }
+    }
+
+    /**
+     * @return true when nothing is pending or being delivered
+     */
+    public boolean isIdle()
+    {
+        return !bFrameScheduled.get() && !bDelivering && buffer.size() == 0;
+    }
+
+    public ScanBatchBuffer<T> getBuffer() {return buffer;}
+}
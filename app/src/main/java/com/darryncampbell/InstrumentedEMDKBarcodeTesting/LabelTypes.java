@@ -0,0 +1,25 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.Symbology;
+import com.symbol.emdk.barcode.ScanDataCollection.LabelType;
+
+/**
+ * Maps EMDK label types onto the scan pipeline's {@link Symbology} codes without a lookup per scan
+ */
+final class LabelTypes {
+
+    private static final int[] SYMBOLOGY_BY_ORDINAL;
+    static {
+        LabelType[] labelTypes = LabelType.values();
+        SYMBOLOGY_BY_ORDINAL = new int[labelTypes.length];
+        for (LabelType labelType : labelTypes)
+            SYMBOLOGY_BY_ORDINAL[labelType.ordinal()] = Symbology.fromName(labelType.name());
+    }
+
+    private LabelTypes() {}
+
+    static int toSymbology(LabelType labelType)
+    {
+        return labelType == null ? Symbology.UNDEFINED : SYMBOLOGY_BY_ORDINAL[labelType.ordinal()];
+    }
+}
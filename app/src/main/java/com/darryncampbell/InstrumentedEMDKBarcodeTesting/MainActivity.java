@@ -1,9 +1,34 @@
 package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
 
 import android.os.Bundle;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.DecoderSelection;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.DirectoryExportSink;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.DuplicateSuppressor;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.MetricsRegistry;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ReconnectPolicy;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanHistory;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ExportSink;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ProductCatalog;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanExporter;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanJournal;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanProcessor;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanRules;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanRecord;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScannerFanIn;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScannerStateMachine;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.SocketExportSink;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.Symbology;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import com.symbol.emdk.EMDKManager;
 import com.symbol.emdk.EMDKResults;
@@ -13,8 +38,6 @@ import com.symbol.emdk.barcode.BarcodeManager;
 import com.symbol.emdk.barcode.BarcodeManager.ConnectionState;
 import com.symbol.emdk.barcode.BarcodeManager.ScannerConnectionListener;
 import com.symbol.emdk.barcode.ScanDataCollection;
-import com.symbol.emdk.barcode.Scanner;
-import com.symbol.emdk.barcode.ScannerConfig;
 import com.symbol.emdk.barcode.ScannerException;
 import com.symbol.emdk.barcode.ScannerInfo;
 import com.symbol.emdk.barcode.ScannerResults;
@@ -26,8 +49,6 @@ import com.symbol.emdk.barcode.StatusData.ScannerStates;
 import com.symbol.emdk.barcode.StatusData;
 
 import android.app.Activity;
-import android.os.AsyncTask;
-import android.text.method.ScrollingMovementMethod;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.Menu;
@@ -42,11 +63,12 @@ import android.widget.Button;
 import android.widget.CheckBox;
 import android.widget.CompoundButton;
 import android.widget.CompoundButton.OnCheckedChangeListener;
-import android.widget.ScrollView;
+import android.widget.ListView;
 import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.AdapterView.OnItemSelectedListener;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.pm.ActivityInfo;
 
 import static com.symbol.emdk.securenfc.MifareSam.TAG;
@@ -54,75 +76,389 @@ import static com.symbol.emdk.securenfc.MifareSam.TAG;
 public class MainActivity extends Activity implements EMDKListener, DataListener, StatusListener, ScannerConnectionListener, OnCheckedChangeListener {
 
     private EMDKManager emdkManager = null;
-    private BarcodeManager barcodeManager = null;
-    private Scanner scanner = null;
+    private volatile BarcodeManager barcodeManager = null;
+    private final List<ScannerSession> sessions = new CopyOnWriteArrayList<ScannerSession>(); // Enabled scanners, all feeding the one scan pipeline
+    private final Object sessionLock = new Object(); // Held while sessions are created or released, by the UI and reconnect threads
+    private boolean bAllScanners = false; // Enable every supported scanner rather than just the selected one
 
     private boolean bContinuousMode = false;
 
-    private TextView textViewData = null;
+    private ListView listViewData = null;
     private TextView textViewStatus = null;
+    private TextView textViewStats = null;
 
     private CheckBox checkBoxEAN8 = null;
     private CheckBox checkBoxEAN13 = null;
     private CheckBox checkBoxCode39 = null;
     private CheckBox checkBoxCode128 = null;
     private CheckBox checkBoxContinuous = null;
+    private CheckBox checkBoxAllScanners = null;
 
     private Spinner spinnerScannerDevices = null;
     private Spinner spinnerTriggers = null;
 
-    private List<ScannerInfo> deviceList = null;
+    private volatile List<ScannerInfo> deviceList = null;
 
     private int scannerIndex = 0; // Keep the selected scanner
     private int defaultIndex = 0; // Keep the default scanner
     private int triggerIndex = 0;
-    private int dataLength = 0;
-    private String statusString = "";
 
     private String [] triggerStrings = {"HARD", "SOFT"};
+    private volatile TriggerType triggerType = TriggerType.HARD; // Last trigger type and decoders set, reused when a scanner reconnects
+    private volatile long decoderMask = 0;
+
+    private static final int DATA_DISPATCH_CAPACITY = 256; // Scans which can be pending between two frames
+    private FrameBatchDispatcher<ScanRecord> dataDispatcher = null;
+    private ScanProcessor scanProcessor = null; // Validates scans on a worker per core before they reach the dispatcher
+
+    private static final int DUPLICATE_TABLE_CAPACITY = 1024; // Distinct labels remembered for duplicate suppression
+    private final DuplicateSuppressor duplicateSuppressor = new DuplicateSuppressor(DUPLICATE_TABLE_CAPACITY);
+
+    private static final int HISTORY_CAPACITY = 100000; // Scans kept in the on screen history
+    private static final int HISTORY_ARENA_BYTES = HISTORY_CAPACITY * 32; // Barcode bytes kept for those scans
+    private ScanHistory scanHistory = null;
+    private ScanHistoryAdapter scanHistoryAdapter = null;
+
+    private static final long CONTINUOUS_REARM_FLOOR_MS = 10; // Shortest delay ever used between IDLE and the next read
+
+    private static final int MAX_PENDING_STATUS_STAMPS = 16; // Status updates timed between two draws
+    private ScanLatencyTracker latencyTracker = null;
+
+    private static final long STATUS_RATE_WINDOW_MS = 1000;
+    private final ScannerStateMachine stateMachine = new ScannerStateMachine(MAX_SCANNERS, STATUS_RATE_WINDOW_MS);
+    private StatusFrameApplier statusApplier = null; // Draws the newest scanner state at most once per frame
+
+    private static final String DECODER_CONFIG_PREFERENCES = "decoder_config"; // Last decoders applied to each scanner model
+    private SharedPreferences decoderPreferences = null;
+
+    private static final int MAX_SCANNERS = 16; // Scanners tracked separately by the fan in
+    private static final int FAN_IN_CAPACITY = 1024; // Scans in flight before each scanner is held to a fair share
+    private static final long FAN_IN_RATE_WINDOW_MS = 1000;
+    private final ScannerFanIn fanIn = new ScannerFanIn(MAX_SCANNERS, FAN_IN_CAPACITY, FAN_IN_RATE_WINDOW_MS);
+
+    private static final long RECONNECT_SETTLE_MS = 300; // Connection state must hold this long before a scanner is re-attached or released
+    private static final long RECONNECT_INITIAL_BACKOFF_MS = 250;
+    private static final long RECONNECT_MAX_BACKOFF_MS = 8000;
+    private static final int RECONNECT_MAX_ATTEMPTS = 8;
+    private ReconnectEngine reconnectEngine = null;
+
+    private StartupTrace startupTrace = null;
+    private long emdkBindStartNanos = 0;
+    private ExecutorService enumerationExecutor = null; // getSupportedDevicesInfo() is a round trip to the EMDK service
+
+    private volatile CallbackTraceRecorder traceRecorder = null; // Non null while callbacks are being recorded
+
+    private static final String JOURNAL_DIRECTORY = "journal"; // Under the app's private files directory
+    private static final long JOURNAL_FORCE_INTERVAL_MS = 200; // Longest a journaled scan waits to reach storage
+    private static final int JOURNAL_FORCE_BYTES = 64 * 1024; // Or sooner once this much has been written
+    private ScanJournalRecorder scanJournal = null;
+
+    private static final int STATS_MAX_ROWS = 1000000; // Scans kept for the live statistics
+    private ScanStatsPanel scanStats = null;
+
+    private static final String CATALOG_DIRECTORY = "catalog"; // Under the app's external files directory so adb can push to it
+    private static final int CATALOG_CACHE_ENTRIES = 4096; // Hot products remembered between scans
+    private ProductCatalogLoader catalogLoader = null;
+
+    private static final String RULES_DIRECTORY = "rules"; // Next to the catalog directory
+    private ScanRulesLoader rulesLoader = null;
+
+    //  Scans recovered from the journal wait here until the catalog and the rules have been checked, UI thread only
+    private final ArrayList<ScanRecord> recoveredScans = new ArrayList<ScanRecord>();
+    private boolean bCatalogChecked = false;
+    private boolean bRulesChecked = false;
+
+    private static final String EXPORT_DIRECTORY = "export"; // Batches written here for adb pull unless a collector port is set
+    private static final int EXPORT_COLLECTOR_PORT = -1; // Loopback port of a collector, e.g. 9470 with adb reverse tcp:9470 tcp:9470
+    private static final int EXPORT_BATCH_SCANS = 256;
+    private static final long EXPORT_LINGER_MS = 5000; // Longest a scan waits for its batch to fill
+    private static final int EXPORT_MAX_PENDING_SCANS = 4096;
+    private static final long EXPORT_MAX_SPOOL_BYTES = 2 * 1024 * 1024; // Continuous reads pause while this much is unsent
+    private static final long EXPORT_MAX_DIRECTORY_BYTES = 64 * 1024 * 1024; // Batches left uncollected before the spool backs up
+    private ScanExporter scanExporter = null;
+    private final ArrayList<ScannerSession> heldSessions = new ArrayList<ScannerSession>(); // Guarded by itself, not re-armed while the export is backed up
+
+    private static final int METRICS_PORT = 9464; // Loopback only, scrape with adb forward tcp:9464 tcp:9464
+    private final ScannerMetrics metrics = new ScannerMetrics(METRICS_PORT);
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        long onCreateNanos = System.nanoTime();
         super.onCreate(savedInstanceState);
+        startupTrace = new StartupTrace(onCreateNanos, this);
+
+        //  Bind to the EMDK service first, it connects while the layout is inflated and onOpened
+        //  follows as soon as onCreate returns
+        emdkBindStartNanos = System.nanoTime();
+        EMDKResults results = EMDKManager.getEMDKManager(getApplicationContext(), this);
+        enumerationExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ScannerEnumeration");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
 
         deviceList = new ArrayList<ScannerInfo>();
 
-        EMDKResults results = EMDKManager.getEMDKManager(getApplicationContext(), this);
-        if (results.statusCode != EMDKResults.STATUS_CODE.SUCCESS) {
-            textViewStatus.setText("Status: " + "EMDKManager object request failed!");
-        }
+        scanHistory = new ScanHistory(HISTORY_CAPACITY, HISTORY_ARENA_BYTES);
+        latencyTracker = new ScanLatencyTracker(DATA_DISPATCH_CAPACITY, MAX_PENDING_STATUS_STAMPS);
+        statusApplier = new StatusFrameApplier(stateMachine, new StatusFrameApplier.Views() {
+            @Override
+            public void showStatus(ScannerStateMachine.Snapshot snapshot) {
+                textViewStatus.setText("Status: " + snapshot.status);
+                latencyTracker.onStatusApplied(snapshot.callbackNanos, snapshot.handoffNanos);
+            }
 
-        setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_NOSENSOR);
-        setDefaultOrientation();
+            @Override
+            public void enableControls(boolean bEnable) {
+                checkBoxEAN8.setEnabled(bEnable);
+                checkBoxEAN13.setEnabled(bEnable);
+                checkBoxCode39.setEnabled(bEnable);
+                checkBoxCode128.setEnabled(bEnable);
+                checkBoxAllScanners.setEnabled(bEnable);
+                spinnerScannerDevices.setEnabled(bEnable);
+                spinnerTriggers.setEnabled(bEnable);
+            }
+        });
+        decoderPreferences = getSharedPreferences(DECODER_CONFIG_PREFERENCES, Context.MODE_PRIVATE);
+        reconnectEngine = new ReconnectEngine(new ReconnectPolicy(MAX_SCANNERS, RECONNECT_SETTLE_MS,
+                RECONNECT_INITIAL_BACKOFF_MS, RECONNECT_MAX_BACKOFF_MS, RECONNECT_MAX_ATTEMPTS), reconnectAttacher);
+        dataDispatcher = new FrameBatchDispatcher<ScanRecord>(DATA_DISPATCH_CAPACITY, new FrameBatchDispatcher.BatchListener<ScanRecord>() {
+            @Override
+            public void onBatch(ArrayList<ScanRecord> batch) {
+                appendScans(batch);
+            }
+        });
+        scanStats = new ScanStatsPanel(STATS_MAX_ROWS);
+        File pushedFilesRoot = getExternalFilesDir(null);
+        if (pushedFilesRoot == null)
+            pushedFilesRoot = getFilesDir();
+        ExportSink exportSink = (EXPORT_COLLECTOR_PORT > 0) ? new SocketExportSink(EXPORT_COLLECTOR_PORT) :
+                new DirectoryExportSink(new File(pushedFilesRoot, EXPORT_DIRECTORY), EXPORT_MAX_DIRECTORY_BYTES);
+        scanExporter = new ScanExporter(exportSink, new ScanExporter.Options().setMaxBatchScans(EXPORT_BATCH_SCANS)
+                .setLingerMillis(EXPORT_LINGER_MS).setMaxPendingScans(EXPORT_MAX_PENDING_SCANS)
+                .setMaxSpoolBytes(EXPORT_MAX_SPOOL_BYTES), new ScanExporter.Listener() {
+            @Override
+            public void onBackpressure(boolean bBackpressured) {
+                Log.d(TAG, bBackpressured ? "Scan export backed up, pausing continuous reads" : "Scan export drained");
+                if (!bBackpressured) {
+                    resumeHeldSessions();
+                }
+            }
+        });
+        scanProcessor = new ScanProcessor(Runtime.getRuntime().availableProcessors(), new ScanProcessor.Sink() {
+            @Override
+            public void onProcessed(ScanRecord record) {
+                fanIn.release(record.scannerIndex);
+                scanStats.record(record);
+                metrics.onRuleVerdict(record.ruleVerdict);
+                scanExporter.offer(record);
+                latencyTracker.recordDataHandoff(record);
+                dataDispatcher.post(record);
+            }
+        }, latencyTracker.getLatency());
+        registerMetricGauges();
+        metrics.start();
+        catalogLoader = new ProductCatalogLoader(new File(pushedFilesRoot, CATALOG_DIRECTORY),
+                CATALOG_CACHE_ENTRIES, new ProductCatalogLoader.Listener() {
+            @Override
+            public void onCatalogChanged(final ProductCatalog catalog) {
+                scanProcessor.setCatalog(catalog);
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        scanHistoryAdapter.setCatalog(catalog);
+                    }
+                });
+            }
+
+            @Override
+            public void onFirstCheck() {
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        bCatalogChecked = true;
+                        appendRecoveredScans();
+                    }
+                });
+            }
+        });
+        rulesLoader = new ScanRulesLoader(new File(pushedFilesRoot, RULES_DIRECTORY), new ScanRulesLoader.Listener() {
+            @Override
+            public void onRulesChanged(ScanRules rules) {
+                //  Swapped in whole, scans already being processed finish under the old rules
+                scanProcessor.setRules(rules);
+            }
 
-        textViewData = (TextView)findViewById(R.id.textViewData);
-        textViewStatus = (TextView)findViewById(R.id.textViewStatus);
-        checkBoxEAN8 = (CheckBox)findViewById(R.id.checkBoxEAN8);
-        checkBoxEAN13 = (CheckBox)findViewById(R.id.checkBoxEAN13);
-        checkBoxCode39 = (CheckBox)findViewById(R.id.checkBoxCode39);
-        checkBoxCode128 = (CheckBox)findViewById(R.id.checkBoxCode128);
-        checkBoxContinuous = (CheckBox)findViewById(R.id.checkBoxContinuous);
-        spinnerScannerDevices = (Spinner)findViewById(R.id.spinnerScannerDevices);
-        spinnerTriggers = (Spinner)findViewById(R.id.spinnerTriggers);
+            @Override
+            public void onFirstCheck() {
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        bRulesChecked = true;
+                        appendRecoveredScans();
+                    }
+                });
+            }
+        });
 
-        checkBoxEAN8.setOnCheckedChangeListener(this);
-        checkBoxEAN13.setOnCheckedChangeListener(this);
-        checkBoxCode39.setOnCheckedChangeListener(this);
-        checkBoxCode128.setOnCheckedChangeListener(this);
+        long inflateStart = startupTrace.begin(StartupTrace.PHASE_INFLATE);
+        try {
+            setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_NOSENSOR);
+            setDefaultOrientation();
+        } finally {
+            startupTrace.end(StartupTrace.PHASE_INFLATE, inflateStart);
+        }
 
-        addSpinnerScannerDevicesListener();
-        populateTriggers();
-        addSpinnerTriggersListener();
-        addStartScanButtonListener();
-        addStopScanButtonListener();
-        addCheckBoxListener();
+        long viewSetupStart = startupTrace.begin(StartupTrace.PHASE_VIEW_SETUP);
+        try {
+            listViewData = (ListView)findViewById(R.id.listViewData);
+            textViewStatus = (TextView)findViewById(R.id.textViewStatus);
+            textViewStats = (TextView)findViewById(R.id.textViewStats);
+            checkBoxEAN8 = (CheckBox)findViewById(R.id.checkBoxEAN8);
+            checkBoxEAN13 = (CheckBox)findViewById(R.id.checkBoxEAN13);
+            checkBoxCode39 = (CheckBox)findViewById(R.id.checkBoxCode39);
+            checkBoxCode128 = (CheckBox)findViewById(R.id.checkBoxCode128);
+            checkBoxContinuous = (CheckBox)findViewById(R.id.checkBoxContinuous);
+            checkBoxAllScanners = (CheckBox)findViewById(R.id.checkBoxAllScanners);
+            spinnerScannerDevices = (Spinner)findViewById(R.id.spinnerScannerDevices);
+            spinnerTriggers = (Spinner)findViewById(R.id.spinnerTriggers);
+
+            checkBoxEAN8.setOnCheckedChangeListener(this);
+            checkBoxEAN13.setOnCheckedChangeListener(this);
+            checkBoxCode39.setOnCheckedChangeListener(this);
+            checkBoxCode128.setOnCheckedChangeListener(this);
+
+            addSpinnerScannerDevicesListener();
+            populateTriggers();
+            addSpinnerTriggersListener();
+            addStartScanButtonListener();
+            addStopScanButtonListener();
+            addCheckBoxListener();
+
+            scanHistoryAdapter = new ScanHistoryAdapter(getLayoutInflater(), scanHistory);
+            listViewData.setAdapter(scanHistoryAdapter);
+
+            //  Recovery reads the whole journal so it runs in the background, restoring the history as it goes
+            scanJournal = new ScanJournalRecorder(new File(getFilesDir(), JOURNAL_DIRECTORY), new ScanJournal.Options()
+                    .setForceIntervalMillis(JOURNAL_FORCE_INTERVAL_MS).setForceBytes(JOURNAL_FORCE_BYTES));
+            scanJournal.open(new ScanJournalRecorder.Listener() {
+                @Override
+                public void onRecovered(final ArrayList<ScanRecord> records) {
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            recoveredScans.addAll(records);
+                            appendRecoveredScans();
+                        }
+                    });
+                }
+            });
 
-        textViewData.setSelected(true);
-        textViewData.setMovementMethod(new ScrollingMovementMethod());
+            getWindow().getDecorView().getViewTreeObserver().addOnDrawListener(latencyTracker);
+        } finally {
+            startupTrace.end(StartupTrace.PHASE_VIEW_SETUP, viewSetupStart);
+        }
 
+        if (results.statusCode != EMDKResults.STATUS_CODE.SUCCESS) {
+            setStatus("EMDKManager object request failed!");
+        }
     }
 
 
+    //  Work queued between the EMDK callbacks and the screen, sampled on each scrape
+    private void registerMetricGauges() {
+
+        MetricsRegistry registry = metrics.getRegistry();
+        registry.gauge("pending_processing_scans", "Scans waiting for or being validated", new MetricsRegistry.Gauge() {
+            @Override
+            public long read() {
+                return scanProcessor.getPending();
+            }
+        });
+        registry.gauge("pending_ui_scans", "Validated scans waiting for the next frame", new MetricsRegistry.Gauge() {
+            @Override
+            public long read() {
+                return dataDispatcher.getBuffer().size();
+            }
+        });
+        registry.gauge("pending_status_frames", "1 while a scanner status is waiting to be drawn", new MetricsRegistry.Gauge() {
+            @Override
+            public long read() {
+                return statusApplier.isIdle() ? 0 : 1;
+            }
+        });
+        registry.sampledCounter("ui_scans_dropped_total", "Scans dropped because the screen fell too far behind", new MetricsRegistry.Gauge() {
+            @Override
+            public long read() {
+                return dataDispatcher.getBuffer().getScansDropped();
+            }
+        });
+        registry.gauge("export_pending_scans", "Scans waiting for their export batch to fill", new MetricsRegistry.Gauge() {
+            @Override
+            public long read() {
+                return scanExporter.getPendingScans();
+            }
+        });
+        registry.gauge("export_spool_batches", "Compressed batches waiting for the export sink", new MetricsRegistry.Gauge() {
+            @Override
+            public long read() {
+                return scanExporter.getSpoolBatches();
+            }
+        });
+        registry.gauge("export_spool_bytes", "Bytes of compressed batches waiting for the export sink", new MetricsRegistry.Gauge() {
+            @Override
+            public long read() {
+                return scanExporter.getSpoolBytes();
+            }
+        });
+        registry.sampledCounter("export_scans_sent_total", "Scans accepted by the export sink", new MetricsRegistry.Gauge() {
+            @Override
+            public long read() {
+                return scanExporter.getScansExported();
+            }
+        });
+        registry.gauge("export_scans_per_second", "Scans exported per second over the last ten seconds", new MetricsRegistry.Gauge() {
+            @Override
+            public long read() {
+                return Math.round(scanExporter.getScansPerSecond());
+            }
+        });
+        registry.sampledCounter("export_bytes_sent_total", "Compressed bytes accepted by the export sink", new MetricsRegistry.Gauge() {
+            @Override
+            public long read() {
+                return scanExporter.getBytesSent();
+            }
+        });
+        //  Bytes saved is plain less sent, it can dip after a tiny batch so is not a counter itself
+        registry.sampledCounter("export_plain_bytes_total", "Bytes the exported scans would have taken sent one at a time", new MetricsRegistry.Gauge() {
+            @Override
+            public long read() {
+                return scanExporter.getPlainBytesSent();
+            }
+        });
+        registry.sampledCounter("export_scans_refused_total", "Scans not exported because the export was backed up", new MetricsRegistry.Gauge() {
+            @Override
+            public long read() {
+                return scanExporter.getScansRefused();
+            }
+        });
+        registry.sampledCounter("export_failures_total", "Batches the export sink failed to accept, each is retried", new MetricsRegistry.Gauge() {
+            @Override
+            public long read() {
+                return scanExporter.getFailures();
+            }
+        });
+        registry.gauge("export_backpressure", "1 while continuous reads are paused for the export to drain", new MetricsRegistry.Gauge() {
+            @Override
+            public long read() {
+                return scanExporter.isBackpressured() ? 1 : 0;
+            }
+        });
+    }
+
     private void setDefaultOrientation(){
 
         WindowManager windowManager =  (WindowManager) getSystemService(Context.WINDOW_SERVICE);
@@ -162,7 +498,17 @@ public class MainActivity extends Activity implements EMDKListener, DataListener
         super.onDestroy();
 
         // De-initialize scanner
+        metrics.stop();
+        reconnectEngine.shutdown();
         deInitScanner();
+        scanProcessor.shutdown();
+        scanStats.shutdown();
+        catalogLoader.close();
+        rulesLoader.close();
+        enumerationExecutor.shutdownNow();
+        stopTraceRecording();
+        closeScanExporter();
+        closeScanJournal();
 
         // Remove connection listener
         if (barcodeManager != null) {
@@ -185,7 +531,12 @@ public class MainActivity extends Activity implements EMDKListener, DataListener
         // The application is in background
 
         // De-initialize scanner
+        reconnectEngine.cancel();
         deInitScanner();
+        scanStats.stop();
+        catalogLoader.stop();
+        rulesLoader.stop();
+        scanExporter.flush();
 
         // Remove connection listener
         if (barcodeManager != null) {
@@ -198,12 +549,25 @@ public class MainActivity extends Activity implements EMDKListener, DataListener
         if (emdkManager != null) {
             emdkManager.release(FEATURE_TYPE.BARCODE);
         }
+
+        Log.d(TAG, "Delivery: " + dataDispatcher.getBuffer().getBatchesFlushed() + " batches, " +
+                dataDispatcher.getBuffer().getScansCoalesced() + " scans coalesced, " +
+                dataDispatcher.getBuffer().getScansDropped() + " scans dropped, " +
+                duplicateSuppressor.getSuppressed() + " duplicates suppressed");
+        for (String line : fanIn.report().split("\n")) {
+            Log.d(TAG, "Fan in: " + line);
+        }
+        Log.d(TAG, "Status: " + statusApplier.getApplied() + " snapshots drawn, " + stateMachine.report().replace("\n", ", "));
+        Log.d(TAG, "Reconnect: " + reconnectEngine.report().replace("\n", ", "));
     }
 
     @Override
     protected void onResume() {
         super.onResume();
         // The application is in foreground
+        scanStats.start(textViewStats);
+        catalogLoader.start(); // Opens the catalog the first time, then picks up new deltas while resumed
+        rulesLoader.start(); // Recompiles the site rules whenever they change while resumed
 
         // Acquire the barcode manager resources
         if (emdkManager != null) {
@@ -214,16 +578,8 @@ public class MainActivity extends Activity implements EMDKListener, DataListener
                 barcodeManager.addConnectionListener(this);
             }
 
-            // Enumerate scanner devices
-            enumerateScannerDevices();
-
-            // Set selected scanner
-            spinnerScannerDevices.setSelection(scannerIndex);
-
-            // Initialize scanner
-            initScanner();
-            setTrigger();
-            setDecoders();
+            // Enumerate scanner devices then initialize the selected scanner
+            enumerateScannerDevices(false);
         }
     }
 
@@ -234,6 +590,15 @@ public class MainActivity extends Activity implements EMDKListener, DataListener
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        MenuItem recordTrace = menu.findItem(R.id.action_record_trace);
+        if (recordTrace != null) {
+            recordTrace.setTitle(traceRecorder == null ? R.string.action_record_trace : R.string.action_stop_trace);
+        }
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         // Handle action bar item clicks here. The action bar will
@@ -243,29 +608,44 @@ public class MainActivity extends Activity implements EMDKListener, DataListener
         if (id == R.id.action_settings) {
             return true;
         }
+        if (id == R.id.action_dump_latency) {
+            dumpLatency();
+            return true;
+        }
+        if (id == R.id.action_record_trace) {
+            if (traceRecorder == null) {
+                startTraceRecording();
+            } else {
+                stopTraceRecording();
+            }
+            return true;
+        }
         return super.onOptionsItemSelected(item);
     }
 
     @Override
     public void onOpened(EMDKManager emdkManager) {
 
-        textViewStatus.setText("Status: " + "EMDK open success!");
+        startupTrace.endAsync(StartupTrace.PHASE_EMDK_BIND, emdkBindStartNanos);
+        setStatus("EMDK open success!");
 
         this.emdkManager = emdkManager;
 
         // Acquire the barcode manager resources
-        barcodeManager = (BarcodeManager) emdkManager.getInstance(FEATURE_TYPE.BARCODE);
+        long barcodeManagerStart = startupTrace.begin(StartupTrace.PHASE_BARCODE_MANAGER);
+        try {
+            barcodeManager = (BarcodeManager) emdkManager.getInstance(FEATURE_TYPE.BARCODE);
 
-        // Add connection listener
-        if (barcodeManager != null) {
-            barcodeManager.addConnectionListener(this);
+            // Add connection listener
+            if (barcodeManager != null) {
+                barcodeManager.addConnectionListener(this);
+            }
+        } finally {
+            startupTrace.end(StartupTrace.PHASE_BARCODE_MANAGER, barcodeManagerStart);
         }
 
-        // Enumerate scanner devices
-        enumerateScannerDevices();
-
-        // Set default scanner
-        spinnerScannerDevices.setSelection(defaultIndex);
+        // Enumerate scanner devices then initialize the default scanner
+        enumerateScannerDevices(true);
     }
 
     @Override
@@ -283,75 +663,121 @@ public class MainActivity extends Activity implements EMDKListener, DataListener
             emdkManager.release();
             emdkManager = null;
         }
-        textViewStatus.setText("Status: " + "EMDK closed unexpectedly! Please close and restart the application.");
+        setStatus("EMDK closed unexpectedly! Please close and restart the application.");
     }
 
     @Override
     public void onData(ScanDataCollection scanDataCollection) {
 
+        onScannerData(indexOfCallbackScanner(scanDataCollection == null ? null : scanDataCollection.getFriendlyName()),
+                scanDataCollection);
+    }
+
+    //  Every enabled scanner's data arrives here, tagged with the scanner's index, and fans in to the one pipeline
+    private void onScannerData(int index, ScanDataCollection scanDataCollection) {
+
+        long callbackNanos = System.nanoTime();
+        CallbackTraceRecorder recorder = traceRecorder;
+        if (recorder != null) {
+            recorder.recordData(callbackNanos, scanDataCollection);
+        }
+
         if ((scanDataCollection != null) && (scanDataCollection.getResult() == ScannerResults.SUCCESS)) {
+            startupTrace.onScan();
             ArrayList <ScanData> scanData = scanDataCollection.getScanData();
+            metrics.scansReceived.add(scanData.size());
+            long receivedMillis = System.currentTimeMillis();
             for(ScanData data : scanData) {
 
-                String dataString =  data.getData();
-                Log.d(TAG, "Lifecycle: " + dataString);
-
-                new AsyncDataUpdate().execute(dataString);
+                byte[] rawData = data.getRawData();
+                int symbology = LabelTypes.toSymbology(data.getLabelType());
+                //  In continuous mode the imager re-reads a label for as long as it stays in view
+                if (bContinuousMode && duplicateSuppressor.isDuplicate(rawData, 0, rawData.length, symbology, callbackNanos)) {
+                    continue;
+                }
+                //  Once the pipeline is saturated a scanner sending more than its share has the excess dropped
+                if (!fanIn.admit(index, callbackNanos)) {
+                    continue;
+                }
+                long journalSequence = scanJournal.record(receivedMillis, data, scanDataCollection.getFriendlyName());
+
+                //  Only enqueue here, decoding and validation happen on the processing stage's workers
+                ScanRecord record = new ScanRecord(rawData, symbology, receivedMillis);
+                record.callbackNanos = callbackNanos;
+                record.scannerTimestamp = data.getTimeStamp();
+                record.scannerIndex = index;
+                record.journalSequence = journalSequence;
+                record.friendlyName = scanDataCollection.getFriendlyName();
+                scanProcessor.submit(record);
             }
         }
+        else if (scanDataCollection != null) {
+            metrics.failedResults.inc(scanDataCollection.getResult());
+        }
     }
 
     @Override
     public void onStatus(StatusData statusData) {
 
+        onScannerStatus(sessionFor(statusData.getFriendlyName()), statusData);
+    }
+
+    //  session is null if the status did not come from an enabled scanner
+    private void onScannerStatus(ScannerSession session, StatusData statusData) {
+
+        long callbackNanos = System.nanoTime();
+        CallbackTraceRecorder recorder = traceRecorder;
+        if (recorder != null) {
+            recorder.recordStatus(callbackNanos, statusData);
+        }
+
         ScannerStates state = statusData.getState();
+        metrics.statusTransitions.inc(state);
         Log.d(TAG, "Lifecycle: " + state.toString());
+        String status;
+        int machineState;
         switch(state) {
             case IDLE:
-                statusString = statusData.getFriendlyName()+" is enabled and idle...";
-                new AsyncStatusUpdate().execute(statusString);
-                if (bContinuousMode) {
-                    try {
-                        // An attempt to use the scanner continuously and rapidly (with a delay < 100 ms between scans)
-                        // may cause the scanner to pause momentarily before resuming the scanning.
-                        // Hence add some delay (>= 100ms) before submitting the next read.
-                        try {
-                            Thread.sleep(100);
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-
-                        scanner.read();
-                    } catch (ScannerException e) {
-                        statusString = e.getMessage();
-                        new AsyncStatusUpdate().execute(statusString);
+                startupTrace.onScannerReady();
+                status = statusData.getFriendlyName()+" is enabled and idle...";
+                machineState = ScannerStateMachine.IDLE;
+                if (bContinuousMode && session != null) {
+                    // An attempt to use the scanner continuously and rapidly may cause the scanner to pause
+                    // momentarily before resuming the scanning.  The session's scheduler submits the next read from
+                    // its own thread after the shortest delay it has found to be safe for this scanner model.
+                    if (!holdWhileExportBackedUp(session)) {
+                        session.onIdle();
                     }
                 }
-                new AsyncUiControlUpdate().execute(true);
                 break;
             case WAITING:
-                statusString = "Scanner is waiting for trigger press...";
-                new AsyncStatusUpdate().execute(statusString);
-                new AsyncUiControlUpdate().execute(false);
+                if (session != null) {
+                    session.onWaiting();
+                }
+                status = "Scanner is waiting for trigger press...";
+                machineState = ScannerStateMachine.WAITING;
                 break;
             case SCANNING:
-                statusString = "Scanning...";
-                new AsyncStatusUpdate().execute(statusString);
-                new AsyncUiControlUpdate().execute(false);
+                status = "Scanning...";
+                machineState = ScannerStateMachine.SCANNING;
                 break;
             case DISABLED:
-                statusString = statusData.getFriendlyName()+" is disabled.";
-                new AsyncStatusUpdate().execute(statusString);
-                new AsyncUiControlUpdate().execute(true);
+                status = statusData.getFriendlyName()+" is disabled.";
+                machineState = ScannerStateMachine.DISABLED;
                 break;
             case ERROR:
-                statusString = "An error has occurred.";
-                new AsyncStatusUpdate().execute(statusString);
-                new AsyncUiControlUpdate().execute(true);
+                status = "An error has occurred.";
+                machineState = ScannerStateMachine.ERROR;
                 break;
             default:
-                break;
+                return;
         }
+
+        //  Only the newest state is drawn, however many transitions arrive before the next frame
+        int index = (session != null) ? session.getIndex() : scannerIndex;
+        long handoffNanos = latencyTracker.recordStatusHandoff(callbackNanos);
+        stateMachine.onStatus(index, machineState, status, System.nanoTime(), callbackNanos, handoffNanos);
+        statusApplier.schedule();
     }
 
     private void addSpinnerScannerDevicesListener() {
@@ -362,9 +788,9 @@ public class MainActivity extends Activity implements EMDKListener, DataListener
             public void onItemSelected(AdapterView<?> parent, View arg1,
                                        int position, long arg3) {
 
-                if ((scannerIndex != position) || (scanner==null)) {
+                if ((scannerIndex != position) || sessions.isEmpty()) {
                     scannerIndex = position;
-                    if (!spinnerScannerDevices.getSelectedItem().toString().contains("Bluetooth")) {  //  Bit of a cheat to make it easier to test BT connectivity without connecting a scanner
+                    if (!bAllScanners && !spinnerScannerDevices.getSelectedItem().toString().contains("Bluetooth")) {  //  Bit of a cheat to make it easier to test BT connectivity without connecting a scanner
                         deInitScanner();
                         initScanner();
                         setTrigger();
@@ -444,37 +870,110 @@ public class MainActivity extends Activity implements EMDKListener, DataListener
                 }
             }
         });
+
+        checkBoxAllScanners.setOnCheckedChangeListener(new OnCheckedChangeListener() {
+
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                if (bAllScanners != isChecked) {
+                    bAllScanners = isChecked;
+                    deInitScanner();
+                    initScanner();
+                    setTrigger();
+                    setDecoders();
+                }
+            }
+        });
     }
 
-    private void enumerateScannerDevices() {
+    //  Enumeration runs in the background so the first frame is not held up by the EMDK service,
+    //  the scanner is initialized on the UI thread once the devices are known
+    private void enumerateScannerDevices(final boolean bSelectDefault) {
 
-        if (barcodeManager != null) {
+        final BarcodeManager manager = barcodeManager;
+        if (manager != null) {
+
+            enumerationExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long enumerateStart = startupTrace.begin(StartupTrace.PHASE_ENUMERATE);
+                    final List<ScannerInfo> devices;
+                    try {
+                        devices = manager.getSupportedDevicesInfo();
+                    } finally {
+                        startupTrace.end(StartupTrace.PHASE_ENUMERATE, enumerateStart);
+                    }
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            onScannerDevicesEnumerated(manager, devices, bSelectDefault);
+                        }
+                    });
+                }
+            });
+        }
+    }
 
-            List<String> friendlyNameList = new ArrayList<String>();
-            int spinnerIndex = 0;
+    private void onScannerDevicesEnumerated(BarcodeManager manager, List<ScannerInfo> devices, boolean bSelectDefault) {
 
-            deviceList = barcodeManager.getSupportedDevicesInfo();
+        if (manager != barcodeManager) {
+            return; // Paused or closed while enumerating
+        }
 
-            if ((deviceList != null) && (deviceList.size() != 0)) {
+        List<String> friendlyNameList = new ArrayList<String>();
+        int spinnerIndex = 0;
 
-                Iterator<ScannerInfo> it = deviceList.iterator();
-                while(it.hasNext()) {
-                    ScannerInfo scnInfo = it.next();
-                    friendlyNameList.add(scnInfo.getFriendlyName());
-                    if(scnInfo.isDefaultScanner()) {
-                        defaultIndex = spinnerIndex;
+        deviceList = devices;
+
+        if ((deviceList != null) && (deviceList.size() != 0)) {
+
+            Iterator<ScannerInfo> it = deviceList.iterator();
+            while(it.hasNext()) {
+                ScannerInfo scnInfo = it.next();
+                friendlyNameList.add(scnInfo.getFriendlyName());
+                if(scnInfo.isDefaultScanner()) {
+                    defaultIndex = spinnerIndex;
+                }
+                ++spinnerIndex;
+            }
+        }
+        else {
+            setStatus("Failed to get the list of supported scanner devices! Please close and restart the application.");
+        }
+
+        ArrayAdapter<String> spinnerAdapter = new ArrayAdapter<String>(MainActivity.this, android.R.layout.simple_spinner_item, friendlyNameList);
+        spinnerAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+
+        spinnerScannerDevices.setAdapter(spinnerAdapter);
+
+        //  Initialize here rather than waiting for the spinner to report the selection on its next
+        //  layout, the spinner listener then finds the scanner already initialized
+        long scannerInitStart = startupTrace.begin(StartupTrace.PHASE_SCANNER_INIT);
+        try {
+            if (bSelectDefault) {
+                // Set default scanner
+                spinnerScannerDevices.setSelection(defaultIndex);
+                if ((scannerIndex != defaultIndex) || sessions.isEmpty()) {
+                    scannerIndex = defaultIndex;
+                    if ((friendlyNameList.size() > defaultIndex) && !friendlyNameList.get(defaultIndex).contains("Bluetooth")) {
+                        deInitScanner();
+                        initScanner();
+                        setTrigger();
+                        setDecoders();
                     }
-                    ++spinnerIndex;
                 }
             }
             else {
-                textViewStatus.setText("Status: " + "Failed to get the list of supported scanner devices! Please close and restart the application.");
-            }
-
-            ArrayAdapter<String> spinnerAdapter = new ArrayAdapter<String>(MainActivity.this, android.R.layout.simple_spinner_item, friendlyNameList);
-            spinnerAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+                // Set selected scanner
+                spinnerScannerDevices.setSelection(scannerIndex);
 
-            spinnerScannerDevices.setAdapter(spinnerAdapter);
+                // Initialize scanner
+                initScanner();
+                setTrigger();
+                setDecoders();
+            }
+        } finally {
+            startupTrace.end(StartupTrace.PHASE_SCANNER_INIT, scannerInitStart);
         }
     }
 
@@ -489,243 +988,531 @@ public class MainActivity extends Activity implements EMDKListener, DataListener
 
     private void setTrigger() {
 
-        if (scanner == null) {
+        if (sessions.isEmpty()) {
             initScanner();
         }
 
-        if (scanner != null) {
-            switch (triggerIndex) {
-                case 0: // Selected "HARD"
-                    scanner.triggerType = TriggerType.HARD;
-                    break;
-                case 1: // Selected "SOFT"
-                    scanner.triggerType = TriggerType.SOFT_ALWAYS;
-                    break;
-            }
+        triggerType = (triggerIndex == 1) ? TriggerType.SOFT_ALWAYS : TriggerType.HARD;
+        for (ScannerSession session : sessions) {
+            session.setTrigger(triggerType);
         }
     }
 
     private void setDecoders() {
 
-        if (scanner == null) {
+        if (sessions.isEmpty()) {
             initScanner();
         }
 
-        if ((scanner != null) && (scanner.isEnabled())) {
-            try {
-
-                ScannerConfig config = scanner.getConfig();
-
-                // Set EAN8
-                if(checkBoxEAN8.isChecked())
-                    config.decoderParams.ean8.enabled = true;
-                else
-                    config.decoderParams.ean8.enabled = false;
-
-                // Set EAN13
-                if(checkBoxEAN13.isChecked())
-                    config.decoderParams.ean13.enabled = true;
-                else
-                    config.decoderParams.ean13.enabled = false;
-
-                // Set Code39
-                if(checkBoxCode39.isChecked())
-                    config.decoderParams.code39.enabled = true;
-                else
-                    config.decoderParams.code39.enabled = false;
-
-                //Set Code128
-                if(checkBoxCode128.isChecked())
-                    config.decoderParams.code128.enabled = true;
-                else
-                    config.decoderParams.code128.enabled = false;
-
-                scanner.setConfig(config);
-
-            } catch (ScannerException e) {
-
-                textViewStatus.setText("Status: " + e.getMessage());
-            }
+        //  Applied off the UI thread, coalesced with any other changes made in quick succession
+        long mask = getCheckedDecoders();
+        decoderMask = mask;
+        for (ScannerSession session : sessions) {
+            session.requestDecoders(mask);
         }
     }
 
+    private long getCheckedDecoders() {
+
+        long mask = 0;
+        if (checkBoxEAN8.isChecked())
+            mask |= DecoderSelection.bit(Symbology.EAN8);
+        if (checkBoxEAN13.isChecked())
+            mask |= DecoderSelection.bit(Symbology.EAN13);
+        if (checkBoxCode39.isChecked())
+            mask |= DecoderSelection.bit(Symbology.CODE39);
+        if (checkBoxCode128.isChecked())
+            mask |= DecoderSelection.bit(Symbology.CODE128);
+        return mask;
+    }
+
 
     private void startScan() {
 
-        if(scanner == null) {
+        if (sessions.isEmpty()) {
             initScanner();
         }
 
-        if (scanner != null) {
+        boolean bStarted = false;
+        for (ScannerSession session : sessions) {
             try {
 
-                if(scanner.isEnabled())
+                // Submit a new read, the session may be suspended by a disconnect at any moment
+                if (session.isEnabled() && session.read())
                 {
-                    // Submit a new read.
-                    scanner.read();
-
-                    if (checkBoxContinuous.isChecked())
-                        bContinuousMode = true;
-                    else
-                        bContinuousMode = false;
-
-                    new AsyncUiControlUpdate().execute(false);
-                }
-                else
-                {
-                    textViewStatus.setText("Status: Scanner is not enabled");
+                    bStarted = true;
                 }
 
             } catch (ScannerException e) {
 
-                textViewStatus.setText("Status: " + e.getMessage());
+                metrics.onScannerException(e);
+                setStatus(session.getFriendlyName() + ": " + e.getMessage());
             }
         }
 
+        if (bStarted) {
+            if (checkBoxContinuous.isChecked()) {
+                duplicateSuppressor.clear();
+                bContinuousMode = true;
+            }
+            else {
+                bContinuousMode = false;
+            }
+
+            setControlsEnabled(false);
+        }
+        else if (!sessions.isEmpty()) {
+            setStatus("Scanner is not enabled");
+        }
     }
 
     private void stopScan() {
 
-        if (scanner != null) {
+        if (sessions.isEmpty()) {
+            return;
+        }
 
-            try {
+        // Reset continuous flag
+        bContinuousMode = false;
 
-                // Reset continuous flag
-                bContinuousMode = false;
+        for (ScannerSession session : sessions) {
+            try {
 
                 // Cancel the pending read.
-                scanner.cancelRead();
-
-                new AsyncUiControlUpdate().execute(true);
+                session.cancelRead();
 
             } catch (ScannerException e) {
 
-                textViewStatus.setText("Status: " + e.getMessage());
+                metrics.onScannerException(e);
+                setStatus(e.getMessage());
             }
         }
+
+        setControlsEnabled(true);
     }
 
+    //  Enable the selected scanner, or every supported scanner when "All scanners" is checked
     private void initScanner() {
 
-        if (scanner == null) {
-
-            if ((deviceList != null) && (deviceList.size() != 0)) {
-                scanner = barcodeManager.getDevice(deviceList.get(scannerIndex));
-            }
-            else {
-                textViewStatus.setText("Status: " + "Failed to get the specified scanner device! Please close and restart the application.");
+        synchronized (sessionLock) {
+            if (!sessions.isEmpty()) {
                 return;
             }
 
-            if (scanner != null) {
+            if ((deviceList == null) || (deviceList.size() == 0) || (barcodeManager == null)) {
+                setStatus("Failed to get the specified scanner device! Please close and restart the application.");
+                return;
+            }
 
-                scanner.addDataListener(this);
-                scanner.addStatusListener(this);
+            decoderMask = getCheckedDecoders();
+            long enableStart = startupTrace.begin(StartupTrace.PHASE_SCANNER_ENABLE);
+            try {
+                if (bAllScanners) {
+                    for (int i = 0; (i < deviceList.size()) && (i < MAX_SCANNERS); i++) {
+                        initScanner(i);
+                    }
+                }
+                else if (scannerIndex < deviceList.size()) {
+                    initScanner(scannerIndex);
+                }
+            } finally {
+                startupTrace.end(StartupTrace.PHASE_SCANNER_ENABLE, enableStart);
+            }
+            fanIn.setActiveScanners(sessions.size());
+        }
+    }
 
-                try {
-                    scanner.enable();
-                } catch (ScannerException e) {
+    private void initScanner(int index) {
 
-                    textViewStatus.setText("Status: " + e.getMessage());
-                }
-            }else{
-                textViewStatus.setText("Status: " + "Failed to initialize the scanner device.");
+        ScannerSession session = new ScannerSession(index, deviceList.get(index), decoderPreferences,
+                CONTINUOUS_REARM_FLOOR_MS, sessionListener);
+        try {
+            if (session.enable(barcodeManager, decoderMask)) {
+                sessions.add(session);
+                return;
             }
+            setStatus("Failed to initialize the scanner device.");
+        } catch (ScannerException e) {
+
+            metrics.onScannerException(e);
+            setStatus(session.getFriendlyName() + ": " + e.getMessage());
         }
+        releaseSession(session);
     }
 
     private void deInitScanner() {
 
-        if (scanner != null) {
+        synchronized (sessionLock) {
+            for (ScannerSession session : sessions) {
+                releaseSession(session);
+            }
+            sessions.clear();
+            fanIn.setActiveScanners(0);
+        }
+    }
 
-            try {
+    //  Release the device but keep the session, so it can be enabled again quickly when the device reconnects
+    private void suspendSession(ScannerSession session) {
 
-                scanner.cancelRead();
-                scanner.disable();
+        dropHold(session);
+        stateMachine.onReleased(session.getIndex());
+        try {
+            session.suspend();
+        } catch (ScannerException e) {
 
-            } catch (ScannerException e) {
+            //  Already gone, e.g. a Bluetooth scanner which has disconnected
+            metrics.onScannerException(e);
+        }
+    }
 
-                //  Was causing auto test issues as being invoked from a non-UI thread
-                //textViewStatus.setText("Status: " + e.getMessage());
-            }
-            scanner.removeDataListener(this);
-            scanner.removeStatusListener(this);
-            try{
-                scanner.release();
-            } catch (ScannerException e) {
+    private void releaseSession(ScannerSession session) {
 
-                textViewStatus.setText("Status: " + e.getMessage());
-            }
+        sessions.remove(session);
+        dropHold(session);
+        stateMachine.onReleased(session.getIndex());
+        try {
+            session.release();
+        } catch (ScannerException e) {
 
-            scanner = null;
+            metrics.onScannerException(e);
+            //  Was causing auto test issues as being invoked from a non-UI thread
+            //textViewStatus.setText("Status: " + e.getMessage());
         }
     }
 
-    private class AsyncDataUpdate extends AsyncTask<String, Void, String> {
+    //  Shown on the next frame, replacing anything published before it
+    private void setStatus(String status) {
+
+        stateMachine.onMessage(status);
+        statusApplier.schedule();
+    }
+
+    private void setControlsEnabled(boolean bEnabled) {
+
+        stateMachine.setControlsEnabled(bEnabled);
+        statusApplier.schedule();
+    }
+
+    private final ScannerSession.Listener sessionListener = new ScannerSession.Listener() {
+        @Override
+        public void onData(ScannerSession session, ScanDataCollection scanDataCollection) {
+            onScannerData(session.getIndex(), scanDataCollection);
+        }
 
         @Override
-        protected String doInBackground(String... params) {
+        public void onStatus(ScannerSession session, StatusData statusData) {
+            onScannerStatus(session, statusData);
+        }
 
-            return params[0];
+        @Override
+        public void onError(ScannerSession session, ScannerException e) {
+            metrics.onScannerException(e);
+            setStatus(session.getFriendlyName() + ": " + e.getMessage());
         }
 
-        protected void onPostExecute(String result) {
+        @Override
+        public void onReconnectRead(ScannerSession session, long nanos) {
+            reconnectEngine.onReconnectRead(nanos);
+        }
+    };
 
-            if (result != null) {
-                if(dataLength ++ > 100) { //Clear the cache after 100 scans
-                    textViewData.setText("");
-                    dataLength = 0;
+    //  Runs on the reconnect engine's thread, never on the EMDK callback thread
+    private final ReconnectEngine.Attacher reconnectAttacher = new ReconnectEngine.Attacher() {
+        @Override
+        public boolean isAttached(int index) {
+            ScannerSession session = sessionAt(index);
+            return (session != null) && session.isEnabled();
+        }
+
+        @Override
+        public boolean attach(int index, long connectedNanos) throws ScannerException {
+            synchronized (sessionLock) {
+                BarcodeManager manager = barcodeManager;
+                List<ScannerInfo> devices = deviceList;
+                if ((manager == null) || (devices == null) || (index >= devices.size())) {
+                    return false;
                 }
 
-                textViewData.append(result+"\n");
+                //  A session kept from before the disconnect still has the scanner's trigger type and
+                //  decoder state, otherwise start one with the last settings the user chose
+                ScannerSession session = sessionAt(index);
+                boolean bNew = (session == null);
+                if (bNew) {
+                    session = new ScannerSession(index, devices.get(index), decoderPreferences,
+                            CONTINUOUS_REARM_FLOOR_MS, sessionListener);
+                    session.setTrigger(triggerType);
+                }
+                else {
+                    session.suspend(); // The device handle from before the disconnect is stale
+                }
 
+                boolean bEnabled = false;
+                try {
+                    bEnabled = session.enable(manager, decoderMask);
+                } catch (ScannerException e) {
+                    metrics.onScannerException(e);
+                    throw e;
+                } finally {
+                    if (bEnabled) {
+                        if (bNew) {
+                            sessions.add(session);
+                        }
+                        fanIn.setActiveScanners(sessions.size());
+                        session.onReconnected(connectedNanos);
+                    }
+                    else if (bNew) {
+                        releaseSession(session);
+                    }
+                    else {
+                        suspendSession(session);
+                    }
+                }
+                return bEnabled;
+            }
+        }
 
-                ((View) findViewById(R.id.scrollView1)).post(new Runnable()
-                {
-                    public void run()
-                    {
-                        ((ScrollView) findViewById(R.id.scrollView1)).fullScroll(View.FOCUS_DOWN);
+        @Override
+        public void detach(int index) {
+            synchronized (sessionLock) {
+                ScannerSession session = sessionAt(index);
+                if (session != null) {
+                    suspendSession(session);
+                }
+            }
+        }
+
+        @Override
+        public void onAbandoned(int index, ScannerException lastError) {
+            List<ScannerInfo> devices = deviceList;
+            String name = ((devices != null) && (index < devices.size())) ? devices.get(index).getFriendlyName() : "Scanner";
+            setStatus(name + ": " + ((lastError != null) ? lastError.getMessage() : "could not be re-attached"));
+        }
+    };
+
+    //  Called on the UI thread once per frame with every scan received since the last frame
+    private void appendScans(ArrayList<ScanRecord> batch) {
+
+        for (ScanRecord record : batch) {
+            scanHistory.append(record.data, 0, record.data.length, record.symbology, record.validation, record.ruleVerdict,
+                    record.catalogRow, record.timestampMillis);
+        }
+        metrics.scansDisplayed.add(batch.size());
+        scanHistoryAdapter.notifyDataSetChanged();
+        latencyTracker.onDataApplied(batch);
+    }
+
+    //  Called on the UI thread to add scans recovered from the journal of a previous run to the history,
+    //  checked against the same rules and catalog as new scans
+    private void appendRecoveredScans() {
+
+        if (!bCatalogChecked || !bRulesChecked || recoveredScans.isEmpty()) {
+            return;
+        }
+        ScanRules rules = scanProcessor.getRules();
+        ProductCatalog catalog = scanProcessor.getCatalog();
+        for (ScanRecord record : recoveredScans) {
+            int verdict = (rules == null) ? ScanRules.ALLOWED :
+                    rules.evaluate(record.symbology, record.data, 0, record.data.length);
+            int row = (catalog == null) ? ProductCatalog.NOT_FOUND :
+                    catalog.lookup(record.symbology, record.data, 0, record.data.length);
+            scanHistory.append(record.data, 0, record.data.length, record.symbology, record.validation, verdict,
+                    row, record.timestampMillis);
+        }
+        recoveredScans.clear();
+        scanHistoryAdapter.notifyDataSetChanged();
+    }
+
+    //  Write the latency histograms to logcat and to a file in the app's external files directory
+    private void dumpLatency() {
+
+        final String report = latencyTracker.getLatency().report() +
+                "duplicates suppressed=" + duplicateSuppressor.getSuppressed() + " passed=" + duplicateSuppressor.getPassed() + "\n" +
+                fanIn.report() + reconnectEngine.report() + "\n";
+        for (String line : report.split("\n")) {
+            Log.d(TAG, "Latency: " + line);
+        }
+
+        final File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            return;
+        }
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                File file = new File(directory, "latency-" + System.currentTimeMillis() + ".txt");
+                FileWriter writer = null;
+                try {
+                    writer = new FileWriter(file);
+                    writer.write(report);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to write latency report: " + e.getMessage());
+                } finally {
+                    if (writer != null) {
+                        try {
+                            writer.close();
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
                     }
-                });
+                }
+            }
+        }, "LatencyDump").start();
+    }
+
+    FrameBatchDispatcher<ScanRecord> getDataDispatcher() {return dataDispatcher;}
 
+    StatusFrameApplier getStatusApplier() {return statusApplier;}
+
+    ScanProcessor getScanProcessor() {return scanProcessor;}
+
+    ScanLatencyTracker getLatencyTracker() {return latencyTracker;}
+
+    ScannerFanIn getFanIn() {return fanIn;}
+
+    DuplicateSuppressor getDuplicateSuppressor() {return duplicateSuppressor;}
+
+    ScannerMetrics getMetrics() {return metrics;}
+
+    //  Only read on the UI thread
+    ScanHistory getScanHistory() {return scanHistory;}
+
+    //  Start recording every scanner callback to a trace file in the app's external files directory
+    private void startTraceRecording() {
+
+        File directory = getExternalFilesDir("traces");
+        if (directory == null) {
+            setStatus("External storage is not available for the trace");
+            return;
+        }
+        try {
+            traceRecorder = new CallbackTraceRecorder(new File(directory, "trace-" + System.currentTimeMillis() + ".emdktrace"));
+            Log.d(TAG, "Recording callbacks to " + traceRecorder.getFile());
+        } catch (IOException e) {
+            setStatus(e.getMessage());
+        }
+    }
+
+    private void closeScanJournal() {
+
+        final ScanJournalRecorder journal = scanJournal;
+        //  Closing forces the journal to storage, keep it off the UI thread
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                journal.close();
+            }
+        }, "ScanJournalClose").start();
+    }
+
+    //  Continuous reads are not re-armed while the export spool is full, the sessions resume once it drains
+    private boolean holdWhileExportBackedUp(ScannerSession session) {
+
+        if (!scanExporter.isBackpressured()) {
+            return false;
+        }
+        synchronized (heldSessions) {
+            if (!heldSessions.contains(session)) {
+                heldSessions.add(session);
             }
         }
+        //  The spool may have drained between the check and the hold, when nothing would resume the session
+        if (!scanExporter.isBackpressured()) {
+            resumeHeldSessions();
+        }
+        return true;
     }
 
-    private class AsyncStatusUpdate extends AsyncTask<String, Void, String> {
+    //  A released or suspended session is re-armed by whatever enables it again, not by the export draining
+    private void dropHold(ScannerSession session) {
 
-        @Override
-        protected String doInBackground(String... params) {
+        synchronized (heldSessions) {
+            heldSessions.remove(session);
+        }
+    }
+
+    private void resumeHeldSessions() {
 
-            return params[0];
+        ArrayList<ScannerSession> resumed;
+        synchronized (heldSessions) {
+            resumed = new ArrayList<ScannerSession>(heldSessions);
+            heldSessions.clear();
+        }
+        for (ScannerSession session : resumed) {
+            session.onIdle();
         }
+    }
 
-        @Override
-        protected void onPostExecute(String result) {
+    private void closeScanExporter() {
+
+        final ScanExporter exporter = scanExporter;
+        //  Closing makes a last attempt to send what is waiting, keep it off the UI thread
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    exporter.close();
+                } catch (InterruptedException e) {
+                    Log.e(TAG, "Interrupted closing the scan export");
+                }
+            }
+        }, "ScanExporterClose").start();
+    }
 
-            textViewStatus.setText("Status: " + result);
+    private void stopTraceRecording() {
+
+        final CallbackTraceRecorder recorder = traceRecorder;
+        traceRecorder = null;
+        if (recorder != null) {
+            //  Completing the file waits for the background writer so keep it off the UI thread
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    recorder.stop();
+                }
+            }, "TraceStop").start();
         }
     }
 
-    private class AsyncUiControlUpdate extends AsyncTask<Boolean, Void, Boolean> {
+    private int indexOfScanner(String friendlyName) {
 
+        List<ScannerInfo> devices = deviceList;
+        if ((devices != null) && (friendlyName != null)) {
+            for (int i = 0; i < devices.size(); i++) {
+                if (friendlyName.equalsIgnoreCase(devices.get(i).getFriendlyName())) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
 
-        @Override
-        protected void onPostExecute(Boolean bEnable) {
+    //  The enabled scanner with the given friendly name, or the only one if just one is enabled
+    private ScannerSession sessionFor(String friendlyName) {
 
-            checkBoxEAN8.setEnabled(bEnable);
-            checkBoxEAN13.setEnabled(bEnable);
-            checkBoxCode39.setEnabled(bEnable);
-            checkBoxCode128.setEnabled(bEnable);
-            spinnerScannerDevices.setEnabled(bEnable);
-            spinnerTriggers.setEnabled(bEnable);
+        for (ScannerSession session : sessions) {
+            if ((friendlyName != null) && friendlyName.equalsIgnoreCase(session.getFriendlyName())) {
+                return session;
+            }
         }
+        return (sessions.size() == 1) ? sessions.get(0) : null;
+    }
 
-        @Override
-        protected Boolean doInBackground(Boolean... arg0) {
+    //  The session for the scanner at the given position in the supported devices list, enabled or not
+    private ScannerSession sessionAt(int index) {
 
-            return arg0[0];
+        for (ScannerSession session : sessions) {
+            if (session.getIndex() == index) {
+                return session;
+            }
         }
+        return null;
+    }
+
+    //  Index to tag data delivered to the activity itself rather than through a session
+    private int indexOfCallbackScanner(String friendlyName) {
+
+        ScannerSession session = sessionFor(friendlyName);
+        return (session != null) ? session.getIndex() : scannerIndex;
     }
 
     @Override
@@ -737,37 +1524,41 @@ public class MainActivity extends Activity implements EMDKListener, DataListener
     @Override
     public void onConnectionChange(ScannerInfo scannerInfo, ConnectionState connectionState) {
 
+        CallbackTraceRecorder recorder = traceRecorder;
+        if (recorder != null) {
+            recorder.recordConnection(System.nanoTime(), scannerInfo, connectionState, indexOfScanner(scannerInfo.getFriendlyName()));
+        }
+
+        metrics.connectionChanges.inc(connectionState);
         String status;
-        String scannerName = "";
 
         String statusExtScanner = connectionState.toString();
         String scannerNameExtScanner = scannerInfo.getFriendlyName();
 
-        if (deviceList.size() != 0) {
-            scannerName = deviceList.get(scannerIndex).getFriendlyName();
-        }
+        //  A scanner this activity is using, or would be using if it were connected
+        int index = indexOfScanner(scannerNameExtScanner);
+        boolean bActiveScanner = (index >= 0) && (index < MAX_SCANNERS) && (bAllScanners || (index == scannerIndex));
 
-        if (scannerName.equalsIgnoreCase(scannerNameExtScanner)) {
+        if (bActiveScanner) {
 
+            //  Enabling a device can take a while, the reconnect engine does it on its own thread once
+            //  the scanner has stopped flapping, reusing the trigger type and decoders last set
             switch(connectionState) {
                 case CONNECTED:
-                    deInitScanner();
-                    initScanner();
-                    setTrigger();
-                    setDecoders();
+                    reconnectEngine.onConnectionChange(index, true);
                     break;
                 case DISCONNECTED:
-                    deInitScanner();
-                    new AsyncUiControlUpdate().execute(true);
+                    reconnectEngine.onConnectionChange(index, false);
+                    setControlsEnabled(true);
                     break;
             }
 
             status = scannerNameExtScanner + ":" + statusExtScanner;
-            new AsyncStatusUpdate().execute(status);
+            setStatus(status);
         }
         else {
-            status =  statusString + " " + scannerNameExtScanner + ":" + statusExtScanner;
-            new AsyncStatusUpdate().execute(status);
+            status =  stateMachine.getLatest().status + " " + scannerNameExtScanner + ":" + statusExtScanner;
+            setStatus(status);
         }
     }
 
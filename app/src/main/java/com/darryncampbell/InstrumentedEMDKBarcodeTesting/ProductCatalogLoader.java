@@ -0,0 +1,200 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import android.util.Log;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ProductCatalog;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens the {@link ProductCatalog} pushed to the device, e.g. with
+ * adb push products.cat /sdcard/Android/data/&lt;package&gt;/files/catalog/, and applies the delta
+ * files next to it in name order.  Between {@link #start()} and {@link #stop()} the directory is
+ * checked every few seconds, and deltas pushed later are applied without reopening the catalog.
+ * A file which fails to load, e.g. because it was still being pushed, is tried again once its
+ * size or modification time changes.  All file access happens on a background thread.
+ */
+public class ProductCatalogLoader {
+
+    private static final String TAG = "Product Catalog";
+    public static final String CATALOG_FILE = "products.cat";
+    private static final String DELTA_SUFFIX = ".delta";
+    private static final long CHECK_MS = 5000;
+
+    public interface Listener {
+        /**
+         * Called on the loading thread once the catalog is open, and again after new deltas
+         * have been applied to it
+         */
+        void onCatalogChanged(ProductCatalog catalog);
+
+        /**
+         * Called on the loading thread once, when the first check of the catalog directory has
+         * finished, after any onCatalogChanged it caused
+         */
+        void onFirstCheck();
+    }
+
+    private final File directory;
+    private final int cacheEntries;
+    private final Listener listener;
+    private final Set<String> applied = new HashSet<String>(); // Guarded by this
+    private final Map<String, String> failed = new HashMap<String, String>(); // Name to stamp, guarded by this
+    private ProductCatalog catalog = null; // Guarded by this
+    private boolean bMissingLogged = false; // Guarded by this
+    private boolean bChecked = false; // Guarded by this
+    private boolean bClosed = false; // Guarded by this
+    private final ScheduledExecutorService executor;
+    private ScheduledFuture<?> check = null; // UI thread only
+
+    /**
+     * @param directory holding the catalog and its deltas
+     * @param cacheEntries products kept in the catalog's LRU cache
+     */
+    public ProductCatalogLoader(File directory, int cacheEntries, Listener listener)
+    {
+        this.directory = directory;
+        this.cacheEntries = cacheEntries;
+        this.listener = listener;
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ProductCatalogLoad");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Open the catalog if it has not been opened yet and apply any deltas not yet applied, then
+     * keep checking for new deltas until {@link #stop()}.  Returns immediately, call on the UI thread.
+     */
+    public void start()
+    {
+        if (check != null)
+            return;
+        check = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        }, 0, CHECK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop checking for new deltas, call on the UI thread
+     */
+    public void stop()
+    {
+        if (check != null) {
+            check.cancel(false);
+            check = null;
+        }
+    }
+
+    public void close()
+    {
+        synchronized (this) {
+            bClosed = true;
+        }
+        stop();
+        executor.shutdownNow();
+    }
+
+    //  Synchronized against close()
+    private synchronized void load()
+    {
+        if (bClosed)
+            return;
+        try {
+            loadChanges();
+        } catch (RuntimeException e) {
+            //  Caught so the periodic check carries on, an escaping exception would cancel it
+            Log.e(TAG, "Failed to check the catalog: " + e);
+        } catch (Error e) {
+            Log.e(TAG, "Failed to check the catalog: " + e);
+        }
+        if (!bChecked) {
+            bChecked = true;
+            listener.onFirstCheck();
+        }
+    }
+
+    private void loadChanges()
+    {
+        boolean bChanged = false;
+        if (catalog == null) {
+            File file = new File(directory, CATALOG_FILE);
+            if (!file.isFile()) {
+                if (!bMissingLogged)
+                    Log.d(TAG, "No catalog at " + file + ", scans will not be looked up");
+                bMissingLogged = true;
+                return;
+            }
+            if (hasFailed(file))
+                return;
+            try {
+                long start = System.nanoTime();
+                catalog = new ProductCatalog(file, cacheEntries);
+                bChanged = true;
+                Log.d(TAG, "Opened " + catalog.size() + " products in " + (System.nanoTime() - start) / 1000000 + "ms");
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to open the product catalog: " + e.getMessage());
+                failed.put(file.getName(), stamp(file));
+                return;
+            }
+        }
+
+        File[] deltas = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(DELTA_SUFFIX);
+            }
+        });
+        if (deltas != null) {
+            Arrays.sort(deltas);
+            for (File delta : deltas) {
+                if (applied.contains(delta.getName()) || hasFailed(delta))
+                    continue;
+                try {
+                    int entries = catalog.applyDelta(delta);
+                    Log.d(TAG, "Applied " + entries + " changes from " + delta.getName());
+                    bChanged = true;
+                    applied.add(delta.getName());
+                    failed.remove(delta.getName());
+                } catch (IOException e) {
+                    //  Nothing is applied from a delta which fails to read, so it can be tried again
+                    Log.e(TAG, "Failed to apply " + delta.getName() + ": " + e.getMessage());
+                    failed.put(delta.getName(), stamp(delta));
+                }
+            }
+        }
+        if (bChanged)
+            listener.onCatalogChanged(catalog);
+    }
+
+    //  True while a file that failed to load is unchanged since
+    private boolean hasFailed(File file)
+    {
+        String stamp = failed.get(file.getName());
+        return stamp != null && stamp.equals(stamp(file));
+    }
+
+    private static String stamp(File file)
+    {
+        return file.lastModified() + "/" + file.length();
+    }
+}
@@ -0,0 +1,176 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import android.util.Log;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.LatencyHistogram;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ReconnectPolicy;
+import com.symbol.emdk.barcode.ScannerException;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-attaches scanners after connection changes on a background thread so the EMDK callback
+ * thread is never held up enabling a device.  Changes are debounced and de-duplicated per scanner
+ * by a {@link ReconnectPolicy}, so a Bluetooth scanner flapping at the edge of range is
+ * re-attached at most once for each burst of changes, and failed attaches are retried with
+ * exponential backoff.  The time from CONNECTED to the device being enabled, and to the first
+ * successful read after it, are recorded.
+ */
+public class ReconnectEngine {
+
+    public interface Attacher {
+        /**
+         * @return whether the scanner currently has an enabled device
+         */
+        boolean isAttached(int index);
+
+        /**
+         * Enable the scanner's device, reusing its last trigger type and decoders.  Called on the
+         * engine's thread.
+         * @param connectedNanos System.nanoTime() of the CONNECTED change being acted on
+         * @return false if the device could not be enabled and the attach should be retried
+         */
+        boolean attach(int index, long connectedNanos) throws ScannerException;
+
+        /**
+         * Release the scanner's device after it disconnected.  Called on the engine's thread.
+         */
+        void detach(int index);
+
+        /**
+         * Called on the engine's thread once the attach has been retried as often as allowed
+         */
+        void onAbandoned(int index, ScannerException lastError);
+    }
+
+    private static final String TAG = "Reconnect Engine";
+
+    private final ReconnectPolicy policy;
+    private final Attacher attacher;
+    private final ScheduledExecutorService executor;
+    private final LatencyHistogram connectedToAttached = new LatencyHistogram("reconnect.connected_to_attached");
+    private final LatencyHistogram connectedToRead = new LatencyHistogram("reconnect.connected_to_read");
+
+    public ReconnectEngine(ReconnectPolicy policy, Attacher attacher)
+    {
+        this.policy = policy;
+        this.attacher = attacher;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ScannerReconnect");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public ReconnectPolicy getPolicy() {return policy;}
+
+    public LatencyHistogram getConnectedToAttached() {return connectedToAttached;}
+
+    public LatencyHistogram getConnectedToRead() {return connectedToRead;}
+
+    /**
+     * Record a connection change and act on it once it has settled, returns immediately
+     */
+    public void onConnectionChange(final int index, boolean bConnected)
+    {
+        final long generation = policy.onConnectionChange(index, bConnected, System.nanoTime());
+        schedule(new Runnable() {
+            @Override
+            public void run() {
+                settle(index, generation);
+            }
+        }, policy.getSettleMillis());
+    }
+
+    /**
+     * The first read after a re-attach succeeded, see {@link ScannerSession.Listener#onReconnectRead}
+     */
+    public void onReconnectRead(long nanos)
+    {
+        connectedToRead.record(nanos);
+    }
+
+    /**
+     * Drop any pending or retrying work, e.g. when the activity releases its scanners
+     */
+    public void cancel()
+    {
+        policy.cancelAll();
+    }
+
+    public void shutdown()
+    {
+        policy.cancelAll();
+        executor.shutdownNow();
+    }
+
+    public String report()
+    {
+        StringBuilder report = new StringBuilder(policy.report()).append('\n');
+        connectedToAttached.appendSummary(report);
+        report.append('\n');
+        connectedToRead.appendSummary(report);
+        return report.toString();
+    }
+
+    private void settle(int index, long generation)
+    {
+        switch (policy.onSettled(index, generation, attacher.isAttached(index))) {
+            case ReconnectPolicy.ACTION_ATTACH:
+                attach(index, generation);
+                break;
+            case ReconnectPolicy.ACTION_DETACH:
+                attacher.detach(index);
+                break;
+        }
+    }
+
+    private void attach(final int index, final long generation)
+    {
+        if (!policy.isCurrent(index, generation))
+            return;
+        long connectedNanos = policy.getConnectedNanos(index);
+        ScannerException error = null;
+        try {
+            if (attacher.attach(index, connectedNanos)) {
+                policy.onAttached(index, generation);
+                connectedToAttached.record(System.nanoTime() - connectedNanos);
+                return;
+            }
+        } catch (ScannerException e) {
+            error = e;
+        }
+
+        long delayMillis = policy.onAttachFailed(index, generation);
+        if (delayMillis < 0) {
+            if (policy.isCurrent(index, generation)) {
+                Log.d(TAG, "Giving up re-attaching scanner " + index);
+                attacher.onAbandoned(index, error);
+            }
+            return;
+        }
+        Log.d(TAG, "Re-attaching scanner " + index + " failed, retrying in " + delayMillis + " ms");
+        schedule(new Runnable() {
+            @Override
+            public void run() {
+                attach(index, generation);
+            }
+        }, delayMillis);
+    }
+
+    private void schedule(Runnable task, long delayMillis)
+    {
+        try {
+            executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            //  Shut down
+        }
+    }
+}
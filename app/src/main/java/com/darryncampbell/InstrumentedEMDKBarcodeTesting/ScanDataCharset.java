@@ -0,0 +1,44 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import android.util.Log;
+
+import com.symbol.emdk.barcode.ScanDataCollection.ScanData;
+
+import java.lang.reflect.Field;
+
+/**
+ * ScanData has no public accessor for the charset the EMDK used to decode a scan, read it with
+ * reflection where the field exists
+ */
+final class ScanDataCharset {
+
+    private static final String TAG = "ScanData Charset";
+
+    private static Field scanDataCharsetName = null;
+    private static boolean bCharsetNameResolved = false;
+
+    private ScanDataCharset() {}
+
+    /**
+     * @return the charset name, or null if this EMDK version does not expose it
+     */
+    static synchronized String name(ScanData data)
+    {
+        if (!bCharsetNameResolved) {
+            bCharsetNameResolved = true;
+            try {
+                scanDataCharsetName = ScanData.class.getDeclaredField("charsetName");
+                scanDataCharsetName.setAccessible(true);
+            } catch (NoSuchFieldException e) {
+                Log.w(TAG, "ScanData charset is not available, it will not be recorded");
+            }
+        }
+        if (scanDataCharsetName == null)
+            return null;
+        try {
+            return (String) scanDataCharsetName.get(data);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.Gs1Parser;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ProductCatalog;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ProductCatalogBuilder;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanHistory;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanRules;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanText;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.Symbology;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.SymbologyValidator;
+
+import java.util.TimeZone;
+
+/**
+ * Presents a {@link ScanHistory} through a ListView.  Only the visible rows are bound and each
+ * row reuses its character buffers so the cost of showing a scan does not depend on how many
+ * scans the history holds.  GS1 labels are shown with their application identifiers in
+ * brackets, as printed under the barcode, and products found in the {@link ProductCatalog} with
+ * their description.  Scans the site's {@link ScanRules} did not allow are marked.
+ */
+public class ScanHistoryAdapter extends BaseAdapter {
+
+    private static final int MAX_DISPLAY_BYTES = 256;
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private final ScanHistory history;
+    private final LayoutInflater inflater;
+    private final TimeZone timeZone = TimeZone.getDefault();
+    private final byte[] scratch = new byte[MAX_DISPLAY_BYTES];
+    private final Gs1Parser.Elements elements = new Gs1Parser.Elements();
+    private ProductCatalog catalog = null;
+
+    public ScanHistoryAdapter(LayoutInflater inflater, ScanHistory history)
+    {
+        this.inflater = inflater;
+        this.history = history;
+    }
+
+    /**
+     * Show descriptions from this catalog, which the history's catalog rows refer to
+     */
+    public void setCatalog(ProductCatalog catalog)
+    {
+        this.catalog = catalog;
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getCount() {
+        return history.size();
+    }
+
+    @Override
+    public Object getItem(int position) {
+        return null;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return history.sequence(position);
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+
+        RowHolder holder;
+        if (convertView == null) {
+            convertView = inflater.inflate(R.layout.scan_history_row, parent, false);
+            holder = new RowHolder(convertView);
+            convertView.setTag(holder);
+        } else {
+            holder = (RowHolder) convertView.getTag();
+        }
+
+        int length = history.copyData(position, scratch, 0);
+        int symbology = history.symbology(position);
+        int chars;
+        if (Gs1Parser.isGs1(symbology, scratch, 0, length) &&
+                Gs1Parser.parse(scratch, 0, length, elements) == Gs1Parser.OK)
+            chars = Gs1Parser.formatHumanReadable(scratch, elements, holder.data, 0);
+        else
+            chars = ScanText.decodeUtf8(scratch, 0, length, holder.data, 0);
+        holder.textViewData.setText(holder.data, 0, chars);
+
+        //  "HH:mm:ss.SSS SYMBOLOGY", followed by the reason if the scan failed validation
+        long millis = history.timestamp(position);
+        long local = (millis + timeZone.getOffset(millis)) % MILLIS_PER_DAY;
+        if (local < 0)
+            local += MILLIS_PER_DAY;
+        char[] info = holder.info;
+        int pos = ScanText.writeDigits(local / 3600000, 2, info, 0);
+        info[pos++] = ':';
+        pos = ScanText.writeDigits((local / 60000) % 60, 2, info, pos);
+        info[pos++] = ':';
+        pos = ScanText.writeDigits((local / 1000) % 60, 2, info, pos);
+        info[pos++] = '.';
+        pos = ScanText.writeDigits(local % 1000, 3, info, pos);
+        info[pos++] = ' ';
+        pos = append(Symbology.name(symbology), info, pos);
+        int validation = history.validation(position);
+        if (validation != SymbologyValidator.VALID) {
+            info[pos++] = ' ';
+            pos = append(SymbologyValidator.describe(validation), info, pos);
+        }
+        int verdict = history.ruleVerdict(position);
+        if (verdict != ScanRules.ALLOWED && pos < info.length) {
+            info[pos++] = ' ';
+            pos = append(ScanRules.describe(verdict), info, pos);
+        }
+        int row = history.catalogRow(position);
+        if (catalog != null && row != ProductCatalog.NOT_FOUND && pos < info.length) {
+            info[pos++] = ' ';
+            pos = append(catalog.description(row), info, pos);
+        }
+        holder.textViewInfo.setText(info, 0, pos);
+
+        return convertView;
+    }
+
+    private static int append(String text, char[] dst, int pos)
+    {
+        int length = Math.min(text.length(), dst.length - pos);
+        text.getChars(0, length, dst, pos);
+        return pos + length;
+    }
+
+    private static class RowHolder {
+        final TextView textViewData;
+        final TextView textViewInfo;
+        final char[] data = new char[MAX_DISPLAY_BYTES];
+        final char[] info = new char[48 + ProductCatalogBuilder.DEFAULT_DESCRIPTION_BYTES];
+
+        RowHolder(View row)
+        {
+            textViewData = (TextView) row.findViewById(R.id.textViewScanData);
+            textViewInfo = (TextView) row.findViewById(R.id.textViewScanInfo);
+        }
+    }
+}
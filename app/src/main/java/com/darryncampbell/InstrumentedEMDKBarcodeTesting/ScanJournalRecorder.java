@@ -0,0 +1,232 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import android.util.Log;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanJournal;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanRecord;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.Symbology;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.SymbologyValidator;
+import com.symbol.emdk.barcode.ScanDataCollection.ScanData;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Keeps every scan shown in the history in a {@link ScanJournal} so it survives the process
+ * dying.  The journal is opened, and the scans already in it recovered, on a background thread;
+ * scans which arrive before that has finished are held in memory and journaled once it has.
+ * A recreated activity's recorder waits for the previous recorder of the same directory to finish
+ * closing before it opens the journal, so there is only ever one writer.
+ */
+public class ScanJournalRecorder {
+
+    private static final String TAG = "Scan Journal";
+    private static final int RECOVERY_BATCH = 512; // Recovered scans handed to the listener at a time
+
+    public interface Listener {
+        /**
+         * Called on the opening thread with the scans recovered from the journal, oldest first
+         */
+        void onRecovered(ArrayList<ScanRecord> records);
+    }
+
+    private final File directory;
+    private final ScanJournal.Options options;
+    private volatile ScanJournal journal = null;
+    private ArrayList<EarlyScan> early = new ArrayList<EarlyScan>(); // Guarded by this, null once open
+    private boolean bClosed = false;
+    private boolean bOpening = false; // Guarded by this
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    //  The most recently opened recorder of each directory, until it has closed
+    private static final Map<File, ScanJournalRecorder> latest = new HashMap<File, ScanJournalRecorder>();
+
+    public ScanJournalRecorder(File directory, ScanJournal.Options options)
+    {
+        this.directory = directory;
+        this.options = options;
+    }
+
+    /**
+     * Open the journal on a new thread, once any earlier recorder of the same directory has
+     * closed, reporting the recovered scans to the listener
+     */
+    public void open(final Listener listener)
+    {
+        final ScanJournalRecorder previous;
+        synchronized (latest) {
+            previous = latest.put(directory.getAbsoluteFile(), this);
+        }
+        synchronized (this) {
+            bOpening = true;
+        }
+        Thread opener = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                if (previous != null && !previous.awaitClosed()) {
+                    notOpened();
+                    return;
+                }
+                openJournal(listener);
+            }
+        }, "ScanJournalOpen");
+        opener.setDaemon(true);
+        opener.start();
+    }
+
+    /**
+     * Journal one scan, never blocks
+     * @return the scan's journal sequence number, or -1 if the journal is not open yet
+     */
+    public long record(long receivedMillis, ScanData data, String friendlyName)
+    {
+        String labelType = (data.getLabelType() == null) ? null : data.getLabelType().name();
+        String charsetName = ScanDataCharset.name(data);
+        ScanJournal current = journal;
+        if (current == null) {
+            synchronized (this) {
+                current = journal;
+                if (current == null) {
+                    if (early != null)
+                        early.add(new EarlyScan(receivedMillis, data.getRawData(), labelType, charsetName,
+                                data.getTimeStamp(), friendlyName));
+                    return -1;
+                }
+            }
+        }
+        try {
+            return current.append(receivedMillis, data.getRawData(), labelType, charsetName, data.getTimeStamp(), friendlyName);
+        } catch (IllegalStateException e) {
+            //  Closed or failed, the failure is logged when the journal is closed
+            return -1;
+        }
+    }
+
+    /**
+     * Flush and close the journal, blocking until everything recorded is on storage
+     */
+    public void close()
+    {
+        ScanJournal current;
+        synchronized (this) {
+            bClosed = true;
+            early = null;
+            current = journal;
+            //  Still opening, the opening thread closes the journal once it is open
+            if (current == null && bOpening)
+                return;
+        }
+        if (current != null) {
+            try {
+                current.close();
+                Log.d(TAG, "Closed after " + current.getAppended() + " records, " + current.getForces() +
+                        " forces, largest group " + current.getLargestGroup());
+            } catch (IOException e) {
+                Log.e(TAG, "Journal failed: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (latest) {
+            if (latest.get(directory.getAbsoluteFile()) == this)
+                latest.remove(directory.getAbsoluteFile());
+        }
+        closed.countDown();
+    }
+
+    //  Called on the next recorder's opening thread, false if interrupted while waiting
+    private boolean awaitClosed()
+    {
+        if (closed.getCount() > 0)
+            Log.d(TAG, "Waiting for the previous journal to close");
+        try {
+            closed.await();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void openJournal(final Listener listener)
+    {
+        final ArrayList<ScanRecord> recovered = new ArrayList<ScanRecord>(RECOVERY_BATCH);
+        ScanJournal opened;
+        try {
+            opened = ScanJournal.open(directory, options, new ScanJournal.RecordVisitor() {
+                @Override
+                public void onRecord(long sequence, long receivedMillis, byte[] data, String labelType,
+                                     String charsetName, String scannerTimestamp, String friendlyName) {
+                    int symbology = (labelType == null) ? Symbology.UNDEFINED : Symbology.fromName(labelType);
+                    ScanRecord record = new ScanRecord(data, symbology, receivedMillis);
+                    record.validation = SymbologyValidator.validate(symbology, data, 0, data.length);
+                    recovered.add(record);
+                    if (recovered.size() == RECOVERY_BATCH) {
+                        listener.onRecovered(new ArrayList<ScanRecord>(recovered));
+                        recovered.clear();
+                    }
+                }
+            });
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open the scan journal, scans will not be journaled: " + e.getMessage());
+            notOpened();
+            return;
+        }
+        if (!recovered.isEmpty())
+            listener.onRecovered(recovered);
+        Log.d(TAG, "Recovered " + opened.getRecoveredRecords() + " scans from " + opened.getSegmentCount() +
+                " segments, truncated " + opened.getTruncatedBytes() + " torn bytes");
+
+        boolean bCloseNow;
+        synchronized (this) {
+            if (early != null) {
+                for (EarlyScan scan : early)
+                    opened.append(scan.receivedMillis, scan.data, scan.labelType, scan.charsetName,
+                            scan.scannerTimestamp, scan.friendlyName);
+                early = null;
+            }
+            journal = opened;
+            bOpening = false;
+            bCloseNow = bClosed;
+        }
+        if (bCloseNow)
+            close();
+    }
+
+    //  Scans will not be journaled, finish a close which was waiting for the opening thread
+    private void notOpened()
+    {
+        boolean bCloseNow;
+        synchronized (this) {
+            early = null;
+            bOpening = false;
+            bCloseNow = bClosed;
+        }
+        if (bCloseNow)
+            close();
+    }
+
+    private static class EarlyScan {
+        final long receivedMillis;
+        final byte[] data;
+        final String labelType;
+        final String charsetName;
+        final String scannerTimestamp;
+        final String friendlyName;
+
+        EarlyScan(long receivedMillis, byte[] data, String labelType, String charsetName, String scannerTimestamp,
+                  String friendlyName)
+        {
+            this.receivedMillis = receivedMillis;
+            this.data = data;
+            this.labelType = labelType;
+            this.charsetName = charsetName;
+            this.scannerTimestamp = scannerTimestamp;
+            this.friendlyName = friendlyName;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import android.view.ViewTreeObserver;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.PipelineLatency;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanRecord;
+
+import java.util.List;
+
+/**
+ * Completes the latency measurement of scans and status changes once the UI has drawn them.
+ * Callback and handoff stamps for everything applied to the views are held in primitive arrays
+ * until the next draw of the window, when the draw stages are recorded.
+ * Register with the window's ViewTreeObserver, all methods except {@link #recordDataHandoff} and
+ * {@link #recordStatusHandoff} must be called on the UI thread.
+ */
+public class ScanLatencyTracker implements ViewTreeObserver.OnDrawListener {
+
+    private final PipelineLatency latency = new PipelineLatency();
+
+    private final long[] pendingDataCallback;
+    private final long[] pendingDataHandoff;
+    private int pendingData = 0;
+
+    private final long[] pendingStatusCallback;
+    private final long[] pendingStatusHandoff;
+    private int pendingStatus = 0;
+
+    /**
+     * @param maxPendingData scans tracked between two draws, normally the dispatcher capacity
+     * @param maxPendingStatus status updates tracked between two draws
+     */
+    public ScanLatencyTracker(int maxPendingData, int maxPendingStatus)
+    {
+        pendingDataCallback = new long[maxPendingData];
+        pendingDataHandoff = new long[maxPendingData];
+        pendingStatusCallback = new long[maxPendingStatus];
+        pendingStatusHandoff = new long[maxPendingStatus];
+    }
+
+    /**
+     * Stamp a scan as handed off to the UI thread.  Called on the EMDK callback thread.
+     */
+    public void recordDataHandoff(ScanRecord record)
+    {
+        record.handoffNanos = System.nanoTime();
+        latency.dataHandoff.record(record.handoffNanos - record.callbackNanos);
+    }
+
+    /**
+     * Stamp a status change as handed off to the UI thread.  Called on the EMDK callback thread.
+     * @return the handoff time
+     */
+    public long recordStatusHandoff(long callbackNanos)
+    {
+        long handoffNanos = System.nanoTime();
+        latency.statusHandoff.record(handoffNanos - callbackNanos);
+        return handoffNanos;
+    }
+
+    /**
+     * A batch of scans has been applied to the views and will appear on the next draw
+     */
+    public void onDataApplied(List<ScanRecord> batch)
+    {
+        for (int i = 0; i < batch.size() && pendingData < pendingDataCallback.length; i++) {
+            ScanRecord record = batch.get(i);
+            if (record.callbackNanos == 0)
+                continue;
+            pendingDataCallback[pendingData] = record.callbackNanos;
+            pendingDataHandoff[pendingData] = record.handoffNanos;
+            pendingData++;
+        }
+    }
+
+    /**
+     * A status change has been applied to the views and will appear on the next draw
+     */
+    public void onStatusApplied(long callbackNanos, long handoffNanos)
+    {
+        if (callbackNanos == 0 || pendingStatus == pendingStatusCallback.length)
+            return;
+        pendingStatusCallback[pendingStatus] = callbackNanos;
+        pendingStatusHandoff[pendingStatus] = handoffNanos;
+        pendingStatus++;
+    }
+
+    @Override
+    public void onDraw() {
+        if (pendingData == 0 && pendingStatus == 0)
+            return;
+        long now = System.nanoTime();
+        for (int i = 0; i < pendingData; i++) {
+            latency.dataDraw.record(now - pendingDataHandoff[i]);
+            latency.dataTotal.record(now - pendingDataCallback[i]);
+        }
+        pendingData = 0;
+        for (int i = 0; i < pendingStatus; i++) {
+            latency.statusDraw.record(now - pendingStatusHandoff[i]);
+            latency.statusTotal.record(now - pendingStatusCallback[i]);
+        }
+        pendingStatus = 0;
+    }
+
+    public PipelineLatency getLatency() {return latency;}
+}
@@ -0,0 +1,160 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import android.util.Log;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanRules;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiles the site's rule file, e.g. pushed with
+ * adb push site.rules /sdcard/Android/data/&lt;package&gt;/files/rules/, into {@link ScanRules} on a
+ * background thread.  Between {@link #start()} and {@link #stop()} the file is checked every few
+ * seconds and recompiled only when it has changed, and scanning carries on under the previous
+ * rules until the new ones are handed to the listener.  A rule file which fails to compile leaves
+ * the previous rules in place.
+ */
+public class ScanRulesLoader {
+
+    private static final String TAG = "Scan Rules";
+    public static final String RULES_FILE = "site.rules";
+    private static final long CHECK_MS = 5000;
+
+    public interface Listener {
+        /**
+         * Called on the loading thread with newly compiled rules, or null if the rule file was removed
+         */
+        void onRulesChanged(ScanRules rules);
+
+        /**
+         * Called on the loading thread once, when the first check of the rule file has finished,
+         * after any onRulesChanged it caused
+         */
+        void onFirstCheck();
+    }
+
+    private final File file;
+    private final Listener listener;
+    private long loadedModified = -1; // Guarded by this, -1 while no rules are loaded
+    private long loadedLength = -1;
+    private boolean bChecked = false;
+    private boolean bClosed = false;
+    private final ScheduledExecutorService executor;
+    private ScheduledFuture<?> check = null; // UI thread only
+
+    /**
+     * @param directory holding the rule file
+     */
+    public ScanRulesLoader(File directory, Listener listener)
+    {
+        this.file = new File(directory, RULES_FILE);
+        this.listener = listener;
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ScanRulesLoad");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Compile the rule file now if it has changed since it was last loaded, then keep checking
+     * it until {@link #stop()}.  Returns immediately, call on the UI thread.
+     */
+    public void start()
+    {
+        if (check != null)
+            return;
+        check = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        }, 0, CHECK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop checking the rule file, call on the UI thread
+     */
+    public void stop()
+    {
+        if (check != null) {
+            check.cancel(false);
+            check = null;
+        }
+    }
+
+    public void close()
+    {
+        synchronized (this) {
+            bClosed = true;
+        }
+        stop();
+        executor.shutdownNow();
+    }
+
+    private synchronized void load()
+    {
+        if (bClosed)
+            return;
+        try {
+            loadChanges();
+        } catch (RuntimeException e) {
+            //  Caught so the periodic check carries on, an escaping exception would cancel it
+            Log.e(TAG, "Failed to check the rule file, keeping the previous rules: " + e);
+        } catch (Error e) {
+            Log.e(TAG, "Failed to check the rule file, keeping the previous rules: " + e);
+        }
+        if (!bChecked) {
+            bChecked = true;
+            listener.onFirstCheck();
+        }
+    }
+
+    private void loadChanges()
+    {
+        if (!file.isFile()) {
+            if (loadedModified != -1) {
+                Log.d(TAG, file + " removed, accepting every scan");
+                loadedModified = -1;
+                loadedLength = -1;
+                listener.onRulesChanged(null);
+            }
+            return;
+        }
+        long modified = file.lastModified();
+        long length = file.length();
+        if (modified == loadedModified && length == loadedLength)
+            return;
+
+        //  Remember the attempt either way so a broken file is not recompiled on every check
+        loadedModified = modified;
+        loadedLength = length;
+        try {
+            long start = System.nanoTime();
+            Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            ScanRules rules;
+            try {
+                rules = ScanRules.compile(reader);
+            } finally {
+                reader.close();
+            }
+            Log.d(TAG, "Compiled " + rules.size() + " rules to " + rules.getStates() + " states in " +
+                    (System.nanoTime() - start) / 1000000 + "ms");
+            listener.onRulesChanged(rules);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to compile " + file + ", keeping the previous rules: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import android.widget.TextView;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanRecord;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanStatsStore;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanTimestamp;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.Symbology;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Live scan counts for supervisors: the last minute by symbology and by scanner, and the last
+ * ten minutes minute by minute.  Scans leaving the processing stage are staged and moved into a
+ * {@link ScanStatsStore} on a background thread, so the processing stage never waits on the store
+ * while a query holds it.  The queries and the formatting run on that thread once a second and
+ * the UI thread only sets the resulting text, and then only when it has changed.
+ */
+public class ScanStatsPanel {
+
+    private static final long REFRESH_MS = 1000;
+    private static final long MINUTE_MS = 60 * 1000;
+    private static final int MINUTES_SHOWN = 10;
+    private static final int SCANNERS_SHOWN = 8;
+
+    private final ScanStatsStore store;
+    private final TimeZone localZone = TimeZone.getDefault();
+    private final ScheduledExecutorService executor;
+    private ScheduledFuture<?> refresh = null;
+    private TextView textView = null;   //  UI thread only
+    private String shown = null;        //  UI thread only
+
+    //  Scans recorded since the last drain, guarded by stagingLock and swapped with draining
+    private final Object stagingLock = new Object();
+    private StagedScans staged = new StagedScans();
+    private StagedScans draining = new StagedScans();
+    private boolean bDrainScheduled = false;
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    //  Query results, refresh thread only
+    private final long[] bySymbology = new long[Symbology.COUNT];
+    private final long[] byScanner = new long[SCANNERS_SHOWN];
+    private final long[] perMinute = new long[MINUTES_SHOWN];
+    private final StringBuilder text = new StringBuilder();
+
+    /**
+     * @param maxRows scans retained for the statistics
+     */
+    public ScanStatsPanel(int maxRows)
+    {
+        store = new ScanStatsStore(maxRows);
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ScanStats");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public ScanStatsStore getStore() {return store;}
+
+    /**
+     * Add a processed scan, called from the processing stage.  Scans without a usable scanner
+     * timestamp are counted at the time they were received.
+     */
+    public void record(ScanRecord record)
+    {
+        long millis = ScanTimestamp.parse(record.scannerTimestamp);
+        if (millis == ScanTimestamp.INVALID)
+            millis = localMillis(record.timestampMillis);
+        boolean bSchedule;
+        synchronized (stagingLock) {
+            staged.add(millis, record.symbology, record.scannerIndex, record.journalSequence);
+            bSchedule = !bDrainScheduled;
+            bDrainScheduled = true;
+        }
+        if (bSchedule) {
+            try {
+                executor.execute(drainTask);
+            } catch (RejectedExecutionException e) {
+                //  Shut down, the statistics are no longer shown
+            }
+        }
+    }
+
+    /**
+     * Move the staged scans into the store, on the stats thread
+     */
+    void drain()
+    {
+        synchronized (stagingLock) {
+            StagedScans swap = staged;
+            staged = draining;
+            draining = swap;
+            bDrainScheduled = false;
+        }
+        for (int i = 0; i < draining.size; i++)
+            store.append(draining.millis[i], draining.symbologies[i], draining.scanners[i], draining.sequences[i]);
+        draining.size = 0;
+    }
+
+    /**
+     * Start refreshing the given view, call on the UI thread
+     */
+    public void start(final TextView view)
+    {
+        textView = view;
+        if (refresh != null)
+            return;
+        refresh = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                final String summary = summarise();
+                view.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        show(summary);
+                    }
+                });
+            }
+        }, 0, REFRESH_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop refreshing, call on the UI thread
+     */
+    public void stop()
+    {
+        if (refresh != null) {
+            refresh.cancel(false);
+            refresh = null;
+        }
+        textView = null;
+    }
+
+    public void shutdown()
+    {
+        stop();
+        executor.shutdownNow();
+    }
+
+    private void show(String summary)
+    {
+        if (textView != null && !summary.equals(shown)) {
+            shown = summary;
+            textView.setText(summary);
+        }
+    }
+
+    private long localMillis(long millis)
+    {
+        return millis + localZone.getOffset(millis);
+    }
+
+    //  Runs on the refresh thread
+    String summarise()
+    {
+        drain();
+        long now = localMillis(System.currentTimeMillis());
+        long lastMinute = now - MINUTE_MS;
+        Arrays.fill(bySymbology, 0);
+        Arrays.fill(byScanner, 0);
+        Arrays.fill(perMinute, 0);
+        long total = store.countBySymbology(lastMinute, now + 1, bySymbology);
+        store.countByScanner(lastMinute, now + 1, byScanner);
+        //  Whole minutes, the current one last
+        long currentMinute = now - now % MINUTE_MS;
+        store.countPerBucket(currentMinute - (MINUTES_SHOWN - 1) * MINUTE_MS, MINUTE_MS, perMinute);
+
+        text.setLength(0);
+        text.append("Last minute: ").append(total).append(" scans");
+        for (int i = 0; i < bySymbology.length; i++) {
+            if (bySymbology[i] > 0)
+                text.append(", ").append(Symbology.name(i)).append(' ').append(bySymbology[i]);
+        }
+        text.append("\nScanners:");
+        for (int i = 0; i < byScanner.length; i++) {
+            if (byScanner[i] > 0)
+                text.append(" #").append(i).append(' ').append(byScanner[i]);
+        }
+        text.append("\nPer minute:");
+        for (long count : perMinute)
+            text.append(' ').append(count);
+        return text.toString();
+    }
+
+    //  Columns of scans waiting to be appended to the store, grown as needed and reused
+    private static final class StagedScans {
+        long[] millis = new long[64];
+        int[] symbologies = new int[64];
+        int[] scanners = new int[64];
+        long[] sequences = new long[64];
+        int size = 0;
+
+        void add(long timestampMillis, int symbology, int scannerIndex, long sequence)
+        {
+            if (size == millis.length) {
+                millis = Arrays.copyOf(millis, size * 2);
+                symbologies = Arrays.copyOf(symbologies, size * 2);
+                scanners = Arrays.copyOf(scanners, size * 2);
+                sequences = Arrays.copyOf(sequences, size * 2);
+            }
+            millis[size] = timestampMillis;
+            symbologies[size] = symbology;
+            scanners[size] = scannerIndex;
+            sequences[size] = sequence;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import android.util.Log;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.MetricsRegistry;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.MetricsServer;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanRules;
+import com.symbol.emdk.barcode.BarcodeManager.ConnectionState;
+import com.symbol.emdk.barcode.ScannerException;
+import com.symbol.emdk.barcode.ScannerResults;
+import com.symbol.emdk.barcode.StatusData.ScannerStates;
+
+import java.io.IOException;
+
+/**
+ * What the activity's scanner callbacks have seen, as a {@link MetricsRegistry} served in the
+ * Prometheus text format on the device's loopback interface.  Scrape it from the host with
+ * adb forward tcp:9464 tcp:9464 and http://localhost:9464/metrics.  Recording is lock free and
+ * allocation free so it stays on at full scan rate.
+ */
+public class ScannerMetrics {
+
+    private static final String TAG = "Scanner Metrics";
+    private static final String PREFIX = "emdk";
+
+    private final MetricsRegistry registry = new MetricsRegistry(PREFIX);
+    private final MetricsServer server;
+    private boolean bStopped = false; // Guarded by this, so a late start cannot follow stop
+
+    public final MetricsRegistry.Counter scansReceived = registry.counter("scans_received_total",
+            "Barcodes delivered by successful onData callbacks");
+    public final MetricsRegistry.Counter scansDisplayed = registry.counter("scans_displayed_total",
+            "Barcodes added to the on screen history");
+    public final MetricsRegistry.EnumCounter<ScannerResults> failedResults = registry.enumCounter(
+            "scan_failures_total", "onData callbacks reporting a result other than SUCCESS", "result", ScannerResults.class);
+    public final MetricsRegistry.EnumCounter<ScannerStates> statusTransitions = registry.enumCounter(
+            "status_transitions_total", "onStatus callbacks by scanner state", "state", ScannerStates.class);
+    public final MetricsRegistry.EnumCounter<ConnectionState> connectionChanges = registry.enumCounter(
+            "connection_changes_total", "onConnectionChange callbacks by state", "state", ConnectionState.class);
+    private final MetricsRegistry.Counter scansNotAllowed = registry.counter("scans_not_allowed_total",
+            "Scans matching none of the site's allow rules");
+    private final MetricsRegistry.Counter scansBlocked = registry.counter("scans_blocked_total",
+            "Scans matching one of the site's block rules");
+    private final MetricsRegistry.EnumCounter<ScannerResults> scannerExceptions = registry.enumCounter(
+            "scanner_exceptions_total", "ScannerExceptions thrown by the EMDK by result", "result", ScannerResults.class);
+    private final MetricsRegistry.Counter scannerExceptionsWithoutResult = registry.counter(
+            "scanner_exceptions_unknown_total", "ScannerExceptions thrown by the EMDK without a result");
+
+    /**
+     * @param port loopback port to serve the metrics on
+     */
+    public ScannerMetrics(int port)
+    {
+        server = new MetricsServer(registry, port);
+    }
+
+    public MetricsRegistry getRegistry() {return registry;}
+
+    /**
+     * @param verdict a {@link ScanRules} verdict
+     */
+    public void onRuleVerdict(int verdict)
+    {
+        if (verdict == ScanRules.NOT_ALLOWED)
+            scansNotAllowed.inc();
+        else if (verdict == ScanRules.BLOCKED)
+            scansBlocked.inc();
+    }
+
+    public void onScannerException(ScannerException e)
+    {
+        ScannerResults result = e.getResult();
+        if (result != null)
+            scannerExceptions.inc(result);
+        else
+            scannerExceptionsWithoutResult.inc();
+    }
+
+    /**
+     * Start serving on a new thread, binding a socket does not belong on the UI thread
+     */
+    public void start()
+    {
+        Thread starter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ScannerMetrics.this) {
+                    if (bStopped)
+                        return;
+                    try {
+                        server.start();
+                        Log.d(TAG, "Serving metrics on 127.0.0.1:" + server.getPort());
+                    } catch (IOException e) {
+                        Log.e(TAG, "Failed to start the metrics server: " + e.getMessage());
+                    }
+                }
+            }
+        }, "MetricsServerStart");
+        starter.setDaemon(true);
+        starter.start();
+    }
+
+    public synchronized void stop()
+    {
+        bStopped = true;
+        server.stop();
+    }
+}
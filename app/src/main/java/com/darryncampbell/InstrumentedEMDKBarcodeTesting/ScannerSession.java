@@ -0,0 +1,278 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.symbol.emdk.barcode.BarcodeManager;
+import com.symbol.emdk.barcode.ScanDataCollection;
+import com.symbol.emdk.barcode.Scanner;
+import com.symbol.emdk.barcode.ScannerException;
+import com.symbol.emdk.barcode.ScannerInfo;
+import com.symbol.emdk.barcode.StatusData;
+
+/**
+ * One enabled scanner device with its own data and status listeners, trigger, decoder
+ * configuration and continuous mode re-arming, so several devices can be live at the same time.
+ * Callbacks are tagged with the session, which carries the device's position in the supported
+ * devices list, before being passed on to a single {@link Listener}.
+ */
+public class ScannerSession {
+
+    public interface Listener {
+        /**
+         * Called on the EMDK callback thread
+         */
+        void onData(ScannerSession session, ScanDataCollection scanDataCollection);
+
+        /**
+         * Called on the EMDK callback thread
+         */
+        void onStatus(ScannerSession session, StatusData statusData);
+
+        /**
+         * Called on a background thread when a read or decoder configuration was rejected
+         */
+        void onError(ScannerSession session, ScannerException e);
+
+        /**
+         * Called on the reading thread when the first read after {@link #onReconnected} succeeds
+         * @param nanos time from the CONNECTED change to the read
+         */
+        void onReconnectRead(ScannerSession session, long nanos);
+    }
+
+    private static final String TAG = "Scanner Session";
+
+    private final int index;
+    private final ScannerInfo scannerInfo;
+    private final String model;
+    private final Listener listener;
+    private final DecoderConfigController decoderConfig;
+    private final ContinuousReadScheduler continuousReadScheduler;
+    private volatile Scanner scanner = null;
+    private volatile Scanner.TriggerType triggerType = null;
+    private volatile long reconnectedNanos = 0;
+
+    private final Scanner.DataListener dataListener = new Scanner.DataListener() {
+        @Override
+        public void onData(ScanDataCollection scanDataCollection) {
+            listener.onData(ScannerSession.this, scanDataCollection);
+        }
+    };
+
+    private final Scanner.StatusListener statusListener = new Scanner.StatusListener() {
+        @Override
+        public void onStatus(StatusData statusData) {
+            listener.onStatus(ScannerSession.this, statusData);
+        }
+    };
+
+    //  A read which waited for a decoder change, runs on the configuration thread
+    private final Runnable deferredRead = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                readNow();
+            } catch (ScannerException e) {
+                listener.onError(ScannerSession.this, e);
+            }
+        }
+    };
+
+    /**
+     * @param index position of the device in the supported devices list, used to tag its scans
+     * @param scannerInfo the device
+     * @param decoderPreferences where the last decoders applied to each model are kept
+     * @param rearmFloorMillis shortest delay between IDLE and the next read in continuous mode
+     */
+    public ScannerSession(int index, ScannerInfo scannerInfo, SharedPreferences decoderPreferences,
+                          long rearmFloorMillis, Listener listener)
+    {
+        this.index = index;
+        this.scannerInfo = scannerInfo;
+        String modelNumber = scannerInfo.getModelNumber();
+        this.model = (modelNumber != null) ? modelNumber : scannerInfo.getFriendlyName();
+        this.listener = listener;
+        this.decoderConfig = new DecoderConfigController(decoderPreferences, new DecoderConfigController.Listener() {
+            @Override
+            public void onApplyFailed(ScannerException e) {
+                ScannerSession.this.listener.onError(ScannerSession.this, e);
+            }
+        });
+        this.continuousReadScheduler = new ContinuousReadScheduler(rearmFloorMillis, new ContinuousReadScheduler.Listener() {
+            @Override
+            public void onRearmFailed(ScannerException e) {
+                ScannerSession.this.listener.onError(ScannerSession.this, e);
+            }
+
+            @Override
+            public void onCycleRate(String model, double cyclesPerSecond, long delayMillis) {
+                Log.d(TAG, "Continuous: " + getFriendlyName() + " (" + model + ") " +
+                        String.format("%.1f", cyclesPerSecond) + " cycles/s, re-arm delay " + delayMillis + " ms");
+            }
+        });
+    }
+
+    public int getIndex() {return index;}
+
+    public ScannerInfo getScannerInfo() {return scannerInfo;}
+
+    public String getFriendlyName() {return scannerInfo.getFriendlyName();}
+
+    /**
+     * @return the model number, or the friendly name if the device does not report one
+     */
+    public String getModel() {return model;}
+
+    public boolean isEnabled()
+    {
+        Scanner device = scanner;
+        return device != null && device.isEnabled();
+    }
+
+    public ContinuousReadScheduler getContinuousReadScheduler() {return continuousReadScheduler;}
+
+    /**
+     * Get the device from the barcode manager and enable it with the given decoders and the last
+     * trigger type set.  A suspended session can be enabled again the same way.
+     * @return false if the barcode manager could not provide the device
+     */
+    public boolean enable(BarcodeManager barcodeManager, long decoderMask) throws ScannerException
+    {
+        Scanner device = barcodeManager.getDevice(scannerInfo);
+        if (device == null)
+            return false;
+        scanner = device;
+        device.addDataListener(dataListener);
+        device.addStatusListener(statusListener);
+        device.enable();
+        if (triggerType != null)
+            device.triggerType = triggerType;
+        decoderConfig.request(decoderMask);
+        decoderConfig.attach(device, model);
+        return true;
+    }
+
+    /**
+     * Remembered and applied again whenever the session is enabled
+     */
+    public void setTrigger(Scanner.TriggerType triggerType)
+    {
+        this.triggerType = triggerType;
+        Scanner device = scanner;
+        if (device != null)
+            device.triggerType = triggerType;
+    }
+
+    /**
+     * The device has been enabled again after a CONNECTED change, the next successful read is
+     * reported through {@link Listener#onReconnectRead}
+     * @param connectedNanos System.nanoTime() of the CONNECTED change
+     */
+    public void onReconnected(long connectedNanos)
+    {
+        reconnectedNanos = connectedNanos;
+    }
+
+    /**
+     * Applied off the calling thread, coalesced with other changes made in quick succession
+     */
+    public void requestDecoders(long mask)
+    {
+        decoderConfig.request(mask);
+    }
+
+    /**
+     * Submit a read once any decoder change made moments ago has reached the scanner.  Never
+     * waits for the change: the read is then submitted from the configuration thread and a
+     * rejection is reported through {@link Listener#onError}.
+     * @return false if the device was released, e.g. by a disconnect, and no read was submitted
+     */
+    public boolean read() throws ScannerException
+    {
+        if (scanner == null)
+            return false;
+        if (decoderConfig.runAfterApply(deferredRead))
+            return true;
+        return readNow();
+    }
+
+    private boolean readNow() throws ScannerException
+    {
+        Scanner device = scanner;
+        if (device == null)
+            return false;
+        device.read();
+        long connected = reconnectedNanos;
+        if (connected != 0) {
+            reconnectedNanos = 0;
+            listener.onReconnectRead(this, System.nanoTime() - connected);
+        }
+        return true;
+    }
+
+    public void cancelRead() throws ScannerException
+    {
+        continuousReadScheduler.cancel();
+        Scanner device = scanner;
+        if (device != null)
+            device.cancelRead();
+    }
+
+    /**
+     * The scanner reported IDLE in continuous mode, schedule the next read
+     */
+    public void onIdle()
+    {
+        Scanner device = scanner;
+        if (device != null)
+            continuousReadScheduler.onIdle(device, model);
+    }
+
+    public void onWaiting()
+    {
+        continuousReadScheduler.onWaiting();
+    }
+
+    /**
+     * Disable and release the device and stop this session's background threads
+     * @throws ScannerException if the device could not be released, the session is shut down regardless
+     */
+    public void release() throws ScannerException
+    {
+        continuousReadScheduler.shutdown();
+        decoderConfig.shutdown();
+        releaseDevice();
+    }
+
+    /**
+     * Disable and release the device but keep the session, with its trigger type, decoder
+     * configuration and background threads, so it can be enabled again quickly once the device
+     * reconnects
+     * @throws ScannerException if the device could not be released
+     */
+    public void suspend() throws ScannerException
+    {
+        continuousReadScheduler.cancel();
+        reconnectedNanos = 0;
+        releaseDevice();
+    }
+
+    private void releaseDevice() throws ScannerException
+    {
+        decoderConfig.detach();
+        Scanner released = scanner;
+        if (released == null)
+            return;
+        scanner = null;
+        try {
+            released.cancelRead();
+            released.disable();
+        } catch (ScannerException e) {
+            //  Already disabled, e.g. a Bluetooth scanner which has disconnected
+        }
+        released.removeDataListener(dataListener);
+        released.removeStatusListener(statusListener);
+        released.release();
+    }
+}
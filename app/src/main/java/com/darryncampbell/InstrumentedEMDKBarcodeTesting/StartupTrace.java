@@ -0,0 +1,143 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Trace;
+import android.util.Log;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.PhaseTrace;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Times the phases of a cold start, from onCreate to the scanner first reporting IDLE.  Phases
+ * which start and end on one thread also appear as systrace sections (API 18+), and once the
+ * scanner is ready the whole timeline is logged and written as a Chrome trace JSON file.
+ */
+public class StartupTrace {
+
+    private static final String TAG = "Startup Trace";
+
+    public static final String PHASE_EMDK_BIND = "emdkBind";
+    public static final String PHASE_INFLATE = "inflate";
+    public static final String PHASE_VIEW_SETUP = "viewSetup";
+    public static final String PHASE_BARCODE_MANAGER = "barcodeManager";
+    public static final String PHASE_ENUMERATE = "enumerateDevices";
+    public static final String PHASE_SCANNER_INIT = "scannerInit";
+    public static final String PHASE_SCANNER_ENABLE = "scannerEnable";
+    public static final String MARK_SCANNER_READY = "scannerReady";
+    public static final String MARK_FIRST_SCAN = "firstScan";
+
+    private final PhaseTrace trace;
+    private final Context context;
+    private boolean bReady = false;
+    private boolean bFirstScan = false;
+
+    /**
+     * @param originNanos System.nanoTime() at the start of onCreate
+     * @param context the trace is written to its external files directory when the scanner is ready
+     */
+    public StartupTrace(long originNanos, Context context)
+    {
+        this.trace = new PhaseTrace(originNanos);
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Start a phase which will end on the same thread
+     * @return the start time to pass to {@link #end}
+     */
+    public long begin(String name)
+    {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+            Trace.beginSection(name);
+        return System.nanoTime();
+    }
+
+    public void end(String name, long startNanos)
+    {
+        long now = System.nanoTime();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+            Trace.endSection();
+        trace.record(name, Thread.currentThread().getName(), startNanos, now);
+    }
+
+    /**
+     * Record a phase which started on one thread or callback and ended on another, e.g. binding to
+     * the EMDK service.  These cannot be systrace sections.
+     */
+    public void endAsync(String name, long startNanos)
+    {
+        trace.record(name, "async", startNanos, System.nanoTime());
+    }
+
+    /**
+     * The scanner reported IDLE, startup is complete.  Only the first call has any effect.
+     * May be called from any thread.
+     */
+    public void onScannerReady()
+    {
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (bReady)
+                return;
+            bReady = true;
+        }
+        trace.mark(MARK_SCANNER_READY, Thread.currentThread().getName(), now);
+        export();
+    }
+
+    /**
+     * Data was received for the first time.  May be called from any thread.
+     */
+    public void onScan()
+    {
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (bFirstScan)
+                return;
+            bFirstScan = true;
+        }
+        trace.mark(MARK_FIRST_SCAN, Thread.currentThread().getName(), now);
+        Log.i(TAG, "First scan " + (now - trace.getOriginNanos()) / 1000000L + "ms after onCreate");
+    }
+
+    public PhaseTrace getTrace() {return trace;}
+
+    private void export()
+    {
+        StringBuilder summary = new StringBuilder("Scanner ready ")
+                .append(trace.getEndNanos(MARK_SCANNER_READY) / 1000000L).append("ms after onCreate\n");
+        trace.appendSummary(summary);
+        Log.i(TAG, summary.toString());
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                File directory = context.getExternalFilesDir("traces");
+                if (directory == null)
+                    return;
+                StringBuilder json = new StringBuilder();
+                trace.appendJson(json);
+                File file = new File(directory, "startup-" + System.currentTimeMillis() + ".json");
+                FileWriter writer = null;
+                try {
+                    writer = new FileWriter(file);
+                    writer.write(json.toString());
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to write startup trace: " + e.getMessage());
+                } finally {
+                    if (writer != null) {
+                        try {
+                            writer.close();
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+            }
+        }, "StartupTraceExport").start();
+    }
+}
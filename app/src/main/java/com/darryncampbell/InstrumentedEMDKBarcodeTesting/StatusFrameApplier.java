@@ -0,0 +1,107 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScannerStateMachine;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScannerStateMachine.Snapshot;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Applies the newest {@link ScannerStateMachine} snapshot to the views at most once per display
+ * frame, however many were published since the last one.  The status text is only set when it
+ * differs from what is shown and the controls only when their enabled state changes.
+ * Must be constructed on the UI thread.
+ */
+public class StatusFrameApplier implements Choreographer.FrameCallback {
+
+    public interface Views {
+        /**
+         * Called on the UI thread when the status text differs from the one last shown
+         */
+        void showStatus(Snapshot snapshot);
+
+        /**
+         * Called on the UI thread when the controls should change their enabled state
+         */
+        void enableControls(boolean bEnabled);
+    }
+
+    private final ScannerStateMachine stateMachine;
+    private final Views views;
+    private final Choreographer choreographer;
+    private final Handler uiHandler;
+    private final AtomicBoolean bFrameScheduled = new AtomicBoolean(false);
+
+    //  UI thread only
+    private volatile long appliedVersion = 0;
+    private String shownStatus = null;
+    private boolean bControlsEnabled = true;
+    private long applied = 0;
+
+    private final Runnable scheduleFrame = new Runnable() {
+        @Override
+        public void run() {
+            choreographer.postFrameCallback(StatusFrameApplier.this);
+        }
+    };
+
+    public StatusFrameApplier(ScannerStateMachine stateMachine, Views views)
+    {
+        this.stateMachine = stateMachine;
+        this.views = views;
+        this.choreographer = Choreographer.getInstance();
+        this.uiHandler = new Handler(Looper.getMainLooper());
+    }
+
+    public ScannerStateMachine getStateMachine() {return stateMachine;}
+
+    /**
+     * Something has been published to the state machine, apply it on the next frame.  Safe to
+     * call from any thread.
+     */
+    public void schedule()
+    {
+        if (bFrameScheduled.compareAndSet(false, true)) {
+            if (Looper.myLooper() == Looper.getMainLooper())
+                choreographer.postFrameCallback(this);
+            else
+                uiHandler.post(scheduleFrame);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos)
+    {
+        //  Clear the flag before reading so anything published from here on schedules another frame
+        bFrameScheduled.set(false);
+        Snapshot snapshot = stateMachine.getLatest();
+        if (snapshot.version == appliedVersion)
+            return;
+        appliedVersion = snapshot.version;
+        applied++;
+        if (!snapshot.status.equals(shownStatus)) {
+            shownStatus = snapshot.status;
+            views.showStatus(snapshot);
+        }
+        if (snapshot.bControlsEnabled != bControlsEnabled) {
+            bControlsEnabled = snapshot.bControlsEnabled;
+            views.enableControls(bControlsEnabled);
+        }
+    }
+
+    /**
+     * @return true when the newest snapshot has been applied
+     */
+    public boolean isIdle()
+    {
+        return !bFrameScheduled.get() && stateMachine.getLatest().version == appliedVersion;
+    }
+
+    /**
+     * @return snapshots applied to the views, UI thread only
+     */
+    public long getApplied() {return applied;}
+}
@@ -0,0 +1,132 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * SharedPreferences held in memory for local unit tests, edits are applied as soon as they are
+ * committed or applied
+ */
+public class InMemorySharedPreferences implements SharedPreferences {
+
+    private final Map<String, Object> values = new HashMap<String, Object>();
+
+    @Override
+    public synchronized Map<String, ?> getAll()
+    {
+        return new HashMap<String, Object>(values);
+    }
+
+    @Override
+    public synchronized String getString(String key, String defValue)
+    {
+        return values.containsKey(key) ? (String) values.get(key) : defValue;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized Set<String> getStringSet(String key, Set<String> defValues)
+    {
+        return values.containsKey(key) ? (Set<String>) values.get(key) : defValues;
+    }
+
+    @Override
+    public synchronized int getInt(String key, int defValue)
+    {
+        return values.containsKey(key) ? (Integer) values.get(key) : defValue;
+    }
+
+    @Override
+    public synchronized long getLong(String key, long defValue)
+    {
+        return values.containsKey(key) ? (Long) values.get(key) : defValue;
+    }
+
+    @Override
+    public synchronized float getFloat(String key, float defValue)
+    {
+        return values.containsKey(key) ? (Float) values.get(key) : defValue;
+    }
+
+    @Override
+    public synchronized boolean getBoolean(String key, boolean defValue)
+    {
+        return values.containsKey(key) ? (Boolean) values.get(key) : defValue;
+    }
+
+    @Override
+    public synchronized boolean contains(String key)
+    {
+        return values.containsKey(key);
+    }
+
+    @Override
+    public Editor edit()
+    {
+        return new InMemoryEditor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener)
+    {
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener)
+    {
+    }
+
+    private class InMemoryEditor implements Editor {
+
+        private final Map<String, Object> changes = new HashMap<String, Object>();
+        private final Set<String> removals = new HashSet<String>();
+        private boolean bClear = false;
+
+        @Override
+        public Editor putString(String key, String value) {changes.put(key, value); return this;}
+
+        @Override
+        public Editor putStringSet(String key, Set<String> values) {changes.put(key, new HashSet<String>(values)); return this;}
+
+        @Override
+        public Editor putInt(String key, int value) {changes.put(key, value); return this;}
+
+        @Override
+        public Editor putLong(String key, long value) {changes.put(key, value); return this;}
+
+        @Override
+        public Editor putFloat(String key, float value) {changes.put(key, value); return this;}
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {changes.put(key, value); return this;}
+
+        @Override
+        public Editor remove(String key) {removals.add(key); return this;}
+
+        @Override
+        public Editor clear() {bClear = true; return this;}
+
+        @Override
+        public boolean commit()
+        {
+            synchronized (InMemorySharedPreferences.this) {
+                if (bClear)
+                    values.clear();
+                for (String key : removals)
+                    values.remove(key);
+                values.putAll(changes);
+            }
+            return true;
+        }
+
+        @Override
+        public void apply()
+        {
+            commit();
+        }
+    }
+}
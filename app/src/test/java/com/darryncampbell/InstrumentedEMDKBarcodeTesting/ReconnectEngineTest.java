@@ -0,0 +1,160 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.DecoderSelection;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ReconnectPolicy;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.Symbology;
+import com.symbol.emdk.FakeEmdk;
+import com.symbol.emdk.barcode.BarcodeManager;
+import com.symbol.emdk.barcode.FakeScannerDevice;
+import com.symbol.emdk.barcode.ScanDataCollection;
+import com.symbol.emdk.barcode.ScannerException;
+import com.symbol.emdk.barcode.ScannerInfo;
+import com.symbol.emdk.barcode.ScannerResults;
+import com.symbol.emdk.barcode.StatusData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ReconnectEngineTest {
+
+    private static final long TIMEOUT_MS = 2000;
+    private static final long SETTLE_MS = 30;
+    private static final long MASK = DecoderSelection.bit(Symbology.CODE128);
+
+    private FakeEmdk emdk;
+    private FakeScannerDevice bluetooth;
+    private ScannerSession session;
+    private ReconnectEngine engine;
+
+    @Before
+    public void setUp() throws ScannerException
+    {
+        emdk = FakeEmdk.install();
+        bluetooth = new FakeScannerDevice("Bluetooth Scanner", "RS6000", ScannerInfo.ConnectionType.BLUETOOTH_SSI);
+        emdk.addDevice(bluetooth);
+        session = new ScannerSession(0, bluetooth.getScannerInfo(), new InMemorySharedPreferences(), 10, new ScannerSession.Listener() {
+            @Override
+            public void onData(ScannerSession session, ScanDataCollection scanDataCollection) {}
+
+            @Override
+            public void onStatus(ScannerSession session, StatusData statusData) {}
+
+            @Override
+            public void onError(ScannerSession session, ScannerException e) {}
+
+            @Override
+            public void onReconnectRead(ScannerSession session, long nanos) {
+                engine.onReconnectRead(nanos);
+            }
+        });
+        assertTrue(session.enable(emdk.getBarcodeManager(), MASK));
+
+        engine = new ReconnectEngine(new ReconnectPolicy(4, SETTLE_MS, 5, 20, 4), new ReconnectEngine.Attacher() {
+            @Override
+            public boolean isAttached(int index) {
+                return session.isEnabled();
+            }
+
+            @Override
+            public boolean attach(int index, long connectedNanos) throws ScannerException {
+                session.suspend();
+                boolean bEnabled = false;
+                try {
+                    bEnabled = session.enable(emdk.getBarcodeManager(), MASK);
+                } finally {
+                    if (bEnabled)
+                        session.onReconnected(connectedNanos);
+                    else
+                        session.suspend();
+                }
+                return bEnabled;
+            }
+
+            @Override
+            public void detach(int index) {
+                try {
+                    session.suspend();
+                } catch (ScannerException e) {
+                    //  Already gone
+                }
+            }
+
+            @Override
+            public void onAbandoned(int index, ScannerException lastError) {}
+        });
+        emdk.getBarcodeManager().addConnectionListener(new BarcodeManager.ScannerConnectionListener() {
+            @Override
+            public void onConnectionChange(ScannerInfo scannerInfo, BarcodeManager.ConnectionState connectionState) {
+                engine.onConnectionChange(0, connectionState == BarcodeManager.ConnectionState.CONNECTED);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws ScannerException
+    {
+        engine.shutdown();
+        session.release();
+        emdk.shutdown();
+    }
+
+    @Test
+    public void flappingScannerIsReattachedOnce() throws Exception
+    {
+        for (int i = 0; i < 3; i++) {
+            bluetooth.disconnect();
+            bluetooth.connect();
+        }
+        assertTrue(emdk.awaitCallbacks(TIMEOUT_MS));
+        waitForAttaches(1);
+
+        //  Enabled once by setUp and once more for the whole burst
+        assertEquals(2, bluetooth.getEnables());
+        assertEquals(5, engine.getPolicy().getCollapsed());
+        assertTrue(session.isEnabled());
+
+        assertTrue(session.read());
+        //  The read may wait on the configuration thread for the re-attach's decoder check
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (engine.getConnectedToRead().getCount() < 1 && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        assertEquals(1, engine.getConnectedToRead().getCount());
+    }
+
+    @Test
+    public void failedAttachIsRetriedWithBackoff() throws Exception
+    {
+        bluetooth.failNext(FakeScannerDevice.Operation.ENABLE, ScannerResults.FAILURE, 2);
+        bluetooth.disconnect();
+        bluetooth.connect();
+        assertTrue(emdk.awaitCallbacks(TIMEOUT_MS));
+        waitForAttaches(1);
+
+        assertEquals(2, engine.getPolicy().getFailures());
+        assertTrue(session.isEnabled());
+        assertEquals(1, engine.getConnectedToAttached().getCount());
+    }
+
+    @Test
+    public void disconnectReleasesTheDevice() throws Exception
+    {
+        bluetooth.disconnect();
+        assertTrue(emdk.awaitCallbacks(TIMEOUT_MS));
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (engine.getPolicy().getDetaches() == 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        assertEquals(1, engine.getPolicy().getDetaches());
+        assertFalse(session.isEnabled());
+    }
+
+    private void waitForAttaches(long attaches) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (engine.getPolicy().getAttaches() < attaches && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        assertEquals(attaches, engine.getPolicy().getAttaches());
+    }
+}
@@ -0,0 +1,57 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanRecord;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ScanStatsStore;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.Symbology;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class ScanStatsPanelTest {
+
+    private static final long TIMEOUT_MS = 2000;
+
+    @Test
+    public void recordingDoesNotWaitForAQueryHoldingTheStore() throws Exception
+    {
+        ScanStatsPanel panel = new ScanStatsPanel(1000);
+        final ScanStatsStore store = panel.getStore();
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        //  Stands in for a long query over a full store
+        Thread query = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (store) {
+                    locked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+        query.start();
+        locked.await();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 500; i++) {
+            ScanRecord record = new ScanRecord(new byte[] {'1'}, Symbology.EAN13, 1500000000000L + i);
+            record.scannerIndex = i % 2;
+            panel.record(record);
+        }
+        assertTrue((System.nanoTime() - start) / 1000000L < TIMEOUT_MS);
+
+        release.countDown();
+        query.join();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (store.getAppended() < 500 && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertEquals(500, store.getAppended());
+        panel.shutdown();
+    }
+}
@@ -0,0 +1,181 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting;
+
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.DecoderSelection;
+import com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.Symbology;
+import com.symbol.emdk.FakeEmdk;
+import com.symbol.emdk.barcode.FakeScannerDevice;
+import com.symbol.emdk.barcode.ScanDataCollection;
+import com.symbol.emdk.barcode.Scanner;
+import com.symbol.emdk.barcode.ScannerException;
+import com.symbol.emdk.barcode.ScannerInfo;
+import com.symbol.emdk.barcode.StatusData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class ScannerSessionTest {
+
+    private static final long TIMEOUT_MS = 2000;
+    private static final long EAN13_ONLY = DecoderSelection.bit(Symbology.EAN13);
+
+    private FakeEmdk emdk;
+    private FakeScannerDevice imager;
+    private final InMemorySharedPreferences preferences = new InMemorySharedPreferences();
+    private final RecordingListener listener = new RecordingListener();
+    private final List<ScannerSession> sessions = new ArrayList<ScannerSession>();
+
+    @Before
+    public void setUp()
+    {
+        emdk = FakeEmdk.install();
+        imager = new FakeScannerDevice("2D Barcode Imager", "SE4750", ScannerInfo.ConnectionType.INTERNAL);
+        emdk.addDevice(imager);
+    }
+
+    @After
+    public void tearDown() throws ScannerException
+    {
+        for (ScannerSession session : sessions)
+            session.release();
+        emdk.shutdown();
+    }
+
+    @Test
+    public void decodersAreAppliedOnceAndRememberedPerModel() throws Exception
+    {
+        ScannerSession first = enable(imager, EAN13_ONLY);
+        waitForConfigWrites(imager, 1);
+        assertFalse(imager.getDeviceConfig().decoderParams.ean8.enabled);
+        assertTrue(imager.getDeviceConfig().decoderParams.ean13.enabled);
+
+        //  A second scanner of the same model is trusted to hold the persisted configuration
+        FakeScannerDevice sibling = new FakeScannerDevice("Second Imager", "SE4750", ScannerInfo.ConnectionType.INTERNAL);
+        emdk.addDevice(sibling);
+        ScannerSession second = enable(sibling, EAN13_ONLY);
+        second.read();
+        assertEquals(0, sibling.getConfigReads());
+        assertEquals(0, sibling.getConfigWrites());
+    }
+
+    @Test
+    public void readDeliversThePresentedLabel() throws Exception
+    {
+        ScannerSession session = enable(imager, EAN13_ONLY);
+        imager.scan(ScanDataCollection.LabelType.EAN13, "5012345678900");
+        assertTrue(session.read());
+        waitForReads(imager, 1);
+        assertTrue(emdk.awaitCallbacks(TIMEOUT_MS));
+
+        assertEquals(1, listener.scans.size());
+        ScanDataCollection.ScanData data = listener.scans.get(0).getScanData().get(0);
+        assertEquals("5012345678900", data.getData());
+        assertEquals(ScanDataCollection.LabelType.EAN13, data.getLabelType());
+        assertEquals(4, listener.states.size());
+        assertEquals(StatusData.ScannerStates.IDLE, listener.states.get(0));
+        assertEquals(StatusData.ScannerStates.WAITING, listener.states.get(1));
+        assertEquals(StatusData.ScannerStates.SCANNING, listener.states.get(2));
+        assertEquals(StatusData.ScannerStates.IDLE, listener.states.get(3));
+        assertFalse(imager.isReadPending());
+    }
+
+    @Test
+    public void suspendedSessionReattachesWithItsTriggerAndTimesTheFirstRead() throws Exception
+    {
+        FakeScannerDevice bluetooth = new FakeScannerDevice("Bluetooth Scanner", "RS6000", ScannerInfo.ConnectionType.BLUETOOTH_SSI);
+        emdk.addDevice(bluetooth);
+        ScannerSession session = enable(bluetooth, EAN13_ONLY);
+        session.setTrigger(Scanner.TriggerType.SOFT_ALWAYS);
+
+        bluetooth.disconnect();
+        session.suspend();
+        assertFalse(session.isEnabled());
+        assertFalse(session.read());
+        try {
+            session.enable(emdk.getBarcodeManager(), EAN13_ONLY);
+            fail("Enabled a disconnected scanner");
+        } catch (ScannerException e) {
+            //  Expected, the device is out of range
+            session.suspend();
+        }
+
+        bluetooth.connect();
+        assertTrue(session.enable(emdk.getBarcodeManager(), EAN13_ONLY));
+        assertEquals(Scanner.TriggerType.SOFT_ALWAYS, bluetooth.getTriggerType());
+        session.onReconnected(System.nanoTime());
+        assertTrue(session.read());
+        waitForReads(bluetooth, 1);
+        assertEquals(1, listener.reconnectReads.size());
+        assertTrue(listener.reconnectReads.get(0) >= 0);
+    }
+
+    @Test
+    public void readBehindADecoderChangeDoesNotWaitForIt() throws Exception
+    {
+        ScannerSession session = enable(imager, EAN13_ONLY);
+        waitForConfigWrites(imager, 1);
+        imager.setConfigLatencyMillis(500);
+        session.requestDecoders(EAN13_ONLY | DecoderSelection.bit(Symbology.EAN8));
+
+        long start = System.nanoTime();
+        assertTrue(session.read());
+        assertTrue((System.nanoTime() - start) / 1000000L < 250);
+        assertEquals(0, imager.getReads());
+
+        //  Submitted from the configuration thread once the change has reached the scanner
+        waitForReads(imager, 1);
+        assertEquals(2, imager.getConfigWrites());
+        assertTrue(imager.getDeviceConfig().decoderParams.ean8.enabled);
+        assertTrue(listener.errors.isEmpty());
+    }
+
+    private static void waitForReads(FakeScannerDevice device, int reads) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (device.getReads() < reads && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        assertEquals(reads, device.getReads());
+    }
+
+    private static void waitForConfigWrites(FakeScannerDevice device, int writes) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (device.getConfigWrites() < writes && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        assertEquals(writes, device.getConfigWrites());
+    }
+
+    private ScannerSession enable(FakeScannerDevice device, long mask) throws ScannerException
+    {
+        ScannerSession session = new ScannerSession(sessions.size(), device.getScannerInfo(), preferences, 10, listener);
+        sessions.add(session);
+        assertTrue(session.enable(emdk.getBarcodeManager(), mask));
+        return session;
+    }
+
+    private static class RecordingListener implements ScannerSession.Listener {
+
+        final List<ScanDataCollection> scans = new CopyOnWriteArrayList<ScanDataCollection>();
+        final List<StatusData.ScannerStates> states = new CopyOnWriteArrayList<StatusData.ScannerStates>();
+        final List<ScannerException> errors = new CopyOnWriteArrayList<ScannerException>();
+        final List<Long> reconnectReads = new CopyOnWriteArrayList<Long>();
+
+        @Override
+        public void onData(ScannerSession session, ScanDataCollection scanDataCollection) {scans.add(scanDataCollection);}
+
+        @Override
+        public void onStatus(ScannerSession session, StatusData statusData) {states.add(statusData.getState());}
+
+        @Override
+        public void onError(ScannerSession session, ScannerException e) {errors.add(e);}
+
+        @Override
+        public void onReconnectRead(ScannerSession session, long nanos) {reconnectReads.add(nanos);}
+    }
+}
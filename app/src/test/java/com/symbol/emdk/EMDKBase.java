@@ -0,0 +1,7 @@
+package com.symbol.emdk;
+
+/**
+ * Fake of the EMDK feature base type for local unit tests, see {@link FakeEmdk}
+ */
+public interface EMDKBase {
+}
@@ -0,0 +1,55 @@
+package com.symbol.emdk;
+
+import android.content.Context;
+
+/**
+ * Fake of the EMDK manager for local unit tests.  {@link #getEMDKManager} binds to the installed
+ * {@link FakeEmdk} and onOpened follows on its callback thread.
+ */
+public class EMDKManager {
+
+    public enum FEATURE_TYPE {
+        BARCODE,
+        PROFILE,
+        VERSION
+    }
+
+    public interface EMDKListener {
+        void onOpened(EMDKManager emdkManager);
+
+        void onClosed();
+    }
+
+    private final FakeEmdk emdk;
+
+    EMDKManager(FakeEmdk emdk)
+    {
+        this.emdk = emdk;
+    }
+
+    public static EMDKResults getEMDKManager(Context context, EMDKListener listener)
+    {
+        return FakeEmdk.current().open(listener);
+    }
+
+    /**
+     * @return the barcode manager for BARCODE, otherwise null as no other feature is faked
+     */
+    public EMDKBase getInstance(FEATURE_TYPE featureType)
+    {
+        if (featureType != FEATURE_TYPE.BARCODE || emdk.isReleased())
+            return null;
+        return emdk.getBarcodeManager();
+    }
+
+    public void release(FEATURE_TYPE featureType)
+    {
+        if (featureType == FEATURE_TYPE.BARCODE)
+            emdk.getBarcodeManager().release();
+    }
+
+    public void release()
+    {
+        emdk.release();
+    }
+}
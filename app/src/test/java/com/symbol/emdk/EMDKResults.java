@@ -0,0 +1,22 @@
+package com.symbol.emdk;
+
+/**
+ * Fake of the EMDK result for local unit tests, see {@link FakeEmdk}
+ */
+public class EMDKResults {
+
+    public enum STATUS_CODE {
+        SUCCESS,
+        FAILURE,
+        UNKNOWN,
+        EMDK_NOT_OPENED,
+        FEATURE_NOT_SUPPORTED
+    }
+
+    public STATUS_CODE statusCode;
+
+    EMDKResults(STATUS_CODE statusCode)
+    {
+        this.statusCode = statusCode;
+    }
+}
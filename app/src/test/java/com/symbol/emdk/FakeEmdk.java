@@ -0,0 +1,190 @@
+package com.symbol.emdk;
+
+import com.symbol.emdk.barcode.BarcodeManager;
+import com.symbol.emdk.barcode.FakeScannerDevice;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scriptable stand-in for the EMDK service so scanner handling can be unit tested on a plain JVM
+ * in milliseconds, without a Zebra device.  The fake EMDK classes in this source tree mirror the
+ * parts of the EMDK API the app uses; a test installs a FakeEmdk, adds {@link FakeScannerDevice}s
+ * describing the hardware and its latencies and failures, and drives scans and connection
+ * changes through them.  As with the real EMDK every listener callback is delivered on a
+ * separate callback thread, which {@link #awaitCallbacks} waits on.
+ * <p>
+ * The installed runtime is process wide, so test classes using it run one at a time in each
+ * test JVM; Gradle runs the test classes in parallel across several JVMs.
+ */
+public class FakeEmdk {
+
+    private static volatile FakeEmdk installed = null;
+
+    private final ScheduledThreadPoolExecutor callbacks;
+    private final BarcodeManager barcodeManager;
+    private final EMDKManager emdkManager;
+    private long openLatencyMillis = 0;
+    private EMDKResults.STATUS_CODE openResult = EMDKResults.STATUS_CODE.SUCCESS;
+    private EMDKManager.EMDKListener listener = null;
+    private volatile boolean bReleased = false;
+
+    private FakeEmdk()
+    {
+        callbacks = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "FakeEMDKCallbacks");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        barcodeManager = new BarcodeManager(this);
+        emdkManager = new EMDKManager(this);
+    }
+
+    /**
+     * Replace any installed runtime with a new one, which EMDKManager.getEMDKManager() then binds to
+     */
+    public static synchronized FakeEmdk install()
+    {
+        if (installed != null)
+            installed.shutdown();
+        installed = new FakeEmdk();
+        return installed;
+    }
+
+    public static FakeEmdk current()
+    {
+        FakeEmdk emdk = installed;
+        if (emdk == null)
+            throw new IllegalStateException("FakeEmdk.install() has not been called");
+        return emdk;
+    }
+
+    /**
+     * @param millis delay between getEMDKManager() and onOpened
+     */
+    public synchronized FakeEmdk setOpenLatencyMillis(long millis)
+    {
+        openLatencyMillis = millis;
+        return this;
+    }
+
+    /**
+     * @param result returned by getEMDKManager(), onOpened only follows SUCCESS
+     */
+    public synchronized FakeEmdk setOpenResult(EMDKResults.STATUS_CODE result)
+    {
+        openResult = result;
+        return this;
+    }
+
+    public FakeEmdk addDevice(FakeScannerDevice device)
+    {
+        barcodeManager.addDevice(device);
+        return this;
+    }
+
+    public BarcodeManager getBarcodeManager() {return barcodeManager;}
+
+    public EMDKManager getEmdkManager() {return emdkManager;}
+
+    public boolean isReleased() {return bReleased;}
+
+    /**
+     * Report that the EMDK service went away, as onClosed
+     */
+    public void close()
+    {
+        final EMDKManager.EMDKListener closed;
+        synchronized (this) {
+            closed = listener;
+        }
+        if (closed != null) {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    closed.onClosed();
+                }
+            });
+        }
+    }
+
+    /**
+     * Run a callback on the callback thread, after the callbacks already posted
+     */
+    public void post(Runnable callback)
+    {
+        post(callback, 0);
+    }
+
+    public void post(Runnable callback, long delayMillis)
+    {
+        if (!callbacks.isShutdown())
+            callbacks.schedule(callback, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Wait until every callback posted so far, including delayed ones, and any they posted in
+     * turn has been delivered
+     * @return false on timeout
+     */
+    public boolean awaitCallbacks(long timeoutMillis) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (System.currentTimeMillis() < deadline) {
+            if (callbacks.getQueue().isEmpty() && callbacks.getActiveCount() == 0 &&
+                    callbacks.getCompletedTaskCount() == callbacks.getTaskCount())
+                return true;
+            Thread.sleep(1);
+        }
+        return false;
+    }
+
+    public void shutdown()
+    {
+        callbacks.shutdownNow();
+        synchronized (FakeEmdk.class) {
+            if (installed == this)
+                installed = null;
+        }
+    }
+
+    synchronized EMDKResults open(EMDKManager.EMDKListener listener)
+    {
+        this.listener = listener;
+        bReleased = false;
+        if (openResult == EMDKResults.STATUS_CODE.SUCCESS) {
+            final EMDKManager.EMDKListener opened = listener;
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    opened.onOpened(emdkManager);
+                }
+            }, openLatencyMillis);
+        }
+        return new EMDKResults(openResult);
+    }
+
+    void release()
+    {
+        bReleased = true;
+        barcodeManager.release();
+    }
+
+    /**
+     * Block the calling thread for a scripted API latency
+     */
+    public static void pause(long millis)
+    {
+        if (millis <= 0)
+            return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.symbol.emdk.barcode;
+
+import com.symbol.emdk.EMDKBase;
+import com.symbol.emdk.FakeEmdk;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Fake of the EMDK barcode manager for local unit tests, offering the {@link FakeScannerDevice}s
+ * added to its {@link FakeEmdk} and reporting their connection changes on the callback thread.
+ */
+public class BarcodeManager implements EMDKBase {
+
+    public enum ConnectionState {
+        CONNECTED,
+        DISCONNECTED
+    }
+
+    public enum DeviceIdentifier {
+        DEFAULT,
+        INTERNAL_CAMERA1,
+        INTERNAL_IMAGER1,
+        INTERNAL_LASER1,
+        BLUETOOTH_IMAGER1,
+        PLUGGABLE_IMAGER1
+    }
+
+    public interface ScannerConnectionListener {
+        void onConnectionChange(ScannerInfo scannerInfo, ConnectionState connectionState);
+    }
+
+    private final FakeEmdk emdk;
+    private final List<FakeScannerDevice> devices = new CopyOnWriteArrayList<FakeScannerDevice>();
+    private final List<ScannerConnectionListener> connectionListeners = new CopyOnWriteArrayList<ScannerConnectionListener>();
+    private volatile long enumerateLatencyMillis = 0;
+
+    /**
+     * Created by {@link FakeEmdk}, not part of the EMDK API
+     */
+    public BarcodeManager(FakeEmdk emdk)
+    {
+        this.emdk = emdk;
+    }
+
+    /**
+     * Not part of the EMDK API, use {@link FakeEmdk#addDevice}
+     */
+    public void addDevice(FakeScannerDevice device)
+    {
+        device.attach(this, devices.size());
+        devices.add(device);
+    }
+
+    /**
+     * @param millis time getSupportedDevicesInfo() blocks for
+     */
+    public void setEnumerateLatencyMillis(long millis)
+    {
+        enumerateLatencyMillis = millis;
+    }
+
+    public List<ScannerInfo> getSupportedDevicesInfo()
+    {
+        FakeEmdk.pause(enumerateLatencyMillis);
+        List<ScannerInfo> infos = new ArrayList<ScannerInfo>();
+        for (FakeScannerDevice device : devices)
+            infos.add(device.getScannerInfo());
+        return infos;
+    }
+
+    /**
+     * @return a new handle on the device with the info's friendly name, or null if there is none
+     */
+    public Scanner getDevice(ScannerInfo scannerInfo)
+    {
+        for (FakeScannerDevice device : devices) {
+            if (device.getScannerInfo().getFriendlyName().equals(scannerInfo.getFriendlyName()))
+                return new Scanner(device);
+        }
+        return null;
+    }
+
+    public Scanner getDevice(DeviceIdentifier deviceIdentifier)
+    {
+        for (FakeScannerDevice device : devices) {
+            ScannerInfo info = device.getScannerInfo();
+            if ((deviceIdentifier == DeviceIdentifier.DEFAULT) ? info.isDefaultScanner() : (info.getDeviceIdentifier() == deviceIdentifier))
+                return new Scanner(device);
+        }
+        return null;
+    }
+
+    public void addConnectionListener(ScannerConnectionListener listener)
+    {
+        connectionListeners.add(listener);
+    }
+
+    public void removeConnectionListener(ScannerConnectionListener listener)
+    {
+        connectionListeners.remove(listener);
+    }
+
+    public int getConnectionListenerCount() {return connectionListeners.size();}
+
+    /**
+     * Not part of the EMDK API, called by EMDKManager.release().  Drops the connection listeners
+     * and every handle on the devices.
+     */
+    public void release()
+    {
+        connectionListeners.clear();
+        for (FakeScannerDevice device : devices)
+            device.releaseAll();
+    }
+
+    void post(Runnable callback, long delayMillis)
+    {
+        emdk.post(callback, delayMillis);
+    }
+
+    void fireConnectionChange(final ScannerInfo scannerInfo, final ConnectionState connectionState)
+    {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                for (ScannerConnectionListener listener : connectionListeners)
+                    listener.onConnectionChange(scannerInfo, connectionState);
+            }
+        }, 0);
+    }
+}
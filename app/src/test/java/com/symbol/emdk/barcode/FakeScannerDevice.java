@@ -0,0 +1,383 @@
+package com.symbol.emdk.barcode;
+
+import com.symbol.emdk.FakeEmdk;
+
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Locale;
+
+/**
+ * A scripted scanner behind the fake EMDK API.  Tests set how long enable(), reads and
+ * configuration transactions take, queue failures for the next calls, present labels to be decoded
+ * by the next read and connect or disconnect the device.  Counters record what the code under
+ * test asked the device to do.  Thread safe; callbacks are delivered on the
+ * {@link FakeEmdk} callback thread in the order a real scanner reports them: WAITING once a
+ * read is armed, then SCANNING, the data and IDLE for each decoded label.
+ */
+public class FakeScannerDevice {
+
+    public enum Operation {
+        ENABLE,
+        READ,
+        GET_CONFIG,
+        SET_CONFIG
+    }
+
+    public static final String CHARSET_NAME = "UTF-8";
+    private static final String TIMESTAMP_FORMAT = "yyyy-MM-dd HH:mm:ss.SSS";
+
+    private static class Label {
+        final byte[] data;
+        final ScanDataCollection.LabelType labelType;
+
+        Label(byte[] data, ScanDataCollection.LabelType labelType)
+        {
+            this.data = data;
+            this.labelType = labelType;
+        }
+    }
+
+    private final String friendlyName;
+    private final String modelNumber;
+    private final ScannerInfo.ConnectionType connectionType;
+    private boolean bDefaultScanner = false;
+    private BarcodeManager manager = null;
+    private ScannerInfo info = null;
+
+    private long enableLatencyMillis = 0;
+    private long readLatencyMillis = 0;
+    private long configLatencyMillis = 0;
+    private final EnumMap<Operation, ArrayDeque<ScannerResults>> failures =
+            new EnumMap<Operation, ArrayDeque<ScannerResults>>(Operation.class);
+    private final ArrayDeque<Label> labels = new ArrayDeque<Label>();
+    private ScannerConfig config = new ScannerConfig();
+
+    private boolean bConnected = true;
+    private Scanner owner = null;
+    private boolean bEnabled = false;
+    private boolean bReadPending = false;
+    private boolean bWaiting = false;
+
+    private int enables = 0;
+    private int reads = 0;
+    private int configReads = 0;
+    private int configWrites = 0;
+    private int scansDelivered = 0;
+
+    /**
+     * A 2D imager, connected and with EAN8, EAN13, Code39 and Code128 enabled
+     */
+    public FakeScannerDevice(String friendlyName, String modelNumber, ScannerInfo.ConnectionType connectionType)
+    {
+        this.friendlyName = friendlyName;
+        this.modelNumber = modelNumber;
+        this.connectionType = connectionType;
+        for (Operation operation : Operation.values())
+            failures.put(operation, new ArrayDeque<ScannerResults>());
+        config.decoderParams.ean8.enabled = true;
+        config.decoderParams.ean13.enabled = true;
+        config.decoderParams.code39.enabled = true;
+        config.decoderParams.code128.enabled = true;
+    }
+
+    public synchronized FakeScannerDevice setDefaultScanner(boolean bDefault)
+    {
+        bDefaultScanner = bDefault;
+        return this;
+    }
+
+    /**
+     * @param millis time enable() blocks for
+     */
+    public synchronized FakeScannerDevice setEnableLatencyMillis(long millis)
+    {
+        enableLatencyMillis = millis;
+        return this;
+    }
+
+    /**
+     * @param millis time between read() and the scanner reporting WAITING
+     */
+    public synchronized FakeScannerDevice setReadLatencyMillis(long millis)
+    {
+        readLatencyMillis = millis;
+        return this;
+    }
+
+    /**
+     * @param millis time getConfig() and setConfig() each block for
+     */
+    public synchronized FakeScannerDevice setConfigLatencyMillis(long millis)
+    {
+        configLatencyMillis = millis;
+        return this;
+    }
+
+    /**
+     * Make the next call of the given operation throw, calls queue up
+     */
+    public synchronized FakeScannerDevice failNext(Operation operation, ScannerResults result)
+    {
+        failures.get(operation).add(result);
+        return this;
+    }
+
+    public FakeScannerDevice failNext(Operation operation, ScannerResults result, int times)
+    {
+        for (int i = 0; i < times; i++)
+            failNext(operation, result);
+        return this;
+    }
+
+    /**
+     * Present a label to the scanner, decoded by the current read once it is waiting or else by the next one
+     */
+    public void scan(ScanDataCollection.LabelType labelType, String data)
+    {
+        scan(labelType, data.getBytes(Charset.forName(CHARSET_NAME)));
+    }
+
+    public synchronized void scan(ScanDataCollection.LabelType labelType, byte[] data)
+    {
+        labels.add(new Label(data, labelType));
+        deliverIfReady();
+    }
+
+    /**
+     * Report a status, e.g. ERROR, from the enabled handle regardless of what the device is doing
+     */
+    public synchronized void reportStatus(StatusData.ScannerStates state)
+    {
+        if (owner != null)
+            postStatus(owner, state, 0);
+    }
+
+    /**
+     * The device goes out of range; its handle stops working and connection listeners hear DISCONNECTED
+     */
+    public synchronized void disconnect()
+    {
+        bConnected = false;
+        bEnabled = false;
+        bReadPending = false;
+        bWaiting = false;
+        if (info != null)
+            info.setConnected(false);
+        if (manager != null)
+            manager.fireConnectionChange(info, BarcodeManager.ConnectionState.DISCONNECTED);
+    }
+
+    /**
+     * The device comes back; it has to be got from the barcode manager and enabled again
+     */
+    public synchronized void connect()
+    {
+        bConnected = true;
+        if (info != null)
+            info.setConnected(true);
+        if (manager != null)
+            manager.fireConnectionChange(info, BarcodeManager.ConnectionState.CONNECTED);
+    }
+
+    public synchronized ScannerInfo getScannerInfo()
+    {
+        if (info == null)
+            throw new IllegalStateException("Add the device to a FakeEmdk first");
+        return info;
+    }
+
+    public synchronized boolean isEnabled() {return bEnabled;}
+
+    public synchronized boolean isReadPending() {return bReadPending;}
+
+    /**
+     * @return the trigger type of the enabled handle, or null if none is enabled
+     */
+    public synchronized Scanner.TriggerType getTriggerType() {return (owner != null && bEnabled) ? owner.triggerType : null;}
+
+    /**
+     * @return a copy of the configuration the device holds
+     */
+    public synchronized ScannerConfig getDeviceConfig() {return config.copy();}
+
+    public synchronized int getEnables() {return enables;}
+
+    public synchronized int getReads() {return reads;}
+
+    public synchronized int getConfigReads() {return configReads;}
+
+    public synchronized int getConfigWrites() {return configWrites;}
+
+    public synchronized int getScansDelivered() {return scansDelivered;}
+
+    synchronized void attach(BarcodeManager manager, int index)
+    {
+        this.manager = manager;
+        boolean bBluetooth = (connectionType == ScannerInfo.ConnectionType.BLUETOOTH_SSI);
+        info = new ScannerInfo(friendlyName, modelNumber, index, ScannerInfo.DeviceType.IMAGER, connectionType,
+                bBluetooth ? BarcodeManager.DeviceIdentifier.BLUETOOTH_IMAGER1 : BarcodeManager.DeviceIdentifier.INTERNAL_IMAGER1,
+                ScannerInfo.DecoderType.TWO_DIMENSIONAL, bDefaultScanner, bConnected);
+    }
+
+    void enable(Scanner scanner) throws ScannerException
+    {
+        FakeEmdk.pause(latency(Operation.ENABLE));
+        synchronized (this) {
+            failIfScripted(Operation.ENABLE);
+            if (!bConnected)
+                throw new ScannerException(ScannerResults.SCANNER_NOT_CONNECTED);
+            if (bEnabled && owner != scanner)
+                throw new ScannerException(ScannerResults.SCANNER_IN_USE);
+            enables++;
+            owner = scanner;
+            bEnabled = true;
+            bReadPending = false;
+            bWaiting = false;
+            postStatus(scanner, StatusData.ScannerStates.IDLE, 0);
+        }
+    }
+
+    synchronized void disable(Scanner scanner) throws ScannerException
+    {
+        checkEnabled(scanner);
+        bEnabled = false;
+        bReadPending = false;
+        bWaiting = false;
+        postStatus(scanner, StatusData.ScannerStates.DISABLED, 0);
+    }
+
+    synchronized void release(Scanner scanner)
+    {
+        if (owner == scanner) {
+            owner = null;
+            bEnabled = false;
+            bReadPending = false;
+            bWaiting = false;
+        }
+    }
+
+    synchronized void releaseAll()
+    {
+        owner = null;
+        bEnabled = false;
+        bReadPending = false;
+        bWaiting = false;
+    }
+
+    synchronized boolean isEnabled(Scanner scanner) {return bEnabled && owner == scanner;}
+
+    synchronized boolean isReadPending(Scanner scanner) {return bReadPending && owner == scanner;}
+
+    synchronized void read(final Scanner scanner) throws ScannerException
+    {
+        checkEnabled(scanner);
+        failIfScripted(Operation.READ);
+        if (bReadPending)
+            throw new ScannerException(ScannerResults.SCANNER_READ_IN_PROGRESS);
+        reads++;
+        bReadPending = true;
+        manager.post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (FakeScannerDevice.this) {
+                    if (!bReadPending || owner != scanner || bWaiting)
+                        return;
+                    bWaiting = true;
+                }
+                scanner.deliver(new StatusData(friendlyName, StatusData.ScannerStates.WAITING));
+                synchronized (FakeScannerDevice.this) {
+                    deliverIfReady();
+                }
+            }
+        }, readLatencyMillis);
+    }
+
+    synchronized void cancelRead(Scanner scanner) throws ScannerException
+    {
+        checkEnabled(scanner);
+        if (!bReadPending)
+            return;
+        bReadPending = false;
+        bWaiting = false;
+        postStatus(scanner, StatusData.ScannerStates.IDLE, 0);
+    }
+
+    ScannerConfig getConfig(Scanner scanner) throws ScannerException
+    {
+        FakeEmdk.pause(latency(Operation.GET_CONFIG));
+        synchronized (this) {
+            checkEnabled(scanner);
+            failIfScripted(Operation.GET_CONFIG);
+            configReads++;
+            return config.copy();
+        }
+    }
+
+    void setConfig(Scanner scanner, ScannerConfig newConfig) throws ScannerException
+    {
+        FakeEmdk.pause(latency(Operation.SET_CONFIG));
+        synchronized (this) {
+            checkEnabled(scanner);
+            failIfScripted(Operation.SET_CONFIG);
+            configWrites++;
+            config = newConfig.copy();
+        }
+    }
+
+    private synchronized long latency(Operation operation)
+    {
+        return (operation == Operation.ENABLE) ? enableLatencyMillis : configLatencyMillis;
+    }
+
+    private void checkEnabled(Scanner scanner) throws ScannerException
+    {
+        if (!bConnected)
+            throw new ScannerException(ScannerResults.SCANNER_NOT_CONNECTED);
+        if (!bEnabled || owner != scanner)
+            throw new ScannerException(ScannerResults.SCANNER_NOT_ENABLED);
+    }
+
+    private void failIfScripted(Operation operation) throws ScannerException
+    {
+        ScannerResults result = failures.get(operation).poll();
+        if (result != null)
+            throw new ScannerException(result);
+    }
+
+    //  Decode the oldest label if a read is waiting for one, holding the lock
+    private void deliverIfReady()
+    {
+        if (!bWaiting || !bReadPending || labels.isEmpty() || owner == null)
+            return;
+        Label label = labels.poll();
+        bReadPending = false;
+        bWaiting = false;
+        scansDelivered++;
+        final Scanner scanner = owner;
+        final ScanDataCollection collection = new ScanDataCollection(friendlyName, ScannerResults.SUCCESS);
+        collection.add(label.data, label.labelType, CHARSET_NAME,
+                new SimpleDateFormat(TIMESTAMP_FORMAT, Locale.US).format(new Date()));
+        postStatus(scanner, StatusData.ScannerStates.SCANNING, 0);
+        manager.post(new Runnable() {
+            @Override
+            public void run() {
+                scanner.deliver(collection);
+            }
+        }, 0);
+        postStatus(scanner, StatusData.ScannerStates.IDLE, 0);
+    }
+
+    private void postStatus(final Scanner scanner, StatusData.ScannerStates state, long delayMillis)
+    {
+        final StatusData statusData = new StatusData(friendlyName, state);
+        manager.post(new Runnable() {
+            @Override
+            public void run() {
+                scanner.deliver(statusData);
+            }
+        }, delayMillis);
+    }
+}
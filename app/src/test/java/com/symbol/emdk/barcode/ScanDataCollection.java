@@ -0,0 +1,97 @@
+package com.symbol.emdk.barcode;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+/**
+ * Fake of the EMDK scan result for local unit tests, created through {@link FakeScannerDevice}.
+ * The private field names match the real class so EMDKBarcodeStub can fabricate these too.
+ */
+public class ScanDataCollection {
+
+    public enum LabelType {
+        CODE39,
+        CODABAR,
+        CODE128,
+        D2OF5,
+        IATA2OF5,
+        I2OF5,
+        CODE93,
+        UPCA,
+        UPCE0,
+        UPCE1,
+        EAN8,
+        EAN13,
+        MSI,
+        EAN128,
+        TRIOPTIC39,
+        BOOKLAND,
+        COUPON,
+        PDF417,
+        MICROPDF,
+        MAXICODE,
+        DATAMATRIX,
+        QRCODE,
+        GS1_DATABAR,
+        GS1_DATABAR_LIM,
+        GS1_DATABAR_EXP,
+        AZTEC,
+        GS1_DATAMATRIX,
+        GS1_QRCODE,
+        UNDEFINED
+    }
+
+    private String friendlyName;
+    private ScannerResults result;
+    private ArrayList<ScanData> scanData;
+
+    ScanDataCollection()
+    {
+    }
+
+    ScanDataCollection(String friendlyName, ScannerResults result)
+    {
+        this.friendlyName = friendlyName;
+        this.result = result;
+        this.scanData = new ArrayList<ScanData>();
+    }
+
+    public ArrayList<ScanData> getScanData() {return scanData;}
+
+    public ScannerResults getResult() {return result;}
+
+    public String getFriendlyName() {return friendlyName;}
+
+    void add(byte[] rawData, LabelType labelType, String charsetName, String timeStamp)
+    {
+        ScanData data = new ScanData();
+        data.rawData = rawData;
+        data.labelType = labelType;
+        data.charsetName = charsetName;
+        data.timeStamp = timeStamp;
+        scanData.add(data);
+    }
+
+    public class ScanData {
+
+        private byte[] rawData;
+        private String charsetName;
+        private String timeStamp;
+        private LabelType labelType;
+
+        ScanData()
+        {
+        }
+
+        public String getData()
+        {
+            return (rawData == null) ? null : new String(rawData, Charset.forName(charsetName == null ? "UTF-8" : charsetName));
+        }
+
+        public byte[] getRawData() {return rawData;}
+
+        public LabelType getLabelType() {return labelType;}
+
+        public String getTimeStamp() {return timeStamp;}
+    }
+}
@@ -0,0 +1,111 @@
+package com.symbol.emdk.barcode;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Fake of the EMDK scanner for local unit tests.  Each instance is a handle on a
+ * {@link FakeScannerDevice}, which scripts what the calls do and how long they take; callbacks
+ * arrive on the {@link com.symbol.emdk.FakeEmdk} callback thread.
+ */
+public class Scanner {
+
+    public enum TriggerType {
+        HARD,
+        SOFT_ONCE,
+        SOFT_ALWAYS
+    }
+
+    public interface DataListener {
+        void onData(ScanDataCollection scanDataCollection);
+    }
+
+    public interface StatusListener {
+        void onStatus(StatusData statusData);
+    }
+
+    public TriggerType triggerType = TriggerType.HARD;
+
+    private final FakeScannerDevice device;
+    private final CopyOnWriteArrayList<DataListener> dataListeners = new CopyOnWriteArrayList<DataListener>();
+    private final CopyOnWriteArrayList<StatusListener> statusListeners = new CopyOnWriteArrayList<StatusListener>();
+
+    Scanner(FakeScannerDevice device)
+    {
+        this.device = device;
+    }
+
+    public void enable() throws ScannerException
+    {
+        device.enable(this);
+    }
+
+    public void disable() throws ScannerException
+    {
+        device.disable(this);
+    }
+
+    public void release() throws ScannerException
+    {
+        device.release(this);
+    }
+
+    public boolean isEnabled() {return device.isEnabled(this);}
+
+    public boolean isReadPending() {return device.isReadPending(this);}
+
+    public void read() throws ScannerException
+    {
+        device.read(this);
+    }
+
+    public void cancelRead() throws ScannerException
+    {
+        device.cancelRead(this);
+    }
+
+    public ScannerConfig getConfig() throws ScannerException
+    {
+        return device.getConfig(this);
+    }
+
+    public void setConfig(ScannerConfig config) throws ScannerException
+    {
+        device.setConfig(this, config);
+    }
+
+    public void addDataListener(DataListener listener)
+    {
+        dataListeners.add(listener);
+    }
+
+    public void removeDataListener(DataListener listener)
+    {
+        dataListeners.remove(listener);
+    }
+
+    public void addStatusListener(StatusListener listener)
+    {
+        statusListeners.add(listener);
+    }
+
+    public void removeStatusListener(StatusListener listener)
+    {
+        statusListeners.remove(listener);
+    }
+
+    public ScannerInfo getScannerInfo() {return device.getScannerInfo();}
+
+    //  Callback thread only
+    void deliver(ScanDataCollection scanDataCollection)
+    {
+        for (DataListener listener : dataListeners)
+            listener.onData(scanDataCollection);
+    }
+
+    //  Callback thread only
+    void deliver(StatusData statusData)
+    {
+        for (StatusListener listener : statusListeners)
+            listener.onStatus(statusData);
+    }
+}
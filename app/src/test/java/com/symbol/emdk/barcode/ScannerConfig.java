@@ -0,0 +1,53 @@
+package com.symbol.emdk.barcode;
+
+/**
+ * Fake of the EMDK scanner configuration for local unit tests, holding the decoders the app
+ * offers.  Each {@link Scanner#getConfig()} returns a copy of the device's configuration.
+ */
+public class ScannerConfig {
+
+    public class DecoderParams {
+
+        public class Ean8 {
+            public boolean enabled;
+        }
+
+        public class Ean13 {
+            public boolean enabled;
+        }
+
+        public class Code39 {
+            public boolean enabled;
+        }
+
+        public class Code128 {
+            public boolean enabled;
+        }
+
+        public Ean8 ean8 = new Ean8();
+        public Ean13 ean13 = new Ean13();
+        public Code39 code39 = new Code39();
+        public Code128 code128 = new Code128();
+    }
+
+    public DecoderParams decoderParams = new DecoderParams();
+
+    ScannerConfig()
+    {
+    }
+
+    public boolean isParamSupported(String param)
+    {
+        return true;
+    }
+
+    ScannerConfig copy()
+    {
+        ScannerConfig copy = new ScannerConfig();
+        copy.decoderParams.ean8.enabled = decoderParams.ean8.enabled;
+        copy.decoderParams.ean13.enabled = decoderParams.ean13.enabled;
+        copy.decoderParams.code39.enabled = decoderParams.code39.enabled;
+        copy.decoderParams.code128.enabled = decoderParams.code128.enabled;
+        return copy;
+    }
+}
@@ -0,0 +1,19 @@
+package com.symbol.emdk.barcode;
+
+/**
+ * Fake of the EMDK scanner exception for local unit tests, see {@link FakeScannerDevice}
+ */
+public class ScannerException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ScannerResults result;
+
+    public ScannerException(ScannerResults result)
+    {
+        super(result.getDescription());
+        this.result = result;
+    }
+
+    public ScannerResults getResult() {return result;}
+}
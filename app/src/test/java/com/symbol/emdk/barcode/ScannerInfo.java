@@ -0,0 +1,80 @@
+package com.symbol.emdk.barcode;
+
+/**
+ * Fake of the EMDK scanner description for local unit tests, created through
+ * {@link FakeScannerDevice}.  The private field names match the real class so EMDKBarcodeStub can
+ * fabricate these too.
+ */
+public class ScannerInfo {
+
+    public enum DeviceType {
+        CAMERA,
+        IMAGER,
+        LASER,
+        UNDEFINED
+    }
+
+    public enum ConnectionType {
+        INTERNAL,
+        BLUETOOTH_SSI,
+        SERIAL_SSI,
+        USB,
+        UNDEFINED
+    }
+
+    public enum DecoderType {
+        ONE_DIMENSIONAL,
+        TWO_DIMENSIONAL,
+        UNDEFINED
+    }
+
+    private String friendlyName;
+    private int scannerIndex;
+    private DeviceType deviceType;
+    private ConnectionType connectionType;
+    private BarcodeManager.DeviceIdentifier deviceIdentifier;
+    private DecoderType decoderType;
+    private boolean isDefaultScanner;
+    private boolean isConnected;
+    private String modelNumber;
+
+    ScannerInfo()
+    {
+    }
+
+    ScannerInfo(String friendlyName, String modelNumber, int scannerIndex, DeviceType deviceType,
+                ConnectionType connectionType, BarcodeManager.DeviceIdentifier deviceIdentifier,
+                DecoderType decoderType, boolean isDefaultScanner, boolean isConnected)
+    {
+        this.friendlyName = friendlyName;
+        this.modelNumber = modelNumber;
+        this.scannerIndex = scannerIndex;
+        this.deviceType = deviceType;
+        this.connectionType = connectionType;
+        this.deviceIdentifier = deviceIdentifier;
+        this.decoderType = decoderType;
+        this.isDefaultScanner = isDefaultScanner;
+        this.isConnected = isConnected;
+    }
+
+    public String getFriendlyName() {return friendlyName;}
+
+    public String getModelNumber() {return modelNumber;}
+
+    public DeviceType getDeviceType() {return deviceType;}
+
+    public ConnectionType getConnectionType() {return connectionType;}
+
+    public BarcodeManager.DeviceIdentifier getDeviceIdentifier() {return deviceIdentifier;}
+
+    public DecoderType getDecoderType() {return decoderType;}
+
+    public boolean isDefaultScanner() {return isDefaultScanner;}
+
+    public boolean isConnected() {return isConnected;}
+
+    void setConnected(boolean bConnected)
+    {
+        isConnected = bConnected;
+    }
+}
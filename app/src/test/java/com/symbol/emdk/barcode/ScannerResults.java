@@ -0,0 +1,25 @@
+package com.symbol.emdk.barcode;
+
+/**
+ * Fake of the EMDK scanner result codes for local unit tests, see {@link FakeScannerDevice}
+ */
+public enum ScannerResults {
+    SUCCESS("Success"),
+    FAILURE("Failure"),
+    INVALID_VALUE("Invalid value"),
+    SCANNER_NOT_ENABLED("Scanner is not enabled"),
+    SCANNER_NOT_CONNECTED("Scanner is not connected"),
+    SCANNER_IN_USE("Scanner is in use by another application"),
+    SCANNER_READ_IN_PROGRESS("A read is already pending"),
+    SCANNER_DEINITIALIZED("Scanner has been released"),
+    SCANNER_TIMED_OUT("Scanner timed out");
+
+    private final String description;
+
+    ScannerResults(String description)
+    {
+        this.description = description;
+    }
+
+    public String getDescription() {return description;}
+}
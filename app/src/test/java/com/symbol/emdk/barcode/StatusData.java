@@ -0,0 +1,33 @@
+package com.symbol.emdk.barcode;
+
+/**
+ * Fake of the EMDK status report for local unit tests.  The private field names match the real
+ * class so EMDKBarcodeStub can fabricate these too.
+ */
+public class StatusData {
+
+    public enum ScannerStates {
+        IDLE,
+        WAITING,
+        SCANNING,
+        DISABLED,
+        ERROR
+    }
+
+    private String friendlyName;
+    private ScannerStates scannerState;
+
+    StatusData()
+    {
+    }
+
+    StatusData(String friendlyName, ScannerStates scannerState)
+    {
+        this.friendlyName = friendlyName;
+        this.scannerState = scannerState;
+    }
+
+    public ScannerStates getState() {return scannerState;}
+
+    public String getFriendlyName() {return friendlyName;}
+}
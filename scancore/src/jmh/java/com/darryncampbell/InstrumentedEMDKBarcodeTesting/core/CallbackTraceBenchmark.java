@@ -0,0 +1,50 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encoding cost the trace recorder adds to each callback, excluding the file write which happens
+ * on a background thread.
+ */
+@State(Scope.Thread)
+public class CallbackTraceBenchmark {
+
+    private CallbackTraceWriter writer;
+    private final byte[] data = Utf8.encode("5012345678900");
+    private long nanos = 0;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        writer = new CallbackTraceWriter(new OutputStream() {
+            @Override
+            public void write(int b) {}
+
+            @Override
+            public void write(byte[] b, int off, int len) {}
+        }, 0, 0);
+    }
+
+    @Benchmark
+    public long writeScan() throws IOException
+    {
+        nanos += 1000;
+        writer.beginData(nanos, "2D Barcode Imager", "SUCCESS", 1);
+        writer.addScan("EAN13", "UTF-8", "2017-02-27 12:58:51.238", data);
+        return writer.getBytesWritten();
+    }
+
+    @Benchmark
+    public long writeStatus() throws IOException
+    {
+        nanos += 1000;
+        writer.writeStatus(nanos, "2D Barcode Imager", "IDLE");
+        return writer.getBytesWritten();
+    }
+}
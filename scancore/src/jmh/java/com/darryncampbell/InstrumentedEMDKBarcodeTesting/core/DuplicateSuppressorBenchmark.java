@@ -0,0 +1,45 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per scan cost of duplicate suppression for a label held in view and for a stream of distinct
+ * labels which keeps the table full.
+ */
+@State(Scope.Thread)
+public class DuplicateSuppressorBenchmark {
+
+    private static final int LABELS = 4096;
+
+    private DuplicateSuppressor suppressor;
+    private final byte[] held = Utf8.encode("5012345678900");
+    private final byte[][] distinct = new byte[LABELS][];
+    private long nanos = 0;
+    private int next = 0;
+
+    @Setup
+    public void setUp()
+    {
+        suppressor = new DuplicateSuppressor(1024);
+        for (int i = 0; i < LABELS; i++)
+            distinct[i] = Utf8.encode("]C1" + (100000000 + i) + "ABC");
+    }
+
+    @Benchmark
+    public boolean heldLabel()
+    {
+        nanos += 1000;
+        return suppressor.isDuplicate(held, 0, held.length, Symbology.EAN13, nanos);
+    }
+
+    @Benchmark
+    public boolean distinctLabels()
+    {
+        nanos += 1000;
+        byte[] label = distinct[next++ & (LABELS - 1)];
+        return suppressor.isDuplicate(label, 0, label.length, Symbology.CODE128, nanos);
+    }
+}
@@ -0,0 +1,57 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cost of encoding and compressing a full export batch, divide by the batch size for the cost per
+ * scan.  Compare the levels to see what the better compression ratio costs on the exporter thread.
+ */
+@State(Scope.Thread)
+public class ExportBatchCodecBenchmark {
+
+    private static final int BATCH_SCANS = 256;
+
+    @Param({"1", "6"})
+    public int compressionLevel;
+
+    private final ScanRecord[] records = new ScanRecord[BATCH_SCANS];
+    private ExportBatchCodec codec;
+    private byte[] frame;
+
+    @Setup
+    public void setUp()
+    {
+        for (int i = 0; i < BATCH_SCANS; i++) {
+            records[i] = new ScanRecord(Utf8.encode("09501101" + (530000 + i * 7)), i % 4 == 0 ? Symbology.CODE128 : Symbology.EAN13,
+                    1500000000000L + i * 35);
+            records[i].friendlyName = i % 8 == 0 ? "RS6000 Bluetooth Scanner" : "2D Barcode Imager";
+        }
+        codec = new ExportBatchCodec(compressionLevel);
+        frame = encode();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        codec.close();
+    }
+
+    @Benchmark
+    public byte[] encode()
+    {
+        for (ScanRecord record : records)
+            codec.add(record);
+        return codec.finish(1500000000000L, 1);
+    }
+
+    @Benchmark
+    public ExportBatchCodec.Batch decode() throws Exception
+    {
+        return ExportBatchCodec.decode(frame, 0, frame.length);
+    }
+}
@@ -0,0 +1,29 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * GS1 parsing cost per scan for a typical four element logistics label.
+ */
+@State(Scope.Thread)
+public class Gs1ParserBenchmark {
+
+    private final byte[] label = Utf8.encode("]C10109501101530003" + "17140704" + "10AB-123\u001D" + "213456789");
+    private final Gs1Parser.Elements elements = new Gs1Parser.Elements();
+    private final char[] text = new char[256];
+
+    @Benchmark
+    public int parse()
+    {
+        return Gs1Parser.parse(label, 0, label.length, elements);
+    }
+
+    @Benchmark
+    public int parseAndFormat()
+    {
+        Gs1Parser.parse(label, 0, label.length, elements);
+        return Gs1Parser.formatHumanReadable(label, elements, text, 0);
+    }
+}
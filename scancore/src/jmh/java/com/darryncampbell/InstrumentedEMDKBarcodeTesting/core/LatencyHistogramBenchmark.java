@@ -0,0 +1,41 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Recording cost of the latency histograms, which sit on the callback and draw paths.
+ */
+@State(Scope.Benchmark)
+public class LatencyHistogramBenchmark {
+
+    private final LatencyHistogram histogram = new LatencyHistogram("benchmark");
+
+    @State(Scope.Thread)
+    public static class Sample {
+        long nanos = 1000;
+    }
+
+    @Benchmark
+    public void record(Sample sample)
+    {
+        sample.nanos = (sample.nanos * 31 + 17) & 0xFFFFFFFL;
+        histogram.record(sample.nanos);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended(Sample sample)
+    {
+        sample.nanos = (sample.nanos * 31 + 17) & 0xFFFFFFFL;
+        histogram.record(sample.nanos);
+    }
+
+    @Benchmark
+    public long percentile()
+    {
+        return histogram.getPercentileNanos(99);
+    }
+}
@@ -0,0 +1,67 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Catalog lookup cost per scan on a worker of the processing stage, for a catalog of a million
+ * products: products which miss the LRU cache, which hit it, and decoding a description for display.
+ */
+@State(Scope.Benchmark)
+public class ProductCatalogBenchmark {
+
+    private static final int PRODUCTS = 1000000;
+    private static final long FIRST_GTIN = 5000000000000L;
+
+    private File file;
+    private ProductCatalog catalog;
+    private ProductCatalog uncached;
+    private final byte[] ean13 = Utf8.encode("5000000123450");
+    private long next = 0;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        StringBuilder csv = new StringBuilder(PRODUCTS * 32);
+        for (int i = 0; i < PRODUCTS; i++)
+            csv.append(FIRST_GTIN + 10 * i).append(",Product number ").append(i).append('\n');
+        file = File.createTempFile("products", ".cat");
+        ProductCatalogBuilder.build(new StringReader(csv.toString()), file, ProductCatalogBuilder.DEFAULT_DESCRIPTION_BYTES);
+        catalog = new ProductCatalog(file, 4096);
+        uncached = new ProductCatalog(file, 0);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        if (!file.delete())
+            file.deleteOnExit();
+    }
+
+    @Benchmark
+    public int lookupMiss()
+    {
+        //  Stride through the catalog so every lookup searches the mapping
+        next = (next + 7919) % PRODUCTS;
+        return uncached.lookup(FIRST_GTIN + 10 * next);
+    }
+
+    @Benchmark
+    public int lookupCached()
+    {
+        return catalog.lookup(Symbology.EAN13, ean13, 0, ean13.length);
+    }
+
+    @Benchmark
+    public String description()
+    {
+        return catalog.description(12345);
+    }
+}
@@ -0,0 +1,55 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+
+/**
+ * Contention between EMDK callback threads offering scans and the UI thread draining them once
+ * per frame.
+ */
+@State(Scope.Group)
+public class ScanBatchBufferBenchmark {
+
+    private final ScanBatchBuffer<ScanRecord> buffer = new ScanBatchBuffer<ScanRecord>(256);
+    private final ScanRecord record = new ScanRecord(new byte[13], Symbology.EAN13, 0);
+    private final ArrayList<ScanRecord> batch = new ArrayList<ScanRecord>(256);
+
+    @Benchmark
+    @Group("singleProducer")
+    @GroupThreads(1)
+    public int singleProducerOffer()
+    {
+        return buffer.offer(record);
+    }
+
+    @Benchmark
+    @Group("singleProducer")
+    @GroupThreads(1)
+    public int singleProducerDrain()
+    {
+        batch.clear();
+        return buffer.drainTo(batch);
+    }
+
+    @Benchmark
+    @Group("fourProducers")
+    @GroupThreads(4)
+    public int fourProducersOffer()
+    {
+        return buffer.offer(record);
+    }
+
+    @Benchmark
+    @Group("fourProducers")
+    @GroupThreads(1)
+    public int fourProducersDrain()
+    {
+        batch.clear();
+        return buffer.drainTo(batch);
+    }
+}
@@ -0,0 +1,43 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Appending to and reading back from the history store once it has wrapped, the steady state of
+ * a long shift.
+ */
+@State(Scope.Thread)
+public class ScanHistoryBenchmark {
+
+    private static final int CAPACITY = 100000;
+
+    private ScanHistory history;
+    private final byte[] data = Utf8.encode("5012345678900");
+    private final byte[] copy = new byte[64];
+    private int index = 0;
+
+    @Setup
+    public void setUp()
+    {
+        history = new ScanHistory(CAPACITY, CAPACITY * 32);
+        for (int i = 0; i < CAPACITY * 2; i++)
+            history.append(data, Symbology.EAN13, i);
+    }
+
+    @Benchmark
+    public long append()
+    {
+        history.append(data, Symbology.EAN13, index++);
+        return history.totalAppended();
+    }
+
+    @Benchmark
+    public int readRow()
+    {
+        index = (index + 7919) % history.size();
+        return history.copyData(index, copy, 0) + history.symbology(index) + (int) history.timestamp(index);
+    }
+}
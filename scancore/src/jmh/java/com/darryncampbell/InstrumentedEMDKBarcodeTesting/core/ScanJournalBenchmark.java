@@ -0,0 +1,60 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Cost of journaling a scan as seen by onData, which only queues it, and the throughput of
+ * queueing a group of scans and waiting for them to be forced to storage.
+ */
+@State(Scope.Benchmark)
+public class ScanJournalBenchmark {
+
+    private static final int GROUP = 64;
+
+    private File directory;
+    private ScanJournal journal;
+    private final byte[] data = Utf8.encode("5012345678900");
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        directory = File.createTempFile("journal", "");
+        if (!directory.delete() || !directory.mkdir())
+            throw new IOException("Cannot create " + directory);
+        journal = ScanJournal.open(directory, new ScanJournal.Options().setMaxSegments(8), null);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        journal.close();
+        File[] segments = directory.listFiles();
+        if (segments != null) {
+            for (File segment : segments)
+                segment.delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public long append()
+    {
+        return journal.append(0, data, "EAN13", "UTF-8", "2017-02-27 12:58:51.238", "2D Barcode Imager");
+    }
+
+    @Benchmark
+    public long appendGroupAndSync() throws Exception
+    {
+        for (int i = 0; i < GROUP; i++)
+            journal.append(0, data, "EAN13", "UTF-8", "2017-02-27 12:58:51.238", "2D Barcode Imager");
+        journal.sync();
+        return journal.getForcedSequence();
+    }
+}
@@ -0,0 +1,58 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+/**
+ * Cost of checking a scan against a site's rules on a worker of the processing stage, with a few
+ * thousand prefix and range rules, and of compiling those rules when the file changes.
+ */
+@State(Scope.Thread)
+public class ScanRulesBenchmark {
+
+    private static final int PREFIX_RULES = 3000;
+
+    private String ruleFile;
+    private ScanRules rules;
+    private final ScanRules.Match match = new ScanRules.Match();
+    private final byte[] ean13 = Utf8.encode("5012345678900");
+    private final byte[] code128 = Utf8.encode("]C1\u001D0101234567890128\u001D10ABC123");
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        Random random = new Random(24);
+        StringBuilder file = new StringBuilder();
+        for (int i = 0; i < PREFIX_RULES; i++)
+            file.append(i % 10 == 0 ? "block" : "allow").append(" EAN13,UPCA prefix:").append(1000000 + random.nextInt(9000000)).append('\n');
+        file.append("allow EAN13 prefix:501\n");
+        file.append("block * range:5012345000000-5012345009999\n");
+        file.append("allow CODE128 ]C1\\x1D01#{14}*\n");
+        ruleFile = file.toString();
+        rules = ScanRules.compile(new StringReader(ruleFile));
+    }
+
+    @Benchmark
+    public int evaluateEan13()
+    {
+        return rules.evaluate(Symbology.EAN13, ean13, 0, ean13.length);
+    }
+
+    @Benchmark
+    public int matchCode128()
+    {
+        return rules.match(Symbology.CODE128, code128, 0, code128.length, match);
+    }
+
+    @Benchmark
+    public ScanRules compile() throws IOException
+    {
+        return ScanRules.compile(new StringReader(ruleFile));
+    }
+}
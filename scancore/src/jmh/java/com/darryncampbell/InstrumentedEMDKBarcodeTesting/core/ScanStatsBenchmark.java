@@ -0,0 +1,61 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timestamp parsing cost per scan, and the aggregation queries behind the statistics panel over
+ * a million scans.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ScanStatsBenchmark {
+
+    private static final int ROWS = 1000000;
+    private static final long MINUTE = 60000;
+
+    private ScanStatsStore store;
+    private final long[] counts = new long[Symbology.COUNT];
+    private final long[] perMinute = new long[60];
+    private long end;
+
+    @Setup
+    public void setUp()
+    {
+        store = new ScanStatsStore(ROWS);
+        //  A million scans spread over about three hours
+        for (int i = 0; i < ROWS; i++)
+            store.append(i * 10L, i % Symbology.COUNT, i % 4, i);
+        end = ROWS * 10L;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long parseTimestamp()
+    {
+        return ScanTimestamp.parse("2017-02-27 12:58:51.238");
+    }
+
+    @Benchmark
+    public long countBySymbologyLastMinute()
+    {
+        Arrays.fill(counts, 0);
+        return store.countBySymbology(end - MINUTE, end, counts);
+    }
+
+    @Benchmark
+    public long countPerMinuteLastHour()
+    {
+        Arrays.fill(perMinute, 0);
+        return store.countPerBucket(end - 60 * MINUTE, MINUTE, perMinute);
+    }
+}
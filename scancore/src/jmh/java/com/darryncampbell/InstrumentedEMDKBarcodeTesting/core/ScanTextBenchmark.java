@@ -0,0 +1,45 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of turning raw barcode bytes into displayable characters, against the String based
+ * decoding the activity used to do per scan.
+ */
+@State(Scope.Thread)
+public class ScanTextBenchmark {
+
+    @Param({"13", "64", "1024"})
+    public int length;
+
+    @Param({"false", "true"})
+    public boolean multiByte;
+
+    private byte[] data;
+    private final char[] chars = new char[2048];
+
+    @Setup
+    public void setUp()
+    {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < length)
+            text.append(multiByte ? "\u00E9\u4E2D" : "0123456789");
+        data = Utf8.encode(text.substring(0, length));
+    }
+
+    @Benchmark
+    public int decodeIntoBuffer()
+    {
+        return ScanText.decodeUtf8(data, 0, data.length, chars, 0);
+    }
+
+    @Benchmark
+    public String decodeToString()
+    {
+        return Utf8.decode(data, 0, data.length);
+    }
+}
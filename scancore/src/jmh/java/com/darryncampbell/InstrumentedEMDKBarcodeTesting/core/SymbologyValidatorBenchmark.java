@@ -0,0 +1,34 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Validation cost per scan on a worker thread of the processing stage.
+ */
+@State(Scope.Thread)
+public class SymbologyValidatorBenchmark {
+
+    private final byte[] ean13 = Utf8.encode("5012345678900");
+    private final byte[] code128 = Utf8.encode("]C1\u001D0101234567890128\u001D10ABC123");
+    private final byte[] qrCode = Utf8.encode("https://example.com/p/\u00E9\u4E2D?id=0123456789");
+
+    @Benchmark
+    public int ean13()
+    {
+        return SymbologyValidator.validate(Symbology.EAN13, ean13, 0, ean13.length);
+    }
+
+    @Benchmark
+    public int code128()
+    {
+        return SymbologyValidator.validate(Symbology.CODE128, code128, 0, code128.length);
+    }
+
+    @Benchmark
+    public int qrCodeUtf8()
+    {
+        return SymbologyValidator.validate(Symbology.QRCODE, qrCode, 0, qrCode.length);
+    }
+}
@@ -0,0 +1,141 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Learns, per scanner model, the shortest delay between a scanner going IDLE and the next read
+ * being submitted in continuous mode.
+ *
+ * Submitting reads too rapidly can cause the scanner to pause momentarily before it starts
+ * waiting for the trigger again.  Each re-arm is timed from read() to the scanner reporting
+ * WAITING: while that stays close to the model's normal arm latency the delay is reduced a little
+ * towards the floor, when it stalls (or the read fails) the delay is backed off and the delay
+ * which caused the stall is remembered as unsafe for that model.  The unsafe delay is lowered a
+ * step after every run of clean re-arms so a single transient stall does not hold the delay up
+ * for the rest of the session.
+ * Thread safe.
+ */
+public class AdaptiveRearmDelay {
+
+    /**
+     * Delay used before anything has been learned about a model, the gap the scanner
+     * documentation recommends between rapid reads
+     */
+    public static final long DEFAULT_INITIAL_DELAY_MS = 100;
+
+    private static final double DECREASE_FACTOR = 0.9;
+    private static final double STALL_FACTOR = 3.0;
+    private static final long STALL_SLACK_NANOS = 5000000L;
+    private static final long UNSAFE_MARGIN_MS = 5;
+    private static final int WARM_UP_SAMPLES = 5;
+    private static final int UNSAFE_DECAY_ARMS = 256;
+
+    private final long floorMillis;
+    private final long initialMillis;
+    private final Map<String, ModelState> models = new HashMap<String, ModelState>();
+
+    /**
+     * @param floorMillis the delay will never be learned below this value
+     * @param initialMillis delay used for a model until it has been measured, also the ceiling
+     */
+    public AdaptiveRearmDelay(long floorMillis, long initialMillis)
+    {
+        if (floorMillis < 0 || initialMillis < floorMillis)
+            throw new IllegalArgumentException("require 0 <= floorMillis <= initialMillis");
+        this.floorMillis = floorMillis;
+        this.initialMillis = initialMillis;
+    }
+
+    /**
+     * @return how long to wait after IDLE before submitting the next read on this model
+     */
+    public synchronized long getDelayMillis(String model)
+    {
+        return state(model).delayMillis;
+    }
+
+    /**
+     * Report how long a re-arm took, from read() being submitted to the scanner reporting WAITING
+     */
+    public synchronized void onArmed(String model, long armLatencyNanos)
+    {
+        ModelState state = state(model);
+        if (state.samples >= WARM_UP_SAMPLES
+                && armLatencyNanos > state.baselineNanos * STALL_FACTOR + STALL_SLACK_NANOS) {
+            onStall(state);
+            return;
+        }
+
+        //  Exponentially weighted baseline of a healthy arm
+        if (state.samples == 0)
+            state.baselineNanos = armLatencyNanos;
+        else
+            state.baselineNanos += (armLatencyNanos - state.baselineNanos) / 8;
+        state.samples++;
+
+        //  Forget the unsafe delay a step at a time while the model keeps arming cleanly
+        if (state.unsafeMillis >= 0 && ++state.cleanArms >= UNSAFE_DECAY_ARMS) {
+            state.unsafeMillis -= UNSAFE_MARGIN_MS;
+            if (state.unsafeMillis < floorMillis)
+                state.unsafeMillis = -1;
+            state.cleanArms = 0;
+        }
+
+        if (state.samples >= WARM_UP_SAMPLES) {
+            long lowest = Math.min(initialMillis, Math.max(floorMillis, state.unsafeMillis + UNSAFE_MARGIN_MS));
+            long reduced = (long) (state.delayMillis * DECREASE_FACTOR);
+            state.delayMillis = Math.max(lowest, Math.min(reduced, state.delayMillis - 1));
+        }
+    }
+
+    /**
+     * Report that a read could not be submitted after the learned delay
+     */
+    public synchronized void onArmFailed(String model)
+    {
+        onStall(state(model));
+    }
+
+    public long getFloorMillis() {return floorMillis;}
+
+    private void onStall(ModelState state)
+    {
+        state.unsafeMillis = Math.max(state.unsafeMillis, state.delayMillis);
+        state.cleanArms = 0;
+        state.delayMillis = Math.min(initialMillis, Math.max(state.delayMillis * 2, state.delayMillis + UNSAFE_MARGIN_MS));
+        state.stalls++;
+    }
+
+    private ModelState state(String model)
+    {
+        ModelState state = models.get(model);
+        if (state == null) {
+            state = new ModelState(initialMillis);
+            models.put(model, state);
+        }
+        return state;
+    }
+
+    /**
+     * @return number of stalls observed on a model, i.e. how often the learned delay was too short
+     */
+    public synchronized int getStalls(String model)
+    {
+        return state(model).stalls;
+    }
+
+    private static class ModelState {
+        long delayMillis;
+        long baselineNanos = 0;
+        long unsafeMillis = -1;
+        int cleanArms = 0;
+        int samples = 0;
+        int stalls = 0;
+
+        ModelState(long delayMillis)
+        {
+            this.delayMillis = delayMillis;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streams the events of a trace written by {@link CallbackTraceWriter}.  The file is memory mapped
+ * a window at a time so traces far larger than the heap, e.g. a whole shift, can be replayed.
+ * Only the string dictionary is kept in memory.  Each call to {@link #next()} decodes one event
+ * into this reader's fields, which remain valid until the following call.
+ */
+public class CallbackTraceReader implements Closeable {
+
+    public static final int DEFAULT_WINDOW_BYTES = 16 * 1024 * 1024;
+    private static final int HEADER_BYTES = CallbackTraceWriter.MAGIC.length + 8;
+    private static final int MAX_RECORD_HEADER_BYTES = 11;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long fileLength;
+    private final int windowBytes;
+    private final long startWallMillis;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private final List<String> strings = new ArrayList<String>();
+    private byte[] scratch = new byte[256];
+
+    //  Current event
+    private int type;
+    private long nanos;
+    private String friendlyName;
+    private String state;
+    private String result;
+    private int scanCount;
+    private String[] scanLabelTypes = new String[4];
+    private String[] scanCharsetNames = new String[4];
+    private String[] scanTimestamps = new String[4];
+    private byte[][] scanData = new byte[4][];
+    private String modelNumber;
+    private String deviceType;
+    private String connectionType;
+    private String deviceIdentifier;
+    private String decoderType;
+    private int scannerIndex;
+    private int flags;
+
+    public CallbackTraceReader(File trace) throws IOException
+    {
+        this(trace, DEFAULT_WINDOW_BYTES);
+    }
+
+    /**
+     * @param trace file written by CallbackTraceWriter
+     * @param windowBytes how much of the file is mapped at once
+     */
+    public CallbackTraceReader(File trace, int windowBytes) throws IOException
+    {
+        this.windowBytes = windowBytes;
+        this.file = new RandomAccessFile(trace, "r");
+        this.channel = file.getChannel();
+        this.fileLength = channel.size();
+        this.strings.add(null);
+
+        if (fileLength < HEADER_BYTES) {
+            close();
+            throw new IOException("Not a callback trace: " + trace);
+        }
+        map(0, HEADER_BYTES);
+        byte[] magic = new byte[CallbackTraceWriter.MAGIC.length];
+        window.get(magic);
+        if (!Arrays.equals(magic, CallbackTraceWriter.MAGIC)) {
+            close();
+            throw new IOException("Not a callback trace: " + trace);
+        }
+        startWallMillis = window.getLong();
+    }
+
+    /**
+     * Advance to the next event
+     * @return false at the end of the trace.  A record truncated by the recording process dying is
+     * treated as the end of the trace.
+     */
+    public boolean next() throws IOException
+    {
+        while (true) {
+            long position = position();
+            if (position >= fileLength)
+                return false;
+            ensure(Math.min(MAX_RECORD_HEADER_BYTES, fileLength - position));
+            int recordType = window.get() & 0xFF;
+            long length = readHeaderLength();
+            if (length < 0 || position() + length > fileLength)
+                return false;
+            ensure(length);
+
+            if (recordType == CallbackTraceWriter.RECORD_STRING) {
+                strings.add(readString());
+                continue;
+            }
+
+            type = recordType;
+            switch (recordType) {
+                case CallbackTraceWriter.RECORD_DATA:
+                    nanos += readVarLong();
+                    friendlyName = readStringRef();
+                    result = readStringRef();
+                    scanCount = (int) readVarLong();
+                    growScans(scanCount);
+                    for (int i = 0; i < scanCount; i++) {
+                        scanLabelTypes[i] = readStringRef();
+                        scanCharsetNames[i] = readStringRef();
+                        scanTimestamps[i] = readString();
+                        byte[] data = new byte[(int) readVarLong()];
+                        window.get(data);
+                        scanData[i] = data;
+                    }
+                    return true;
+                case CallbackTraceWriter.RECORD_STATUS:
+                    nanos += readVarLong();
+                    friendlyName = readStringRef();
+                    state = readStringRef();
+                    return true;
+                case CallbackTraceWriter.RECORD_CONNECTION:
+                    nanos += readVarLong();
+                    friendlyName = readStringRef();
+                    state = readStringRef();
+                    modelNumber = readStringRef();
+                    deviceType = readStringRef();
+                    connectionType = readStringRef();
+                    deviceIdentifier = readStringRef();
+                    decoderType = readStringRef();
+                    scannerIndex = (int) readVarLong();
+                    flags = (int) readVarLong();
+                    return true;
+                default:
+                    //  Unknown record from a newer writer, skip it
+                    window.position(window.position() + (int) length);
+            }
+        }
+    }
+
+    public long getStartWallMillis() {return startWallMillis;}
+
+    /**
+     * @return one of the CallbackTraceWriter RECORD_ types
+     */
+    public int getType() {return type;}
+
+    /**
+     * @return nanoseconds from the start of the trace to the current event
+     */
+    public long getNanos() {return nanos;}
+
+    public String getFriendlyName() {return friendlyName;}
+
+    /**
+     * @return the ScannerStates name for a status event or the ConnectionState name for a connection event
+     */
+    public String getState() {return state;}
+
+    public String getResult() {return result;}
+    public int getScanCount() {return scanCount;}
+    public String getScanLabelType(int index) {return scanLabelTypes[index];}
+    public String getScanCharsetName(int index) {return scanCharsetNames[index];}
+    public String getScanTimestamp(int index) {return scanTimestamps[index];}
+    public byte[] getScanData(int index) {return scanData[index];}
+    public String getModelNumber() {return modelNumber;}
+    public String getDeviceType() {return deviceType;}
+    public String getConnectionType() {return connectionType;}
+    public String getDeviceIdentifier() {return deviceIdentifier;}
+    public String getDecoderType() {return decoderType;}
+
+    /**
+     * @return position of the scanner in the supported devices list, -1 if it was not known
+     */
+    public int getScannerIndex() {return scannerIndex - 1;}
+
+    public int getFlags() {return flags;}
+
+    @Override
+    public void close() throws IOException
+    {
+        window = null;
+        file.close();
+    }
+
+    private long position()
+    {
+        return windowStart + window.position();
+    }
+
+    //  Make sure the next count bytes are inside the mapped window, remapping from the current position if not
+    private void ensure(long count) throws IOException
+    {
+        if (window.remaining() >= count)
+            return;
+        long position = position();
+        map(position, Math.max(count, Math.min(windowBytes, fileLength - position)));
+    }
+
+    private void map(long position, long size) throws IOException
+    {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        windowStart = position;
+    }
+
+    private long readVarLong()
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = window.get() & 0xFF;
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                break;
+        }
+        return value;
+    }
+
+    //  As readVarLong, but -1 if the trace ends partway through the varint
+    private long readHeaderLength()
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (!window.hasRemaining())
+                return -1;
+            int b = window.get() & 0xFF;
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        return -1;
+    }
+
+    private String readString()
+    {
+        int length = (int) readVarLong();
+        if (length == 0)
+            return null;
+        length--;
+        if (scratch.length < length)
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        window.get(scratch, 0, length);
+        return Utf8.decode(scratch, 0, length);
+    }
+
+    private String readStringRef() throws IOException
+    {
+        int id = (int) readVarLong();
+        if (id >= strings.size())
+            throw new IOException("Corrupt trace, undefined string " + id);
+        return strings.get(id);
+    }
+
+    private void growScans(int count)
+    {
+        if (count <= scanData.length)
+            return;
+        int capacity = Math.max(count, scanData.length * 2);
+        scanLabelTypes = Arrays.copyOf(scanLabelTypes, capacity);
+        scanCharsetNames = Arrays.copyOf(scanCharsetNames, capacity);
+        scanTimestamps = Arrays.copyOf(scanTimestamps, capacity);
+        scanData = Arrays.copyOf(scanData, capacity);
+    }
+}
@@ -0,0 +1,226 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes scanner callbacks to a compact binary trace which {@link CallbackTraceReader} can stream
+ * back.  The EMDK objects are reduced to strings, numbers and bytes by the caller so the format
+ * does not depend on the EMDK classes.
+ *
+ * Layout: an 8 byte magic, the wall clock start time in millis, then a sequence of records each
+ * made of a type byte, a varint payload length and the payload.  Event times are varint deltas in
+ * nanoseconds from the previous event.  Repeated strings (friendly names, enum names, charsets)
+ * are written once as a STRING record and referred to by index afterwards.
+ * Not thread safe, callers serialise access.
+ */
+public class CallbackTraceWriter {
+
+    public static final byte[] MAGIC = {'E', 'M', 'D', 'K', 'T', 'R', 'C', '1'};
+
+    public static final int RECORD_STRING = 1;
+    public static final int RECORD_DATA = 2;
+    public static final int RECORD_STATUS = 3;
+    public static final int RECORD_CONNECTION = 4;
+
+    public static final int FLAG_DEFAULT_SCANNER = 1;
+    public static final int FLAG_CONNECTED = 2;
+
+    private final OutputStream out;
+    private final Map<String, Integer> strings = new HashMap<String, Integer>();
+    private final Buffer payload = new Buffer(256);
+    private final Buffer header = new Buffer(16);
+    private long lastNanos;
+    private int pendingScans = 0;
+    private long eventCount = 0;
+    private long bytesWritten = 0;
+
+    /**
+     * @param out destination, buffering is the caller's responsibility
+     * @param startWallMillis wall clock time the trace starts, stored in the header
+     * @param startNanos System.nanoTime() the first event's delta is measured from
+     */
+    public CallbackTraceWriter(OutputStream out, long startWallMillis, long startNanos) throws IOException
+    {
+        this.out = out;
+        this.lastNanos = startNanos;
+        header.reset();
+        header.writeBytes(MAGIC, 0, MAGIC.length);
+        header.writeLong(startWallMillis);
+        write(header);
+    }
+
+    /**
+     * Start an onData record, follow with exactly scanCount calls to {@link #addScan}
+     */
+    public void beginData(long nanos, String friendlyName, String result, int scanCount) throws IOException
+    {
+        int friendlyNameId = stringId(friendlyName);
+        int resultId = stringId(result);
+        payload.reset();
+        payload.writeVarLong(delta(nanos));
+        payload.writeVarLong(friendlyNameId);
+        payload.writeVarLong(resultId);
+        payload.writeVarLong(scanCount);
+        pendingScans = scanCount;
+        if (scanCount == 0)
+            endRecord(RECORD_DATA);
+    }
+
+    public void addScan(String labelType, String charsetName, String timestamp, byte[] data) throws IOException
+    {
+        if (pendingScans <= 0)
+            throw new IllegalStateException("addScan without beginData");
+        //  Intern ids first as they may emit STRING records ahead of this one
+        int labelId = stringId(labelType);
+        int charsetId = stringId(charsetName);
+        payload.writeVarLong(labelId);
+        payload.writeVarLong(charsetId);
+        payload.writeString(timestamp);
+        int length = (data == null) ? 0 : data.length;
+        payload.writeVarLong(length);
+        if (length > 0)
+            payload.writeBytes(data, 0, length);
+        if (--pendingScans == 0)
+            endRecord(RECORD_DATA);
+    }
+
+    public void writeStatus(long nanos, String friendlyName, String state) throws IOException
+    {
+        int friendlyNameId = stringId(friendlyName);
+        int stateId = stringId(state);
+        payload.reset();
+        payload.writeVarLong(delta(nanos));
+        payload.writeVarLong(friendlyNameId);
+        payload.writeVarLong(stateId);
+        endRecord(RECORD_STATUS);
+    }
+
+    /**
+     * @param scannerIndex stored biased by one so unknown (-1) encodes as 0
+     */
+    public void writeConnection(long nanos, String friendlyName, String connectionState, String modelNumber,
+                                String deviceType, String connectionType, String deviceIdentifier,
+                                String decoderType, int scannerIndex, int flags) throws IOException
+    {
+        int[] ids = {stringId(friendlyName), stringId(connectionState), stringId(modelNumber), stringId(deviceType),
+                stringId(connectionType), stringId(deviceIdentifier), stringId(decoderType)};
+        payload.reset();
+        payload.writeVarLong(delta(nanos));
+        for (int id : ids)
+            payload.writeVarLong(id);
+        payload.writeVarLong(scannerIndex);
+        payload.writeVarLong(flags);
+        endRecord(RECORD_CONNECTION);
+    }
+
+    public long getEventCount() {return eventCount;}
+
+    public long getBytesWritten() {return bytesWritten;}
+
+    private long delta(long nanos)
+    {
+        long delta = Math.max(0, nanos - lastNanos);
+        lastNanos = Math.max(lastNanos, nanos);
+        return delta;
+    }
+
+    private void endRecord(int type) throws IOException
+    {
+        header.reset();
+        header.writeByte(type);
+        header.writeVarLong(payload.length);
+        write(header);
+        write(payload);
+        eventCount++;
+    }
+
+    //  Index of a string in the trace's dictionary, defining it first if it is new.  Null is index 0.
+    private int stringId(String value) throws IOException
+    {
+        if (value == null)
+            return 0;
+        Integer id = strings.get(value);
+        if (id != null)
+            return id;
+        id = strings.size() + 1;
+        strings.put(value, id);
+
+        Buffer definition = new Buffer(value.length() + 8);
+        definition.writeString(value);
+        header.reset();
+        header.writeByte(RECORD_STRING);
+        header.writeVarLong(definition.length);
+        write(header);
+        write(definition);
+        return id;
+    }
+
+    private void write(Buffer buffer) throws IOException
+    {
+        out.write(buffer.bytes, 0, buffer.length);
+        bytesWritten += buffer.length;
+    }
+
+    /**
+     * Growable byte buffer reused between records
+     */
+    private static class Buffer {
+        byte[] bytes;
+        int length;
+
+        Buffer(int capacity) {bytes = new byte[capacity];}
+
+        void reset() {length = 0;}
+
+        void ensure(int extra)
+        {
+            if (length + extra > bytes.length) {
+                byte[] grown = new byte[Math.max(bytes.length * 2, length + extra)];
+                System.arraycopy(bytes, 0, grown, 0, length);
+                bytes = grown;
+            }
+        }
+
+        void writeByte(int b)
+        {
+            ensure(1);
+            bytes[length++] = (byte) b;
+        }
+
+        void writeBytes(byte[] src, int offset, int count)
+        {
+            ensure(count);
+            System.arraycopy(src, offset, bytes, length, count);
+            length += count;
+        }
+
+        void writeLong(long value)
+        {
+            for (int shift = 56; shift >= 0; shift -= 8)
+                writeByte((int) (value >>> shift));
+        }
+
+        void writeVarLong(long value)
+        {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        void writeString(String value)
+        {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] utf8 = Utf8.encode(value);
+            writeVarLong(utf8.length + 1);
+            writeBytes(utf8, 0, utf8.length);
+        }
+    }
+}
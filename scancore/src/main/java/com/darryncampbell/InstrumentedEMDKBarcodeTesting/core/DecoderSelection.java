@@ -0,0 +1,97 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+/**
+ * Which decoders the user has asked for against which are known to be applied to the scanner,
+ * each held as a bitmask of {@link Symbology} codes.  Lets the configuration layer coalesce any
+ * number of changes into one transaction and skip it entirely when the scanner already matches.
+ * Thread safe.
+ */
+public class DecoderSelection {
+
+    /**
+     * Applied mask value when the scanner's configuration is not known, never equal to a request
+     */
+    public static final long UNKNOWN = -1L;
+
+    private long requested = 0;
+    private long applied = UNKNOWN;
+    private long requestCount = 0;
+    private long applyCount = 0;
+
+    public static long bit(int symbology)
+    {
+        return 1L << symbology;
+    }
+
+    public static boolean isEnabled(long mask, int symbology)
+    {
+        return (mask & bit(symbology)) != 0;
+    }
+
+    /**
+     * Record the user's choice for one decoder
+     * @return true if this changes what is requested
+     */
+    public synchronized boolean request(int symbology, boolean bEnabled)
+    {
+        long updated = bEnabled ? (requested | bit(symbology)) : (requested & ~bit(symbology));
+        return setRequested(updated);
+    }
+
+    /**
+     * Replace the whole request, e.g. from the state of every checkbox
+     * @return true if this changes what is requested
+     */
+    public synchronized boolean setRequested(long mask)
+    {
+        requestCount++;
+        if (mask == requested)
+            return false;
+        requested = mask;
+        return true;
+    }
+
+    public synchronized long getRequested() {return requested;}
+
+    public synchronized long getApplied() {return applied;}
+
+    /**
+     * @return true if the scanner needs configuring to match the request
+     */
+    public synchronized boolean needsApply() {return requested != applied;}
+
+    /**
+     * @return decoders whose state differs between the request and the scanner, all of them if
+     * the scanner's state is unknown
+     */
+    public synchronized long getChanged()
+    {
+        return (applied == UNKNOWN) ? UNKNOWN : (requested ^ applied);
+    }
+
+    /**
+     * The scanner is known to be configured with this mask, either because it was just applied
+     * or read back from the scanner
+     */
+    public synchronized void onApplied(long mask, boolean bTransaction)
+    {
+        applied = mask;
+        if (bTransaction)
+            applyCount++;
+    }
+
+    /**
+     * Forget what the scanner holds, e.g. after a failed apply or a different scanner being selected
+     */
+    public synchronized void invalidate() {applied = UNKNOWN;}
+
+    /**
+     * @return number of individual decoder changes requested
+     */
+    public synchronized long getRequestCount() {return requestCount;}
+
+    /**
+     * @return number of configuration transactions actually sent to the scanner
+     */
+    public synchronized long getApplyCount() {return applyCount;}
+}
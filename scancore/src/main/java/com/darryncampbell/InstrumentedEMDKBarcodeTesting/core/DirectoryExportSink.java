@@ -0,0 +1,86 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Writes each export frame to its own file in a directory, named by epoch and sequence number so
+ * a collector, e.g. adb pull, reads them in order and frames from a later run never replace ones
+ * not yet collected.  Frames are written under a temporary name and
+ * renamed once complete so a partial frame is never picked up.  A retried frame overwrites its
+ * earlier attempt.  Nothing here deletes frames, so once the frames not yet collected reach the
+ * size limit writes fail and the exporter's spool backs up until the collector removes some.
+ */
+public class DirectoryExportSink implements ExportSink {
+
+    public static final String FRAME_PREFIX = "batch-";
+    public static final String FRAME_SUFFIX = ".exp";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final long maxBytes;
+    private long bytesHeld = -1; // Frames in the directory as last counted plus those written since, -1 until counted
+
+    /**
+     * @param directory the frames are written to
+     * @param maxBytes frames allowed in the directory at once
+     */
+    public DirectoryExportSink(File directory, long maxBytes)
+    {
+        if (maxBytes <= 0)
+            throw new IllegalArgumentException("maxBytes must be positive");
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    public static String frameName(long epoch, long sequence)
+    {
+        return FRAME_PREFIX + String.format(Locale.US, "%016d-%016d", epoch, sequence) + FRAME_SUFFIX;
+    }
+
+    @Override
+    public void write(long epoch, long sequence, byte[] frame, int offset, int length) throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create " + directory);
+        //  Counted again only when the limit would be passed, the collector removes frames behind our back
+        if (bytesHeld < 0 || bytesHeld + length > maxBytes) {
+            bytesHeld = countFrameBytes();
+            if (bytesHeld + length > maxBytes)
+                throw new IOException("Export directory full, " + bytesHeld + " bytes not yet collected from " + directory);
+        }
+        String name = frameName(epoch, sequence);
+        File temporary = new File(directory, name + TEMPORARY_SUFFIX);
+        FileOutputStream out = new FileOutputStream(temporary);
+        try {
+            out.write(frame, offset, length);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        File target = new File(directory, name);
+        if (!temporary.renameTo(target)) {
+            temporary.delete();
+            throw new IOException("Cannot rename " + temporary + " to " + target);
+        }
+        bytesHeld += length;
+    }
+
+    private long countFrameBytes()
+    {
+        long bytes = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith(FRAME_PREFIX) && file.getName().endsWith(FRAME_SUFFIX))
+                    bytes += file.length();
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public void close() {}
+}
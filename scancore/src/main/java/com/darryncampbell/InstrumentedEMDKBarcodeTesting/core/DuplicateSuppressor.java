@@ -0,0 +1,138 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+/**
+ * Suppresses repeated reads of the same label within a time window, as happens in continuous
+ * mode while a label stays in front of the imager.  Each scan is reduced to a 64 bit hash of its
+ * bytes and symbology and looked up in an open addressing table of primitive arrays, so the cost
+ * per scan is constant and nothing is allocated.  A label held in view stays suppressed because
+ * every sighting restarts its window.
+ *
+ * The window is configured per symbology, 0 disables suppression for that symbology.  The table
+ * holds a fixed number of recent labels; when a probe sequence is full the least recently seen
+ * label in it is forgotten, which can only let a duplicate through, never suppress a new label
+ * (barring a 64 bit hash collision).
+ * Thread safe.
+ */
+public class DuplicateSuppressor {
+
+    public static final long DEFAULT_WINDOW_MS = 1000;
+
+    private static final int MAX_PROBES = 16;
+    private static final long EMPTY = 0;
+
+    private final long[] keys;
+    private final long[] lastSeenNanos;
+    private final int mask;
+    private final long[] windowNanos = new long[Symbology.COUNT];
+
+    private long passed = 0;
+    private long suppressed = 0;
+
+    /**
+     * @param capacity number of distinct labels remembered, rounded up to a power of two
+     */
+    public DuplicateSuppressor(int capacity)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        int size = Integer.highestOneBit(Math.max(capacity, MAX_PROBES) - 1) << 1;
+        keys = new long[size];
+        lastSeenNanos = new long[size];
+        mask = size - 1;
+        for (int i = 0; i < Symbology.COUNT; i++)
+            windowNanos[i] = DEFAULT_WINDOW_MS * 1000000L;
+    }
+
+    /**
+     * @param symbology one of the {@link Symbology} codes
+     * @param windowMillis how long after a read the same label is treated as a duplicate, 0 to never suppress
+     */
+    public synchronized void setWindowMillis(int symbology, long windowMillis)
+    {
+        windowNanos[symbology] = windowMillis * 1000000L;
+    }
+
+    public synchronized long getWindowMillis(int symbology)
+    {
+        return windowNanos[symbology] / 1000000L;
+    }
+
+    /**
+     * Record a read and decide whether it repeats one within the symbology's window
+     * @param nowNanos System.nanoTime() of the read
+     * @return true if the read should be dropped
+     */
+    public synchronized boolean isDuplicate(byte[] data, int offset, int length, int symbology, long nowNanos)
+    {
+        long window = (symbology >= 0 && symbology < Symbology.COUNT) ? windowNanos[symbology] : 0;
+        if (window <= 0) {
+            passed++;
+            return false;
+        }
+
+        long key = hash(data, offset, length, symbology);
+        int start = (int) (key ^ (key >>> 32)) & mask;
+        int victim = start;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int slot = (start + probe) & mask;
+            if (keys[slot] == key) {
+                boolean bDuplicate = nowNanos - lastSeenNanos[slot] < window;
+                lastSeenNanos[slot] = nowNanos;
+                if (bDuplicate) {
+                    suppressed++;
+                    return true;
+                }
+                passed++;
+                return false;
+            }
+            if (keys[slot] == EMPTY) {
+                victim = slot;
+                break;
+            }
+            if (lastSeenNanos[slot] - lastSeenNanos[victim] < 0)
+                victim = slot;
+        }
+        keys[victim] = key;
+        lastSeenNanos[victim] = nowNanos;
+        passed++;
+        return false;
+    }
+
+    /**
+     * @return reads dropped as duplicates, i.e. the downstream work saved
+     */
+    public synchronized long getSuppressed() {return suppressed;}
+
+    /**
+     * @return reads let through
+     */
+    public synchronized long getPassed() {return passed;}
+
+    /**
+     * Forget every label, e.g. when continuous mode is restarted
+     */
+    public synchronized void clear()
+    {
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = EMPTY;
+    }
+
+    //  FNV-1a over the bytes, the symbology folded in and the result finalised with the MurmurHash3
+    //  mixer so nearby barcodes land in unrelated slots
+    static long hash(byte[] data, int offset, int length, int symbology)
+    {
+        long h = 0xCBF29CE484222325L;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            h ^= data[i] & 0xFF;
+            h *= 0x100000001B3L;
+        }
+        h ^= (symbology + 1) * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (h == EMPTY) ? 1 : h;
+    }
+}
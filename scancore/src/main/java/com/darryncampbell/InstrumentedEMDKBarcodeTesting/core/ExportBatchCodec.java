@@ -0,0 +1,364 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes batches of scans into self contained, compressed frames for {@link ScanExporter}.  Each
+ * frame can be decoded on its own, so a receiver which missed earlier batches loses nothing more.
+ *
+ * Frame layout: an 8 byte magic, the exporter's epoch, the batch sequence number within that
+ * epoch, the scan count, the payload length before and after compression and the CRC32 of the
+ * uncompressed payload, followed by the deflated payload.  The payload is a varint base timestamp then, per scan, the zigzag varint timestamp
+ * delta from the previous scan, varint dictionary indexes of the label type and friendly name,
+ * the validation result, the rule verdict and the length prefixed barcode bytes.  A dictionary
+ * index one past the last defined string defines it, the string follows immediately.  Null is
+ * index 0.  Not thread safe.
+ */
+public class ExportBatchCodec {
+
+    public static final byte[] MAGIC = {'E', 'M', 'D', 'K', 'E', 'X', 'P', '1'};
+    public static final int HEADER_BYTES = MAGIC.length + 8 + 8 + 4 * 4;
+
+    /**
+     * Size of a scan sent on its own without batching: a millisecond timestamp, the label type and
+     * friendly name as length prefixed strings, the validation and verdict bytes and the length
+     * prefixed barcode.  The baseline for {@link #getPlainBytes()}.
+     */
+    private static final int PLAIN_FIXED_BYTES = 8 + 1 + 1 + 1 + 1 + 1;
+
+    /**
+     * A decoded frame
+     */
+    public static final class Batch {
+        public final long epoch;
+        public final long sequence;
+        public final List<ScanRecord> records;
+
+        Batch(long epoch, long sequence, List<ScanRecord> records)
+        {
+            this.epoch = epoch;
+            this.sequence = sequence;
+            this.records = records;
+        }
+    }
+
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final Buffer payload = new Buffer(4096);
+    private final Map<String, Integer> strings = new HashMap<String, Integer>();
+    private final List<byte[]> encodedStrings = new ArrayList<byte[]>();
+    private byte[] compressed = new byte[4096];
+    private int count = 0;
+    private long lastMillis;
+    private long plainBytes = 0;
+
+    /**
+     * @param compressionLevel a {@link Deflater} level, Deflater.BEST_SPEED suits a handheld
+     */
+    public ExportBatchCodec(int compressionLevel)
+    {
+        deflater = new Deflater(compressionLevel);
+        reset();
+    }
+
+    /**
+     * Append a scan to the batch being built
+     */
+    public void add(ScanRecord record)
+    {
+        if (count == 0) {
+            payload.writeVarLong(zigzag(record.timestampMillis));
+            lastMillis = record.timestampMillis;
+        }
+        payload.writeVarLong(zigzag(record.timestampMillis - lastMillis));
+        lastMillis = record.timestampMillis;
+        int labelBytes = writeStringRef(Symbology.name(record.symbology));
+        int nameBytes = writeStringRef(record.friendlyName);
+        payload.writeByte(record.validation);
+        payload.writeByte(record.ruleVerdict);
+        int length = (record.data == null) ? 0 : record.data.length;
+        payload.writeVarLong(length);
+        if (length > 0)
+            payload.writeBytes(record.data, 0, length);
+        plainBytes += PLAIN_FIXED_BYTES + labelBytes + nameBytes + length;
+        count++;
+    }
+
+    /**
+     * @return scans added since the last frame
+     */
+    public int size() {return count;}
+
+    /**
+     * @return bytes the scans added since the last frame would take sent one at a time
+     */
+    public long getPlainBytes() {return plainBytes;}
+
+    /**
+     * @return uncompressed payload bytes of the scans added since the last frame
+     */
+    public int getRawBytes() {return payload.length;}
+
+    /**
+     * Compress the scans added so far into a frame and start a new batch
+     * @param epoch distinguishes one exporter's sequence numbers from another's, see {@link ScanExporter#getEpoch()}
+     * @return the frame, owned by the caller
+     */
+    public byte[] finish(long epoch, long sequence)
+    {
+        crc.reset();
+        crc.update(payload.bytes, 0, payload.length);
+        deflater.reset();
+        deflater.setInput(payload.bytes, 0, payload.length);
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                byte[] grown = new byte[compressed.length * 2];
+                System.arraycopy(compressed, 0, grown, 0, compressedLength);
+                compressed = grown;
+            }
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+
+        byte[] frame = new byte[HEADER_BYTES + compressedLength];
+        System.arraycopy(MAGIC, 0, frame, 0, MAGIC.length);
+        int position = putLong(frame, MAGIC.length, epoch);
+        position = putLong(frame, position, sequence);
+        position = putInt(frame, position, count);
+        position = putInt(frame, position, payload.length);
+        position = putInt(frame, position, compressedLength);
+        putInt(frame, position, (int) crc.getValue());
+        System.arraycopy(compressed, 0, frame, HEADER_BYTES, compressedLength);
+        reset();
+        return frame;
+    }
+
+    /**
+     * Discard the scans added since the last frame
+     */
+    public void reset()
+    {
+        payload.reset();
+        strings.clear();
+        encodedStrings.clear();
+        encodedStrings.add(null);
+        count = 0;
+        plainBytes = 0;
+    }
+
+    public void close()
+    {
+        deflater.end();
+    }
+
+    /**
+     * Decode a frame written by {@link #finish}, friendly names are restored to the records
+     * @throws IOException if the frame is truncated or corrupt
+     */
+    public static Batch decode(byte[] frame, int offset, int length) throws IOException
+    {
+        if (length < HEADER_BYTES)
+            throw new IOException("Not an export frame, " + length + " bytes");
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (frame[offset + i] != MAGIC[i])
+                throw new IOException("Not an export frame");
+        }
+        int position = offset + MAGIC.length;
+        long epoch = getLong(frame, position);
+        long sequence = getLong(frame, position + 8);
+        int count = getInt(frame, position + 16);
+        int rawLength = getInt(frame, position + 20);
+        int compressedLength = getInt(frame, position + 24);
+        int expectedCrc = getInt(frame, position + 28);
+        if (count < 0 || rawLength < 0 || compressedLength != length - HEADER_BYTES)
+            throw new IOException("Corrupt export frame " + sequence + ", bad lengths");
+
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(frame, offset + HEADER_BYTES, compressedLength);
+            int inflated = 0;
+            while (inflated < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(raw, inflated, rawLength - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                inflated += n;
+            }
+            if (inflated != rawLength)
+                throw new IOException("Corrupt export frame " + sequence + ", payload truncated");
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt export frame " + sequence + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(raw, 0, rawLength);
+        if ((int) crc.getValue() != expectedCrc)
+            throw new IOException("Corrupt export frame " + sequence + ", CRC mismatch");
+
+        try {
+            return new Batch(epoch, sequence, decodePayload(raw, count));
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Corrupt export frame " + sequence + ", payload overrun");
+        }
+    }
+
+    private static List<ScanRecord> decodePayload(byte[] raw, int count) throws IOException
+    {
+        List<ScanRecord> records = new ArrayList<ScanRecord>(count);
+        List<String> strings = new ArrayList<String>();
+        strings.add(null);
+        int[] position = {0};
+        long millis = (count > 0) ? unzigzag(readVarLong(raw, position)) : 0;
+        for (int i = 0; i < count; i++) {
+            millis += unzigzag(readVarLong(raw, position));
+            String labelType = readStringRef(raw, position, strings);
+            String friendlyName = readStringRef(raw, position, strings);
+            int validation = raw[position[0]++];
+            int verdict = raw[position[0]++];
+            int length = (int) readVarLong(raw, position);
+            byte[] data = new byte[length];
+            System.arraycopy(raw, position[0], data, 0, length);
+            position[0] += length;
+
+            ScanRecord record = new ScanRecord(data, Symbology.fromName(labelType), millis);
+            record.friendlyName = friendlyName;
+            record.validation = validation;
+            record.ruleVerdict = verdict;
+            records.add(record);
+        }
+        if (position[0] != raw.length)
+            throw new IOException("Corrupt export payload, " + (raw.length - position[0]) + " trailing bytes");
+        return records;
+    }
+
+    //  Writes the string's dictionary index, defining it first if it is new to this batch
+    //  @return length of the string in UTF-8
+    private int writeStringRef(String value)
+    {
+        if (value == null) {
+            payload.writeVarLong(0);
+            return 0;
+        }
+        Integer id = strings.get(value);
+        if (id != null) {
+            payload.writeVarLong(id);
+            return encodedStrings.get(id).length;
+        }
+        byte[] utf8 = Utf8.encode(value);
+        id = encodedStrings.size();
+        strings.put(value, id);
+        encodedStrings.add(utf8);
+        payload.writeVarLong(id);
+        payload.writeVarLong(utf8.length);
+        payload.writeBytes(utf8, 0, utf8.length);
+        return utf8.length;
+    }
+
+    private static String readStringRef(byte[] raw, int[] position, List<String> strings) throws IOException
+    {
+        int id = (int) readVarLong(raw, position);
+        if (id == strings.size()) {
+            int length = (int) readVarLong(raw, position);
+            strings.add(Utf8.decode(raw, position[0], length));
+            position[0] += length;
+        } else if (id > strings.size() || id < 0) {
+            throw new IOException("Corrupt export payload, undefined string " + id);
+        }
+        return strings.get(id);
+    }
+
+    private static long readVarLong(byte[] raw, int[] position)
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = raw[position[0]++] & 0xFF;
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                break;
+        }
+        return value;
+    }
+
+    //  Scanner clocks can step backwards, zigzag keeps small negative deltas small
+    private static long zigzag(long value) {return (value << 1) ^ (value >> 63);}
+
+    private static long unzigzag(long value) {return (value >>> 1) ^ -(value & 1);}
+
+    private static int putLong(byte[] bytes, int position, long value)
+    {
+        for (int shift = 56; shift >= 0; shift -= 8)
+            bytes[position++] = (byte) (value >>> shift);
+        return position;
+    }
+
+    private static int putInt(byte[] bytes, int position, int value)
+    {
+        for (int shift = 24; shift >= 0; shift -= 8)
+            bytes[position++] = (byte) (value >>> shift);
+        return position;
+    }
+
+    private static long getLong(byte[] bytes, int position)
+    {
+        return ((long) getInt(bytes, position) << 32) | (getInt(bytes, position + 4) & 0xFFFFFFFFL);
+    }
+
+    private static int getInt(byte[] bytes, int position)
+    {
+        return ((bytes[position] & 0xFF) << 24) | ((bytes[position + 1] & 0xFF) << 16) |
+                ((bytes[position + 2] & 0xFF) << 8) | (bytes[position + 3] & 0xFF);
+    }
+
+    /**
+     * Growable byte buffer reused between batches
+     */
+    private static class Buffer {
+        byte[] bytes;
+        int length;
+
+        Buffer(int capacity) {bytes = new byte[capacity];}
+
+        void reset() {length = 0;}
+
+        void ensure(int extra)
+        {
+            if (length + extra > bytes.length) {
+                byte[] grown = new byte[Math.max(bytes.length * 2, length + extra)];
+                System.arraycopy(bytes, 0, grown, 0, length);
+                bytes = grown;
+            }
+        }
+
+        void writeByte(int b)
+        {
+            ensure(1);
+            bytes[length++] = (byte) b;
+        }
+
+        void writeBytes(byte[] src, int offset, int count)
+        {
+            ensure(count);
+            System.arraycopy(src, offset, bytes, length, count);
+            length += count;
+        }
+
+        void writeVarLong(long value)
+        {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import java.io.IOException;
+
+/**
+ * Destination for the frames written by {@link ScanExporter}.  Called from the exporter's thread
+ * only, one frame at a time, in sequence order.
+ */
+public interface ExportSink {
+
+    /**
+     * Deliver a frame.  Returning normally means the frame has been accepted and will not be
+     * offered again, throwing leaves it at the head of the spool to be retried.
+     * @param epoch the exporter's epoch, together with the sequence number unique across app runs
+     * @param sequence the frame's batch sequence number, starting from 0 in each epoch.  Retries
+     * repeat the same number.
+     */
+    void write(long epoch, long sequence, byte[] frame, int offset, int length) throws IOException;
+
+    /**
+     * Release any connection or file held, a later write may reopen it
+     */
+    void close();
+}
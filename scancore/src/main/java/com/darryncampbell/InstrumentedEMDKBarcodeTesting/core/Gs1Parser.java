@@ -0,0 +1,377 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+/**
+ * Splits GS1 element strings (GS1-128, GS1 DataBar, GS1 DataMatrix and GS1 QR Code) into their
+ * application identifiers directly on the raw scan bytes.  Each element is reported as an AI and
+ * the offset and length of its data within the scanned buffer, so parsing creates no Strings.
+ * Fixed length AIs come from a table of the GS1 General Specifications; variable length fields
+ * end at a group separator (0x1D, how scanners transmit FNC1) or the end of the data.  A
+ * leading AIM symbology identifier such as "]C1" and a leading FNC1 are skipped.
+ * Stateless and thread safe, results go in a caller supplied {@link Elements}.
+ */
+public final class Gs1Parser {
+
+    public static final int OK = 0;
+    public static final int EMPTY = 1;
+    public static final int UNKNOWN_AI = 2;
+    public static final int TRUNCATED = 3;
+    public static final int TOO_LONG = 4;
+    public static final int NOT_NUMERIC = 5;
+    public static final int BAD_CHECK_DIGIT = 6;
+    public static final int TOO_MANY_ELEMENTS = 7;
+    public static final int BAD_CHARACTER = 8;
+
+    private static final String[] DESCRIPTIONS = {
+            "OK", "EMPTY", "UNKNOWN AI", "TRUNCATED", "TOO LONG", "NOT NUMERIC", "BAD CHECK DIGIT",
+            "TOO MANY ELEMENTS", "BAD CHARACTER"};
+
+    public static final byte GROUP_SEPARATOR = 0x1D;
+
+    /**
+     * Elements recorded at most, enough for any real label
+     */
+    public static final int MAX_ELEMENTS = 32;
+
+    /**
+     * Result of a parse, reused from one scan to the next.  Not thread safe.
+     */
+    public static final class Elements {
+        private final int[] ai = new int[MAX_ELEMENTS];
+        private final int[] aiDigits = new int[MAX_ELEMENTS];
+        private final int[] offset = new int[MAX_ELEMENTS];
+        private final int[] length = new int[MAX_ELEMENTS];
+        private int count = 0;
+        private int error = OK;
+        private int errorOffset = -1;
+
+        public int count() {return count;}
+
+        /**
+         * @return OK or the reason parsing stopped, elements before the error are still reported
+         */
+        public int error() {return error;}
+
+        /**
+         * @return offset in the scanned buffer where parsing stopped, -1 if it did not
+         */
+        public int errorOffset() {return errorOffset;}
+
+        public int ai(int index) {return ai[index];}
+
+        /**
+         * @return digits in the AI, e.g. 2 for (01) and 4 for (3103)
+         */
+        public int aiDigits(int index) {return aiDigits[index];}
+
+        public int offset(int index) {return offset[index];}
+
+        public int length(int index) {return length[index];}
+
+        /**
+         * @return the first element with the AI, or -1
+         */
+        public int indexOf(int applicationIdentifier)
+        {
+            for (int i = 0; i < count; i++) {
+                if (ai[i] == applicationIdentifier)
+                    return i;
+            }
+            return -1;
+        }
+
+        /**
+         * @return a numeric element's value, e.g. a date as YYMMDD, or -1 if it is not all digits or too long
+         */
+        public long numericValue(byte[] data, int index)
+        {
+            if (length[index] > 18)
+                return -1;
+            long value = 0;
+            int end = offset[index] + length[index];
+            for (int i = offset[index]; i < end; i++) {
+                int digit = data[i] - '0';
+                if (digit < 0 || digit > 9)
+                    return -1;
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        void clear()
+        {
+            count = 0;
+            error = OK;
+            errorOffset = -1;
+        }
+
+        void fail(int reason, int at)
+        {
+            error = reason;
+            errorOffset = at;
+        }
+    }
+
+    //  Each AI is keyed by its digits padded to 4, e.g. (01) is 0100 and (410) is 4100.  The first
+    //  two digits of an AI decide how many digits it has, so keys never collide.
+    private static final int KEYS = 10000;
+    private static final int LENGTH_MASK = 0xFF;
+    private static final int FLAG_VARIABLE = 0x100;
+    private static final int FLAG_NUMERIC = 0x200;
+    private static final int FLAG_CHECK_DIGIT = 0x400;
+    private static final int[] POWERS = {1, 10, 100, 1000, 10000};
+
+    private static final int[] AI_DIGITS_BY_PREFIX = new int[100];
+    private static final int[] SPEC_BY_KEY = new int[KEYS];
+
+    /**
+     * AI or AI range, format (n numeric, an alphanumeric, fixed length or ..maximum) and "c" if
+     * the last digit is a GS1 check digit.  AIs whose data combines several parts are treated as
+     * a single field of the combined maximum length.
+     */
+    private static final String[] DICTIONARY = {
+            "00 n18 c", "01 n14 c", "02 n14 c",
+            "10 an..20", "11 n6", "12 n6", "13 n6", "15 n6", "16 n6", "17 n6",
+            "20 n2", "21 an..20", "22 an..20",
+            "235 an..28", "240 an..30", "241 an..30", "242 n..6", "243 an..20",
+            "250 an..30", "251 an..30", "253 an..30", "254 an..20", "255 n..25",
+            "30 n..8",
+            "3100-3169 n6", "3200-3379 n6", "3400-3699 n6",
+            "37 n..8",
+            "3900-3909 n..15", "3910-3919 n..18", "3920-3929 n..15", "3930-3939 n..18",
+            "3940-3949 n4", "3950-3959 n6",
+            "400 an..30", "401 an..30", "402 n17 c", "403 an..30",
+            "410-417 n13 c",
+            "420 an..20", "421 an..12", "422 n3", "423 n..15", "424 n3", "425 n..15", "426 n3", "427 an..3",
+            "7001 n13", "7002 an..30", "7003 n10", "7004 n..4", "7005 an..12", "7006 n6", "7007 n..12",
+            "7008 an..3", "7009 an..10", "7010 an..2", "7020 an..20", "7021 an..20", "7022 an..20",
+            "7023 an..30", "7030-7039 an..30", "7040 an4",
+            "710-716 an..20",
+            "7230-7239 an..30", "7240 an..20",
+            "8001 n14", "8002 an..20", "8003 an..30", "8004 an..30", "8005 n6", "8006 n18", "8007 an..34",
+            "8008 n..12", "8009 an..50", "8010 an..30", "8011 n..12", "8012 an..20", "8013 an..25",
+            "8017 n18 c", "8018 n18 c", "8019 n..10", "8020 an..25", "8026 n18",
+            "8110 an..70", "8111 n4", "8112 an..70", "8200 an..70",
+            "90 an..30", "91-99 an..90"
+    };
+
+    static {
+        for (String definition : DICTIONARY) {
+            String[] parts = definition.split(" ");
+            String[] range = parts[0].split("-");
+            int digits = range[0].length();
+            int first = Integer.parseInt(range[0]);
+            int last = (range.length > 1) ? Integer.parseInt(range[1]) : first;
+            String format = parts[1];
+            boolean bNumeric = format.charAt(0) == 'n' && format.charAt(1) != 'n';
+            String lengthPart = format.substring(bNumeric ? 1 : 2);
+            boolean bVariable = lengthPart.startsWith("..");
+            int spec = Integer.parseInt(bVariable ? lengthPart.substring(2) : lengthPart) |
+                    (bVariable ? FLAG_VARIABLE : 0) | (bNumeric ? FLAG_NUMERIC : 0) |
+                    (parts.length > 2 && parts[2].equals("c") ? FLAG_CHECK_DIGIT : 0);
+            for (int ai = first; ai <= last; ai++) {
+                int prefix = ai / POWERS[digits - 2];
+                if (AI_DIGITS_BY_PREFIX[prefix] != 0 && AI_DIGITS_BY_PREFIX[prefix] != digits)
+                    throw new IllegalStateException("AI " + ai + " does not match the length of other (" + prefix + ") AIs");
+                AI_DIGITS_BY_PREFIX[prefix] = digits;
+                SPEC_BY_KEY[ai * POWERS[4 - digits]] = spec;
+            }
+        }
+    }
+
+    private Gs1Parser() {}
+
+    /**
+     * Whether a scan should be read as a GS1 element string: always for the GS1 symbologies, and
+     * for Code 128, Data Matrix and QR Code when the data starts with the GS1 symbology identifier
+     * or an FNC1
+     * @param symbology one of the {@link Symbology} codes
+     */
+    public static boolean isGs1(int symbology, byte[] data, int offset, int length)
+    {
+        switch (symbology) {
+            case Symbology.EAN128:
+            case Symbology.GS1_DATABAR:
+            case Symbology.GS1_DATABAR_LIM:
+            case Symbology.GS1_DATABAR_EXP:
+            case Symbology.GS1_DATAMATRIX:
+            case Symbology.GS1_QRCODE:
+                return true;
+            case Symbology.CODE128:
+            case Symbology.DATAMATRIX:
+            case Symbology.QRCODE:
+                return length > 0 && (data[offset] == GROUP_SEPARATOR || gs1IdentifierLength(data, offset, length) > 0);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Parse a GS1 element string into elements, which are cleared first
+     * @return OK or the reason parsing stopped, as elements.error()
+     */
+    public static int parse(byte[] data, int offset, int length, Elements elements)
+    {
+        elements.clear();
+        int end = offset + length;
+        int p = offset + gs1IdentifierLength(data, offset, length);
+        if (p < end && data[p] == GROUP_SEPARATOR)
+            p++;
+        if (p >= end) {
+            elements.fail(EMPTY, p);
+            return EMPTY;
+        }
+
+        while (p < end) {
+            if (data[p] == GROUP_SEPARATOR) {
+                //  Separators after fixed length fields are allowed, if unnecessary
+                p++;
+                continue;
+            }
+            int start = p;
+            if (p + 2 > end) {
+                elements.fail(TRUNCATED, start);
+                return TRUNCATED;
+            }
+            int d0 = data[p] - '0';
+            int d1 = data[p + 1] - '0';
+            if (d0 < 0 || d0 > 9 || d1 < 0 || d1 > 9) {
+                elements.fail(UNKNOWN_AI, start);
+                return UNKNOWN_AI;
+            }
+            int digits = AI_DIGITS_BY_PREFIX[d0 * 10 + d1];
+            if (digits == 0) {
+                elements.fail(UNKNOWN_AI, start);
+                return UNKNOWN_AI;
+            }
+            if (p + digits > end) {
+                elements.fail(TRUNCATED, start);
+                return TRUNCATED;
+            }
+            int ai = 0;
+            for (int i = 0; i < digits; i++) {
+                int digit = data[p + i] - '0';
+                if (digit < 0 || digit > 9) {
+                    elements.fail(UNKNOWN_AI, start);
+                    return UNKNOWN_AI;
+                }
+                ai = ai * 10 + digit;
+            }
+            int spec = SPEC_BY_KEY[ai * POWERS[4 - digits]];
+            if (spec == 0) {
+                elements.fail(UNKNOWN_AI, start);
+                return UNKNOWN_AI;
+            }
+            p += digits;
+
+            int dataStart = p;
+            int maxLength = spec & LENGTH_MASK;
+            int fieldLength;
+            if ((spec & FLAG_VARIABLE) != 0) {
+                int limit = Math.min(end, dataStart + maxLength);
+                while (p < limit && data[p] != GROUP_SEPARATOR)
+                    p++;
+                fieldLength = p - dataStart;
+                if (p < end && data[p] != GROUP_SEPARATOR) {
+                    elements.fail(TOO_LONG, start);
+                    return TOO_LONG;
+                }
+                if (fieldLength == 0) {
+                    elements.fail(TRUNCATED, start);
+                    return TRUNCATED;
+                }
+            }
+            else {
+                fieldLength = maxLength;
+                if (dataStart + fieldLength > end) {
+                    elements.fail(TRUNCATED, start);
+                    return TRUNCATED;
+                }
+                p += fieldLength;
+            }
+
+            if ((spec & FLAG_NUMERIC) != 0) {
+                for (int i = dataStart; i < dataStart + fieldLength; i++) {
+                    if (data[i] < '0' || data[i] > '9') {
+                        elements.fail(NOT_NUMERIC, start);
+                        return NOT_NUMERIC;
+                    }
+                }
+            }
+            else {
+                for (int i = dataStart; i < dataStart + fieldLength; i++) {
+                    if (data[i] < 0x20 || data[i] > 0x7E) {
+                        elements.fail(BAD_CHARACTER, start);
+                        return BAD_CHARACTER;
+                    }
+                }
+            }
+            if ((spec & FLAG_CHECK_DIGIT) != 0 && !checkDigitValid(data, dataStart, fieldLength)) {
+                elements.fail(BAD_CHECK_DIGIT, start);
+                return BAD_CHECK_DIGIT;
+            }
+
+            if (elements.count == MAX_ELEMENTS) {
+                elements.fail(TOO_MANY_ELEMENTS, start);
+                return TOO_MANY_ELEMENTS;
+            }
+            int index = elements.count++;
+            elements.ai[index] = ai;
+            elements.aiDigits[index] = digits;
+            elements.offset[index] = dataStart;
+            elements.length[index] = fieldLength;
+        }
+        return OK;
+    }
+
+    /**
+     * Write the parsed elements in the human readable form printed under GS1 barcodes, e.g.
+     * "(01)09501101530008(17)140704(10)AB-123", stopping when dst is full
+     * @return the position after the last character written
+     */
+    public static int formatHumanReadable(byte[] data, Elements elements, char[] dst, int dstOffset)
+    {
+        int pos = dstOffset;
+        for (int i = 0; i < elements.count && pos < dst.length; i++) {
+            int digits = elements.aiDigits[i];
+            if (pos + digits + 2 > dst.length)
+                break;
+            dst[pos++] = '(';
+            pos = ScanText.writeDigits(elements.ai[i], digits, dst, pos);
+            dst[pos++] = ')';
+            int fieldEnd = elements.offset[i] + elements.length[i];
+            for (int b = elements.offset[i]; b < fieldEnd && pos < dst.length; b++)
+                dst[pos++] = (char) data[b];
+        }
+        return pos;
+    }
+
+    public static String describe(int result)
+    {
+        return (result >= 0 && result < DESCRIPTIONS.length) ? DESCRIPTIONS[result] : "UNKNOWN";
+    }
+
+    //  "]C1" GS1-128, "]e0" GS1 DataBar, "]d2" GS1 DataMatrix, "]Q3" GS1 QR Code
+    private static int gs1IdentifierLength(byte[] data, int offset, int length)
+    {
+        if (length < 3 || data[offset] != ']')
+            return 0;
+        byte code = data[offset + 1];
+        byte modifier = data[offset + 2];
+        if ((code == 'C' && modifier == '1') || (code == 'e' && modifier == '0') ||
+                (code == 'd' && modifier == '2') || (code == 'Q' && modifier == '3'))
+            return 3;
+        return 0;
+    }
+
+    //  GS1 modulo 10: weights 3 and 1 alternate from the digit next to the check digit
+    private static boolean checkDigitValid(byte[] data, int offset, int length)
+    {
+        int sum = 0;
+        int weight = 3;
+        for (int i = offset + length - 2; i >= offset; i--) {
+            sum += (data[i] - '0') * weight;
+            weight = 4 - weight;
+        }
+        return (10 - sum % 10) % 10 == data[offset + length - 1] - '0';
+    }
+}
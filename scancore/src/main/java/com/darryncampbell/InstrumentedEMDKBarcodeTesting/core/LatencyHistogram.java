@@ -0,0 +1,131 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed memory, lock free histogram of latencies in nanoseconds.  Buckets are log-linear: each
+ * power of two is split into 16 sub-buckets so any reported percentile is within about 6% of the
+ * true value.  Recording is a handful of atomic increments so it can stay enabled in production.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;    //  2^40 ns is over 18 minutes
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram(String name)
+    {
+        this.name = name;
+    }
+
+    public String getName() {return name;}
+
+    /**
+     * Record a single latency, negative values are recorded as 0
+     */
+    public void record(long nanos)
+    {
+        if (nanos < 0)
+            nanos = 0;
+        counts.incrementAndGet(bucketIndex(nanos));
+        count.incrementAndGet();
+        long currentMax = max.get();
+        while (nanos > currentMax) {
+            if (max.compareAndSet(currentMax, nanos))
+                break;
+            currentMax = max.get();
+        }
+    }
+
+    public long getCount() {return count.get();}
+
+    public long getMaxNanos() {return max.get();}
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound of the bucket holding the requested percentile, 0 if nothing recorded
+     */
+    public long getPercentileNanos(double percentile)
+    {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0)
+            return 0;
+
+        long target = (long) Math.ceil(total * percentile / 100.0);
+        if (target < 1)
+            target = 1;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= target)
+                return Math.min(bucketUpperBound(i), getMaxNanos());
+        }
+        return getMaxNanos();
+    }
+
+    public void reset()
+    {
+        for (int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+        count.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Append a single line summary, e.g. "data.callback_to_draw count=120 p50=1.20ms p99=8.50ms max=9.10ms"
+     */
+    public void appendSummary(StringBuilder out)
+    {
+        out.append(name)
+                .append(" count=").append(getCount())
+                .append(" p50=");
+        appendMillis(out, getPercentileNanos(50));
+        out.append(" p99=");
+        appendMillis(out, getPercentileNanos(99));
+        out.append(" max=");
+        appendMillis(out, getMaxNanos());
+    }
+
+    private static void appendMillis(StringBuilder out, long nanos)
+    {
+        long hundredths = (nanos + 5000) / 10000;
+        out.append(hundredths / 100).append('.');
+        long fraction = hundredths % 100;
+        if (fraction < 10)
+            out.append('0');
+        out.append(fraction).append("ms");
+    }
+
+    static int bucketIndex(long nanos)
+    {
+        if (nanos < SUB_BUCKETS)
+            return (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT)
+            return BUCKETS - 1;
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (nanos >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index)
+    {
+        if (index < SUB_BUCKETS)
+            return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket) << shift) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,210 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and gauges describing the scan pipeline, written out in the Prometheus text exposition
+ * format.  Metrics are registered once at start up; recording is a single atomic add with no
+ * locking or allocation so it can stay on at full scan rate.  Gauges are only read when the
+ * registry is written out.
+ */
+public class MetricsRegistry {
+
+    /**
+     * A value sampled each time the registry is written out, e.g. a queue depth or a total kept by
+     * another class.  Called on the thread writing the registry.
+     */
+    public interface Gauge {
+        long read();
+    }
+
+    public static class Counter {
+        private final AtomicLong value = new AtomicLong();
+
+        public void inc() {value.incrementAndGet();}
+
+        public void add(long delta) {value.addAndGet(delta);}
+
+        public long get() {return value.get();}
+    }
+
+    /**
+     * A counter per value of an enum, e.g. status transitions by scanner state, recorded by ordinal
+     */
+    public static class EnumCounter<E extends Enum<E>> {
+        private final AtomicLongArray values;
+
+        EnumCounter(int size)
+        {
+            values = new AtomicLongArray(size);
+        }
+
+        public void inc(E value) {values.incrementAndGet(value.ordinal());}
+
+        public long get(E value) {return values.get(value.ordinal());}
+    }
+
+    private static final String TYPE_COUNTER = "counter";
+    private static final String TYPE_GAUGE = "gauge";
+
+    private static class Metric {
+        final String name;
+        final String help;
+        final String type;
+        final Counter counter;
+        final AtomicLongArray labelledValues;
+        final String label;
+        final String[] labelValues;
+        final Gauge gauge;
+
+        Metric(String name, String help, String type, Counter counter, AtomicLongArray labelledValues,
+               String label, String[] labelValues, Gauge gauge)
+        {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.counter = counter;
+            this.labelledValues = labelledValues;
+            this.label = label;
+            this.labelValues = labelValues;
+            this.gauge = gauge;
+        }
+    }
+
+    private final String prefix;
+    //  Written only while registering, read without locking by every scrape
+    private final CopyOnWriteArrayList<Metric> metrics = new CopyOnWriteArrayList<Metric>();
+
+    /**
+     * @param prefix added to every metric name, e.g. "emdk" gives emdk_scans_received_total
+     */
+    public MetricsRegistry(String prefix)
+    {
+        this.prefix = prefix;
+    }
+
+    /**
+     * @param name without the prefix, counters should end in _total
+     */
+    public synchronized Counter counter(String name, String help)
+    {
+        Counter counter = new Counter();
+        register(new Metric(fullName(name), help, TYPE_COUNTER, counter, null, null, null, null));
+        return counter;
+    }
+
+    /**
+     * @param label name of the label holding the enum value, e.g. "state"
+     */
+    public synchronized <E extends Enum<E>> EnumCounter<E> enumCounter(String name, String help, String label, Class<E> type)
+    {
+        E[] constants = type.getEnumConstants();
+        String[] labelValues = new String[constants.length];
+        for (int i = 0; i < constants.length; i++)
+            labelValues[i] = constants[i].name();
+        EnumCounter<E> counter = new EnumCounter<E>(constants.length);
+        register(new Metric(fullName(name), help, TYPE_COUNTER, null, counter.values, checkName(label), labelValues, null));
+        return counter;
+    }
+
+    public synchronized void gauge(String name, String help, Gauge gauge)
+    {
+        register(new Metric(fullName(name), help, TYPE_GAUGE, null, null, null, null, gauge));
+    }
+
+    /**
+     * A counter whose value is kept elsewhere, e.g. a drop count maintained by a buffer, and read
+     * on each scrape.  The value must only ever increase, other than restarting from 0 with the process.
+     * @param name without the prefix, should end in _total
+     */
+    public synchronized void sampledCounter(String name, String help, Gauge source)
+    {
+        register(new Metric(fullName(name), help, TYPE_COUNTER, null, null, null, null, source));
+    }
+
+    /**
+     * Append every metric in the Prometheus text format, version 0.0.4.  Enum counters only list
+     * the values which have been counted.
+     */
+    public void writeTo(StringBuilder out)
+    {
+        for (Metric metric : metrics) {
+            out.append("# HELP ").append(metric.name).append(' ');
+            escapeHelp(metric.help, out);
+            out.append("\n# TYPE ").append(metric.name).append(' ').append(metric.type).append('\n');
+            if (metric.counter != null) {
+                out.append(metric.name).append(' ').append(metric.counter.get()).append('\n');
+            }
+            else if (metric.labelledValues != null) {
+                for (int i = 0; i < metric.labelValues.length; i++) {
+                    long value = metric.labelledValues.get(i);
+                    if (value == 0)
+                        continue;
+                    out.append(metric.name).append('{').append(metric.label).append("=\"")
+                            .append(metric.labelValues[i]).append("\"} ").append(value).append('\n');
+                }
+            }
+            else {
+                long value;
+                try {
+                    value = metric.gauge.read();
+                } catch (RuntimeException e) {
+                    //  A gauge over something already shut down should not break the scrape
+                    continue;
+                }
+                out.append(metric.name).append(' ').append(value).append('\n');
+            }
+        }
+    }
+
+    public String write()
+    {
+        StringBuilder out = new StringBuilder();
+        writeTo(out);
+        return out.toString();
+    }
+
+    private void register(Metric metric)
+    {
+        for (Metric existing : metrics) {
+            if (existing.name.equals(metric.name))
+                throw new IllegalArgumentException("Metric " + metric.name + " is already registered");
+        }
+        metrics.add(metric);
+    }
+
+    private String fullName(String name)
+    {
+        return checkName((prefix == null || prefix.length() == 0) ? name : prefix + "_" + name);
+    }
+
+    //  Prometheus names are [a-zA-Z_:][a-zA-Z0-9_:]*
+    private static String checkName(String name)
+    {
+        if (name == null || name.length() == 0)
+            throw new IllegalArgumentException("Metric and label names cannot be empty");
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean bValid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == ':' ||
+                    (i > 0 && c >= '0' && c <= '9');
+            if (!bValid)
+                throw new IllegalArgumentException("Invalid metric or label name " + name);
+        }
+        return name;
+    }
+
+    private static void escapeHelp(String help, StringBuilder out)
+    {
+        for (int i = 0; i < help.length(); i++) {
+            char c = help.charAt(i);
+            if (c == '\\')
+                out.append("\\\\");
+            else if (c == '\n')
+                out.append("\\n");
+            else
+                out.append(c);
+        }
+    }
+}
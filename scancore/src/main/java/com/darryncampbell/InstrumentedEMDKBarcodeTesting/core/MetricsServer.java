@@ -0,0 +1,163 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+
+/**
+ * Serves a {@link MetricsRegistry} over HTTP for a Prometheus scraper, e.g. through
+ * adb forward tcp:9464 tcp:9464.  Only the loopback address is bound so the metrics are never
+ * reachable from the network.  Requests are answered one at a time on a single daemon thread,
+ * which is plenty for a scraper polling every few seconds.
+ */
+public class MetricsServer {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int READ_TIMEOUT_MS = 2000;
+    private static final int MAX_REQUEST_BYTES = 8192;
+
+    private final MetricsRegistry registry;
+    private final int requestedPort;
+    private ServerSocket serverSocket = null;
+    private Thread thread = null;
+    private volatile long scrapes = 0;
+
+    /**
+     * @param port loopback port to listen on, 0 for any free port
+     */
+    public MetricsServer(MetricsRegistry registry, int port)
+    {
+        this.registry = registry;
+        this.requestedPort = port;
+    }
+
+    /**
+     * Bind the port and start answering requests, does nothing if already started
+     */
+    public synchronized void start() throws IOException
+    {
+        if (serverSocket != null)
+            return;
+        final ServerSocket socket = new ServerSocket(requestedPort, 4, InetAddress.getByName("127.0.0.1"));
+        serverSocket = socket;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve(socket);
+            }
+        }, "MetricsServer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the port listened on, or -1 if not started
+     */
+    public synchronized int getPort()
+    {
+        return (serverSocket == null) ? -1 : serverSocket.getLocalPort();
+    }
+
+    public long getScrapes() {return scrapes;}
+
+    public synchronized void stop()
+    {
+        if (serverSocket == null)
+            return;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            //  Closing anyway
+        }
+        serverSocket = null;
+        thread = null;
+    }
+
+    private void serve(ServerSocket socket)
+    {
+        while (!socket.isClosed()) {
+            Socket client;
+            try {
+                client = socket.accept();
+            } catch (IOException e) {
+                return; // Stopped
+            }
+            try {
+                client.setSoTimeout(READ_TIMEOUT_MS);
+                respond(client);
+            } catch (IOException e) {
+                //  The scraper went away, wait for the next one
+            } finally {
+                try {
+                    client.close();
+                } catch (IOException e) {
+                    //  Already closed
+                }
+            }
+        }
+    }
+
+    private void respond(Socket client) throws IOException
+    {
+        String requestLine = readRequestHead(client.getInputStream());
+        OutputStream out = client.getOutputStream();
+        if (requestLine == null) {
+            return;
+        }
+        String[] parts = requestLine.split(" ");
+        if (parts.length < 2 || !(parts[0].equals("GET") || parts[0].equals("HEAD"))) {
+            write(out, "405 Method Not Allowed", "text/plain", "Only GET is supported\n", true);
+            return;
+        }
+        String path = parts[1];
+        int query = path.indexOf('?');
+        if (query >= 0)
+            path = path.substring(0, query);
+        if (!path.equals("/metrics") && !path.equals("/")) {
+            write(out, "404 Not Found", "text/plain", "Metrics are served at /metrics\n", true);
+            return;
+        }
+        scrapes++;
+        write(out, "200 OK", CONTENT_TYPE, registry.write(), parts[0].equals("GET"));
+    }
+
+    //  Read up to the blank line ending the request head, returning the request line
+    private static String readRequestHead(InputStream in) throws IOException
+    {
+        StringBuilder line = new StringBuilder();
+        String requestLine = null;
+        int total = 0;
+        int c;
+        while ((c = in.read()) != -1) {
+            if (++total > MAX_REQUEST_BYTES)
+                return null;
+            if (c == '\n') {
+                if (line.length() == 0)
+                    return requestLine;
+                if (requestLine == null)
+                    requestLine = line.toString();
+                line.setLength(0);
+            }
+            else if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return requestLine;
+    }
+
+    private static void write(OutputStream out, String status, String contentType, String body, boolean bBody) throws IOException
+    {
+        byte[] bytes = body.getBytes(UTF_8);
+        String head = "HTTP/1.0 " + status + "\r\nContent-Type: " + contentType + "\r\nContent-Length: " +
+                bytes.length + "\r\nConnection: close\r\n\r\n";
+        out.write(head.getBytes(UTF_8));
+        if (bBody)
+            out.write(bytes);
+        out.flush();
+    }
+}
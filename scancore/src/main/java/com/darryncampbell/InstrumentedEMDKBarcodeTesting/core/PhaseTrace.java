@@ -0,0 +1,155 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Timeline of named phases, possibly overlapping and on different threads, measured from a
+ * common origin.  Exported in the Chrome trace event format so a run can be opened in
+ * chrome://tracing or Perfetto next to a systrace capture.
+ * Thread safe.
+ */
+public class PhaseTrace {
+
+    private final long originNanos;
+    private final List<Phase> phases = new ArrayList<Phase>();
+
+    /**
+     * @param originNanos System.nanoTime() every phase is measured from
+     */
+    public PhaseTrace(long originNanos)
+    {
+        this.originNanos = originNanos;
+    }
+
+    public long getOriginNanos() {return originNanos;}
+
+    /**
+     * Record a completed phase
+     * @param thread name of the thread the phase ran on, phases on one thread are drawn as a stack
+     */
+    public synchronized void record(String name, String thread, long startNanos, long endNanos)
+    {
+        phases.add(new Phase(name, thread, startNanos - originNanos, Math.max(0, endNanos - startNanos)));
+    }
+
+    /**
+     * Record an instant, e.g. the scanner becoming ready
+     */
+    public synchronized void mark(String name, String thread, long nanos)
+    {
+        phases.add(new Phase(name, thread, nanos - originNanos, -1));
+    }
+
+    public synchronized int size() {return phases.size();}
+
+    /**
+     * @return offset from the origin of the end of the named phase or of the named instant, -1 if
+     * it has not been recorded
+     */
+    public synchronized long getEndNanos(String name)
+    {
+        for (int i = phases.size() - 1; i >= 0; i--) {
+            Phase phase = phases.get(i);
+            if (phase.name.equals(name))
+                return phase.startNanos + Math.max(0, phase.durationNanos);
+        }
+        return -1;
+    }
+
+    /**
+     * One line per phase, in the order recorded: start offset, duration and thread
+     */
+    public synchronized void appendSummary(StringBuilder out)
+    {
+        for (Phase phase : phases) {
+            out.append(phase.name).append(" @").append(phase.startNanos / 1000000L).append("ms");
+            if (phase.durationNanos >= 0)
+                out.append(" took ").append(phase.durationNanos / 1000000L).append('.')
+                        .append(phase.durationNanos / 100000L % 10).append("ms");
+            out.append(" [").append(phase.thread).append("]\n");
+        }
+    }
+
+    /**
+     * Write the phases as a Chrome trace event JSON document
+     */
+    public synchronized void appendJson(StringBuilder out)
+    {
+        List<String> threads = new ArrayList<String>();
+        out.append("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        for (int i = 0; i < phases.size(); i++) {
+            Phase phase = phases.get(i);
+            int tid = threads.indexOf(phase.thread);
+            if (tid < 0) {
+                threads.add(phase.thread);
+                tid = threads.size() - 1;
+            }
+            if (i > 0)
+                out.append(',');
+            out.append("\n{\"name\":");
+            appendJsonString(out, phase.name);
+            out.append(",\"cat\":\"startup\",\"pid\":1,\"tid\":").append(tid).append(",\"ts\":");
+            appendMicros(out, phase.startNanos);
+            if (phase.durationNanos >= 0) {
+                out.append(",\"ph\":\"X\",\"dur\":");
+                appendMicros(out, phase.durationNanos);
+            } else {
+                out.append(",\"ph\":\"i\",\"s\":\"p\"");
+            }
+            out.append('}');
+        }
+        //  Name the threads so the viewer shows them rather than numbers
+        for (int tid = 0; tid < threads.size(); tid++) {
+            out.append(",\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":").append(tid)
+                    .append(",\"args\":{\"name\":");
+            appendJsonString(out, threads.get(tid));
+            out.append("}}");
+        }
+        out.append("\n]}\n");
+    }
+
+    private static void appendMicros(StringBuilder out, long nanos)
+    {
+        if (nanos < 0) {
+            out.append('-');
+            nanos = -nanos;
+        }
+        out.append(nanos / 1000);
+        long fraction = nanos % 1000;
+        out.append('.').append((char) ('0' + fraction / 100)).append((char) ('0' + fraction / 10 % 10))
+                .append((char) ('0' + fraction % 10));
+    }
+
+    private static void appendJsonString(StringBuilder out, String value)
+    {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append("\\u00");
+                out.append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    private static class Phase {
+        final String name;
+        final String thread;
+        final long startNanos;
+        final long durationNanos;   //  -1 for an instant
+
+        Phase(String name, String thread, long startNanos, long durationNanos)
+        {
+            this.name = name;
+            this.thread = thread;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+/**
+ * Latency histograms for each stage of the data (onData) and status (onStatus) paths, from the
+ * EMDK callback to the UI thread handoff and from the handoff to the result being drawn.  Scans
+ * also pass through the processing stage before the handoff, which is broken down into queueing,
+ * validation, the product catalog lookup and waiting to be passed on in order.
+ */
+public class PipelineLatency {
+
+    public final LatencyHistogram dataQueue = new LatencyHistogram("data.callback_to_worker");
+    public final LatencyHistogram dataValidate = new LatencyHistogram("data.validate");
+    public final LatencyHistogram dataLookup = new LatencyHistogram("data.catalog_lookup");
+    public final LatencyHistogram dataReorder = new LatencyHistogram("data.validated_to_in_order");
+    public final LatencyHistogram dataHandoff = new LatencyHistogram("data.callback_to_handoff");
+    public final LatencyHistogram dataDraw = new LatencyHistogram("data.handoff_to_draw");
+    public final LatencyHistogram dataTotal = new LatencyHistogram("data.callback_to_draw");
+    public final LatencyHistogram statusHandoff = new LatencyHistogram("status.callback_to_handoff");
+    public final LatencyHistogram statusDraw = new LatencyHistogram("status.handoff_to_draw");
+    public final LatencyHistogram statusTotal = new LatencyHistogram("status.callback_to_draw");
+
+    private final LatencyHistogram[] stages = {dataQueue, dataValidate, dataLookup, dataReorder, dataHandoff, dataDraw, dataTotal, statusHandoff, statusDraw, statusTotal};
+
+    public LatencyHistogram[] getStages() {return stages;}
+
+    /**
+     * @return one summary line per stage
+     */
+    public String report()
+    {
+        StringBuilder out = new StringBuilder();
+        for (LatencyHistogram stage : stages) {
+            stage.appendSummary(out);
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    public void reset()
+    {
+        for (LatencyHistogram stage : stages)
+            stage.reset();
+    }
+}
@@ -0,0 +1,381 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Product descriptions looked up by GTIN from a catalog file written by
+ * {@link ProductCatalogBuilder}.  The file holds fixed width records sorted by GTIN and is memory
+ * mapped, so a catalog of millions of items costs the heap only its sparse index: the GTIN of
+ * every {@link ProductCatalogBuilder#INDEX_STRIDE}th record, stored at the end of the file.  A
+ * lookup binary searches the index and then one stride of records in the mapping.
+ *
+ * Lookups return a row rather than a String so the scan pipeline can keep the result in a
+ * primitive column and decode descriptions only for the rows on screen, see {@link #description}.
+ * Recently found rows are kept in a small LRU cache.  Delta files are applied over the mapped
+ * catalog without reloading it; their entries win over the file and are never cached, so
+ * applying one needs no invalidation.
+ * Thread safe, lookups may run on every worker of the processing stage.
+ */
+public class ProductCatalog {
+
+    /**
+     * Row returned for GTINs which are not in the catalog, or were removed by a delta
+     */
+    public static final int NOT_FOUND = -1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Integer NOT_FOUND_ROW = NOT_FOUND;
+
+    //  Entries applied from delta files, replaced as a whole when another delta is applied.
+    //  Rows of added entries are encoded as -2 - index into descriptions.
+    private static final class Overlay {
+        final Map<Long, Integer> rows;
+        final String[] descriptions;
+
+        Overlay(Map<Long, Integer> rows, String[] descriptions)
+        {
+            this.rows = rows;
+            this.descriptions = descriptions;
+        }
+    }
+
+    private final File file;
+    private final MappedByteBuffer records;
+    private final int recordCount;
+    private final int descriptionBytes;
+    private final int recordBytes;
+    private final int indexStride;
+    private final long[] index;
+    private final LinkedHashMap<Long, Integer> cache; // Guarded by itself
+    private volatile Overlay overlay = new Overlay(new HashMap<Long, Integer>(), new String[0]);
+    private int deltasApplied = 0; // Guarded by this
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    /**
+     * Map a catalog file and read its index
+     * @param cacheEntries GTINs whose rows are remembered, 0 for no cache
+     */
+    public ProductCatalog(File file, final int cacheEntries) throws IOException
+    {
+        this.file = file;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long fileLength = channel.size();
+            if (fileLength < ProductCatalogBuilder.HEADER_BYTES)
+                throw new IOException("Not a product catalog: " + file);
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, ProductCatalogBuilder.HEADER_BYTES);
+            byte[] magic = new byte[ProductCatalogBuilder.CATALOG_MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, ProductCatalogBuilder.CATALOG_MAGIC))
+                throw new IOException("Not a product catalog: " + file);
+            descriptionBytes = header.getInt();
+            recordCount = header.getInt();
+            indexStride = header.getInt();
+            int indexCount = header.getInt();
+            recordBytes = ProductCatalogBuilder.GTIN_BYTES + descriptionBytes;
+
+            long recordsLength = (long) recordCount * recordBytes;
+            if (descriptionBytes <= 0 || recordCount < 0 || indexStride <= 0 ||
+                    indexCount != (recordCount + indexStride - 1) / indexStride ||
+                    fileLength != ProductCatalogBuilder.HEADER_BYTES + recordsLength + 8L * indexCount)
+                throw new IOException("Damaged product catalog: " + file);
+            if (recordsLength > Integer.MAX_VALUE)
+                throw new IOException("Product catalog too large to map: " + file);
+
+            records = channel.map(FileChannel.MapMode.READ_ONLY, ProductCatalogBuilder.HEADER_BYTES, recordsLength);
+            index = new long[indexCount];
+            channel.map(FileChannel.MapMode.READ_ONLY, ProductCatalogBuilder.HEADER_BYTES + recordsLength,
+                    8L * indexCount).asLongBuffer().get(index);
+        } finally {
+            //  The mappings stay valid once the file is closed
+            raf.close();
+        }
+
+        cache = new LinkedHashMap<Long, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+                return size() > cacheEntries;
+            }
+        };
+    }
+
+    public File getFile() {return file;}
+
+    /**
+     * @return records in the catalog file, not counting delta entries
+     */
+    public int size() {return recordCount;}
+
+    public long getLookups() {return lookups.get();}
+
+    public long getCacheHits() {return cacheHits.get();}
+
+    public synchronized int getDeltasApplied() {return deltasApplied;}
+
+    /**
+     * Look up a scanned retail barcode, see {@link #gtin}
+     * @return the product's row, or NOT_FOUND
+     */
+    public int lookup(int symbology, byte[] data, int offset, int length)
+    {
+        long gtin = gtin(symbology, data, offset, length);
+        return (gtin < 0) ? NOT_FOUND : lookup(gtin);
+    }
+
+    /**
+     * @return the product's row, or NOT_FOUND
+     */
+    public int lookup(long gtin)
+    {
+        lookups.incrementAndGet();
+        Integer overlaid = overlay.rows.get(gtin);
+        if (overlaid != null)
+            return overlaid;
+
+        Long key = gtin;
+        synchronized (cache) {
+            Integer cached = cache.get(key);
+            if (cached != null) {
+                cacheHits.incrementAndGet();
+                return cached;
+            }
+        }
+        int row = search(gtin);
+        synchronized (cache) {
+            cache.put(key, (row == NOT_FOUND) ? NOT_FOUND_ROW : Integer.valueOf(row));
+        }
+        return row;
+    }
+
+    /**
+     * @param row as returned by lookup
+     * @return the product description, or null for NOT_FOUND
+     */
+    public String description(int row)
+    {
+        if (row == NOT_FOUND)
+            return null;
+        if (row < 0)
+            return overlay.descriptions[-2 - row];
+        int base = row * recordBytes + ProductCatalogBuilder.GTIN_BYTES;
+        byte[] bytes = new byte[descriptionBytes];
+        int length = 0;
+        while (length < descriptionBytes) {
+            byte b = records.get(base + length);
+            if (b == 0)
+                break;
+            bytes[length++] = b;
+        }
+        return new String(bytes, 0, length, UTF_8);
+    }
+
+    /**
+     * Apply a delta file written by {@link ProductCatalogBuilder#buildDelta} over the catalog.
+     * Entries override the catalog file and earlier deltas, lookups continue while it is read.
+     * @return entries in the delta
+     */
+    public int applyDelta(File delta) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(delta)));
+        try {
+            byte[] magic = new byte[ProductCatalogBuilder.DELTA_MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, ProductCatalogBuilder.DELTA_MAGIC))
+                throw new IOException("Not a product catalog delta: " + delta);
+            int width = in.readInt();
+            int count = in.readInt();
+            if (width <= 0 || width > ProductCatalogBuilder.MAX_DESCRIPTION_BYTES || count < 0)
+                throw new IOException("Damaged product catalog delta: " + delta);
+            //  Checked before allocating, a damaged or half pushed header can claim any count
+            if ((long) count * (ProductCatalogBuilder.GTIN_BYTES + width) >
+                    delta.length() - ProductCatalogBuilder.DELTA_HEADER_BYTES)
+                throw new IOException("Truncated product catalog delta: " + delta);
+
+            long[] gtins = new long[count];
+            String[] added = new String[count];
+            byte[] bytes = new byte[width];
+            for (int i = 0; i < count; i++) {
+                gtins[i] = in.readLong();
+                in.readFully(bytes);
+                int length = 0;
+                while (length < width && bytes[length] != 0)
+                    length++;
+                //  An empty description removes the product
+                added[i] = (length == 0) ? null : new String(bytes, 0, length, UTF_8);
+            }
+
+            synchronized (this) {
+                Overlay current = overlay;
+                Map<Long, Integer> rows = new HashMap<Long, Integer>(current.rows);
+                String[] descriptions = Arrays.copyOf(current.descriptions, current.descriptions.length + count);
+                int next = current.descriptions.length;
+                for (int i = 0; i < count; i++) {
+                    if (added[i] == null) {
+                        rows.put(gtins[i], NOT_FOUND_ROW);
+                    } else {
+                        descriptions[next] = added[i];
+                        rows.put(gtins[i], -2 - next);
+                        next++;
+                    }
+                }
+                overlay = new Overlay(rows, Arrays.copyOf(descriptions, next));
+                deltasApplied++;
+            }
+            return count;
+        } catch (EOFException e) {
+            throw new IOException("Truncated product catalog delta: " + delta);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * The GTIN of a retail barcode as a number, the key the catalog is sorted by.  Leading zeros
+     * are dropped so EAN-13 0036000291452 and UPC-A 036000291452 give the same key, as does the
+     * UPC-E form of a UPC-A.  UPC-A and UPC-E may be transmitted without their check digit and
+     * UPC-E without its number system.
+     * @return the GTIN, or -1 if the symbology is not a retail one or the data is not a GTIN
+     */
+    public static long gtin(int symbology, byte[] data, int offset, int length)
+    {
+        switch (symbology) {
+            case Symbology.EAN8:
+                return (length == 8) ? digits(data, offset, length) : -1;
+            case Symbology.EAN13:
+                return (length == 13) ? digits(data, offset, length) : -1;
+            case Symbology.UPCA:
+                if (length == 11)
+                    return withCheckDigit(digits(data, offset, length));
+                return (length == 12) ? digits(data, offset, length) : -1;
+            case Symbology.UPCE0:
+            case Symbology.UPCE1:
+                return expandUpcE(symbology, data, offset, length);
+            default:
+                return -1;
+        }
+    }
+
+    private int search(long gtin)
+    {
+        //  Last index entry not greater than the GTIN gives the stride holding it
+        int low = 0;
+        int high = index.length - 1;
+        if (high < 0 || gtin < index[0])
+            return NOT_FOUND;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (index[mid] <= gtin)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        int first = low * indexStride;
+        int last = Math.min(first + indexStride, recordCount) - 1;
+        while (first <= last) {
+            int mid = (first + last) >>> 1;
+            long key = records.getLong(mid * recordBytes);
+            if (key < gtin)
+                first = mid + 1;
+            else if (key > gtin)
+                last = mid - 1;
+            else
+                return mid;
+        }
+        return NOT_FOUND;
+    }
+
+    private static long digits(byte[] data, int offset, int length)
+    {
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9)
+                return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    //  Append the GS1 check digit to a GTIN without one
+    private static long withCheckDigit(long gtin)
+    {
+        if (gtin < 0)
+            return -1;
+        int sum = 0;
+        int weight = 3;
+        for (long rest = gtin; rest > 0; rest /= 10) {
+            sum += (int) (rest % 10) * weight;
+            weight = 4 - weight;
+        }
+        return gtin * 10 + (10 - sum % 10) % 10;
+    }
+
+    //  Zero suppressed UPC-E to the UPC-A it stands for
+    private static long expandUpcE(int symbology, byte[] data, int offset, int length)
+    {
+        int numberSystem;
+        int start;
+        if (length == 6) {
+            numberSystem = (symbology == Symbology.UPCE1) ? 1 : 0;
+            start = offset;
+        } else if (length == 7 || length == 8) {
+            numberSystem = data[offset] - '0';
+            start = offset + 1;
+        } else {
+            return -1;
+        }
+        if (numberSystem != 0 && numberSystem != 1)
+            return -1;
+        long body = digits(data, start, 6);
+        if (body < 0)
+            return -1;
+        int[] d = new int[6];
+        for (int i = 5; i >= 0; i--) {
+            d[i] = (int) (body % 10);
+            body /= 10;
+        }
+        long manufacturer;
+        long item;
+        switch (d[5]) {
+            case 0:
+            case 1:
+            case 2:
+                manufacturer = d[0] * 10000 + d[1] * 1000 + d[5] * 100;
+                item = d[2] * 100 + d[3] * 10 + d[4];
+                break;
+            case 3:
+                manufacturer = d[0] * 10000 + d[1] * 1000 + d[2] * 100;
+                item = d[3] * 10 + d[4];
+                break;
+            case 4:
+                manufacturer = d[0] * 10000 + d[1] * 1000 + d[2] * 100 + d[3] * 10;
+                item = d[4];
+                break;
+            default:
+                manufacturer = d[0] * 10000 + d[1] * 1000 + d[2] * 100 + d[3] * 10 + d[4];
+                item = d[5];
+                break;
+        }
+        long upcA = withCheckDigit(numberSystem * 10000000000L + manufacturer * 100000 + item);
+        if (length == 8 && upcA % 10 != data[offset + 7] - '0')
+            return -1;
+        return upcA;
+    }
+}
@@ -0,0 +1,216 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Builds the files read by {@link ProductCatalog} from CSV exports, on the build host rather than
+ * the device:
+ *
+ *   java -cp scancore.jar com.darryncampbell.InstrumentedEMDKBarcodeTesting.core.ProductCatalogBuilder
+ *       catalog products.csv products.cat
+ *   ... ProductCatalogBuilder delta changes.csv 0001.delta
+ *
+ * Each CSV line is a GTIN and a description, optionally double quoted.  Blank lines, lines
+ * starting with # and a header line are skipped.  In a delta an empty description removes the
+ * product.  Descriptions are truncated to the record width at a character boundary.
+ *
+ * Catalog layout: an 8 byte magic, then as ints the description width, record count, index stride
+ * and index length.  The records follow sorted by GTIN, each a long GTIN and the UTF-8
+ * description padded with zeros, then the index of every INDEX_STRIDEth GTIN.  A delta has its
+ * own magic, the description width and the entry count, then the entries in file order.
+ */
+public class ProductCatalogBuilder {
+
+    public static final byte[] CATALOG_MAGIC = {'E', 'M', 'D', 'K', 'C', 'A', 'T', '1'};
+    public static final byte[] DELTA_MAGIC = {'E', 'M', 'D', 'K', 'C', 'D', 'L', '1'};
+    public static final int HEADER_BYTES = CATALOG_MAGIC.length + 16;
+    public static final int DELTA_HEADER_BYTES = DELTA_MAGIC.length + 8;
+    public static final int GTIN_BYTES = 8;
+
+    /**
+     * Records between index entries.  Searching a stride touches one or two pages of the mapping.
+     */
+    public static final int INDEX_STRIDE = 64;
+
+    public static final int DEFAULT_DESCRIPTION_BYTES = 48;
+
+    /**
+     * Widest description record accepted, a wider one in a header means the file is damaged
+     */
+    public static final int MAX_DESCRIPTION_BYTES = 4096;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final long MAX_GTIN = 99999999999999L;
+
+    private static final class Entry {
+        final long gtin;
+        final byte[] description;
+
+        Entry(long gtin, byte[] description)
+        {
+            this.gtin = gtin;
+            this.description = description;
+        }
+    }
+
+    private ProductCatalogBuilder() {}
+
+    /**
+     * Write a catalog of every product in the CSV
+     * @return products written
+     * @throws IOException if a line is malformed or a GTIN appears twice
+     */
+    public static int build(Reader csv, File catalog, int descriptionBytes) throws IOException
+    {
+        List<Entry> entries = read(csv, descriptionBytes, false);
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return (a.gtin < b.gtin) ? -1 : ((a.gtin == b.gtin) ? 0 : 1);
+            }
+        });
+        for (int i = 1; i < entries.size(); i++) {
+            if (entries.get(i).gtin == entries.get(i - 1).gtin)
+                throw new IOException("GTIN " + entries.get(i).gtin + " appears more than once");
+        }
+
+        int count = entries.size();
+        int indexCount = (count + INDEX_STRIDE - 1) / INDEX_STRIDE;
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(catalog), 64 * 1024));
+        try {
+            out.write(CATALOG_MAGIC);
+            out.writeInt(descriptionBytes);
+            out.writeInt(count);
+            out.writeInt(INDEX_STRIDE);
+            out.writeInt(indexCount);
+            byte[] padding = new byte[descriptionBytes];
+            for (Entry entry : entries) {
+                out.writeLong(entry.gtin);
+                out.write(entry.description);
+                out.write(padding, 0, descriptionBytes - entry.description.length);
+            }
+            for (int i = 0; i < count; i += INDEX_STRIDE)
+                out.writeLong(entries.get(i).gtin);
+        } finally {
+            out.close();
+        }
+        return count;
+    }
+
+    /**
+     * Write a delta of the changes in the CSV, later lines win over earlier ones
+     * @return entries written
+     */
+    public static int buildDelta(Reader csv, File delta, int descriptionBytes) throws IOException
+    {
+        List<Entry> entries = read(csv, descriptionBytes, true);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(delta)));
+        try {
+            out.write(DELTA_MAGIC);
+            out.writeInt(descriptionBytes);
+            out.writeInt(entries.size());
+            byte[] padding = new byte[descriptionBytes];
+            for (Entry entry : entries) {
+                out.writeLong(entry.gtin);
+                out.write(entry.description);
+                out.write(padding, 0, descriptionBytes - entry.description.length);
+            }
+        } finally {
+            out.close();
+        }
+        return entries.size();
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 3 || !(args[0].equals("catalog") || args[0].equals("delta"))) {
+            System.err.println("Usage: ProductCatalogBuilder catalog|delta <csv> <output> [descriptionBytes]");
+            System.exit(2);
+        }
+        int descriptionBytes = (args.length > 3) ? Integer.parseInt(args[3]) : DEFAULT_DESCRIPTION_BYTES;
+        Reader csv = new InputStreamReader(new FileInputStream(args[1]), UTF_8);
+        try {
+            int written = args[0].equals("catalog") ? build(csv, new File(args[2]), descriptionBytes)
+                    : buildDelta(csv, new File(args[2]), descriptionBytes);
+            System.out.println("Wrote " + written + " products to " + args[2]);
+        } finally {
+            csv.close();
+        }
+    }
+
+    private static List<Entry> read(Reader csv, int descriptionBytes, boolean bAllowEmpty) throws IOException
+    {
+        if (descriptionBytes <= 0 || descriptionBytes > MAX_DESCRIPTION_BYTES)
+            throw new IllegalArgumentException("descriptionBytes must be positive and at most " + MAX_DESCRIPTION_BYTES);
+        BufferedReader reader = new BufferedReader(csv);
+        List<Entry> entries = new ArrayList<Entry>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            int comma = line.indexOf(',');
+            String gtinText = (comma < 0 ? line : line.substring(0, comma)).trim();
+            long gtin = parseGtin(gtinText);
+            if (gtin < 0) {
+                if (entries.isEmpty() && lineNumber == 1)
+                    continue; // Header
+                throw new IOException("Line " + lineNumber + ": not a GTIN: " + gtinText);
+            }
+            String description = (comma < 0) ? "" : unquote(line.substring(comma + 1).trim());
+            if (description.isEmpty() && !bAllowEmpty)
+                throw new IOException("Line " + lineNumber + ": no description for " + gtinText);
+            entries.add(new Entry(gtin, truncate(description, descriptionBytes)));
+        }
+        return entries;
+    }
+
+    private static long parseGtin(String text)
+    {
+        if (text.isEmpty() || text.length() > 14)
+            return -1;
+        long value = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            value = value * 10 + (c - '0');
+        }
+        return (value <= MAX_GTIN) ? value : -1;
+    }
+
+    private static String unquote(String text)
+    {
+        if (text.length() >= 2 && text.charAt(0) == '"' && text.charAt(text.length() - 1) == '"')
+            return text.substring(1, text.length() - 1).replace("\"\"", "\"");
+        return text;
+    }
+
+    //  Fit the UTF-8 description into the record without splitting a character
+    private static byte[] truncate(String description, int descriptionBytes)
+    {
+        byte[] bytes = description.getBytes(UTF_8);
+        if (bytes.length <= descriptionBytes)
+            return bytes;
+        int length = descriptionBytes;
+        while (length > 0 && (bytes[length] & 0xC0) == 0x80)
+            length--;
+        return Arrays.copyOf(bytes, length);
+    }
+}
@@ -0,0 +1,63 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+/**
+ * Counts events and reports their rate over the most recently completed measurement window.
+ * Thread safe.
+ */
+public class RateMeter {
+
+    private final long windowNanos;
+    private long windowStart = -1;
+    private long windowCount = 0;
+    private long total = 0;
+    private double ratePerSecond = 0;
+
+    /**
+     * @param windowMillis length of each measurement window
+     */
+    public RateMeter(long windowMillis)
+    {
+        if (windowMillis <= 0)
+            throw new IllegalArgumentException("windowMillis must be positive");
+        this.windowNanos = windowMillis * 1000000L;
+    }
+
+    /**
+     * Record a single event
+     * @param nowNanos current System.nanoTime()
+     * @return true if this event completed a measurement window and the rate was updated
+     */
+    public synchronized boolean record(long nowNanos)
+    {
+        total++;
+        if (windowStart < 0) {
+            windowStart = nowNanos;
+            windowCount = 0;
+        }
+        windowCount++;
+        long elapsed = nowNanos - windowStart;
+        if (elapsed >= windowNanos) {
+            ratePerSecond = windowCount * 1e9 / elapsed;
+            windowStart = nowNanos;
+            windowCount = 0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return events per second over the last completed window, 0 until a window completes
+     */
+    public synchronized double getRatePerSecond() {return ratePerSecond;}
+
+    public synchronized long getTotal() {return total;}
+
+    /**
+     * Forget the current window, e.g. when the event stream pauses, without losing the total
+     */
+    public synchronized void restartWindow()
+    {
+        windowStart = -1;
+        windowCount = 0;
+    }
+}
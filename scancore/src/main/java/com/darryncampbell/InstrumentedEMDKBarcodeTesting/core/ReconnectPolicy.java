@@ -0,0 +1,208 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+/**
+ * Decides what to do about connection changes from scanners which come and go, such as Bluetooth
+ * scanners moving in and out of range.  Each change starts a new generation for its scanner and
+ * is only acted on once it has settled, so a scanner flapping between CONNECTED and DISCONNECTED
+ * is re-attached at most once, with the latest state, and work belonging to an earlier generation
+ * is recognised as stale.  Failed attaches are retried with exponential backoff up to a limit.
+ * Scanner indexes beyond maxScanners - 1 are counted against the last one.  Thread safe.
+ */
+public class ReconnectPolicy {
+
+    public static final int ACTION_NONE = 0;
+    public static final int ACTION_ATTACH = 1;
+    public static final int ACTION_DETACH = 2;
+
+    private final long settleMillis;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final int maxAttempts;
+
+    private final long[] generation;
+    private final boolean[] bConnected;
+    private final boolean[] bDropped;
+    private final boolean[] bSettled;
+    private final long[] connectedNanos;
+    private final int[] attempts;
+
+    private long events = 0;
+    private long collapsed = 0;
+    private long duplicates = 0;
+    private long attaches = 0;
+    private long detaches = 0;
+    private long failures = 0;
+    private long abandoned = 0;
+
+    /**
+     * @param maxScanners distinct scanner indexes tracked
+     * @param settleMillis how long a scanner's connection state must be unchanged before it is acted on
+     * @param initialBackoffMillis delay before the first retry of a failed attach, doubled for each retry after it
+     * @param maxBackoffMillis longest delay between retries
+     * @param maxAttempts attaches tried for one connection before giving up
+     */
+    public ReconnectPolicy(int maxScanners, long settleMillis, long initialBackoffMillis, long maxBackoffMillis, int maxAttempts)
+    {
+        if (maxScanners <= 0 || maxAttempts <= 0)
+            throw new IllegalArgumentException("maxScanners and maxAttempts must be positive");
+        if (settleMillis < 0 || initialBackoffMillis <= 0 || maxBackoffMillis < initialBackoffMillis)
+            throw new IllegalArgumentException("Invalid settle or backoff delay");
+        this.settleMillis = settleMillis;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.maxAttempts = maxAttempts;
+        this.generation = new long[maxScanners];
+        this.bConnected = new boolean[maxScanners];
+        this.bDropped = new boolean[maxScanners];
+        this.bSettled = new boolean[maxScanners];
+        this.connectedNanos = new long[maxScanners];
+        this.attempts = new int[maxScanners];
+    }
+
+    public long getSettleMillis() {return settleMillis;}
+
+    /**
+     * Record a connection change.  The caller should call {@link #onSettled} with the returned
+     * generation once {@link #getSettleMillis()} has passed.
+     * @param nowNanos current System.nanoTime(), the start of the reconnect latency when connected
+     * @return the generation the change started
+     */
+    public synchronized long onConnectionChange(int scanner, boolean bConnected, long nowNanos)
+    {
+        int slot = slot(scanner);
+        events++;
+        if (!bSettled[slot] && generation[slot] != 0)
+            collapsed++;
+        this.bConnected[slot] = bConnected;
+        if (bConnected)
+            connectedNanos[slot] = nowNanos;
+        else
+            bDropped[slot] = true;
+        bSettled[slot] = false;
+        attempts[slot] = 0;
+        return ++generation[slot];
+    }
+
+    /**
+     * The settle time for a connection change has passed
+     * @param bAttached whether the scanner currently has an enabled device
+     * @return ACTION_ATTACH if the device should be (re-)attached, ACTION_DETACH if it should be
+     * released, or ACTION_NONE if a later change superseded this one or nothing needs to be done
+     */
+    public synchronized int onSettled(int scanner, long generation, boolean bAttached)
+    {
+        int slot = slot(scanner);
+        if (generation != this.generation[slot])
+            return ACTION_NONE;
+        bSettled[slot] = true;
+        if (!bConnected[slot]) {
+            detaches++;
+            return ACTION_DETACH;
+        }
+        //  A repeated CONNECTED for a device which never went away needs nothing doing
+        if (bAttached && !bDropped[slot]) {
+            duplicates++;
+            return ACTION_NONE;
+        }
+        return ACTION_ATTACH;
+    }
+
+    /**
+     * @return true if no connection change has been recorded for the scanner since the generation began
+     */
+    public synchronized boolean isCurrent(int scanner, long generation)
+    {
+        return generation == this.generation[slot(scanner)];
+    }
+
+    public synchronized void onAttached(int scanner, long generation)
+    {
+        int slot = slot(scanner);
+        attaches++;
+        if (generation == this.generation[slot]) {
+            bDropped[slot] = false;
+            attempts[slot] = 0;
+        }
+    }
+
+    /**
+     * An attach failed
+     * @return milliseconds to wait before trying again, or -1 if the generation is stale or the
+     * attempts are used up
+     */
+    public synchronized long onAttachFailed(int scanner, long generation)
+    {
+        int slot = slot(scanner);
+        failures++;
+        if (generation != this.generation[slot])
+            return -1;
+        int attempt = ++attempts[slot];
+        if (attempt >= maxAttempts) {
+            abandoned++;
+            return -1;
+        }
+        return backoffMillis(attempt);
+    }
+
+    /**
+     * @return the delay before retry number attempt (from 1), doubling each time up to the maximum
+     */
+    public long backoffMillis(int attempt)
+    {
+        long delay = initialBackoffMillis;
+        for (int i = 1; i < attempt && delay < maxBackoffMillis; i++)
+            delay <<= 1;
+        return Math.min(delay, maxBackoffMillis);
+    }
+
+    /**
+     * Make all outstanding work stale, e.g. when the activity stops using its scanners
+     */
+    public synchronized void cancelAll()
+    {
+        for (int i = 0; i < generation.length; i++) {
+            generation[i]++;
+            bSettled[i] = true;
+            attempts[i] = 0;
+        }
+    }
+
+    /**
+     * @return System.nanoTime() of the scanner's latest CONNECTED change
+     */
+    public synchronized long getConnectedNanos(int scanner) {return connectedNanos[slot(scanner)];}
+
+    public synchronized long getEvents() {return events;}
+
+    /**
+     * @return changes superseded by a later change for the same scanner before they settled
+     */
+    public synchronized long getCollapsed() {return collapsed;}
+
+    /**
+     * @return settled CONNECTED changes for a device which was already attached
+     */
+    public synchronized long getDuplicates() {return duplicates;}
+
+    public synchronized long getAttaches() {return attaches;}
+
+    public synchronized long getDetaches() {return detaches;}
+
+    public synchronized long getFailures() {return failures;}
+
+    /**
+     * @return connections given up on after maxAttempts failed attaches
+     */
+    public synchronized long getAbandoned() {return abandoned;}
+
+    public synchronized String report()
+    {
+        return "events=" + events + " collapsed=" + collapsed + " duplicates=" + duplicates +
+                " attaches=" + attaches + " detaches=" + detaches + " failures=" + failures + " abandoned=" + abandoned;
+    }
+
+    private int slot(int scanner)
+    {
+        return Math.max(0, Math.min(scanner, generation.length - 1));
+    }
+}
@@ -0,0 +1,110 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import java.util.List;
+
+/**
+ * Bounded multi-producer / single-consumer buffer used to hand scans from the EMDK callback
+ * thread to the UI thread.  Producers offer items one at a time, the consumer drains everything
+ * that has accumulated in a single batch.  When the buffer is full the oldest pending item is
+ * overwritten so the display always shows the most recent scans.
+ */
+public class ScanBatchBuffer<T> {
+
+    private final Object[] items;
+    private int head = 0;   //  Index of the oldest pending item
+    private int size = 0;
+
+    private long batchesFlushed = 0;
+    private long scansFlushed = 0;
+    private long scansDropped = 0;
+    private int peakDepth = 0;
+
+    /**
+     * @param capacity Maximum number of items held between two drains
+     */
+    public ScanBatchBuffer(int capacity)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.items = new Object[capacity];
+    }
+
+    /**
+     * Add an item to the buffer, may be called from any thread
+     * @param item the item to add
+     * @return the number of items pending after the add.  A return value of 1 means the buffer was
+     * empty beforehand and the consumer should be woken up.
+     */
+    public synchronized int offer(T item)
+    {
+        if (size == items.length) {
+            //  Full, drop the oldest pending item
+            items[head] = null;
+            head = (head + 1) % items.length;
+            size--;
+            scansDropped++;
+        }
+        items[(head + size) % items.length] = item;
+        size++;
+        if (size > peakDepth)
+            peakDepth = size;
+        return size;
+    }
+
+    /**
+     * Move every pending item into the supplied list, oldest first
+     * @param batch destination, items are appended
+     * @return the number of items drained
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized int drainTo(List<T> batch)
+    {
+        int drained = size;
+        for (int i = 0; i < drained; i++) {
+            int index = (head + i) % items.length;
+            batch.add((T) items[index]);
+            items[index] = null;
+        }
+        head = 0;
+        size = 0;
+        if (drained > 0) {
+            batchesFlushed++;
+            scansFlushed += drained;
+        }
+        return drained;
+    }
+
+    public synchronized int size() {return size;}
+    public int capacity() {return items.length;}
+
+    /**
+     * @return number of non-empty batches handed to the consumer
+     */
+    public synchronized long getBatchesFlushed() {return batchesFlushed;}
+
+    /**
+     * @return number of scans delivered to the consumer across all batches
+     */
+    public synchronized long getScansFlushed() {return scansFlushed;}
+
+    /**
+     * @return number of scans which shared a batch with an earlier scan, i.e. the number of
+     * individual UI updates saved by coalescing
+     */
+    public synchronized long getScansCoalesced() {return scansFlushed - batchesFlushed;}
+
+    /**
+     * @return number of scans overwritten because the consumer fell behind
+     */
+    public synchronized long getScansDropped() {return scansDropped;}
+
+    /**
+     * @return the largest number of items ever pending at once
+     */
+    public synchronized int getPeakDepth() {return peakDepth;}
+
+    /**
+     * Start tracking the peak depth afresh from the current depth
+     */
+    public synchronized void resetPeakDepth() {peakDepth = size;}
+}
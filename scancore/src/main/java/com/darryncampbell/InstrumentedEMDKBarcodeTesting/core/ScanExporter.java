@@ -0,0 +1,448 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * Sends processed scans off the device in compressed batches rather than one at a time.  Scans
+ * are collected until a batch is full or the oldest has waited the linger time, encoded by
+ * {@link ExportBatchCodec} and queued in a bounded in memory spool which a single daemon thread
+ * drains to an {@link ExportSink}, in order.  A sink which fails, e.g. while the collector is
+ * unreachable, is retried with exponential backoff while the spool holds the frames.
+ *
+ * Once the spool reaches its size limit no more batches are encoded and the exporter reports
+ * backpressure until it has drained to half that size.  Scans offered meanwhile wait up to the
+ * pending limit, beyond which {@link #offer} refuses them.  The spool is not persisted: scans
+ * pending or spooled when the process dies are not exported, nothing replays them.  Frames are
+ * numbered from 0 within an epoch taken from the wall clock when the exporter starts, so frames
+ * from different runs never share a number.  Thread safe.
+ */
+public class ScanExporter {
+
+    public interface Listener {
+        /**
+         * Called on the exporter thread when the spool fills and again once it has drained
+         */
+        void onBackpressure(boolean bBackpressured);
+    }
+
+    public static class Options {
+        private int maxBatchScans = 256;
+        private long lingerMillis = 5000;
+        private int maxPendingScans = 4096;
+        private long maxSpoolBytes = 1024 * 1024;
+        private long initialRetryMillis = 1000;
+        private long maxRetryMillis = 60000;
+        private int compressionLevel = Deflater.BEST_SPEED;
+        private long rateWindowMillis = 10000;
+
+        /**
+         * @param maxBatchScans a batch is sent as soon as it holds this many scans
+         */
+        public Options setMaxBatchScans(int maxBatchScans) {this.maxBatchScans = maxBatchScans; return this;}
+
+        /**
+         * @param lingerMillis longest a scan waits for its batch to fill
+         */
+        public Options setLingerMillis(long lingerMillis) {this.lingerMillis = lingerMillis; return this;}
+
+        /**
+         * @param maxPendingScans scans waiting to be batched beyond which offers are refused
+         */
+        public Options setMaxPendingScans(int maxPendingScans) {this.maxPendingScans = maxPendingScans; return this;}
+
+        /**
+         * @param maxSpoolBytes encoded frames held for the sink before backpressure is applied
+         */
+        public Options setMaxSpoolBytes(long maxSpoolBytes) {this.maxSpoolBytes = maxSpoolBytes; return this;}
+
+        /**
+         * @param initialRetryMillis delay before a failed frame is retried, doubled for each retry after it
+         * @param maxRetryMillis longest delay between retries
+         */
+        public Options setRetryMillis(long initialRetryMillis, long maxRetryMillis)
+        {
+            this.initialRetryMillis = initialRetryMillis;
+            this.maxRetryMillis = maxRetryMillis;
+            return this;
+        }
+
+        /**
+         * @param compressionLevel a {@link Deflater} level
+         */
+        public Options setCompressionLevel(int compressionLevel) {this.compressionLevel = compressionLevel; return this;}
+
+        /**
+         * @param rateWindowMillis window the export throughput is measured over
+         */
+        public Options setRateWindowMillis(long rateWindowMillis) {this.rateWindowMillis = rateWindowMillis; return this;}
+    }
+
+    //  An encoded batch waiting in the spool
+    private static final class Frame {
+        final long sequence;
+        final byte[] bytes;
+        final int scans;
+        final int rawBytes;
+        final long plainBytes;
+
+        Frame(long sequence, byte[] bytes, int scans, int rawBytes, long plainBytes)
+        {
+            this.sequence = sequence;
+            this.bytes = bytes;
+            this.scans = scans;
+            this.rawBytes = rawBytes;
+            this.plainBytes = plainBytes;
+        }
+    }
+
+    private static final AtomicLong lastEpoch = new AtomicLong();
+
+    private final ExportSink sink;
+    private final long epoch;
+    private final Options options;
+    private final Listener listener;
+    private final long lingerNanos;
+    private final RateMeter exportRate;
+    private final Thread exporter;
+
+    //  Shared between offering threads and the exporter thread, guarded by this
+    private ArrayList<ScanRecord> pending = new ArrayList<ScanRecord>();
+    private long firstPendingNanos;
+    private final ArrayDeque<Frame> spool = new ArrayDeque<Frame>();
+    private long spoolBytes = 0;
+    private boolean bFlushRequested = false;
+    private boolean bClosed = false;
+    private long scansOffered = 0;
+    private long scansRefused = 0;
+    private long scansExported = 0;
+    private long batchesSent = 0;
+    private long rawBytesSent = 0;
+    private long frameBytesSent = 0;
+    private long plainBytesSent = 0;
+    private long failures = 0;
+    private String lastFailure = null;
+    private volatile boolean bBackpressured = false;
+
+    //  Exporter thread only
+    private final ExportBatchCodec codec;
+    private long nextSequence = 0;
+    private long retryMillis = 0;
+    private long retryAtNanos = 0;
+
+    /**
+     * Start the exporter thread
+     * @param listener told about backpressure, may be null
+     */
+    public ScanExporter(ExportSink sink, Options options, Listener listener)
+    {
+        if (options.maxBatchScans <= 0 || options.maxPendingScans < options.maxBatchScans || options.maxSpoolBytes <= 0)
+            throw new IllegalArgumentException("Invalid batch, pending or spool limit");
+        if (options.lingerMillis < 0 || options.initialRetryMillis <= 0 || options.maxRetryMillis < options.initialRetryMillis)
+            throw new IllegalArgumentException("Invalid linger or retry delay");
+        this.sink = sink;
+        this.epoch = nextEpoch(System.currentTimeMillis());
+        this.options = options;
+        this.listener = listener;
+        this.lingerNanos = options.lingerMillis * 1000000L;
+        this.exportRate = new RateMeter(options.rateWindowMillis);
+        this.codec = new ExportBatchCodec(options.compressionLevel);
+        exporter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                exportLoop();
+            }
+        }, "ScanExporter");
+        exporter.setDaemon(true);
+        exporter.start();
+    }
+
+    /**
+     * Queue a processed scan for export.  The record must not be changed afterwards.
+     * @return false if the scan was refused because the exporter is backed up or closed
+     */
+    public boolean offer(ScanRecord record)
+    {
+        synchronized (this) {
+            if (bClosed || pending.size() >= options.maxPendingScans) {
+                scansRefused++;
+                return false;
+            }
+            scansOffered++;
+            pending.add(record);
+            //  Wake the exporter to start the linger clock, or because the batch is full
+            if (pending.size() == 1) {
+                firstPendingNanos = System.nanoTime();
+                notifyAll();
+            } else if (pending.size() == options.maxBatchScans) {
+                notifyAll();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Send the scans waiting for their batch to fill without waiting for the linger time
+     */
+    public synchronized void flush()
+    {
+        if (!pending.isEmpty()) {
+            bFlushRequested = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return wall clock millis the exporter started, unique to this exporter within the process
+     */
+    public long getEpoch() {return epoch;}
+
+    /**
+     * @return true while the spool is full, callers able to slow down the scans should do so
+     */
+    public boolean isBackpressured() {return bBackpressured;}
+
+    /**
+     * Encode what is pending and try once more to send everything spooled, then stop the exporter
+     * thread and close the sink.  Anything the sink still refuses is dropped.
+     */
+    public void close() throws InterruptedException
+    {
+        synchronized (this) {
+            if (bClosed)
+                return;
+            bClosed = true;
+            notifyAll();
+        }
+        exporter.join();
+    }
+
+    /**
+     * @return scans waiting to be batched
+     */
+    public synchronized int getPendingScans() {return pending.size();}
+
+    /**
+     * @return encoded batches waiting for the sink
+     */
+    public synchronized int getSpoolBatches() {return spool.size();}
+
+    public synchronized long getSpoolBytes() {return spoolBytes;}
+
+    public synchronized long getScansOffered() {return scansOffered;}
+
+    public synchronized long getScansRefused() {return scansRefused;}
+
+    /**
+     * @return scans the sink has accepted
+     */
+    public synchronized long getScansExported() {return scansExported;}
+
+    public synchronized long getBatchesSent() {return batchesSent;}
+
+    /**
+     * @return frame bytes the sink has accepted
+     */
+    public synchronized long getBytesSent() {return frameBytesSent;}
+
+    /**
+     * @return encoded bytes of the exported scans before compression
+     */
+    public synchronized long getRawBytesSent() {return rawBytesSent;}
+
+    /**
+     * @return bytes the exported scans would have taken sent one at a time
+     */
+    public synchronized long getPlainBytesSent() {return plainBytesSent;}
+
+    /**
+     * @return bytes not sent thanks to batching and compression, compared with sending each scan
+     * on its own.  Can fall slightly after a batch of one or two scans.
+     */
+    public synchronized long getBytesSaved() {return plainBytesSent - frameBytesSent;}
+
+    public synchronized long getFailures() {return failures;}
+
+    /**
+     * @return message of the most recent sink failure, or null
+     */
+    public synchronized String getLastFailure() {return lastFailure;}
+
+    /**
+     * @return scans exported per second over the last completed window
+     */
+    public double getScansPerSecond() {return exportRate.getRatePerSecond();}
+
+    private void exportLoop()
+    {
+        try {
+            while (true) {
+                ArrayList<ScanRecord> batch;
+                boolean bClosing;
+                synchronized (this) {
+                    waitForWork();
+                    bClosing = bClosed;
+                    batch = takeBatch(bClosing);
+                }
+                if (batch != null)
+                    spool(batch);
+                if (bClosing) {
+                    //  One last attempt whatever the backoff, then give up
+                    while ((batch = takeRemaining()) != null)
+                        spool(batch);
+                    retryAtNanos = System.nanoTime();
+                    drain();
+                    return;
+                }
+                drain();
+            }
+        } catch (InterruptedException e) {
+            //  Exit
+        } finally {
+            codec.close();
+            sink.close();
+        }
+    }
+
+    private synchronized ArrayList<ScanRecord> takeRemaining()
+    {
+        return takeBatch(true);
+    }
+
+    //  Called holding the lock, returns once a batch is due, a spooled frame can be sent or the exporter is closed
+    private void waitForWork() throws InterruptedException
+    {
+        while (!bClosed) {
+            long now = System.nanoTime();
+            long waitNanos = Long.MAX_VALUE;
+            if (!pending.isEmpty() && spoolBytes < options.maxSpoolBytes) {
+                long dueIn = firstPendingNanos + lingerNanos - now;
+                if (pending.size() >= options.maxBatchScans || bFlushRequested || dueIn <= 0)
+                    return;
+                waitNanos = dueIn;
+            }
+            if (!spool.isEmpty()) {
+                long retryIn = retryAtNanos - now;
+                if (retryIn <= 0)
+                    return;
+                waitNanos = Math.min(waitNanos, retryIn);
+            }
+            if (waitNanos == Long.MAX_VALUE)
+                wait();
+            else
+                wait(waitNanos / 1000000L + 1);
+        }
+    }
+
+    //  Called holding the lock, removes up to a batch of pending scans if one is due
+    private ArrayList<ScanRecord> takeBatch(boolean bClosing)
+    {
+        if (pending.isEmpty() || (!bClosing && spoolBytes >= options.maxSpoolBytes))
+            return null;
+        long now = System.nanoTime();
+        if (!bClosing && pending.size() < options.maxBatchScans && !bFlushRequested &&
+                now - firstPendingNanos < lingerNanos)
+            return null;
+        ArrayList<ScanRecord> batch;
+        if (pending.size() <= options.maxBatchScans) {
+            batch = pending;
+            pending = new ArrayList<ScanRecord>();
+            bFlushRequested = false;
+        } else {
+            //  The scans left behind keep their linger clock and flush request, they have already waited
+            batch = new ArrayList<ScanRecord>(pending.subList(0, options.maxBatchScans));
+            pending.subList(0, options.maxBatchScans).clear();
+        }
+        return batch;
+    }
+
+    //  Encode outside the lock so offers are never held up by compression
+    private void spool(ArrayList<ScanRecord> batch)
+    {
+        for (int i = 0; i < batch.size(); i++)
+            codec.add(batch.get(i));
+        int rawBytes = codec.getRawBytes();
+        long plainBytes = codec.getPlainBytes();
+        byte[] bytes = codec.finish(epoch, nextSequence);
+        Frame frame = new Frame(nextSequence++, bytes, batch.size(), rawBytes, plainBytes);
+        boolean bChanged;
+        synchronized (this) {
+            spool.addLast(frame);
+            spoolBytes += bytes.length;
+            bChanged = updateBackpressure();
+        }
+        if (bChanged)
+            notifyBackpressure();
+    }
+
+    //  Send spooled frames in order until the spool is empty or the sink fails
+    private void drain()
+    {
+        while (true) {
+            Frame head;
+            synchronized (this) {
+                head = spool.peekFirst();
+            }
+            if (head == null || System.nanoTime() - retryAtNanos < 0)
+                return;
+            try {
+                sink.write(epoch, head.sequence, head.bytes, 0, head.bytes.length);
+            } catch (IOException e) {
+                retryMillis = (retryMillis == 0) ? options.initialRetryMillis : Math.min(retryMillis * 2, options.maxRetryMillis);
+                retryAtNanos = System.nanoTime() + retryMillis * 1000000L;
+                synchronized (this) {
+                    failures++;
+                    lastFailure = e.getMessage();
+                }
+                return;
+            }
+            retryMillis = 0;
+            long now = System.nanoTime();
+            for (int i = 0; i < head.scans; i++)
+                exportRate.record(now);
+            boolean bChanged;
+            synchronized (this) {
+                spool.removeFirst();
+                spoolBytes -= head.bytes.length;
+                scansExported += head.scans;
+                batchesSent++;
+                rawBytesSent += head.rawBytes;
+                frameBytesSent += head.bytes.length;
+                plainBytesSent += head.plainBytes;
+                bChanged = updateBackpressure();
+            }
+            if (bChanged)
+                notifyBackpressure();
+        }
+    }
+
+    //  Called holding the lock, on at the limit and off again at half of it so it does not flap
+    private boolean updateBackpressure()
+    {
+        boolean bFull = bBackpressured ? spoolBytes > options.maxSpoolBytes / 2 : spoolBytes >= options.maxSpoolBytes;
+        if (bFull == bBackpressured)
+            return false;
+        bBackpressured = bFull;
+        return true;
+    }
+
+    //  Two exporters started in the same millisecond, e.g. in tests, still get distinct epochs
+    private static long nextEpoch(long nowMillis)
+    {
+        while (true) {
+            long last = lastEpoch.get();
+            long epoch = Math.max(nowMillis, last + 1);
+            if (lastEpoch.compareAndSet(last, epoch))
+                return epoch;
+        }
+    }
+
+    private void notifyBackpressure()
+    {
+        if (listener != null)
+            listener.onBackpressure(bBackpressured);
+    }
+}
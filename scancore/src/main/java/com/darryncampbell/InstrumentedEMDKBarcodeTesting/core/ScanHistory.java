@@ -0,0 +1,190 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+/**
+ * Fixed capacity history of scans held entirely in primitive arrays.  Barcode bytes are copied
+ * into a circular byte arena and per scan metadata is kept in parallel arrays so memory use is
+ * decided up front and does not grow over a shift.  When either the record slots or the arena
+ * run out the oldest scans are evicted.
+ * Not thread safe, append and read from the same thread (normally the UI thread).
+ */
+public class ScanHistory {
+
+    private final byte[] arena;
+    private final int[] dataOffset;
+    private final int[] dataLength;
+    private final int[] symbology;
+    private final long[] timestamp;
+    private final byte[] validation;
+    private final byte[] ruleVerdict;
+    private final int[] catalogRow;
+
+    private int next = 0;       //  Slot the next scan will be written to
+    private int size = 0;
+    private int writePos = 0;   //  Arena position the next scan's bytes will be written to
+    private long appended = 0;
+
+    /**
+     * @param capacity maximum number of scans retained
+     * @param arenaBytes bytes reserved for barcode data across all retained scans
+     */
+    public ScanHistory(int capacity, int arenaBytes)
+    {
+        if (capacity <= 0 || arenaBytes <= 0)
+            throw new IllegalArgumentException("capacity and arenaBytes must be positive");
+        this.arena = new byte[arenaBytes];
+        this.dataOffset = new int[capacity];
+        this.dataLength = new int[capacity];
+        this.symbology = new int[capacity];
+        this.timestamp = new long[capacity];
+        this.validation = new byte[capacity];
+        this.ruleVerdict = new byte[capacity];
+        this.catalogRow = new int[capacity];
+    }
+
+    /**
+     * Append a scan, evicting the oldest scans if required.  Data longer than the whole arena is
+     * truncated.
+     */
+    public void append(byte[] data, int symbologyCode, long timestampMillis)
+    {
+        append(data, 0, data.length, symbologyCode, timestampMillis);
+    }
+
+    public void append(byte[] data, int offset, int length, int symbologyCode, long timestampMillis)
+    {
+        append(data, offset, length, symbologyCode, SymbologyValidator.VALID, timestampMillis);
+    }
+
+    /**
+     * @param validationResult one of the {@link SymbologyValidator} results
+     */
+    public void append(byte[] data, int offset, int length, int symbologyCode, int validationResult, long timestampMillis)
+    {
+        append(data, offset, length, symbologyCode, validationResult, ScanRules.ALLOWED, ProductCatalog.NOT_FOUND,
+                timestampMillis);
+    }
+
+    /**
+     * @param verdict the scan's {@link ScanRules} verdict
+     * @param productRow the scan's {@link ProductCatalog} row
+     */
+    public void append(byte[] data, int offset, int length, int symbologyCode, int validationResult, int verdict,
+                       int productRow, long timestampMillis)
+    {
+        int len = Math.min(length, arena.length);
+
+        if (writePos + len > arena.length) {
+            //  Not enough room before the end of the arena so wrap.  Everything stored from
+            //  writePos onwards is older than anything at the start of the arena.
+            while (size > 0 && dataOffset[oldestSlot()] >= writePos)
+                evictOldest();
+            writePos = 0;
+        }
+        while (size > 0 && (size == dataOffset.length || overlapsOldest(writePos, len)))
+            evictOldest();
+        if (size == 0)
+            writePos = 0;
+
+        System.arraycopy(data, offset, arena, writePos, len);
+        dataOffset[next] = writePos;
+        dataLength[next] = len;
+        symbology[next] = symbologyCode;
+        timestamp[next] = timestampMillis;
+        validation[next] = (byte) validationResult;
+        ruleVerdict[next] = (byte) verdict;
+        catalogRow[next] = productRow;
+
+        writePos += len;
+        next = (next + 1) % dataOffset.length;
+        size++;
+        appended++;
+    }
+
+    /**
+     * @return number of scans currently retained
+     */
+    public int size() {return size;}
+
+    public int capacity() {return dataOffset.length;}
+
+    /**
+     * @return number of scans ever appended, including those since evicted
+     */
+    public long totalAppended() {return appended;}
+
+    /**
+     * @param index 0 is the oldest retained scan, size() - 1 the most recent
+     * @return a sequence number which stays the same for a scan for as long as it is retained
+     */
+    public long sequence(int index)
+    {
+        checkIndex(index);
+        return appended - size + index;
+    }
+
+    public int length(int index) {return dataLength[slot(index)];}
+
+    public int symbology(int index) {return symbology[slot(index)];}
+
+    public long timestamp(int index) {return timestamp[slot(index)];}
+
+    public int validation(int index) {return validation[slot(index)];}
+
+    public int ruleVerdict(int index) {return ruleVerdict[slot(index)];}
+
+    public int catalogRow(int index) {return catalogRow[slot(index)];}
+
+    public byte byteAt(int index, int position) {return arena[dataOffset[slot(index)] + position];}
+
+    /**
+     * Copy a scan's data into the supplied buffer
+     * @return number of bytes copied, at most dst.length - dstOffset
+     */
+    public int copyData(int index, byte[] dst, int dstOffset)
+    {
+        int slot = slot(index);
+        int len = Math.min(dataLength[slot], dst.length - dstOffset);
+        System.arraycopy(arena, dataOffset[slot], dst, dstOffset, len);
+        return len;
+    }
+
+    public void clear()
+    {
+        next = 0;
+        size = 0;
+        writePos = 0;
+    }
+
+    private int slot(int index)
+    {
+        checkIndex(index);
+        int slot = next - size + index;
+        return slot < 0 ? slot + dataOffset.length : slot;
+    }
+
+    private void checkIndex(int index)
+    {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+    }
+
+    private int oldestSlot()
+    {
+        int slot = next - size;
+        return slot < 0 ? slot + dataOffset.length : slot;
+    }
+
+    private boolean overlapsOldest(int start, int len)
+    {
+        int slot = oldestSlot();
+        int oldestStart = dataOffset[slot];
+        //  Treat empty scans as one byte long so they are evicted in order with their neighbours
+        int oldestEnd = oldestStart + Math.max(dataLength[slot], 1);
+        return start < oldestEnd && oldestStart < start + len;
+    }
+
+    private void evictOldest()
+    {
+        size--;
+    }
+}
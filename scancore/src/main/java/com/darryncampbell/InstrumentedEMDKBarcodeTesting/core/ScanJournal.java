@@ -0,0 +1,541 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Crash safe, append only journal of every scan received.  Records are written to a directory of
+ * fixed size, memory mapped segment files by a background thread so appending never blocks the
+ * caller.  Once a record is in the mapping it survives the process dying; the mapping is forced
+ * to storage (group commit) whenever a configurable number of bytes has been written or a
+ * configurable interval has passed, whichever comes first, so a power loss costs at most that
+ * much.
+ *
+ * Segment layout: an 8 byte magic and the sequence number of the segment's first record, then
+ * records of a 4 byte payload length, the payload's CRC-32 and the payload.  Segments are
+ * preallocated and zero filled so a zero length marks the end of the written data.  Opening the
+ * journal validates every record and truncates the log at the first torn or corrupt one, or at
+ * the first segment which does not carry on from the one before; the segments after that are
+ * deleted so records written after a tear never come back past a gap.
+ */
+public class ScanJournal {
+
+    public static final byte[] MAGIC = {'E', 'M', 'D', 'K', 'J', 'R', 'N', '1'};
+    private static final int SEGMENT_HEADER_BYTES = MAGIC.length + 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    /**
+     * Receives the records found when the journal is opened, oldest first
+     */
+    public interface RecordVisitor {
+        void onRecord(long sequence, long receivedMillis, byte[] data, String labelType, String charsetName,
+                      String scannerTimestamp, String friendlyName);
+    }
+
+    public static class Options {
+        private int segmentBytes = 4 * 1024 * 1024;
+        private int maxSegments = 64;
+        private long forceIntervalMillis = 200;
+        private int forceBytes = 64 * 1024;
+
+        /**
+         * @param segmentBytes size of each segment file, also the largest record which can be journaled
+         */
+        public Options setSegmentBytes(int segmentBytes) {this.segmentBytes = segmentBytes; return this;}
+
+        /**
+         * @param maxSegments the oldest segments are deleted beyond this many
+         */
+        public Options setMaxSegments(int maxSegments) {this.maxSegments = maxSegments; return this;}
+
+        /**
+         * @param forceIntervalMillis longest time written records wait before being forced to storage
+         */
+        public Options setForceIntervalMillis(long forceIntervalMillis) {this.forceIntervalMillis = forceIntervalMillis; return this;}
+
+        /**
+         * @param forceBytes written bytes which trigger a force before the interval expires
+         */
+        public Options setForceBytes(int forceBytes) {this.forceBytes = forceBytes; return this;}
+    }
+
+    private final File directory;
+    private final Options options;
+    private final Thread writer;
+    private final CRC32 crc = new CRC32();
+
+    //  Shared between appenders and the writer thread, guarded by this
+    private ArrayList<Entry> pending = new ArrayList<Entry>();
+    private ArrayList<Entry> writing = new ArrayList<Entry>();
+    private long nextSequence;
+    private long writtenSequence;
+    private long forcedSequence;
+    private boolean bSyncRequested = false;
+    private boolean bClosed = false;
+    private IOException failure = null;
+    private long forces = 0;
+    private int largestGroup = 0;
+
+    //  Writer thread only
+    private final List<File> segments = new ArrayList<File>();
+    private RandomAccessFile segmentFile;
+    private MappedByteBuffer segment;
+    private byte[] scratch = new byte[512];
+    private long bytesSinceForce = 0;
+    private long lastForceNanos = System.nanoTime();
+
+    //  Recovery results
+    private final long recoveredRecords;
+    private final long truncatedBytes;
+    private final int discardedSegments;
+
+    /**
+     * Open or create the journal, recovering the records already in it.  Does I/O proportional to
+     * the size of the journal so call it off the UI thread.
+     * @param visitor receives each recovered record, may be null
+     */
+    public static ScanJournal open(File directory, Options options, RecordVisitor visitor) throws IOException
+    {
+        return new ScanJournal(directory, options, visitor);
+    }
+
+    private ScanJournal(File directory, Options options, RecordVisitor visitor) throws IOException
+    {
+        this.directory = directory;
+        this.options = options;
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create journal directory " + directory);
+
+        File[] existing = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (existing == null)
+            existing = new File[0];
+        //  Names are zero padded sequence numbers so they sort in order
+        Arrays.sort(existing);
+
+        long records = 0;
+        long truncated = 0;
+        int discarded = 0;
+        long sequence = 0;
+        boolean bStopped = false; // At a tear or a gap, nothing after it counts
+        RandomAccessFile lastFile = null;
+        MappedByteBuffer lastMapped = null;
+        for (int i = 0; i < existing.length; i++) {
+            if (bStopped) {
+                if (!existing[i].delete())
+                    throw new IOException("Cannot remove journal segment " + existing[i] + " written after a tear");
+                discarded++;
+                continue;
+            }
+            RandomAccessFile file = new RandomAccessFile(existing[i], "rw");
+            MappedByteBuffer mapped = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+            if (!hasMagic(mapped)) {
+                //  A segment whose header never made it to storage holds nothing
+                file.close();
+                if (!existing[i].delete())
+                    throw new IOException("Cannot remove damaged segment " + existing[i]);
+                continue;
+            }
+            long first = mapped.getLong(MAGIC.length);
+            if (lastFile != null && first != sequence) {
+                //  Records at the end of the segment before never reached storage
+                file.close();
+                if (!existing[i].delete())
+                    throw new IOException("Cannot remove journal segment " + existing[i] + " written after a gap");
+                discarded++;
+                bStopped = true;
+                continue;
+            }
+            sequence = first;
+            mapped.position(SEGMENT_HEADER_BYTES);
+            while (true) {
+                int start = mapped.position();
+                long recordSequence = readRecord(mapped, visitor);
+                if (recordSequence < 0) {
+                    //  End of the written data, or a torn record if anything follows it
+                    long zeroed = zeroFrom(mapped, start);
+                    truncated += zeroed;
+                    bStopped = (zeroed > 0);
+                    break;
+                }
+                sequence = recordSequence + 1;
+                records++;
+            }
+            if (lastFile != null) {
+                lastMapped.force();
+                lastFile.close();
+            }
+            lastFile = file;
+            lastMapped = mapped;
+            segments.add(existing[i]);
+        }
+        //  Appending carries on in the last segment kept
+        segmentFile = lastFile;
+        segment = lastMapped;
+        if (segment != null)
+            segment.force();
+
+        this.recoveredRecords = records;
+        this.truncatedBytes = truncated;
+        this.discardedSegments = discarded;
+        this.nextSequence = sequence;
+        this.writtenSequence = sequence;
+        this.forcedSequence = sequence;
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "ScanJournal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queue a scan to be journaled.  May be called from any thread, returns immediately.
+     * @return the record's sequence number
+     */
+    public long append(long receivedMillis, byte[] data, String labelType, String charsetName,
+                       String scannerTimestamp, String friendlyName)
+    {
+        Entry entry = new Entry(receivedMillis, data, labelType, charsetName, scannerTimestamp, friendlyName);
+        synchronized (this) {
+            if (bClosed)
+                throw new IllegalStateException("Journal is closed");
+            entry.sequence = nextSequence++;
+            pending.add(entry);
+            if (pending.size() == 1)
+                notifyAll();
+            return entry.sequence;
+        }
+    }
+
+    /**
+     * Block until everything appended so far is written and forced to storage
+     */
+    public void sync() throws IOException, InterruptedException
+    {
+        synchronized (this) {
+            long target = nextSequence;
+            bSyncRequested = true;
+            notifyAll();
+            while (forcedSequence < target && failure == null && !bClosed)
+                wait();
+            if (failure != null)
+                throw failure;
+        }
+    }
+
+    /**
+     * Write and force everything appended, then stop the writer thread
+     */
+    public void close() throws IOException, InterruptedException
+    {
+        synchronized (this) {
+            if (bClosed)
+                return;
+            bClosed = true;
+            notifyAll();
+        }
+        writer.join();
+        if (segmentFile != null)
+            segmentFile.close();
+        synchronized (this) {
+            if (failure != null)
+                throw failure;
+        }
+    }
+
+    public File getDirectory() {return directory;}
+
+    public long getRecoveredRecords() {return recoveredRecords;}
+
+    /**
+     * @return bytes discarded from the tail of the log when it was opened
+     */
+    public long getTruncatedBytes() {return truncatedBytes;}
+
+    /**
+     * @return segments deleted when the journal was opened because they followed a tear or a gap
+     */
+    public int getDiscardedSegments() {return discardedSegments;}
+
+    public synchronized long getAppended() {return nextSequence;}
+
+    /**
+     * @return records known to be on storage
+     */
+    public synchronized long getForcedSequence() {return forcedSequence;}
+
+    public synchronized long getForces() {return forces;}
+
+    /**
+     * @return the most records written in one group
+     */
+    public synchronized int getLargestGroup() {return largestGroup;}
+
+    public synchronized int getSegmentCount() {return segments.size();}
+
+    private void writeLoop()
+    {
+        while (true) {
+            boolean bSync;
+            boolean bStopping;
+            synchronized (this) {
+                try {
+                    while (pending.isEmpty() && !bClosed && !bSyncRequested && !forceDue())
+                        wait(waitMillis());
+                } catch (InterruptedException e) {
+                    bClosed = true;
+                }
+                ArrayList<Entry> swap = writing;
+                writing = pending;
+                pending = swap;
+                bSync = bSyncRequested;
+                bSyncRequested = false;
+                bStopping = bClosed && writing.isEmpty();
+                largestGroup = Math.max(largestGroup, writing.size());
+            }
+
+            long written = -1;
+            try {
+                for (int i = 0; i < writing.size(); i++) {
+                    write(writing.get(i));
+                    written = writing.get(i).sequence + 1;
+                }
+                writing.clear();
+                boolean bForce = bSync || bStopping || bytesSinceForce >= options.forceBytes ||
+                        (bytesSinceForce > 0 && forceDue());
+                synchronized (this) {
+                    if (written >= 0)
+                        writtenSequence = written;
+                }
+                if (bForce) {
+                    if (segment != null && bytesSinceForce > 0)
+                        segment.force();
+                    bytesSinceForce = 0;
+                    lastForceNanos = System.nanoTime();
+                    synchronized (this) {
+                        forcedSequence = writtenSequence;
+                        forces++;
+                        notifyAll();
+                    }
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    bClosed = true;
+                    notifyAll();
+                }
+                return;
+            }
+            if (bStopping)
+                return;
+        }
+    }
+
+    //  Called holding the lock or on the writer thread
+    private boolean forceDue()
+    {
+        return bytesSinceForce > 0 &&
+                System.nanoTime() - lastForceNanos >= options.forceIntervalMillis * 1000000L;
+    }
+
+    private long waitMillis()
+    {
+        if (bytesSinceForce == 0)
+            return 0;   //  Nothing to force, wait for work
+        long remaining = options.forceIntervalMillis - (System.nanoTime() - lastForceNanos) / 1000000L;
+        return Math.max(1, remaining);
+    }
+
+    private void write(Entry entry) throws IOException
+    {
+        int length = encode(entry);
+        crc.reset();
+        crc.update(scratch, 0, length);
+        int recordBytes = RECORD_HEADER_BYTES + length;
+        if (recordBytes > options.segmentBytes - SEGMENT_HEADER_BYTES)
+            throw new IOException("Scan of " + entry.data.length + " bytes is larger than a journal segment");
+        if (segment == null || segment.remaining() < recordBytes)
+            startSegment(entry.sequence);
+
+        //  Payload and CRC first, the length last so a torn write never looks complete
+        int start = segment.position();
+        segment.position(start + RECORD_HEADER_BYTES);
+        segment.put(scratch, 0, length);
+        segment.putInt(start + 4, (int) crc.getValue());
+        segment.putInt(start, length);
+        bytesSinceForce += recordBytes;
+    }
+
+    private void startSegment(long firstSequence) throws IOException
+    {
+        if (segment != null) {
+            segment.force();
+            segmentFile.close();
+        }
+        File file = new File(directory, String.format("%020d", firstSequence) + SEGMENT_SUFFIX);
+        segmentFile = new RandomAccessFile(file, "rw");
+        segmentFile.setLength(options.segmentBytes);
+        segment = segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, options.segmentBytes);
+        segment.put(MAGIC);
+        segment.putLong(firstSequence);
+        segment.force();
+        synchronized (this) {
+            segments.add(file);
+            while (segments.size() > options.maxSegments) {
+                File oldest = segments.remove(0);
+                if (!oldest.delete())
+                    throw new IOException("Cannot delete old journal segment " + oldest);
+            }
+        }
+    }
+
+    private int encode(Entry entry)
+    {
+        int length = 8 + 8 + 4 + entry.data.length + 4 * 4 + utf8Length(entry.labelType) +
+                utf8Length(entry.charsetName) + utf8Length(entry.scannerTimestamp) + utf8Length(entry.friendlyName);
+        if (scratch.length < length)
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        ByteBuffer out = ByteBuffer.wrap(scratch);
+        out.putLong(entry.sequence);
+        out.putLong(entry.receivedMillis);
+        out.putInt(entry.data.length);
+        out.put(entry.data);
+        putString(out, entry.labelType);
+        putString(out, entry.charsetName);
+        putString(out, entry.scannerTimestamp);
+        putString(out, entry.friendlyName);
+        return out.position();
+    }
+
+    private static int utf8Length(String value)
+    {
+        return (value == null) ? 0 : Utf8.encode(value).length;
+    }
+
+    private static void putString(ByteBuffer out, String value)
+    {
+        if (value == null) {
+            out.putInt(-1);
+            return;
+        }
+        byte[] utf8 = Utf8.encode(value);
+        out.putInt(utf8.length);
+        out.put(utf8);
+    }
+
+    private static boolean hasMagic(ByteBuffer buffer)
+    {
+        if (buffer.limit() < SEGMENT_HEADER_BYTES)
+            return false;
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(i) != MAGIC[i])
+                return false;
+        }
+        return true;
+    }
+
+    //  Validate and decode the record at the buffer's position, leaving the position after it
+    //  @return the record's sequence number, or -1 at the end of the data or a damaged record
+    private long readRecord(ByteBuffer buffer, RecordVisitor visitor)
+    {
+        int start = buffer.position();
+        if (buffer.remaining() < RECORD_HEADER_BYTES)
+            return -1;
+        int length = buffer.getInt(start);
+        int expectedCrc = buffer.getInt(start + 4);
+        if (length <= 0 || length > buffer.remaining() - RECORD_HEADER_BYTES)
+            return -1;
+        if (scratch.length < length)
+            scratch = new byte[length];
+        buffer.position(start + RECORD_HEADER_BYTES);
+        buffer.get(scratch, 0, length);
+        crc.reset();
+        crc.update(scratch, 0, length);
+        if ((int) crc.getValue() != expectedCrc) {
+            buffer.position(start);
+            return -1;
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(scratch, 0, length);
+        try {
+            long sequence = in.getLong();
+            long receivedMillis = in.getLong();
+            byte[] data = new byte[in.getInt()];
+            in.get(data);
+            String labelType = getString(in);
+            String charsetName = getString(in);
+            String scannerTimestamp = getString(in);
+            String friendlyName = getString(in);
+            if (visitor != null)
+                visitor.onRecord(sequence, receivedMillis, data, labelType, charsetName, scannerTimestamp, friendlyName);
+            return sequence;
+        } catch (RuntimeException e) {
+            //  A CRC match on a malformed payload, treat as damage
+            buffer.position(start);
+            return -1;
+        }
+    }
+
+    private static String getString(ByteBuffer in)
+    {
+        int length = in.getInt();
+        if (length < 0)
+            return null;
+        String value = Utf8.decode(in.array(), in.arrayOffset() + in.position(), length);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    //  Zero everything from position onwards so later appends start from a clean tail
+    private static long zeroFrom(MappedByteBuffer buffer, int position)
+    {
+        long zeroed = 0;
+        for (int i = position; i < buffer.limit(); i++) {
+            if (buffer.get(i) != 0) {
+                buffer.put(i, (byte) 0);
+                zeroed = i - position + 1;
+            }
+        }
+        buffer.position(position);
+        return zeroed;
+    }
+
+    private static class Entry {
+        final long receivedMillis;
+        final byte[] data;
+        final String labelType;
+        final String charsetName;
+        final String scannerTimestamp;
+        final String friendlyName;
+        long sequence;
+
+        Entry(long receivedMillis, byte[] data, String labelType, String charsetName, String scannerTimestamp,
+              String friendlyName)
+        {
+            this.receivedMillis = receivedMillis;
+            this.data = data;
+            this.labelType = labelType;
+            this.charsetName = charsetName;
+            this.scannerTimestamp = scannerTimestamp;
+            this.friendlyName = friendlyName;
+        }
+    }
+}
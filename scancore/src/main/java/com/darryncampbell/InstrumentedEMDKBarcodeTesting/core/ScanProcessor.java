@@ -0,0 +1,212 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processing stage between the EMDK callback and the UI.  Scans are validated by
+ * {@link SymbologyValidator} on a pool of worker threads, so the barcodes of a multi-barcode
+ * collection are checked in parallel, and are passed on to the sink in the order they were
+ * submitted.  Submitting never blocks: the callback thread only enqueues.  Once set, the site's
+ * {@link ScanRules} are checked as part of validation and each scan is looked up in the
+ * {@link ProductCatalog}.  Either can be replaced while scans are in flight.
+ * The time each scan spends queued, being validated, being looked up and waiting for earlier scans
+ * to finish is recorded in the supplied {@link PipelineLatency}.
+ */
+public class ScanProcessor {
+
+    public interface Sink {
+        /**
+         * Called with each processed scan in submission order, from a worker thread.  Must be
+         * quick, later scans wait for it.
+         */
+        void onProcessed(ScanRecord record);
+    }
+
+    private static final int INITIAL_IN_FLIGHT = 64;
+
+    private final Sink sink;
+    private final PipelineLatency latency;
+    private final ExecutorService workers;
+    private final int threads;
+    private volatile ProductCatalog catalog = null;
+    private volatile ScanRules rules = null;
+
+    //  Reorder window indexed by sequence number, grown if more scans are in flight than it holds
+    private final Object lock = new Object();
+    private ScanRecord[] inFlight = new ScanRecord[INITIAL_IN_FLIGHT];
+    private boolean[] done = new boolean[INITIAL_IN_FLIGHT];
+    private long[] doneNanos = new long[INITIAL_IN_FLIGHT];
+    private long nextSequence = 0;
+    private long nextEmit = 0;
+    private long processed = 0;
+    private long invalid = 0;
+
+    /**
+     * @param threads worker threads, normally the number of cores
+     * @param sink receives each scan once validated
+     * @param latency where the per stage timings are recorded
+     */
+    public ScanProcessor(int threads, Sink sink, PipelineLatency latency)
+    {
+        if (threads <= 0)
+            throw new IllegalArgumentException("threads must be positive");
+        this.threads = threads;
+        this.sink = sink;
+        this.latency = latency;
+        this.workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ScanProcessor-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Queue a scan for processing.  May be called from any thread, returns immediately.  The
+     * record's callbackNanos is used as the start of its queueing time.
+     */
+    public void submit(final ScanRecord record)
+    {
+        final long sequence;
+        synchronized (lock) {
+            if (nextSequence - nextEmit == inFlight.length)
+                grow();
+            sequence = nextSequence++;
+            inFlight[slot(sequence)] = record;
+        }
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                process(sequence, record);
+            }
+        });
+    }
+
+    /**
+     * @return true if every submitted scan has been passed to the sink
+     */
+    public boolean isIdle()
+    {
+        synchronized (lock) {
+            return nextEmit == nextSequence;
+        }
+    }
+
+    public int getThreads() {return threads;}
+
+    /**
+     * @param catalog looked up for scans processed from now on, null to stop looking up
+     */
+    public void setCatalog(ProductCatalog catalog) {this.catalog = catalog;}
+
+    public ProductCatalog getCatalog() {return catalog;}
+
+    /**
+     * @param rules checked for scans processed from now on, null to accept every scan
+     */
+    public void setRules(ScanRules rules) {this.rules = rules;}
+
+    public ScanRules getRules() {return rules;}
+
+    /**
+     * @return scans submitted but not yet passed to the sink
+     */
+    public long getPending()
+    {
+        synchronized (lock) {
+            return nextSequence - nextEmit;
+        }
+    }
+
+    public long getProcessed()
+    {
+        synchronized (lock) {
+            return processed;
+        }
+    }
+
+    /**
+     * @return scans which failed validation
+     */
+    public long getInvalid()
+    {
+        synchronized (lock) {
+            return invalid;
+        }
+    }
+
+    public void shutdown()
+    {
+        workers.shutdownNow();
+    }
+
+    private void process(long sequence, ScanRecord record)
+    {
+        long start = System.nanoTime();
+        latency.dataQueue.record(start - record.callbackNanos);
+        record.validation = SymbologyValidator.validate(record.symbology, record.data, 0, record.data.length);
+        ScanRules site = rules;
+        if (site != null)
+            record.ruleVerdict = site.evaluate(record.symbology, record.data, 0, record.data.length);
+        long end = System.nanoTime();
+        latency.dataValidate.record(end - start);
+        ProductCatalog products = catalog;
+        if (products != null) {
+            record.catalogRow = products.lookup(record.symbology, record.data, 0, record.data.length);
+            long looked = System.nanoTime();
+            latency.dataLookup.record(looked - end);
+            end = looked;
+        }
+
+        synchronized (lock) {
+            int slot = slot(sequence);
+            done[slot] = true;
+            doneNanos[slot] = end;
+            //  Pass on every scan which is now at the head of the window
+            while (nextEmit < nextSequence) {
+                int head = slot(nextEmit);
+                if (!done[head])
+                    break;
+                ScanRecord next = inFlight[head];
+                inFlight[head] = null;
+                done[head] = false;
+                latency.dataReorder.record(System.nanoTime() - doneNanos[head]);
+                processed++;
+                if (next.validation != SymbologyValidator.VALID)
+                    invalid++;
+                sink.onProcessed(next);
+                nextEmit++;
+            }
+        }
+    }
+
+    private int slot(long sequence)
+    {
+        return (int) (sequence & (inFlight.length - 1));
+    }
+
+    private void grow()
+    {
+        int capacity = inFlight.length * 2;
+        ScanRecord[] grownRecords = new ScanRecord[capacity];
+        boolean[] grownDone = new boolean[capacity];
+        long[] grownNanos = new long[capacity];
+        for (long sequence = nextEmit; sequence < nextSequence; sequence++) {
+            int from = slot(sequence);
+            int to = (int) (sequence & (capacity - 1));
+            grownRecords[to] = inFlight[from];
+            grownDone[to] = done[from];
+            grownNanos[to] = doneNanos[from];
+        }
+        inFlight = grownRecords;
+        done = grownDone;
+        doneNanos = grownNanos;
+    }
+}
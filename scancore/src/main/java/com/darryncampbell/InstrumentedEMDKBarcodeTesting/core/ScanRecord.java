@@ -0,0 +1,58 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+/**
+ * A single decoded barcode as it moves through the scan pipeline, independent of the EMDK classes.
+ */
+public class ScanRecord {
+
+    public final byte[] data;
+    public final int symbology;
+    public final long timestampMillis;
+
+    /**
+     * System.nanoTime() when the EMDK delivered the scan and when it was handed to the UI thread,
+     * used for latency measurement
+     */
+    public long callbackNanos;
+    public long handoffNanos;
+
+    /**
+     * Result of {@link SymbologyValidator#validate}, set by the processing stage
+     */
+    public int validation = SymbologyValidator.VALID;
+
+    /**
+     * Verdict of the site's {@link ScanRules}, set by the processing stage
+     */
+    public int ruleVerdict = ScanRules.ALLOWED;
+
+    /**
+     * Row of the scanned product in the {@link ProductCatalog}, set by the processing stage
+     */
+    public int catalogRow = ProductCatalog.NOT_FOUND;
+
+    /**
+     * Timestamp string the scanner attached to the scan, position of the scanner in the device
+     * list and sequence number in the scan journal (-1 if not journaled), used for statistics
+     */
+    public String scannerTimestamp;
+    public int scannerIndex;
+    public long journalSequence = -1;
+
+    /**
+     * Friendly name of the scanner which read the barcode, carried through to the scan export
+     */
+    public String friendlyName;
+
+    /**
+     * @param data raw barcode bytes as returned by the scanner
+     * @param symbology one of the {@link Symbology} codes
+     * @param timestampMillis wall clock time the scan was received
+     */
+    public ScanRecord(byte[] data, int symbology, long timestampMillis)
+    {
+        this.data = data;
+        this.symbology = symbology;
+        this.timestampMillis = timestampMillis;
+    }
+}
@@ -0,0 +1,172 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A site's scan acceptance rules compiled to one deterministic automaton per symbology, so a scan
+ * is checked against every rule in a single pass over its raw bytes however many rules there are.
+ * Immutable and thread safe: a new rule file is compiled off to the side and swapped in whole.
+ *
+ * A rule file has one rule per line, blank lines and lines starting with # are ignored:
+ *
+ *   allow|block  SYMBOLOGIES  PATTERN
+ *
+ * SYMBOLOGIES is * or a comma separated list of LabelType names, e.g. EAN13,UPCA.  PATTERN must
+ * match the whole barcode and is one of
+ *   prefix:TEXT      data starting with TEXT, taken literally
+ *   length:N[-M]     data of N (to M) bytes
+ *   range:LO-HI      digits between LO and HI inclusive, both the same length, e.g. a block of GTINs
+ *   an expression    literal bytes, ? any byte, # any digit, * any run of bytes, [A-Z0-9] and [^...]
+ *                    classes, (a|b) alternatives, {n} {n,} {n,m} repeats, \ escapes the next
+ *                    character and \xHH is a byte, e.g. \x1D for the GS1 separator
+ *
+ * A scan is BLOCKED if any block rule matches.  Otherwise it is ALLOWED if an allow rule matches or
+ * no allow rules apply to its symbology, and NOT_ALLOWED if allow rules apply but none matched.
+ */
+public final class ScanRules {
+
+    public static final int ALLOWED = 0;
+    public static final int NOT_ALLOWED = 1;
+    public static final int BLOCKED = 2;
+
+    private static final String[] DESCRIPTIONS = {"ALLOWED", "NOT ALLOWED", "BLOCKED"};
+
+    public static final int ACTION_ALLOW = 0;
+    public static final int ACTION_BLOCK = 1;
+
+    /**
+     * Every rule matched by a scan, reused from one scan to the next.  Not thread safe.
+     */
+    public static final class Match {
+        private int[] rules = new int[8];
+        private int count = 0;
+        private int verdict = ALLOWED;
+
+        public int count() {return count;}
+
+        /**
+         * @return index of a matching rule in the order the rule file lists them
+         */
+        public int rule(int index) {return rules[index];}
+
+        public int verdict() {return verdict;}
+    }
+
+    //  Transitions are indexed by state and byte class, bytes which every pattern treats alike share
+    //  a class.  State 0 is the dead state, once reached no rule can match.
+    static final class Automaton {
+        final int[] byteClass;
+        final int classes;
+        final int[] next;
+        final int[][] accepts;
+        final byte[] verdicts;
+
+        Automaton(int[] byteClass, int classes, int[] next, int[][] accepts, byte[] verdicts)
+        {
+            this.byteClass = byteClass;
+            this.classes = classes;
+            this.next = next;
+            this.accepts = accepts;
+            this.verdicts = verdicts;
+        }
+
+        int states() {return verdicts.length;}
+    }
+
+    static final int START_STATE = 1;
+
+    private final Automaton[] bySymbology;
+    private final String[] sources;
+    private final int[] actions;
+    private final int states;
+
+    ScanRules(Automaton[] bySymbology, String[] sources, int[] actions, int states)
+    {
+        this.bySymbology = bySymbology;
+        this.sources = sources;
+        this.actions = actions;
+        this.states = states;
+    }
+
+    /**
+     * Compile a rule file
+     * @throws IOException if a rule is malformed, naming its line, or the rules need too many states
+     */
+    public static ScanRules compile(Reader rules) throws IOException
+    {
+        return new ScanRulesCompiler().compile(rules);
+    }
+
+    /**
+     * @return rules in the file
+     */
+    public int size() {return sources.length;}
+
+    /**
+     * @return states across the compiled automata, a measure of their memory use
+     */
+    public int getStates() {return states;}
+
+    /**
+     * @return the rule as written in the file
+     */
+    public String source(int rule) {return sources[rule];}
+
+    public int action(int rule) {return actions[rule];}
+
+    /**
+     * @param symbology one of the {@link Symbology} codes
+     * @return ALLOWED, NOT_ALLOWED or BLOCKED
+     */
+    public int evaluate(int symbology, byte[] data, int offset, int length)
+    {
+        Automaton automaton = automaton(symbology);
+        if (automaton == null)
+            return ALLOWED;
+        return automaton.verdicts[run(automaton, data, offset, length)];
+    }
+
+    /**
+     * As evaluate, also reporting every rule the scan matched
+     */
+    public int match(int symbology, byte[] data, int offset, int length, Match match)
+    {
+        match.count = 0;
+        Automaton automaton = automaton(symbology);
+        if (automaton == null) {
+            match.verdict = ALLOWED;
+            return ALLOWED;
+        }
+        int state = run(automaton, data, offset, length);
+        int[] accepted = automaton.accepts[state];
+        if (match.rules.length < accepted.length)
+            match.rules = new int[accepted.length];
+        System.arraycopy(accepted, 0, match.rules, 0, accepted.length);
+        match.count = accepted.length;
+        match.verdict = automaton.verdicts[state];
+        return match.verdict;
+    }
+
+    public static String describe(int verdict)
+    {
+        return (verdict >= 0 && verdict < DESCRIPTIONS.length) ? DESCRIPTIONS[verdict] : "UNKNOWN";
+    }
+
+    private Automaton automaton(int symbology)
+    {
+        return (symbology >= 0 && symbology < bySymbology.length) ? bySymbology[symbology] : bySymbology[Symbology.UNDEFINED];
+    }
+
+    private static int run(Automaton automaton, byte[] data, int offset, int length)
+    {
+        int[] next = automaton.next;
+        int[] byteClass = automaton.byteClass;
+        int classes = automaton.classes;
+        int state = START_STATE;
+        int end = offset + length;
+        for (int i = offset; i < end && state != 0; i++)
+            state = next[state * classes + byteClass[data[i] & 0xFF]];
+        return state;
+    }
+}
@@ -0,0 +1,682 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns a rule file into {@link ScanRules}.  Each pattern is parsed to a small syntax tree, the
+ * trees of every rule which applies to a symbology are joined into one Thompson NFA whose
+ * accepting states name their rule, and the NFA is made deterministic by subset construction over
+ * byte classes.  Symbologies with the same rules share one automaton.  Not thread safe, use a
+ * compiler per compilation.
+ */
+final class ScanRulesCompiler {
+
+    /**
+     * Most transitions allowed in one automaton, 4 MB of int.  A few thousand prefix rules over
+     * digits need around 10 byte classes and a state per prefix character.
+     */
+    static final int MAX_TRANSITIONS = 1 << 20;
+
+    /**
+     * Most states allowed in the nondeterministic automaton built for one symbology.  Nested
+     * bounded repeats multiply, so the limit is checked as states are made rather than after.
+     */
+    static final int MAX_NFA_STATES = 1 << 18;
+    private static final int MAX_REPEAT = 255;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    //  Pattern syntax tree
+    private static final int NODE_SET = 0;
+    private static final int NODE_SEQUENCE = 1;
+    private static final int NODE_ALTERNATIVES = 2;
+    private static final int NODE_REPEAT = 3;
+
+    private static final class Node {
+        final int type;
+        final BitSet bytes;
+        final List<Node> children;
+        final int min;
+        final int max; // -1 for unbounded
+
+        Node(int type, BitSet bytes, List<Node> children, int min, int max)
+        {
+            this.type = type;
+            this.bytes = bytes;
+            this.children = children;
+            this.min = min;
+            this.max = max;
+        }
+
+        static Node set(BitSet bytes) {return new Node(NODE_SET, bytes, null, 0, 0);}
+
+        static Node sequence(List<Node> children) {return new Node(NODE_SEQUENCE, null, children, 0, 0);}
+
+        static Node alternatives(List<Node> children) {return new Node(NODE_ALTERNATIVES, null, children, 0, 0);}
+
+        static Node repeat(Node child, int min, int max)
+        {
+            List<Node> children = new ArrayList<Node>(1);
+            children.add(child);
+            return new Node(NODE_REPEAT, null, children, min, max);
+        }
+    }
+
+    //  NFA state: an optional byte edge and any number of epsilon edges
+    private static final class State {
+        final int id;
+        BitSet bytes = null;
+        State target = null;
+        final List<State> epsilon = new ArrayList<State>(2);
+        int acceptRule = -1;
+
+        State(int id)
+        {
+            this.id = id;
+        }
+    }
+
+    //  A DFA state: the NFA states it stands for, sorted
+    private static final class StateSet {
+        final int[] ids;
+        final int hash;
+
+        StateSet(int[] ids)
+        {
+            this.ids = ids;
+            this.hash = Arrays.hashCode(ids);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof StateSet && Arrays.equals(ids, ((StateSet) other).ids);
+        }
+    }
+
+    private final List<State> nfa = new ArrayList<State>();
+    private final List<Node> patterns = new ArrayList<Node>();
+    private final List<String> sources = new ArrayList<String>();
+    private final List<Integer> actions = new ArrayList<Integer>();
+    private final List<boolean[]> symbologies = new ArrayList<boolean[]>();
+    private int[] stack = new int[0]; // Epsilon closure work list, each state is pushed at most once
+    private int[] visited = new int[0]; // Generation in which each state was last reached
+    private int generation = 0;
+
+    ScanRules compile(Reader rules) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(rules);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String rule = line.trim();
+            if (rule.isEmpty() || rule.startsWith("#"))
+                continue;
+            try {
+                parseRule(rule);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+            }
+            sources.add(rule);
+        }
+
+        int[] actionArray = new int[actions.size()];
+        for (int i = 0; i < actionArray.length; i++)
+            actionArray[i] = actions.get(i);
+
+        ScanRules.Automaton[] bySymbology = new ScanRules.Automaton[Symbology.COUNT];
+        Map<String, ScanRules.Automaton> shared = new HashMap<String, ScanRules.Automaton>();
+        int totalStates = 0;
+        for (int symbology = 0; symbology < Symbology.COUNT; symbology++) {
+            List<Integer> applying = new ArrayList<Integer>();
+            for (int rule = 0; rule < symbologies.size(); rule++) {
+                if (symbologies.get(rule)[symbology])
+                    applying.add(rule);
+            }
+            if (applying.isEmpty())
+                continue;
+            String key = applying.toString();
+            ScanRules.Automaton automaton = shared.get(key);
+            if (automaton == null) {
+                try {
+                    automaton = determinise(applying, actionArray);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Rules for " + Symbology.name(symbology) + ": " + e.getMessage());
+                }
+                shared.put(key, automaton);
+                totalStates += automaton.states();
+            }
+            bySymbology[symbology] = automaton;
+        }
+        return new ScanRules(bySymbology, sources.toArray(new String[sources.size()]), actionArray, totalStates);
+    }
+
+    private void parseRule(String rule)
+    {
+        String[] parts = rule.split("\\s+", 3);
+        if (parts.length < 3)
+            throw new IllegalArgumentException("expected: allow|block SYMBOLOGIES PATTERN");
+        if (parts[0].equalsIgnoreCase("allow"))
+            actions.add(ScanRules.ACTION_ALLOW);
+        else if (parts[0].equalsIgnoreCase("block"))
+            actions.add(ScanRules.ACTION_BLOCK);
+        else
+            throw new IllegalArgumentException("unknown action " + parts[0]);
+
+        boolean[] applies = new boolean[Symbology.COUNT];
+        if (parts[1].equals("*")) {
+            Arrays.fill(applies, true);
+        } else {
+            for (String name : parts[1].split(",")) {
+                int code = Symbology.fromName(name.trim());
+                if (code == Symbology.UNDEFINED && !name.trim().equals(Symbology.name(Symbology.UNDEFINED)))
+                    throw new IllegalArgumentException("unknown symbology " + name);
+                applies[code] = true;
+            }
+        }
+        symbologies.add(applies);
+        patterns.add(parsePattern(parts[2]));
+    }
+
+    private static Node parsePattern(String pattern)
+    {
+        if (pattern.startsWith("prefix:")) {
+            byte[] prefix = pattern.substring(7).getBytes(UTF_8);
+            List<Node> sequence = new ArrayList<Node>();
+            for (byte b : prefix)
+                sequence.add(Node.set(single(b & 0xFF)));
+            sequence.add(Node.repeat(Node.set(anyByte()), 0, -1));
+            return Node.sequence(sequence);
+        }
+        if (pattern.startsWith("length:")) {
+            String[] bounds = pattern.substring(7).split("-");
+            int min = parseCount(bounds[0]);
+            int max = (bounds.length > 1) ? parseCount(bounds[1]) : min;
+            if (bounds.length > 2 || max < min)
+                throw new IllegalArgumentException("bad length " + pattern);
+            return Node.repeat(Node.set(anyByte()), min, max);
+        }
+        if (pattern.startsWith("range:")) {
+            String[] bounds = pattern.substring(6).split("-");
+            if (bounds.length != 2 || bounds[0].length() != bounds[1].length() || !isDigits(bounds[0]) ||
+                    !isDigits(bounds[1]) || bounds[0].compareTo(bounds[1]) > 0)
+                throw new IllegalArgumentException("range needs LO-HI digits of the same length, LO <= HI: " + pattern);
+            return range(bounds[0], bounds[1]);
+        }
+        PatternParser parser = new PatternParser(pattern.getBytes(UTF_8));
+        Node node = parser.parseAlternatives();
+        if (parser.pos != parser.pattern.length)
+            throw new IllegalArgumentException("unexpected " + (char) parser.pattern[parser.pos] + " in " + pattern);
+        return node;
+    }
+
+    //  Digit strings of one length from lo to hi, e.g. 120-345 is 12[0-9] | 1[3-9][0-9] | 2[0-9][0-9] | 3[0-3][0-9] | 34[0-5]
+    private static Node range(String lo, String hi)
+    {
+        List<Node> sequence = new ArrayList<Node>();
+        int i = 0;
+        while (i < lo.length() && lo.charAt(i) == hi.charAt(i))
+            sequence.add(Node.set(single(lo.charAt(i++))));
+        if (i == lo.length())
+            return Node.sequence(sequence);
+
+        int rest = lo.length() - i - 1;
+        List<Node> alternatives = new ArrayList<Node>();
+        char first = lo.charAt(i);
+        char last = hi.charAt(i);
+        if (rest == 0) {
+            alternatives.add(Node.set(between(first, last)));
+        } else {
+            alternatives.add(prepend(first, range(lo.substring(i + 1), repeatChar('9', rest))));
+            if (last - first > 1)
+                alternatives.add(prepend(between((char) (first + 1), (char) (last - 1)),
+                        Node.repeat(Node.set(between('0', '9')), rest, rest)));
+            alternatives.add(prepend(last, range(repeatChar('0', rest), hi.substring(i + 1))));
+        }
+        sequence.add(Node.alternatives(alternatives));
+        return Node.sequence(sequence);
+    }
+
+    private static Node prepend(char c, Node node)
+    {
+        return prepend(single(c), node);
+    }
+
+    private static Node prepend(BitSet bytes, Node node)
+    {
+        List<Node> sequence = new ArrayList<Node>(2);
+        sequence.add(Node.set(bytes));
+        sequence.add(node);
+        return Node.sequence(sequence);
+    }
+
+    private static String repeatChar(char c, int count)
+    {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static boolean isDigits(String text)
+    {
+        if (text.isEmpty())
+            return false;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < '0' || text.charAt(i) > '9')
+                return false;
+        }
+        return true;
+    }
+
+    private static int parseCount(String text)
+    {
+        if (!isDigits(text) || text.length() > 3 || Integer.parseInt(text) > MAX_REPEAT)
+            throw new IllegalArgumentException("count must be 0 to " + MAX_REPEAT + ": " + text);
+        return Integer.parseInt(text);
+    }
+
+    private static BitSet single(int b)
+    {
+        BitSet bytes = new BitSet(256);
+        bytes.set(b);
+        return bytes;
+    }
+
+    private static BitSet between(int first, int last)
+    {
+        BitSet bytes = new BitSet(256);
+        bytes.set(first, last + 1);
+        return bytes;
+    }
+
+    private static BitSet anyByte()
+    {
+        return between(0, 255);
+    }
+
+    private static final class PatternParser {
+        final byte[] pattern;
+        int pos = 0;
+
+        PatternParser(byte[] pattern)
+        {
+            this.pattern = pattern;
+        }
+
+        Node parseAlternatives()
+        {
+            List<Node> alternatives = new ArrayList<Node>();
+            alternatives.add(parseSequence());
+            while (pos < pattern.length && pattern[pos] == '|') {
+                pos++;
+                alternatives.add(parseSequence());
+            }
+            return (alternatives.size() == 1) ? alternatives.get(0) : Node.alternatives(alternatives);
+        }
+
+        Node parseSequence()
+        {
+            List<Node> sequence = new ArrayList<Node>();
+            while (pos < pattern.length && pattern[pos] != '|' && pattern[pos] != ')')
+                sequence.add(parseRepeat());
+            return Node.sequence(sequence);
+        }
+
+        Node parseRepeat()
+        {
+            boolean bAnyRun = pattern[pos] == '*';
+            Node atom = parseAtom();
+            if (pos < pattern.length && pattern[pos] == '{') {
+                if (bAnyRun)
+                    throw new IllegalArgumentException("* cannot be repeated");
+                int close = indexOf('}', pos);
+                String counts = new String(pattern, pos + 1, close - pos - 1, UTF_8);
+                int comma = counts.indexOf(',');
+                int min;
+                int max;
+                if (comma < 0) {
+                    min = parseCount(counts);
+                    max = min;
+                } else {
+                    min = parseCount(counts.substring(0, comma));
+                    max = (comma == counts.length() - 1) ? -1 : parseCount(counts.substring(comma + 1));
+                    if (max != -1 && max < min)
+                        throw new IllegalArgumentException("bad repeat {" + counts + "}");
+                }
+                pos = close + 1;
+                return Node.repeat(atom, min, max);
+            }
+            return atom;
+        }
+
+        Node parseAtom()
+        {
+            int c = pattern[pos++] & 0xFF;
+            switch (c) {
+                case '(': {
+                    Node group = parseAlternatives();
+                    if (pos >= pattern.length || pattern[pos] != ')')
+                        throw new IllegalArgumentException("missing )");
+                    pos++;
+                    return group;
+                }
+                case '[':
+                    return Node.set(parseClass());
+                case '?':
+                    return Node.set(anyByte());
+                case '#':
+                    return Node.set(between('0', '9'));
+                case '*':
+                    return Node.repeat(Node.set(anyByte()), 0, -1);
+                case '\\':
+                    return Node.set(single(parseEscape()));
+                case ')':
+                case ']':
+                case '{':
+                case '}':
+                    throw new IllegalArgumentException("unexpected " + (char) c);
+                default:
+                    return Node.set(single(c));
+            }
+        }
+
+        BitSet parseClass()
+        {
+            BitSet bytes = new BitSet(256);
+            boolean bNegated = pos < pattern.length && pattern[pos] == '^';
+            if (bNegated)
+                pos++;
+            while (true) {
+                if (pos >= pattern.length)
+                    throw new IllegalArgumentException("missing ]");
+                int c = pattern[pos++] & 0xFF;
+                if (c == ']')
+                    break;
+                if (c == '\\')
+                    c = parseEscape();
+                int last = c;
+                if (pos + 1 < pattern.length && pattern[pos] == '-' && pattern[pos + 1] != ']') {
+                    pos++;
+                    last = pattern[pos++] & 0xFF;
+                    if (last == '\\')
+                        last = parseEscape();
+                    if (last < c)
+                        throw new IllegalArgumentException("bad class range");
+                }
+                bytes.set(c, last + 1);
+            }
+            if (bNegated)
+                bytes.flip(0, 256);
+            return bytes;
+        }
+
+        //  After a backslash: \xHH or the next byte taken literally
+        int parseEscape()
+        {
+            if (pos >= pattern.length)
+                throw new IllegalArgumentException("pattern ends with \\");
+            int c = pattern[pos++] & 0xFF;
+            if (c != 'x')
+                return c;
+            if (pos + 2 > pattern.length)
+                throw new IllegalArgumentException("\\x needs two hex digits");
+            int value = Integer.parseInt(new String(pattern, pos, 2, UTF_8), 16);
+            pos += 2;
+            return value;
+        }
+
+        int indexOf(char c, int from)
+        {
+            for (int i = from; i < pattern.length; i++) {
+                if (pattern[i] == c)
+                    return i;
+            }
+            throw new IllegalArgumentException("missing " + c);
+        }
+    }
+
+    private State newState()
+    {
+        if (nfa.size() == MAX_NFA_STATES)
+            throw new IllegalArgumentException("more than " + MAX_NFA_STATES + " states, simplify the repeated patterns");
+        State state = new State(nfa.size());
+        nfa.add(state);
+        return state;
+    }
+
+    //  Thompson construction, returns the fragment's start and end states
+    private State[] build(Node node)
+    {
+        State start = newState();
+        State end;
+        switch (node.type) {
+            case NODE_SET:
+                end = newState();
+                start.bytes = node.bytes;
+                start.target = end;
+                break;
+            case NODE_SEQUENCE:
+                end = start;
+                for (Node child : node.children) {
+                    State[] fragment = build(child);
+                    end.epsilon.add(fragment[0]);
+                    end = fragment[1];
+                }
+                break;
+            case NODE_ALTERNATIVES:
+                end = newState();
+                for (Node child : node.children) {
+                    State[] fragment = build(child);
+                    start.epsilon.add(fragment[0]);
+                    fragment[1].epsilon.add(end);
+                }
+                break;
+            default: {
+                Node child = node.children.get(0);
+                end = start;
+                for (int i = 0; i < node.min; i++) {
+                    State[] fragment = build(child);
+                    end.epsilon.add(fragment[0]);
+                    end = fragment[1];
+                }
+                State last = newState();
+                if (node.max < 0) {
+                    State[] loop = build(child);
+                    end.epsilon.add(loop[0]);
+                    loop[1].epsilon.add(loop[0]);
+                    loop[1].epsilon.add(last);
+                } else {
+                    for (int i = node.min; i < node.max; i++) {
+                        State[] fragment = build(child);
+                        end.epsilon.add(last);
+                        end.epsilon.add(fragment[0]);
+                        end = fragment[1];
+                    }
+                }
+                end.epsilon.add(last);
+                end = last;
+                break;
+            }
+        }
+        return new State[] {start, end};
+    }
+
+    private ScanRules.Automaton determinise(List<Integer> rules, int[] actionArray)
+    {
+        nfa.clear();
+        State start = newState();
+        boolean bHasAllow = false;
+        for (int rule : rules) {
+            State[] fragment = build(patterns.get(rule));
+            start.epsilon.add(fragment[0]);
+            fragment[1].acceptRule = rule;
+            if (actionArray[rule] == ScanRules.ACTION_ALLOW)
+                bHasAllow = true;
+        }
+        byte defaultVerdict = (byte) (bHasAllow ? ScanRules.NOT_ALLOWED : ScanRules.ALLOWED);
+
+        //  Bytes which fall in exactly the same edge sets behave alike and share a class
+        int[] byteClass = new int[256];
+        Map<BitSet, Integer> signatures = new HashMap<BitSet, Integer>();
+        List<BitSet> edgeSets = new ArrayList<BitSet>(new LinkedHashSet<BitSet>(edgeSetsOf(nfa)));
+        int[] representative = new int[256];
+        for (int b = 0; b < 256; b++) {
+            BitSet signature = new BitSet(edgeSets.size());
+            for (int e = 0; e < edgeSets.size(); e++) {
+                if (edgeSets.get(e).get(b))
+                    signature.set(e);
+            }
+            Integer existing = signatures.get(signature);
+            if (existing == null) {
+                existing = signatures.size();
+                signatures.put(signature, existing);
+                representative[existing] = b;
+            }
+            byteClass[b] = existing;
+        }
+        int classes = signatures.size();
+
+        //  The classes each byte edge is taken on
+        Map<BitSet, int[]> edgeClasses = new HashMap<BitSet, int[]>();
+        for (BitSet edgeSet : edgeSets) {
+            int[] covered = new int[classes];
+            int count = 0;
+            for (int c = 0; c < classes; c++) {
+                if (edgeSet.get(representative[c]))
+                    covered[count++] = c;
+            }
+            edgeClasses.put(edgeSet, Arrays.copyOf(covered, count));
+        }
+        int[][] stateClasses = new int[nfa.size()][];
+        for (State state : nfa) {
+            if (state.bytes != null)
+                stateClasses[state.id] = edgeClasses.get(state.bytes);
+        }
+
+        //  Subset construction, DFA state 0 is dead and 1 the start
+        Map<StateSet, Integer> dfaStates = new HashMap<StateSet, Integer>();
+        List<StateSet> pending = new ArrayList<StateSet>();
+        StateSet dead = new StateSet(new int[0]);
+        dfaStates.put(dead, 0);
+        pending.add(dead);
+        int[][] moved = new int[classes][16];
+        int[] movedCount = new int[classes];
+        moved[0][0] = start.id;
+        StateSet initial = closure(moved[0], 1);
+        dfaStates.put(initial, ScanRules.START_STATE);
+        pending.add(initial);
+
+        int[] next = new int[64 * classes];
+        for (int index = 0; index < pending.size(); index++) {
+            Arrays.fill(movedCount, 0);
+            for (int s : pending.get(index).ids) {
+                int[] taken = stateClasses[s];
+                if (taken == null)
+                    continue;
+                int target = nfa.get(s).target.id;
+                for (int c : taken) {
+                    if (movedCount[c] == moved[c].length)
+                        moved[c] = Arrays.copyOf(moved[c], moved[c].length * 2);
+                    moved[c][movedCount[c]++] = target;
+                }
+            }
+            if ((index + 1) * classes > next.length)
+                next = Arrays.copyOf(next, next.length * 2);
+            for (int c = 0; c < classes; c++) {
+                StateSet target = (movedCount[c] == 0) ? dead : closure(moved[c], movedCount[c]);
+                Integer targetIndex = dfaStates.get(target);
+                if (targetIndex == null) {
+                    targetIndex = pending.size();
+                    if ((long) (targetIndex + 1) * classes > MAX_TRANSITIONS)
+                        throw new IllegalArgumentException("more than " + MAX_TRANSITIONS + " transitions, simplify the * patterns");
+                    dfaStates.put(target, targetIndex);
+                    pending.add(target);
+                }
+                next[index * classes + c] = targetIndex;
+            }
+        }
+
+        int states = pending.size();
+        int[][] accepts = new int[states][];
+        byte[] verdicts = new byte[states];
+        for (int index = 0; index < states; index++) {
+            List<Integer> accepted = new ArrayList<Integer>();
+            for (int s : pending.get(index).ids) {
+                if (nfa.get(s).acceptRule >= 0)
+                    accepted.add(nfa.get(s).acceptRule);
+            }
+            int[] sorted = new int[accepted.size()];
+            byte verdict = defaultVerdict;
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = accepted.get(i);
+                if (actionArray[sorted[i]] == ScanRules.ACTION_BLOCK)
+                    verdict = ScanRules.BLOCKED;
+                else if (verdict != ScanRules.BLOCKED)
+                    verdict = ScanRules.ALLOWED;
+            }
+            Arrays.sort(sorted);
+            accepts[index] = sorted;
+            verdicts[index] = verdict;
+        }
+        nfa.clear();
+        return new ScanRules.Automaton(byteClass, classes, Arrays.copyOf(next, states * classes), accepts, verdicts);
+    }
+
+    private static List<BitSet> edgeSetsOf(List<State> states)
+    {
+        List<BitSet> sets = new ArrayList<BitSet>();
+        for (State state : states) {
+            if (state.bytes != null)
+                sets.add(state.bytes);
+        }
+        return sets;
+    }
+
+    //  Epsilon closure of the seed states, as a sorted set of NFA state ids
+    private StateSet closure(int[] seeds, int count)
+    {
+        if (stack.length < nfa.size()) {
+            stack = new int[nfa.size()];
+            visited = new int[nfa.size()];
+        }
+        generation++;
+        int depth = 0;
+        int closed = 0;
+        int[] ids = new int[Math.max(count * 2, 8)];
+        for (int i = 0; i < count; i++) {
+            if (visited[seeds[i]] != generation) {
+                visited[seeds[i]] = generation;
+                stack[depth++] = seeds[i];
+            }
+        }
+        while (depth > 0) {
+            int id = stack[--depth];
+            if (closed == ids.length)
+                ids = Arrays.copyOf(ids, closed * 2);
+            ids[closed++] = id;
+            for (State to : nfa.get(id).epsilon) {
+                if (visited[to.id] != generation) {
+                    visited[to.id] = generation;
+                    stack[depth++] = to.id;
+                }
+            }
+        }
+        ids = Arrays.copyOf(ids, closed);
+        Arrays.sort(ids);
+        return new StateSet(ids);
+    }
+}
@@ -0,0 +1,190 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+/**
+ * Column store of scan events for live aggregation.  Each event is a timestamp, symbology,
+ * scanner index and the journal sequence through which its data can be found, each held in its
+ * own primitive array so a query touches only the columns it needs and runs as a tight loop.
+ * Columns grow by doubling up to a maximum, after which the oldest events are overwritten.
+ * Queries aggregate over a half open time window [fromMillis, toMillis) and, since counting does
+ * not care about order, simply scan every stored row.
+ * Thread safe, queries hold the lock for the duration of a scan of the columns.
+ */
+public class ScanStatsStore {
+
+    /**
+     * Scanner indexes are stored in a byte
+     */
+    public static final int MAX_SCANNERS = 256;
+
+    private static final int INITIAL_ROWS = 1024;
+
+    private final int maxRows;
+    private long[] millis;
+    private byte[] symbology;
+    private byte[] scanner;
+    private long[] dataSequence;
+
+    private int size = 0;
+    private int next = 0;   //  Row the next event is written to
+    private long appended = 0;
+
+    /**
+     * @param maxRows events retained before the oldest are overwritten
+     */
+    public ScanStatsStore(int maxRows)
+    {
+        if (maxRows <= 0)
+            throw new IllegalArgumentException("maxRows must be positive");
+        this.maxRows = maxRows;
+        allocate(Math.min(maxRows, INITIAL_ROWS));
+    }
+
+    /**
+     * @param timestampMillis time of the scan, in whatever clock queries will use
+     * @param symbologyCode one of the {@link Symbology} codes
+     * @param scannerIndex 0 to MAX_SCANNERS - 1
+     * @param sequence journal sequence number of the scan, or -1 if it was not journaled
+     */
+    public synchronized void append(long timestampMillis, int symbologyCode, int scannerIndex, long sequence)
+    {
+        if (size == millis.length && size < maxRows)
+            allocate(Math.min(maxRows, size * 2));
+        millis[next] = timestampMillis;
+        symbology[next] = (byte) symbologyCode;
+        scanner[next] = (byte) scannerIndex;
+        dataSequence[next] = sequence;
+        next = (next + 1 == maxRows) ? 0 : next + 1;
+        if (size < maxRows)
+            size++;
+        appended++;
+    }
+
+    public synchronized int getRowCount() {return size;}
+
+    public synchronized long getAppended() {return appended;}
+
+    public synchronized long count(long fromMillis, long toMillis)
+    {
+        long[] m = millis;
+        long count = 0;
+        for (int i = 0; i < size; i++) {
+            long t = m[i];
+            if (t >= fromMillis && t < toMillis)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Count events in the window by symbology, adding to counts which is indexed by symbology
+     * code and should be at least {@link Symbology#COUNT} long
+     * @return total events counted
+     */
+    public synchronized long countBySymbology(long fromMillis, long toMillis, long[] counts)
+    {
+        return countByColumn(symbology, fromMillis, toMillis, counts);
+    }
+
+    /**
+     * Count events in the window by scanner, adding to counts which is indexed by scanner index.
+     * Scanners beyond the end of counts are included in the total only.
+     * @return total events counted
+     */
+    public synchronized long countByScanner(long fromMillis, long toMillis, long[] counts)
+    {
+        return countByColumn(scanner, fromMillis, toMillis, counts);
+    }
+
+    /**
+     * Count events into consecutive buckets of bucketMillis starting at fromMillis, one bucket for
+     * each element of buckets, e.g. per minute counts for the last hour
+     * @return total events counted
+     */
+    public synchronized long countPerBucket(long fromMillis, long bucketMillis, long[] buckets)
+    {
+        long[] m = millis;
+        long span = bucketMillis * buckets.length;
+        long total = 0;
+        if (span <= Integer.MAX_VALUE) {
+            //  32 bit division is several times cheaper than 64 bit on most devices
+            int bucket = (int) bucketMillis;
+            for (int i = 0; i < size; i++) {
+                long offset = m[i] - fromMillis;
+                if (offset >= 0 && offset < span) {
+                    buckets[(int) offset / bucket]++;
+                    total++;
+                }
+            }
+            return total;
+        }
+        for (int i = 0; i < size; i++) {
+            long offset = m[i] - fromMillis;
+            if (offset >= 0 && offset < span) {
+                buckets[(int) (offset / bucketMillis)]++;
+                total++;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return the journal sequence of the most recent event in the window from the given scanner, or -1
+     */
+    public synchronized long lastSequence(long fromMillis, long toMillis, int scannerIndex)
+    {
+        //  Walk back from the newest row so the answer is usually found quickly
+        for (int n = 0, i = next; n < size; n++) {
+            i = (i == 0) ? size - 1 : i - 1;
+            long t = millis[i];
+            if ((scanner[i] & 0xFF) == scannerIndex && t >= fromMillis && t < toMillis)
+                return dataSequence[i];
+        }
+        return -1;
+    }
+
+    public synchronized void clear()
+    {
+        size = 0;
+        next = 0;
+    }
+
+    private long countByColumn(byte[] column, long fromMillis, long toMillis, long[] counts)
+    {
+        long[] m = millis;
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            long t = m[i];
+            if (t >= fromMillis && t < toMillis) {
+                int key = column[i] & 0xFF;
+                if (key < counts.length)
+                    counts[key]++;
+                total++;
+            }
+        }
+        return total;
+    }
+
+    private void allocate(int rows)
+    {
+        millis = grow(millis, rows);
+        symbology = grow(symbology, rows);
+        scanner = grow(scanner, rows);
+        dataSequence = grow(dataSequence, rows);
+    }
+
+    private long[] grow(long[] column, int rows)
+    {
+        long[] grown = new long[rows];
+        if (column != null)
+            System.arraycopy(column, 0, grown, 0, size);
+        return grown;
+    }
+
+    private byte[] grow(byte[] column, int rows)
+    {
+        byte[] grown = new byte[rows];
+        if (column != null)
+            System.arraycopy(column, 0, grown, 0, size);
+        return grown;
+    }
+}
@@ -0,0 +1,94 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+/**
+ * Allocation free conversion of raw barcode bytes into characters for display.
+ */
+public final class ScanText {
+
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private ScanText() {}
+
+    /**
+     * Decode UTF-8 (and therefore ASCII) bytes into the supplied character buffer.  Malformed
+     * sequences are replaced with U+FFFD and decoding stops when dst is full.
+     * @return number of characters written to dst
+     */
+    public static int decodeUtf8(byte[] src, int offset, int length, char[] dst, int dstOffset)
+    {
+        int end = offset + length;
+        int out = dstOffset;
+        int i = offset;
+        while (i < end && out < dst.length) {
+            int b = src[i] & 0xFF;
+            if (b < 0x80) {
+                dst[out++] = (char) b;
+                i++;
+                continue;
+            }
+
+            int extra;
+            int cp;
+            if (b >= 0xC2 && b <= 0xDF) {
+                extra = 1;
+                cp = b & 0x1F;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                extra = 2;
+                cp = b & 0x0F;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                extra = 3;
+                cp = b & 0x07;
+            } else {
+                dst[out++] = REPLACEMENT;
+                i++;
+                continue;
+            }
+
+            if (i + extra >= end) {
+                //  Truncated sequence at the end of the data
+                dst[out++] = REPLACEMENT;
+                break;
+            }
+            boolean valid = true;
+            for (int k = 1; k <= extra; k++) {
+                int c = src[i + k] & 0xFF;
+                if ((c & 0xC0) != 0x80) {
+                    valid = false;
+                    break;
+                }
+                cp = (cp << 6) | (c & 0x3F);
+            }
+            if (!valid || (extra == 2 && cp < 0x800) || (extra == 3 && (cp < 0x10000 || cp > 0x10FFFF))
+                    || (cp >= 0xD800 && cp <= 0xDFFF)) {
+                dst[out++] = REPLACEMENT;
+                i++;
+                continue;
+            }
+            i += extra + 1;
+
+            if (cp < 0x10000) {
+                dst[out++] = (char) cp;
+            } else {
+                if (out + 1 >= dst.length)
+                    break;
+                cp -= 0x10000;
+                dst[out++] = (char) (0xD800 + (cp >> 10));
+                dst[out++] = (char) (0xDC00 + (cp & 0x3FF));
+            }
+        }
+        return out - dstOffset;
+    }
+
+    /**
+     * Write a value as a fixed number of decimal digits, zero padded
+     * @return the position after the last digit written
+     */
+    public static int writeDigits(long value, int digits, char[] dst, int dstOffset)
+    {
+        for (int i = dstOffset + digits - 1; i >= dstOffset; i--) {
+            dst[i] = (char) ('0' + (value % 10));
+            value /= 10;
+        }
+        return dstOffset + digits;
+    }
+}
@@ -0,0 +1,79 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+/**
+ * Parses the fixed "yyyy-MM-dd HH:mm:ss.SSS" timestamps the EMDK attaches to each scan without
+ * allocating, so it can run for every scan.  The timestamp carries no zone so the result is the
+ * wall clock time expressed as milliseconds since the epoch as if it were UTC; compare it with
+ * other local wall clock times rather than System.currentTimeMillis().
+ */
+public final class ScanTimestamp {
+
+    /**
+     * Returned for anything which is not a valid timestamp in the expected format
+     */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    public static final int LENGTH = 23;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    private ScanTimestamp() {}
+
+    /**
+     * @return local wall clock milliseconds, or INVALID
+     */
+    public static long parse(CharSequence value)
+    {
+        if (value == null || value.length() != LENGTH)
+            return INVALID;
+        if (value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(10) != ' ' ||
+                value.charAt(13) != ':' || value.charAt(16) != ':' || value.charAt(19) != '.')
+            return INVALID;
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 2);
+        int day = digits(value, 8, 2);
+        int hour = digits(value, 11, 2);
+        int minute = digits(value, 14, 2);
+        int second = digits(value, 17, 2);
+        int millis = digits(value, 20, 3);
+        if (year < 1 || month < 1 || month > 12 || day < 1 || hour < 0 || hour > 23 ||
+                minute < 0 || minute > 59 || second < 0 || second > 59 || millis < 0)
+            return INVALID;
+        int monthDays = DAYS_IN_MONTH[month - 1] + ((month == 2 && isLeapYear(year)) ? 1 : 0);
+        if (day > monthDays)
+            return INVALID;
+        return daysFromCivil(year, month, day) * MILLIS_PER_DAY +
+                ((hour * 60L + minute) * 60L + second) * 1000L + millis;
+    }
+
+    //  @return the value of count decimal digits starting at offset, or -1 if any is not a digit
+    private static int digits(CharSequence value, int offset, int count)
+    {
+        int result = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9)
+                return -1;
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    private static boolean isLeapYear(int year)
+    {
+        return (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    //  Days since 1970-01-01 of a proleptic Gregorian date, counting eras of 400 years from March
+    //  so the leap day falls at the end of each year
+    private static long daysFromCivil(int year, int month, int day)
+    {
+        int y = (month <= 2) ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468L;
+    }
+}
@@ -0,0 +1,125 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+/**
+ * Admission control where several scanners feed one scan pipeline.  Every scan is admitted while
+ * the pipeline has fewer than capacity scans in flight; once it is saturated a scanner is only
+ * admitted while it holds less than its fair share (capacity divided by the active scanners), so
+ * a noisy scanner has its own excess dropped rather than delaying or crowding out the others.
+ * Admitted and dropped scans and the admitted rate are counted per scanner.
+ * Scanner indexes beyond maxScanners - 1 are counted against the last one.  Thread safe.
+ */
+public class ScannerFanIn {
+
+    private final int capacity;
+    private final int[] inFlight;
+    private final long[] admitted;
+    private final long[] dropped;
+    private final RateMeter[] rates;
+    private int totalInFlight = 0;
+    private int activeScanners = 1;
+
+    /**
+     * @param maxScanners distinct scanner indexes tracked
+     * @param capacity scans in flight before fair shares are enforced
+     * @param rateWindowMillis window over which each scanner's rate is measured
+     */
+    public ScannerFanIn(int maxScanners, int capacity, long rateWindowMillis)
+    {
+        if (maxScanners <= 0 || capacity <= 0)
+            throw new IllegalArgumentException("maxScanners and capacity must be positive");
+        this.capacity = capacity;
+        this.inFlight = new int[maxScanners];
+        this.admitted = new long[maxScanners];
+        this.dropped = new long[maxScanners];
+        this.rates = new RateMeter[maxScanners];
+        for (int i = 0; i < maxScanners; i++)
+            rates[i] = new RateMeter(rateWindowMillis);
+    }
+
+    /**
+     * @param count scanners currently feeding the pipeline, used to size each fair share
+     */
+    public synchronized void setActiveScanners(int count)
+    {
+        activeScanners = Math.max(1, count);
+    }
+
+    /**
+     * Decide whether a scan from the given scanner enters the pipeline.  Every admitted scan must
+     * later be passed to {@link #release}.
+     * @param nowNanos current System.nanoTime(), for the rate
+     * @return false if the scan should be dropped
+     */
+    public synchronized boolean admit(int scanner, long nowNanos)
+    {
+        int slot = slot(scanner);
+        if (totalInFlight >= capacity && inFlight[slot] >= getFairShare()) {
+            dropped[slot]++;
+            return false;
+        }
+        inFlight[slot]++;
+        totalInFlight++;
+        admitted[slot]++;
+        rates[slot].record(nowNanos);
+        return true;
+    }
+
+    /**
+     * An admitted scan has left the pipeline
+     */
+    public synchronized void release(int scanner)
+    {
+        int slot = slot(scanner);
+        if (inFlight[slot] > 0) {
+            inFlight[slot]--;
+            totalInFlight--;
+        }
+    }
+
+    public synchronized int getFairShare() {return Math.max(1, capacity / activeScanners);}
+
+    public synchronized int getTotalInFlight() {return totalInFlight;}
+
+    public synchronized int getInFlight(int scanner) {return inFlight[slot(scanner)];}
+
+    public synchronized long getAdmitted(int scanner) {return admitted[slot(scanner)];}
+
+    public synchronized long getDropped(int scanner) {return dropped[slot(scanner)];}
+
+    /**
+     * @return scans dropped from every scanner
+     */
+    public synchronized long getTotalDropped()
+    {
+        long total = 0;
+        for (long scannerDropped : dropped)
+            total += scannerDropped;
+        return total;
+    }
+
+    /**
+     * @return scans per second admitted from the scanner over the last completed window
+     */
+    public double getRatePerSecond(int scanner) {return rates[slot(scanner)].getRatePerSecond();}
+
+    /**
+     * @return one line per scanner which has sent anything, for logging
+     */
+    public synchronized String report()
+    {
+        StringBuilder report = new StringBuilder();
+        for (int i = 0; i < admitted.length; i++) {
+            if (admitted[i] == 0 && dropped[i] == 0)
+                continue;
+            report.append("scanner ").append(i).append(": admitted=").append(admitted[i])
+                    .append(" dropped=").append(dropped[i]).append(" inFlight=").append(inFlight[i])
+                    .append(" rate=").append(String.format("%.1f", rates[i].getRatePerSecond())).append("/s\n");
+        }
+        return report.toString();
+    }
+
+    private int slot(int scanner)
+    {
+        return Math.max(0, Math.min(scanner, inFlight.length - 1));
+    }
+}
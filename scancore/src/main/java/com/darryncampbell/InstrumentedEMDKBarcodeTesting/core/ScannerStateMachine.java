@@ -0,0 +1,176 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+/**
+ * Collapses scanner status transitions, connection messages and scan control changes into a
+ * single latest state snapshot.  Any number of transitions may be published between two frames;
+ * the UI applies only the newest snapshot, so a burst of IDLE, WAITING, SCANNING, IDLE cycles in
+ * continuous mode costs one view update rather than one per transition.  The state of each
+ * scanner is tracked so transitions between states can be counted, along with their overall rate.
+ * Thread safe, publish from any thread.
+ */
+public class ScannerStateMachine {
+
+    public static final int UNKNOWN = 0;
+    public static final int IDLE = 1;
+    public static final int WAITING = 2;
+    public static final int SCANNING = 3;
+    public static final int DISABLED = 4;
+    public static final int ERROR = 5;
+
+    /**
+     * Number of states, suitable for sizing arrays indexed by state
+     */
+    public static final int STATE_COUNT = 6;
+
+    private static final String[] NAMES = {"UNKNOWN", "IDLE", "WAITING", "SCANNING", "DISABLED", "ERROR"};
+
+    /**
+     * Immutable view of everything the UI shows about the scanners
+     */
+    public static class Snapshot {
+        public final long version;
+        public final String status;
+        public final boolean bControlsEnabled;
+        /**
+         * Latency stamps of the status callback which produced this snapshot, 0 if not timed
+         */
+        public final long callbackNanos;
+        public final long handoffNanos;
+
+        Snapshot(long version, String status, boolean bControlsEnabled, long callbackNanos, long handoffNanos)
+        {
+            this.version = version;
+            this.status = status;
+            this.bControlsEnabled = bControlsEnabled;
+            this.callbackNanos = callbackNanos;
+            this.handoffNanos = handoffNanos;
+        }
+    }
+
+    private volatile Snapshot latest = new Snapshot(0, "", true, 0, 0);
+    private final int[] scannerStates;
+    private final long[][] transitions = new long[STATE_COUNT][STATE_COUNT];
+    private final RateMeter transitionRate;
+    private long totalTransitions = 0;
+    private long published = 0;
+
+    /**
+     * @param maxScanners scanner indexes tracked, higher indexes share the last
+     * @param rateWindowMillis window over which the transition rate is measured
+     */
+    public ScannerStateMachine(int maxScanners, long rateWindowMillis)
+    {
+        scannerStates = new int[maxScanners];
+        transitionRate = new RateMeter(rateWindowMillis);
+    }
+
+    /**
+     * Scan controls are enabled unless a read is outstanding
+     */
+    public static boolean controlsEnabledIn(int state)
+    {
+        return state != WAITING && state != SCANNING;
+    }
+
+    public static String name(int state)
+    {
+        return (state >= 0 && state < NAMES.length) ? NAMES[state] : NAMES[UNKNOWN];
+    }
+
+    /**
+     * A scanner reported a new state
+     * @param status text to show
+     * @param nowNanos current System.nanoTime(), for the transition rate
+     */
+    public synchronized Snapshot onStatus(int scanner, int state, String status, long nowNanos,
+                                          long callbackNanos, long handoffNanos)
+    {
+        int slot = Math.max(0, Math.min(scanner, scannerStates.length - 1));
+        int previous = scannerStates[slot];
+        if (previous != state) {
+            transitions[previous][state]++;
+            totalTransitions++;
+            transitionRate.record(nowNanos);
+            scannerStates[slot] = state;
+        }
+        return publish(status, controlsEnabledIn(state), callbackNanos, handoffNanos);
+    }
+
+    /**
+     * Show a message without changing the controls, e.g. a connection change or an error
+     */
+    public synchronized Snapshot onMessage(String status)
+    {
+        return publish(status, latest.bControlsEnabled, 0, 0);
+    }
+
+    /**
+     * Enable or disable the scan controls without changing the message, e.g. when a read is
+     * submitted or cancelled ahead of the scanner reporting it
+     */
+    public synchronized Snapshot setControlsEnabled(boolean bEnabled)
+    {
+        Snapshot current = latest;
+        return publish(current.status, bEnabled, current.callbackNanos, current.handoffNanos);
+    }
+
+    /**
+     * A scanner has been released, forget its state so its next status is counted as a transition
+     * from UNKNOWN
+     */
+    public synchronized void onReleased(int scanner)
+    {
+        scannerStates[Math.max(0, Math.min(scanner, scannerStates.length - 1))] = UNKNOWN;
+    }
+
+    /**
+     * @return the newest snapshot, never null
+     */
+    public Snapshot getLatest() {return latest;}
+
+    public synchronized int getState(int scanner)
+    {
+        return scannerStates[Math.max(0, Math.min(scanner, scannerStates.length - 1))];
+    }
+
+    public synchronized long getTransitions(int from, int to) {return transitions[from][to];}
+
+    public synchronized long getTotalTransitions() {return totalTransitions;}
+
+    /**
+     * @return snapshots published, compare with those applied to see how many were collapsed
+     */
+    public synchronized long getPublished() {return published;}
+
+    /**
+     * @return transitions per second over the last completed window
+     */
+    public double getTransitionRate() {return transitionRate.getRatePerSecond();}
+
+    /**
+     * @return every transition which has occurred and its count, for logging
+     */
+    public synchronized String report()
+    {
+        StringBuilder report = new StringBuilder();
+        report.append("transitions=").append(totalTransitions).append(" rate=")
+                .append(String.format("%.1f", transitionRate.getRatePerSecond())).append("/s published=")
+                .append(published).append('\n');
+        for (int from = 0; from < STATE_COUNT; from++) {
+            for (int to = 0; to < STATE_COUNT; to++) {
+                if (transitions[from][to] > 0)
+                    report.append(NAMES[from]).append("->").append(NAMES[to]).append(' ')
+                            .append(transitions[from][to]).append('\n');
+            }
+        }
+        return report.toString();
+    }
+
+    private Snapshot publish(String status, boolean bControlsEnabled, long callbackNanos, long handoffNanos)
+    {
+        published++;
+        Snapshot snapshot = new Snapshot(published, status, bControlsEnabled, callbackNanos, handoffNanos);
+        latest = snapshot;
+        return snapshot;
+    }
+}
@@ -0,0 +1,93 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Sends export frames to a collector on the device's loopback interface, e.g. a relay or, from the
+ * host, adb reverse tcp:9470 tcp:9470 to a test server.  Each frame is sent as its 4 byte length
+ * followed by the frame, and is only accepted once the collector answers with the frame's 8 byte
+ * epoch and 8 byte sequence number.  The connection is opened on the first write and dropped on any error, the
+ * next write reconnects.
+ */
+public class SocketExportSink implements ExportSink {
+
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+    private static final int ACK_TIMEOUT_MS = 5000;
+
+    private final int port;
+    private Socket socket = null;
+    private DataOutputStream out;
+    private DataInputStream in;
+    private long connects = 0;
+
+    /**
+     * @param port loopback port the collector listens on
+     */
+    public SocketExportSink(int port)
+    {
+        this.port = port;
+    }
+
+    @Override
+    public void write(long epoch, long sequence, byte[] frame, int offset, int length) throws IOException
+    {
+        try {
+            if (socket == null)
+                connect();
+            out.writeInt(length);
+            out.write(frame, offset, length);
+            out.flush();
+            long acknowledgedEpoch = in.readLong();
+            long acknowledged = in.readLong();
+            if (acknowledgedEpoch != epoch || acknowledged != sequence)
+                throw new IOException("Collector acknowledged " + acknowledgedEpoch + "/" + acknowledged +
+                        " for frame " + epoch + "/" + sequence);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return connections opened, more than one means the collector went away at least once
+     */
+    public long getConnects() {return connects;}
+
+    @Override
+    public void close()
+    {
+        if (socket == null)
+            return;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            //  Closing anyway
+        }
+        socket = null;
+        out = null;
+        in = null;
+    }
+
+    private void connect() throws IOException
+    {
+        Socket connection = new Socket();
+        try {
+            connection.connect(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port), CONNECT_TIMEOUT_MS);
+            connection.setSoTimeout(ACK_TIMEOUT_MS);
+            connection.setTcpNoDelay(true);
+            out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+            in = new DataInputStream(connection.getInputStream());
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+        socket = connection;
+        connects++;
+    }
+}
@@ -0,0 +1,72 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Integer codes for barcode symbologies.  Mirrors the names of the EMDK
+ * ScanDataCollection.LabelType enum so the scan pipeline can key primitive arrays by symbology
+ * without depending on the EMDK classes.
+ */
+public final class Symbology {
+
+    public static final int UNDEFINED = 0;
+    public static final int EAN8 = 1;
+    public static final int EAN13 = 2;
+    public static final int UPCA = 3;
+    public static final int UPCE0 = 4;
+    public static final int UPCE1 = 5;
+    public static final int CODE39 = 6;
+    public static final int CODE93 = 7;
+    public static final int CODE128 = 8;
+    public static final int EAN128 = 9;
+    public static final int CODABAR = 10;
+    public static final int I2OF5 = 11;
+    public static final int D2OF5 = 12;
+    public static final int MSI = 13;
+    public static final int PDF417 = 14;
+    public static final int MICROPDF = 15;
+    public static final int QRCODE = 16;
+    public static final int DATAMATRIX = 17;
+    public static final int AZTEC = 18;
+    public static final int MAXICODE = 19;
+    public static final int GS1_DATABAR = 20;
+    public static final int GS1_DATABAR_LIM = 21;
+    public static final int GS1_DATABAR_EXP = 22;
+    public static final int GS1_DATAMATRIX = 23;
+    public static final int GS1_QRCODE = 24;
+
+    /**
+     * Number of symbology codes, suitable for sizing arrays indexed by code
+     */
+    public static final int COUNT = 25;
+
+    private static final String[] NAMES = {
+            "UNDEFINED", "EAN8", "EAN13", "UPCA", "UPCE0", "UPCE1", "CODE39", "CODE93", "CODE128",
+            "EAN128", "CODABAR", "I2OF5", "D2OF5", "MSI", "PDF417", "MICROPDF", "QRCODE", "DATAMATRIX",
+            "AZTEC", "MAXICODE", "GS1_DATABAR", "GS1_DATABAR_LIM", "GS1_DATABAR_EXP", "GS1_DATAMATRIX",
+            "GS1_QRCODE"};
+
+    private static final Map<String, Integer> CODES = new HashMap<String, Integer>();
+    static {
+        for (int i = 0; i < NAMES.length; i++)
+            CODES.put(NAMES[i], i);
+    }
+
+    private Symbology() {}
+
+    /**
+     * @param name symbology name, e.g. the name() of an EMDK LabelType
+     * @return the matching code or UNDEFINED if the symbology is not known
+     */
+    public static int fromName(String name)
+    {
+        Integer code = CODES.get(name);
+        return code == null ? UNDEFINED : code;
+    }
+
+    public static String name(int code)
+    {
+        return (code >= 0 && code < NAMES.length) ? NAMES[code] : NAMES[UNDEFINED];
+    }
+}
@@ -0,0 +1,130 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+/**
+ * Checks decoded barcode bytes against the rules of their symbology without converting them to a
+ * String: check digits for EAN-8, EAN-13 and UPC-A, length limits for Code 39 and Code 128, and
+ * well formed UTF-8 (so ASCII) for everything.
+ * Stateless and thread safe.
+ */
+public final class SymbologyValidator {
+
+    public static final int VALID = 0;
+    public static final int INVALID_CHECK_DIGIT = 1;
+    public static final int INVALID_LENGTH = 2;
+    public static final int INVALID_CHARACTER = 3;
+    public static final int INVALID_ENCODING = 4;
+
+    private static final String[] DESCRIPTIONS = {
+            "VALID", "BAD CHECK DIGIT", "BAD LENGTH", "BAD CHARACTER", "BAD ENCODING"};
+
+    public static final int CODE39_MIN_LENGTH = 1;
+    public static final int CODE39_MAX_LENGTH = 55;
+    public static final int CODE128_MIN_LENGTH = 1;
+    public static final int CODE128_MAX_LENGTH = 80;
+
+    private SymbologyValidator() {}
+
+    /**
+     * @param symbology one of the {@link Symbology} codes
+     * @return VALID or one of the INVALID_ reasons
+     */
+    public static int validate(int symbology, byte[] data, int offset, int length)
+    {
+        switch (symbology) {
+            case Symbology.EAN8:
+                return validateModulo10(data, offset, length, 8);
+            case Symbology.EAN13:
+                return validateModulo10(data, offset, length, 13);
+            case Symbology.UPCA:
+                return validateModulo10(data, offset, length, 12);
+            case Symbology.CODE39:
+                if (length < CODE39_MIN_LENGTH || length > CODE39_MAX_LENGTH)
+                    return INVALID_LENGTH;
+                return validateAscii(data, offset, length);
+            case Symbology.CODE128:
+                if (length < CODE128_MIN_LENGTH || length > CODE128_MAX_LENGTH)
+                    return INVALID_LENGTH;
+                return validateAscii(data, offset, length);
+            default:
+                return validateUtf8(data, offset, length);
+        }
+    }
+
+    public static String describe(int result)
+    {
+        return (result >= 0 && result < DESCRIPTIONS.length) ? DESCRIPTIONS[result] : "UNKNOWN";
+    }
+
+    //  EAN / UPC: all digits, the last being the check digit.  Weights alternate 3 and 1 from the
+    //  digit next to the check digit.
+    private static int validateModulo10(byte[] data, int offset, int length, int expectedLength)
+    {
+        if (length != expectedLength)
+            return INVALID_LENGTH;
+        int sum = 0;
+        int weight = 3;
+        for (int i = offset + length - 2; i >= offset; i--) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9)
+                return INVALID_CHARACTER;
+            sum += digit * weight;
+            weight = 4 - weight;
+        }
+        int check = data[offset + length - 1] - '0';
+        if (check < 0 || check > 9)
+            return INVALID_CHARACTER;
+        return ((10 - sum % 10) % 10 == check) ? VALID : INVALID_CHECK_DIGIT;
+    }
+
+    //  Code 39 (including full ASCII) and Code 128 carry 7 bit data, control characters such as
+    //  the GS1 group separator are legitimate
+    private static int validateAscii(byte[] data, int offset, int length)
+    {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            if (data[i] < 0)
+                return INVALID_CHARACTER;
+        }
+        return VALID;
+    }
+
+    private static int validateUtf8(byte[] data, int offset, int length)
+    {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            int b = data[i] & 0xFF;
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+            int extra;
+            int min;
+            if (b >= 0xC2 && b <= 0xDF) {
+                extra = 1;
+                min = 0x80;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                extra = 2;
+                min = 0x800;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                extra = 3;
+                min = 0x10000;
+            } else {
+                return INVALID_ENCODING;
+            }
+            if (i + extra >= end)
+                return INVALID_ENCODING;
+            int cp = b & (0x3F >> extra);
+            for (int k = 1; k <= extra; k++) {
+                int c = data[i + k] & 0xFF;
+                if ((c & 0xC0) != 0x80)
+                    return INVALID_ENCODING;
+                cp = (cp << 6) | (c & 0x3F);
+            }
+            if (cp < min || cp > 0x10FFFF || (cp >= 0xD800 && cp <= 0xDFFF))
+                return INVALID_ENCODING;
+            i += extra + 1;
+        }
+        return VALID;
+    }
+}
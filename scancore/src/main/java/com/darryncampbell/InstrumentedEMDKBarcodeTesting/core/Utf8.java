@@ -0,0 +1,23 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import java.nio.charset.Charset;
+
+/**
+ * UTF-8 string conversion for the binary formats written by the scan pipeline
+ */
+public final class Utf8 {
+
+    public static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private Utf8() {}
+
+    public static byte[] encode(String value)
+    {
+        return value.getBytes(CHARSET);
+    }
+
+    public static String decode(byte[] bytes, int offset, int length)
+    {
+        return new String(bytes, offset, length, CHARSET);
+    }
+}
@@ -0,0 +1,80 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for learning the continuous mode re-arm delay
+ */
+public class AdaptiveRearmDelayTest {
+
+    private static final long HEALTHY_ARM_NANOS = 2000000L;
+    private static final long STALLED_ARM_NANOS = 80000000L;
+
+    @Test
+    public void convergesToFloorWhileArmsAreHealthy() throws Exception {
+        AdaptiveRearmDelay delays = new AdaptiveRearmDelay(10, 100);
+        assertEquals(100, delays.getDelayMillis("SE4710"));
+
+        for (int i = 0; i < 200; i++)
+            delays.onArmed("SE4710", HEALTHY_ARM_NANOS);
+
+        assertEquals(10, delays.getDelayMillis("SE4710"));
+        assertEquals(0, delays.getStalls("SE4710"));
+    }
+
+    @Test
+    public void backsOffAndRemembersUnsafeDelay() throws Exception {
+        AdaptiveRearmDelay delays = new AdaptiveRearmDelay(0, 100);
+
+        //  This model stalls whenever the delay drops below 40ms
+        for (int i = 0; i < 500; i++) {
+            long delay = delays.getDelayMillis("RS6000");
+            delays.onArmed("RS6000", delay < 40 ? STALLED_ARM_NANOS : HEALTHY_ARM_NANOS);
+        }
+
+        long learned = delays.getDelayMillis("RS6000");
+        assertTrue("learned " + learned, learned >= 40 && learned < 100);
+        assertTrue(delays.getStalls("RS6000") > 0);
+        assertTrue(delays.getStalls("RS6000") < 5);
+    }
+
+    @Test
+    public void transientStallIsForgottenAfterCleanArms() throws Exception {
+        AdaptiveRearmDelay delays = new AdaptiveRearmDelay(10, 100);
+        for (int i = 0; i < 200; i++)
+            delays.onArmed("SE4710", HEALTHY_ARM_NANOS);
+        assertEquals(10, delays.getDelayMillis("SE4710"));
+
+        //  One stall at the floor, then the model arms cleanly again
+        delays.onArmed("SE4710", STALLED_ARM_NANOS);
+        assertTrue(delays.getDelayMillis("SE4710") > 10);
+        for (int i = 0; i < 2000; i++)
+            delays.onArmed("SE4710", HEALTHY_ARM_NANOS);
+
+        assertEquals(10, delays.getDelayMillis("SE4710"));
+        assertEquals(1, delays.getStalls("SE4710"));
+    }
+
+    @Test
+    public void stallAtTheInitialDelayNeverRaisesItFurther() throws Exception {
+        AdaptiveRearmDelay delays = new AdaptiveRearmDelay(0, 100);
+        delays.onArmFailed("RS6000");
+        for (int i = 0; i < 20; i++) {
+            delays.onArmed("RS6000", HEALTHY_ARM_NANOS);
+            assertTrue(delays.getDelayMillis("RS6000") <= 100);
+        }
+    }
+
+    @Test
+    public void modelsAreLearnedIndependently() throws Exception {
+        AdaptiveRearmDelay delays = new AdaptiveRearmDelay(10, 100);
+        for (int i = 0; i < 200; i++)
+            delays.onArmed("SE4710", HEALTHY_ARM_NANOS);
+        delays.onArmFailed("RS6000");
+
+        assertEquals(10, delays.getDelayMillis("SE4710"));
+        assertEquals(100, delays.getDelayMillis("RS6000"));
+    }
+}
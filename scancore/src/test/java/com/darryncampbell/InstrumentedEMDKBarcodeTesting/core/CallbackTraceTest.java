@@ -0,0 +1,108 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class CallbackTraceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File writeTrace(int scans) throws Exception
+    {
+        File trace = folder.newFile();
+        FileOutputStream out = new FileOutputStream(trace);
+        CallbackTraceWriter writer = new CallbackTraceWriter(out, 1234L, 1000L);
+        writer.writeConnection(1500L, "RS6000", "CONNECTED", "RS6000", "IMAGER", null, null, null, 2,
+                CallbackTraceWriter.FLAG_CONNECTED);
+        for (int i = 0; i < scans; i++) {
+            writer.writeStatus(2000L + i * 10, "Imager", "SCANNING");
+            writer.beginData(2005L + i * 10, "Imager", "SUCCESS", 2);
+            writer.addScan("EAN13", "UTF-8", "2017-02-27 12:58:51.238", ("scan" + i).getBytes("UTF-8"));
+            writer.addScan("QRCODE", null, null, new byte[0]);
+        }
+        out.close();
+        return trace;
+    }
+
+    @Test
+    public void roundTripAcrossWindows() throws Exception
+    {
+        int scans = 500;
+        //  A tiny window forces a remap on almost every record
+        CallbackTraceReader reader = new CallbackTraceReader(writeTrace(scans), 64);
+        assertEquals(1234L, reader.getStartWallMillis());
+
+        assertTrue(reader.next());
+        assertEquals(CallbackTraceWriter.RECORD_CONNECTION, reader.getType());
+        assertEquals(500L, reader.getNanos());
+        assertEquals("CONNECTED", reader.getState());
+        assertEquals("IMAGER", reader.getDeviceType());
+        assertNull(reader.getConnectionType());
+        assertEquals(1, reader.getScannerIndex());
+        assertEquals(CallbackTraceWriter.FLAG_CONNECTED, reader.getFlags());
+
+        for (int i = 0; i < scans; i++) {
+            assertTrue(reader.next());
+            assertEquals(CallbackTraceWriter.RECORD_STATUS, reader.getType());
+            assertEquals(1000L + i * 10, reader.getNanos());
+            assertEquals("SCANNING", reader.getState());
+
+            assertTrue(reader.next());
+            assertEquals(CallbackTraceWriter.RECORD_DATA, reader.getType());
+            assertEquals("Imager", reader.getFriendlyName());
+            assertEquals("SUCCESS", reader.getResult());
+            assertEquals(2, reader.getScanCount());
+            assertEquals("EAN13", reader.getScanLabelType(0));
+            assertEquals("2017-02-27 12:58:51.238", reader.getScanTimestamp(0));
+            assertEquals("scan" + i, new String(reader.getScanData(0), "UTF-8"));
+            assertNull(reader.getScanCharsetName(1));
+            assertNull(reader.getScanTimestamp(1));
+            assertEquals(0, reader.getScanData(1).length);
+        }
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void truncatedTailEndsTrace() throws Exception
+    {
+        File trace = writeTrace(3);
+        RandomAccessFile file = new RandomAccessFile(trace, "rw");
+        file.setLength(file.length() - 3);
+        file.close();
+
+        CallbackTraceReader reader = new CallbackTraceReader(trace);
+        int events = 0;
+        while (reader.next())
+            events++;
+        //  Connection, then status and data for each scan less the torn final data record
+        assertEquals(1 + 3 * 2 - 1, events);
+        reader.close();
+    }
+
+    @Test
+    public void traceEndingInsideARecordHeaderEndsTrace() throws Exception
+    {
+        File trace = writeTrace(2);
+        //  A record type and the first byte of a multi-byte length varint, then nothing
+        RandomAccessFile file = new RandomAccessFile(trace, "rw");
+        file.seek(file.length());
+        file.write(new byte[] {CallbackTraceWriter.RECORD_DATA, (byte) 0x80});
+        file.close();
+
+        CallbackTraceReader reader = new CallbackTraceReader(trace);
+        int events = 0;
+        while (reader.next())
+            events++;
+        assertEquals(1 + 2 * 2, events);
+        reader.close();
+    }
+}
@@ -0,0 +1,54 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DecoderSelectionTest {
+
+    @Test
+    public void unknownScannerAlwaysNeedsApply()
+    {
+        DecoderSelection selection = new DecoderSelection();
+        assertTrue(selection.needsApply());
+        assertEquals(DecoderSelection.UNKNOWN, selection.getChanged());
+
+        selection.onApplied(0, false);
+        assertFalse(selection.needsApply());
+        assertEquals(0, selection.getApplyCount());
+    }
+
+    @Test
+    public void burstOfTogglesCollapsesToTheNetChange()
+    {
+        DecoderSelection selection = new DecoderSelection();
+        long initial = DecoderSelection.bit(Symbology.EAN8) | DecoderSelection.bit(Symbology.CODE128);
+        selection.setRequested(initial);
+        selection.onApplied(initial, true);
+
+        assertTrue(selection.request(Symbology.EAN13, true));
+        assertTrue(selection.request(Symbology.CODE39, true));
+        assertTrue(selection.request(Symbology.EAN13, false));
+        assertFalse(selection.request(Symbology.EAN8, true));
+
+        assertEquals(DecoderSelection.bit(Symbology.CODE39), selection.getChanged());
+        assertTrue(DecoderSelection.isEnabled(selection.getRequested(), Symbology.CODE39));
+        assertEquals(5, selection.getRequestCount());
+
+        assertTrue(selection.request(Symbology.CODE39, false));
+        assertFalse(selection.needsApply());
+    }
+
+    @Test
+    public void invalidateForcesReapply()
+    {
+        DecoderSelection selection = new DecoderSelection();
+        selection.setRequested(DecoderSelection.bit(Symbology.EAN13));
+        selection.onApplied(DecoderSelection.bit(Symbology.EAN13), true);
+        assertFalse(selection.needsApply());
+
+        selection.invalidate();
+        assertTrue(selection.needsApply());
+        assertEquals(1, selection.getApplyCount());
+    }
+}
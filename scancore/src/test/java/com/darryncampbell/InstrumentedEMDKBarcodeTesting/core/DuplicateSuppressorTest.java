@@ -0,0 +1,60 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DuplicateSuppressorTest {
+
+    private static final long MS = 1000000L;
+
+    private static boolean read(DuplicateSuppressor suppressor, String label, int symbology, long nanos)
+    {
+        byte[] data = Utf8.encode(label);
+        return suppressor.isDuplicate(data, 0, data.length, symbology, nanos);
+    }
+
+    @Test
+    public void labelHeldInViewStaysSuppressed()
+    {
+        DuplicateSuppressor suppressor = new DuplicateSuppressor(64);
+        suppressor.setWindowMillis(Symbology.EAN13, 500);
+
+        assertFalse(read(suppressor, "5012345678900", Symbology.EAN13, 0));
+        //  Re-read every 100ms for 2 seconds, each read restarts the window
+        for (long t = 100; t <= 2000; t += 100)
+            assertTrue(read(suppressor, "5012345678900", Symbology.EAN13, t * MS));
+        //  Taken out of view and presented again after the window
+        assertFalse(read(suppressor, "5012345678900", Symbology.EAN13, 2600 * MS));
+
+        assertEquals(20, suppressor.getSuppressed());
+        assertEquals(2, suppressor.getPassed());
+    }
+
+    @Test
+    public void symbologyAndWindowAreRespected()
+    {
+        DuplicateSuppressor suppressor = new DuplicateSuppressor(64);
+        suppressor.setWindowMillis(Symbology.CODE128, 0);
+
+        assertFalse(read(suppressor, "ABC", Symbology.CODE39, 0));
+        assertFalse(read(suppressor, "ABC", Symbology.CODE93, MS));
+        assertTrue(read(suppressor, "ABC", Symbology.CODE39, 2 * MS));
+        assertFalse(read(suppressor, "ABC", Symbology.CODE128, 3 * MS));
+        assertFalse(read(suppressor, "ABC", Symbology.CODE128, 4 * MS));
+        assertFalse(read(suppressor, "ABD", Symbology.CODE39, 5 * MS));
+    }
+
+    @Test
+    public void fullTableForgetsOldestWithoutSuppressingNewLabels()
+    {
+        DuplicateSuppressor suppressor = new DuplicateSuppressor(16);
+        for (int i = 0; i < 1000; i++)
+            assertFalse(read(suppressor, "LABEL" + i, Symbology.CODE128, i * MS));
+        //  The most recent label is still remembered
+        assertTrue(read(suppressor, "LABEL999", Symbology.CODE128, 1000 * MS));
+
+        suppressor.clear();
+        assertFalse(read(suppressor, "LABEL999", Symbology.CODE128, 1001 * MS));
+    }
+}
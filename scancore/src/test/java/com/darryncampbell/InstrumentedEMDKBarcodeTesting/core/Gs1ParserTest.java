@@ -0,0 +1,107 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class Gs1ParserTest {
+
+    private static final char GS = (char) 0x1D;
+
+    private final Gs1Parser.Elements elements = new Gs1Parser.Elements();
+
+    @Test
+    public void parsesFixedAndVariableFieldsInPlace()
+    {
+        byte[] data = Utf8.encode("]C1" + "0109501101530003" + "17140704" + "10AB-123" + GS + "213456789");
+        assertEquals(Gs1Parser.OK, Gs1Parser.parse(data, 0, data.length, elements));
+        assertEquals(4, elements.count());
+
+        assertElement(data, 0, 1, "09501101530003");
+        assertElement(data, 1, 17, "140704");
+        assertElement(data, 2, 10, "AB-123");
+        assertElement(data, 3, 21, "3456789");
+        assertEquals(140704, elements.numericValue(data, elements.indexOf(17)));
+        assertEquals(-1, elements.indexOf(0));
+    }
+
+    @Test
+    public void skipsLeadingFnc1AndHandlesFourDigitAis()
+    {
+        byte[] data = Utf8.encode(GS + "0109501101530003" + "3103000750" + "37" + "12" + GS + "400PO-77");
+        assertEquals(Gs1Parser.OK, Gs1Parser.parse(data, 0, data.length, elements));
+        assertEquals(4, elements.count());
+        assertEquals(3103, elements.ai(1));
+        assertEquals(4, elements.aiDigits(1));
+        assertElement(data, 1, 3103, "000750");
+        assertElement(data, 2, 37, "12");
+        assertElement(data, 3, 400, "PO-77");
+    }
+
+    @Test
+    public void parsesWithinALargerBuffer()
+    {
+        byte[] data = Utf8.encode("xxxx0109501101530003" + "10LOT1yyyy");
+        assertEquals(Gs1Parser.OK, Gs1Parser.parse(data, 4, data.length - 8, elements));
+        assertElement(data, 1, 10, "LOT1");
+    }
+
+    @Test
+    public void reportsErrors()
+    {
+        assertError(Gs1Parser.BAD_CHECK_DIGIT, "0109501101530004");
+        assertError(Gs1Parser.TRUNCATED, "01095011015300");
+        assertError(Gs1Parser.UNKNOWN_AI, "0109501101530003" + "14123456");
+        assertError(Gs1Parser.NOT_NUMERIC, "17ABCDEF");
+        assertError(Gs1Parser.TOO_LONG, "10" + "ABCDEFGHIJKLMNOPQRSTU");
+        assertError(Gs1Parser.EMPTY, "]C1");
+        assertError(Gs1Parser.TRUNCATED, "10" + GS + "17140704");
+
+        //  Elements before the error are kept
+        byte[] data = Utf8.encode("0109501101530003" + "99");
+        assertEquals(Gs1Parser.TRUNCATED, Gs1Parser.parse(data, 0, data.length, elements));
+        assertEquals(1, elements.count());
+        assertEquals(16, elements.errorOffset());
+    }
+
+    @Test
+    public void selectsGs1SymbologiesAndPrefixedCode128()
+    {
+        byte[] plain = Utf8.encode("ABC123");
+        byte[] prefixed = Utf8.encode("]C10109501101530003");
+        byte[] fnc1 = Utf8.encode(GS + "0109501101530003");
+        assertTrue(Gs1Parser.isGs1(Symbology.EAN128, plain, 0, plain.length));
+        assertTrue(Gs1Parser.isGs1(Symbology.GS1_DATAMATRIX, plain, 0, plain.length));
+        assertFalse(Gs1Parser.isGs1(Symbology.CODE128, plain, 0, plain.length));
+        assertTrue(Gs1Parser.isGs1(Symbology.CODE128, prefixed, 0, prefixed.length));
+        assertTrue(Gs1Parser.isGs1(Symbology.CODE128, fnc1, 0, fnc1.length));
+        assertFalse(Gs1Parser.isGs1(Symbology.EAN13, prefixed, 0, prefixed.length));
+    }
+
+    @Test
+    public void formatsHumanReadableText()
+    {
+        byte[] data = Utf8.encode("0109501101530003" + "17140704" + "10AB-123");
+        Gs1Parser.parse(data, 0, data.length, elements);
+        char[] text = new char[64];
+        int length = Gs1Parser.formatHumanReadable(data, elements, text, 0);
+        assertEquals("(01)09501101530003(17)140704(10)AB-123", new String(text, 0, length));
+
+        //  Elements that do not fit are left out rather than cut after the AI
+        char[] small = new char[20];
+        length = Gs1Parser.formatHumanReadable(data, elements, small, 0);
+        assertEquals("(01)09501101530003", new String(small, 0, length));
+    }
+
+    private void assertElement(byte[] data, int index, int ai, String value)
+    {
+        assertEquals(ai, elements.ai(index));
+        assertEquals(value, new String(data, elements.offset(index), elements.length(index)));
+    }
+
+    private void assertError(int expected, String text)
+    {
+        byte[] data = Utf8.encode(text);
+        assertEquals(text, Gs1Parser.describe(expected), Gs1Parser.describe(Gs1Parser.parse(data, 0, data.length, elements)));
+    }
+}
@@ -0,0 +1,51 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the fixed memory latency histogram
+ */
+public class LatencyHistogramTest {
+
+    private static void assertWithin(long expected, long actual, double tolerance)
+    {
+        assertTrue("expected " + expected + " got " + actual,
+                Math.abs(actual - expected) <= expected * tolerance);
+    }
+
+    @Test
+    public void percentilesAreWithinBucketPrecision() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        for (long micros = 1; micros <= 1000; micros++)
+            histogram.record(micros * 1000);
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000, histogram.getMaxNanos());
+        assertWithin(500000, histogram.getPercentileNanos(50), 0.07);
+        assertWithin(990000, histogram.getPercentileNanos(99), 0.07);
+        assertEquals(1000000, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void bucketsCoverEveryValue() throws Exception {
+        for (long value = 0; value < (1L << 42); value = value * 3 / 2 + 1) {
+            int index = LatencyHistogram.bucketIndex(value);
+            if (value < (1L << 41))
+                assertTrue(value <= LatencyHistogram.bucketUpperBound(index));
+            if (index > 0 && value < (1L << 41))
+                assertTrue(value > LatencyHistogram.bucketUpperBound(index - 1));
+        }
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram("empty");
+        assertEquals(0, histogram.getPercentileNanos(99));
+
+        StringBuilder summary = new StringBuilder();
+        histogram.appendSummary(summary);
+        assertEquals("empty count=0 p50=0.00ms p99=0.00ms max=0.00ms", summary.toString());
+    }
+}
@@ -0,0 +1,144 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest {
+
+    private enum State {
+        IDLE,
+        WAITING,
+        SCANNING
+    }
+
+    @Test
+    public void writesPrometheusText()
+    {
+        MetricsRegistry registry = new MetricsRegistry("emdk");
+        MetricsRegistry.Counter scans = registry.counter("scans_received_total", "Scans received from the scanner");
+        MetricsRegistry.EnumCounter<State> states = registry.enumCounter("status_transitions_total",
+                "Status callbacks by state", "state", State.class);
+        registry.gauge("pending_ui_scans", "Scans waiting for the next frame", new MetricsRegistry.Gauge() {
+            @Override
+            public long read() {
+                return 7;
+            }
+        });
+        registry.sampledCounter("ui_scans_dropped_total", "Scans dropped by the screen", new MetricsRegistry.Gauge() {
+            @Override
+            public long read() {
+                return 12;
+            }
+        });
+
+        scans.add(3);
+        scans.inc();
+        states.inc(State.WAITING);
+        states.inc(State.IDLE);
+        states.inc(State.IDLE);
+
+        assertEquals("# HELP emdk_scans_received_total Scans received from the scanner\n" +
+                "# TYPE emdk_scans_received_total counter\n" +
+                "emdk_scans_received_total 4\n" +
+                "# HELP emdk_status_transitions_total Status callbacks by state\n" +
+                "# TYPE emdk_status_transitions_total counter\n" +
+                "emdk_status_transitions_total{state=\"IDLE\"} 2\n" +
+                "emdk_status_transitions_total{state=\"WAITING\"} 1\n" +
+                "# HELP emdk_pending_ui_scans Scans waiting for the next frame\n" +
+                "# TYPE emdk_pending_ui_scans gauge\n" +
+                "emdk_pending_ui_scans 7\n" +
+                "# HELP emdk_ui_scans_dropped_total Scans dropped by the screen\n" +
+                "# TYPE emdk_ui_scans_dropped_total counter\n" +
+                "emdk_ui_scans_dropped_total 12\n", registry.write());
+        assertEquals(2, states.get(State.IDLE));
+        assertEquals(0, states.get(State.SCANNING));
+    }
+
+    @Test
+    public void rejectsDuplicateAndInvalidNames()
+    {
+        MetricsRegistry registry = new MetricsRegistry("emdk");
+        registry.counter("scans_total", "Scans");
+        try {
+            registry.counter("scans_total", "Scans again");
+            fail("Duplicate name accepted");
+        } catch (IllegalArgumentException e) {
+            //  Expected
+        }
+        try {
+            registry.counter("scans-total", "Dashes");
+            fail("Invalid name accepted");
+        } catch (IllegalArgumentException e) {
+            //  Expected
+        }
+    }
+
+    @Test
+    public void countsFromManyThreads() throws Exception
+    {
+        MetricsRegistry registry = new MetricsRegistry("emdk");
+        final MetricsRegistry.Counter counter = registry.counter("events_total", "Events");
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int n = 0; n < 100000; n++)
+                        counter.inc();
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(400000, counter.get());
+    }
+
+    @Test
+    public void serverAnswersScrapesOnLoopback() throws Exception
+    {
+        MetricsRegistry registry = new MetricsRegistry("emdk");
+        registry.counter("scans_received_total", "Scans").add(5);
+        MetricsServer server = new MetricsServer(registry, 0);
+        server.start();
+        try {
+            String response = get(server.getPort(), "/metrics");
+            assertTrue(response, response.startsWith("HTTP/1.0 200 OK\r\n"));
+            assertTrue(response, response.contains("Content-Type: " + MetricsServer.CONTENT_TYPE + "\r\n"));
+            assertTrue(response, response.endsWith("\r\n\r\n" + registry.write()));
+            assertTrue(response, response.contains("emdk_scans_received_total 5\n"));
+
+            assertTrue(get(server.getPort(), "/other").startsWith("HTTP/1.0 404"));
+            assertEquals(1, server.getScrapes());
+        } finally {
+            server.stop();
+        }
+        assertEquals(-1, server.getPort());
+    }
+
+    private static String get(int port, String path) throws Exception
+    {
+        Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), port);
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\nAccept: */*\r\n\r\n").getBytes("UTF-8"));
+            out.flush();
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                response.write(buffer, 0, read);
+            return response.toString("UTF-8");
+        } finally {
+            socket.close();
+        }
+    }
+}
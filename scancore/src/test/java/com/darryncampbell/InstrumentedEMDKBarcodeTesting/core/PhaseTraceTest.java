@@ -0,0 +1,30 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PhaseTraceTest {
+
+    @Test
+    public void exportsOverlappingPhasesAsTraceEvents()
+    {
+        PhaseTrace trace = new PhaseTrace(1000000L);
+        trace.record("inflate", "main", 2000000L, 5500000L);
+        trace.record("emdk \"bind\"", "binder", 1500000L, 9000000L);
+        trace.mark("ready", "main", 9001234L);
+
+        StringBuilder json = new StringBuilder();
+        trace.appendJson(json);
+        String text = json.toString();
+        assertTrue(text, text.contains("{\"name\":\"inflate\",\"cat\":\"startup\",\"pid\":1,\"tid\":0,\"ts\":1000.000,\"ph\":\"X\",\"dur\":3500.000}"));
+        assertTrue(text, text.contains("\"name\":\"emdk \\\"bind\\\"\""));
+        assertTrue(text, text.contains("\"tid\":1,\"ts\":500.000"));
+        assertTrue(text, text.contains("\"ts\":8001.234,\"ph\":\"i\""));
+        assertTrue(text, text.contains("\"args\":{\"name\":\"binder\"}"));
+
+        assertEquals(4500000L, trace.getEndNanos("inflate"));
+        assertEquals(8001234L, trace.getEndNanos("ready"));
+        assertEquals(-1, trace.getEndNanos("missing"));
+    }
+}
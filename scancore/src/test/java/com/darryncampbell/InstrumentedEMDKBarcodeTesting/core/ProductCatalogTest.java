@@ -0,0 +1,185 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class ProductCatalogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File buildCatalog(String csv, int descriptionBytes) throws IOException
+    {
+        File file = folder.newFile("products.cat");
+        ProductCatalogBuilder.build(new StringReader(csv), file, descriptionBytes);
+        return file;
+    }
+
+    private File buildDelta(String name, String csv) throws IOException
+    {
+        File file = folder.newFile(name);
+        ProductCatalogBuilder.buildDelta(new StringReader(csv), file, ProductCatalogBuilder.DEFAULT_DESCRIPTION_BYTES);
+        return file;
+    }
+
+    @Test
+    public void findsEveryProductAcrossIndexStrides() throws Exception
+    {
+        //  Written out of order with a gap after each product
+        StringBuilder csv = new StringBuilder("gtin,description\n");
+        int products = ProductCatalogBuilder.INDEX_STRIDE * 10 + 7;
+        for (int i = products - 1; i >= 0; i--)
+            csv.append(5000000000000L + 2 * i).append(",Product ").append(i).append('\n');
+        ProductCatalog catalog = new ProductCatalog(buildCatalog(csv.toString(), 24), 16);
+
+        assertEquals(products, catalog.size());
+        for (int i = 0; i < products; i++) {
+            int row = catalog.lookup(5000000000000L + 2 * i);
+            assertEquals(i, row);
+            assertEquals("Product " + i, catalog.description(row));
+            assertEquals(ProductCatalog.NOT_FOUND, catalog.lookup(5000000000001L + 2 * i));
+        }
+        assertEquals(ProductCatalog.NOT_FOUND, catalog.lookup(1));
+        assertNull(catalog.description(ProductCatalog.NOT_FOUND));
+    }
+
+    @Test
+    public void looksUpRetailSymbologies() throws Exception
+    {
+        ProductCatalog catalog = new ProductCatalog(buildCatalog(
+                "5012345678900,\"Tea, 80 bags\"\n" +
+                "036000291452,Tissues\n" +
+                "042100005264,Cola 330ml\n" +
+                "96385074,Matches\n", 32), 16);
+
+        assertEquals("Tea, 80 bags", describe(catalog, Symbology.EAN13, "5012345678900"));
+        assertEquals("Tissues", describe(catalog, Symbology.UPCA, "036000291452"));
+        assertEquals("Tissues", describe(catalog, Symbology.UPCA, "03600029145"));
+        assertEquals("Tissues", describe(catalog, Symbology.EAN13, "0036000291452"));
+        assertEquals("Cola 330ml", describe(catalog, Symbology.UPCE0, "04252614"));
+        assertEquals("Cola 330ml", describe(catalog, Symbology.UPCE0, "0425261"));
+        assertEquals("Cola 330ml", describe(catalog, Symbology.UPCE0, "425261"));
+        assertEquals("Matches", describe(catalog, Symbology.EAN8, "96385074"));
+        assertNull(describe(catalog, Symbology.CODE128, "5012345678900"));
+        assertNull(describe(catalog, Symbology.EAN13, "501234567890X"));
+    }
+
+    @Test
+    public void cachesHotProducts() throws Exception
+    {
+        ProductCatalog catalog = new ProductCatalog(buildCatalog("5012345678900,Tea\n96385074,Matches\n", 16), 1);
+        catalog.lookup(5012345678900L);
+        catalog.lookup(5012345678900L);
+        assertEquals(1, catalog.getCacheHits());
+        catalog.lookup(96385074L);
+        catalog.lookup(5012345678900L); // Evicted by the lookup before
+        assertEquals(1, catalog.getCacheHits());
+        assertEquals(4, catalog.getLookups());
+    }
+
+    @Test
+    public void appliesDeltasOverTheCatalog() throws Exception
+    {
+        ProductCatalog catalog = new ProductCatalog(buildCatalog(
+                "5012345678900,Tea\n96385074,Matches\n036000291452,Tissues\n", 16), 16);
+        int tissues = catalog.lookup(36000291452L);
+        catalog.lookup(96385074L);
+
+        assertEquals(3, catalog.applyDelta(buildDelta("0001.delta",
+                "5012345678900,Green tea\n96385074,\n4006381333931,Pencil\n")));
+        assertEquals("Green tea", catalog.description(catalog.lookup(5012345678900L)));
+        assertEquals(ProductCatalog.NOT_FOUND, catalog.lookup(96385074L));
+        assertEquals("Pencil", catalog.description(catalog.lookup(4006381333931L)));
+        assertEquals(tissues, catalog.lookup(36000291452L));
+
+        //  Later deltas win, rows handed out earlier keep their description
+        int pencil = catalog.lookup(4006381333931L);
+        catalog.applyDelta(buildDelta("0002.delta", "4006381333931,Pencil HB\n96385074,Safety matches\n"));
+        assertEquals("Pencil HB", catalog.description(catalog.lookup(4006381333931L)));
+        assertEquals("Pencil", catalog.description(pencil));
+        assertEquals("Safety matches", catalog.description(catalog.lookup(96385074L)));
+        assertEquals(2, catalog.getDeltasApplied());
+    }
+
+    @Test
+    public void truncatesDescriptionsAtACharacterBoundary() throws Exception
+    {
+        ProductCatalog catalog = new ProductCatalog(buildCatalog("5012345678900,Caf\u00E9 cr\u00E8me\n", 4), 0);
+        assertEquals("Caf", catalog.description(catalog.lookup(5012345678900L)));
+    }
+
+    @Test
+    public void rejectsBadInput() throws Exception
+    {
+        try {
+            buildCatalog("5012345678900,Tea\n5012345678900,Coffee\n", 16);
+            fail("Duplicate GTIN accepted");
+        } catch (IOException e) {
+            //  Expected
+        }
+        try {
+            ProductCatalogBuilder.build(new StringReader("5012345678900,Tea\nABC,Coffee\n"), folder.newFile(), 16);
+            fail("Bad GTIN accepted");
+        } catch (IOException e) {
+            //  Expected
+        }
+
+        File truncated = folder.newFile("truncated.cat");
+        ProductCatalogBuilder.build(new StringReader("5012345678900,Tea\n"), truncated, 16);
+        RandomAccessFile raf = new RandomAccessFile(truncated, "rw");
+        raf.setLength(raf.length() - 1);
+        raf.close();
+        try {
+            new ProductCatalog(truncated, 16);
+            fail("Truncated catalog opened");
+        } catch (IOException e) {
+            //  Expected
+        }
+    }
+
+    @Test
+    public void rejectsDeltaHeadersClaimingMoreThanTheFileHolds() throws Exception
+    {
+        ProductCatalog catalog = new ProductCatalog(buildCatalog("5012345678900,Tea\n", 16), 16);
+        File delta = buildDelta("0001.delta", "5012345678900,Green tea\n");
+
+        //  A count which would need gigabytes, then a width no builder writes
+        RandomAccessFile raf = new RandomAccessFile(delta, "rw");
+        raf.seek(ProductCatalogBuilder.DELTA_MAGIC.length + 4);
+        raf.writeInt(Integer.MAX_VALUE);
+        raf.close();
+        try {
+            catalog.applyDelta(delta);
+            fail("Delta with an impossible count applied");
+        } catch (IOException e) {
+            //  Expected
+        }
+        raf = new RandomAccessFile(delta, "rw");
+        raf.seek(ProductCatalogBuilder.DELTA_MAGIC.length);
+        raf.writeInt(Integer.MAX_VALUE);
+        raf.writeInt(0);
+        raf.close();
+        try {
+            catalog.applyDelta(delta);
+            fail("Delta with an impossible width applied");
+        } catch (IOException e) {
+            //  Expected
+        }
+        assertEquals(0, catalog.getDeltasApplied());
+        assertEquals("Tea", catalog.description(catalog.lookup(5012345678900L)));
+    }
+
+    private static String describe(ProductCatalog catalog, int symbology, String barcode)
+    {
+        byte[] data = Utf8.encode(barcode);
+        return catalog.description(catalog.lookup(symbology, data, 0, data.length));
+    }
+}
@@ -0,0 +1,86 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ReconnectPolicyTest {
+
+    @Test
+    public void flappingScannerIsAttachedOnceWithTheLatestState()
+    {
+        ReconnectPolicy policy = new ReconnectPolicy(4, 300, 100, 1000, 5);
+        long first = policy.onConnectionChange(1, true, 10);
+        long second = policy.onConnectionChange(1, false, 20);
+        long third = policy.onConnectionChange(1, true, 30);
+
+        assertEquals(ReconnectPolicy.ACTION_NONE, policy.onSettled(1, first, false));
+        assertEquals(ReconnectPolicy.ACTION_NONE, policy.onSettled(1, second, false));
+        assertEquals(ReconnectPolicy.ACTION_ATTACH, policy.onSettled(1, third, false));
+        assertEquals(2, policy.getCollapsed());
+        assertEquals(30, policy.getConnectedNanos(1));
+    }
+
+    @Test
+    public void dropWhileAttachedForcesReattach()
+    {
+        ReconnectPolicy policy = new ReconnectPolicy(4, 300, 100, 1000, 5);
+        long connected = policy.onConnectionChange(0, true, 0);
+        assertEquals(ReconnectPolicy.ACTION_ATTACH, policy.onSettled(0, connected, false));
+        policy.onAttached(0, connected);
+
+        //  A repeated CONNECTED for the same device is ignored
+        long repeated = policy.onConnectionChange(0, true, 5);
+        assertEquals(ReconnectPolicy.ACTION_NONE, policy.onSettled(0, repeated, true));
+        assertEquals(1, policy.getDuplicates());
+
+        //  A disconnect in between means the device handle is stale even if still attached
+        policy.onConnectionChange(0, false, 10);
+        long reconnected = policy.onConnectionChange(0, true, 20);
+        assertEquals(ReconnectPolicy.ACTION_ATTACH, policy.onSettled(0, reconnected, true));
+    }
+
+    @Test
+    public void disconnectSettlesToDetach()
+    {
+        ReconnectPolicy policy = new ReconnectPolicy(4, 0, 100, 1000, 5);
+        long disconnected = policy.onConnectionChange(2, false, 0);
+        assertEquals(ReconnectPolicy.ACTION_DETACH, policy.onSettled(2, disconnected, true));
+        assertEquals(1, policy.getDetaches());
+    }
+
+    @Test
+    public void failedAttachesBackOffThenGiveUp()
+    {
+        ReconnectPolicy policy = new ReconnectPolicy(4, 300, 100, 350, 4);
+        long connected = policy.onConnectionChange(0, true, 0);
+        assertEquals(100, policy.onAttachFailed(0, connected));
+        assertEquals(200, policy.onAttachFailed(0, connected));
+        assertEquals(350, policy.onAttachFailed(0, connected));
+        assertEquals(-1, policy.onAttachFailed(0, connected));
+        assertEquals(1, policy.getAbandoned());
+        assertEquals(4, policy.getFailures());
+    }
+
+    @Test
+    public void laterChangeStopsRetries()
+    {
+        ReconnectPolicy policy = new ReconnectPolicy(4, 300, 100, 1000, 5);
+        long connected = policy.onConnectionChange(0, true, 0);
+        policy.onConnectionChange(0, false, 10);
+        assertFalse(policy.isCurrent(0, connected));
+        assertEquals(-1, policy.onAttachFailed(0, connected));
+
+        long current = policy.onConnectionChange(3, true, 20);
+        policy.cancelAll();
+        assertFalse(policy.isCurrent(3, current));
+    }
+
+    @Test
+    public void backoffDoesNotOverflow()
+    {
+        ReconnectPolicy policy = new ReconnectPolicy(1, 0, 1, Long.MAX_VALUE / 2, 100);
+        assertEquals(1L << 40, policy.backoffMillis(41));
+        assertTrue(policy.backoffMillis(90) > 0);
+    }
+}
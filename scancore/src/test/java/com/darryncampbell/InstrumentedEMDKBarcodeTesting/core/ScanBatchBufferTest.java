@@ -0,0 +1,97 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ScanBatchBufferTest {
+
+    @Test
+    public void drainsOldestFirstAcrossTheWrap()
+    {
+        ScanBatchBuffer<Integer> buffer = new ScanBatchBuffer<Integer>(4);
+        List<Integer> batch = new ArrayList<Integer>();
+
+        assertEquals(1, buffer.offer(0));
+        assertEquals(2, buffer.offer(1));
+        assertEquals(3, buffer.offer(2));
+        assertEquals(3, buffer.drainTo(batch));
+        assertEquals(Arrays.asList(0, 1, 2), batch);
+
+        //  Fills the slots before and after the end of the array
+        batch.clear();
+        for (int i = 3; i < 7; i++)
+            buffer.offer(i);
+        assertEquals(4, buffer.drainTo(batch));
+        assertEquals(Arrays.asList(3, 4, 5, 6), batch);
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.drainTo(batch));
+
+        assertEquals(2, buffer.getBatchesFlushed());
+        assertEquals(7, buffer.getScansFlushed());
+        assertEquals(5, buffer.getScansCoalesced());
+        assertEquals(0, buffer.getScansDropped());
+    }
+
+    @Test
+    public void fullBufferOverwritesTheOldestAndCountsTheDrop()
+    {
+        ScanBatchBuffer<Integer> buffer = new ScanBatchBuffer<Integer>(3);
+        List<Integer> batch = new ArrayList<Integer>();
+
+        for (int i = 0; i < 3; i++)
+            buffer.offer(i);
+        //  Each further offer replaces the oldest pending scan, the depth stays at capacity
+        assertEquals(3, buffer.offer(3));
+        assertEquals(3, buffer.offer(4));
+        assertEquals(2, buffer.getScansDropped());
+
+        assertEquals(3, buffer.drainTo(batch));
+        assertEquals(Arrays.asList(2, 3, 4), batch);
+
+        //  Wraps again after a drain from a non-zero head
+        batch.clear();
+        for (int i = 5; i < 10; i++)
+            buffer.offer(i);
+        assertEquals(4, buffer.getScansDropped());
+        buffer.drainTo(batch);
+        assertEquals(Arrays.asList(7, 8, 9), batch);
+        assertEquals(6, buffer.getScansFlushed());
+    }
+
+    @Test
+    public void peakDepthSpansDrainsUntilReset()
+    {
+        ScanBatchBuffer<Integer> buffer = new ScanBatchBuffer<Integer>(8);
+        List<Integer> batch = new ArrayList<Integer>();
+
+        for (int i = 0; i < 5; i++)
+            buffer.offer(i);
+        buffer.drainTo(batch);
+        buffer.offer(5);
+        buffer.offer(6);
+        assertEquals(5, buffer.getPeakDepth());
+
+        //  Restarts from what is pending now, not from zero
+        buffer.resetPeakDepth();
+        assertEquals(2, buffer.getPeakDepth());
+        buffer.drainTo(batch);
+        buffer.offer(7);
+        assertEquals(2, buffer.getPeakDepth());
+
+        //  Capped at the capacity however far the consumer falls behind
+        for (int i = 0; i < 20; i++)
+            buffer.offer(i);
+        assertEquals(8, buffer.getPeakDepth());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroCapacity()
+    {
+        new ScanBatchBuffer<Integer>(0);
+    }
+}
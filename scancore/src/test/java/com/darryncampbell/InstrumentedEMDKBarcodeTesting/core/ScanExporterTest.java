@@ -0,0 +1,326 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+public class ScanExporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final long TIMEOUT_MS = 5000;
+
+    //  Keeps the frames it is given, failing while bFailing is set
+    private static class MemorySink implements ExportSink {
+        final List<ExportBatchCodec.Batch> batches = Collections.synchronizedList(new ArrayList<ExportBatchCodec.Batch>());
+        volatile boolean bFailing = false;
+
+        @Override
+        public void write(long epoch, long sequence, byte[] frame, int offset, int length) throws IOException {
+            if (bFailing)
+                throw new IOException("Collector unreachable");
+            batches.add(ExportBatchCodec.decode(frame, offset, length));
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    private static class BackpressureLog implements ScanExporter.Listener {
+        final List<Boolean> changes = Collections.synchronizedList(new ArrayList<Boolean>());
+
+        @Override
+        public void onBackpressure(boolean bBackpressured) {
+            changes.add(bBackpressured);
+        }
+    }
+
+    private static ScanRecord scan(int i, long millis)
+    {
+        ScanRecord record = new ScanRecord(Utf8.encode("0950110153" + (1000 + i)), i % 3 == 0 ? Symbology.EAN13 : Symbology.CODE128, millis);
+        record.friendlyName = i % 2 == 0 ? "2D Barcode Imager" : "RS6000 Bluetooth Scanner";
+        return record;
+    }
+
+    private static void awaitExported(ScanExporter exporter, long scans) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (exporter.getScansExported() < scans && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertEquals(scans, exporter.getScansExported());
+    }
+
+    @Test
+    public void framesDecodeToTheScansEncoded() throws Exception
+    {
+        ExportBatchCodec codec = new ExportBatchCodec(Deflater.BEST_SPEED);
+        List<ScanRecord> records = new ArrayList<ScanRecord>();
+        for (int i = 0; i < 200; i++)
+            records.add(scan(i, 1500000000000L + i * 40));
+        //  A scanner clock stepping backwards, an unnamed scanner and an empty read
+        records.add(scan(200, 1499999999000L));
+        ScanRecord unnamed = new ScanRecord(new byte[0], Symbology.UNDEFINED, 1500000000000L);
+        unnamed.validation = SymbologyValidator.INVALID_CHECK_DIGIT;
+        unnamed.ruleVerdict = ScanRules.BLOCKED;
+        records.add(unnamed);
+        for (ScanRecord record : records)
+            codec.add(record);
+        long plainBytes = codec.getPlainBytes();
+        byte[] frame = codec.finish(1500000000000L, 42);
+        assertEquals(0, codec.size());
+        assertTrue("frame of " + frame.length + " bytes against " + plainBytes, frame.length * 4 < plainBytes);
+
+        ExportBatchCodec.Batch batch = ExportBatchCodec.decode(frame, 0, frame.length);
+        assertEquals(1500000000000L, batch.epoch);
+        assertEquals(42, batch.sequence);
+        assertEquals(records.size(), batch.records.size());
+        for (int i = 0; i < records.size(); i++) {
+            ScanRecord expected = records.get(i);
+            ScanRecord actual = batch.records.get(i);
+            assertArrayEquals(expected.data, actual.data);
+            assertEquals(expected.symbology, actual.symbology);
+            assertEquals(expected.timestampMillis, actual.timestampMillis);
+            assertEquals(expected.friendlyName, actual.friendlyName);
+            assertEquals(expected.validation, actual.validation);
+            assertEquals(expected.ruleVerdict, actual.ruleVerdict);
+        }
+        codec.close();
+    }
+
+    @Test
+    public void corruptFramesAreRejected() throws Exception
+    {
+        ExportBatchCodec codec = new ExportBatchCodec(Deflater.BEST_SPEED);
+        for (int i = 0; i < 20; i++)
+            codec.add(scan(i, 1000 + i));
+        byte[] frame = codec.finish(1500000000000L, 1);
+        codec.close();
+
+        byte[] truncated = Arrays.copyOf(frame, frame.length - 1);
+        byte[] flipped = frame.clone();
+        flipped[ExportBatchCodec.HEADER_BYTES + (frame.length - ExportBatchCodec.HEADER_BYTES) / 2] ^= 0x10;
+        byte[] badMagic = frame.clone();
+        badMagic[0] = 'X';
+        for (byte[] bad : new byte[][] {truncated, flipped, badMagic}) {
+            try {
+                ExportBatchCodec.decode(bad, 0, bad.length);
+                fail("Decoded a corrupt frame");
+            } catch (IOException e) {
+                //  Expected
+            }
+        }
+    }
+
+    @Test
+    public void fullBatchesAreSentWithoutLingering() throws Exception
+    {
+        MemorySink sink = new MemorySink();
+        ScanExporter exporter = new ScanExporter(sink, new ScanExporter.Options()
+                .setMaxBatchScans(10).setLingerMillis(60000), null);
+        for (int i = 0; i < 25; i++)
+            assertTrue(exporter.offer(scan(i, 1000 + i)));
+        awaitExported(exporter, 20);
+        assertEquals(5, exporter.getPendingScans());
+
+        exporter.flush();
+        awaitExported(exporter, 25);
+        assertEquals(3, sink.batches.size());
+        assertEquals(10, sink.batches.get(0).records.size());
+        assertEquals(5, sink.batches.get(2).records.size());
+        assertEquals(2, sink.batches.get(2).sequence);
+        assertEquals("0950110153" + 1024, Utf8.decode(sink.batches.get(2).records.get(4).data, 0, 14));
+        assertTrue(exporter.getBytesSaved() > 0);
+        exporter.close();
+    }
+
+    @Test
+    public void partialBatchesAreSentAfterTheLingerTime() throws Exception
+    {
+        MemorySink sink = new MemorySink();
+        ScanExporter exporter = new ScanExporter(sink, new ScanExporter.Options()
+                .setMaxBatchScans(100).setLingerMillis(50), null);
+        for (int i = 0; i < 3; i++)
+            exporter.offer(scan(i, 1000 + i));
+        awaitExported(exporter, 3);
+        assertEquals(1, exporter.getBatchesSent());
+        assertEquals(0, exporter.getSpoolBatches());
+        exporter.close();
+        assertFalse(exporter.offer(scan(3, 1003)));
+    }
+
+    @Test
+    public void directorySinkWritesOneFilePerBatch() throws Exception
+    {
+        File directory = new File(folder.getRoot(), "export");
+        ScanExporter exporter = new ScanExporter(new DirectoryExportSink(directory, 1 << 20), new ScanExporter.Options()
+                .setMaxBatchScans(4).setLingerMillis(60000), null);
+        for (int i = 0; i < 8; i++)
+            exporter.offer(scan(i, 1000 + i));
+        awaitExported(exporter, 8);
+        exporter.close();
+
+        String[] names = directory.list();
+        Arrays.sort(names);
+        long epoch = exporter.getEpoch();
+        assertArrayEquals(new String[] {DirectoryExportSink.frameName(epoch, 0), DirectoryExportSink.frameName(epoch, 1)}, names);
+        RandomAccessFile file = new RandomAccessFile(new File(directory, names[1]), "r");
+        byte[] frame = new byte[(int) file.length()];
+        file.readFully(frame);
+        file.close();
+        ExportBatchCodec.Batch batch = ExportBatchCodec.decode(frame, 0, frame.length);
+        assertEquals(1, batch.sequence);
+        assertEquals(4, batch.records.size());
+        assertEquals(1007, batch.records.get(3).timestampMillis);
+    }
+
+    @Test
+    public void directorySinkRefusesFramesPastItsLimitUntilCollected() throws Exception
+    {
+        File directory = new File(folder.getRoot(), "export");
+        DirectoryExportSink sink = new DirectoryExportSink(directory, 250);
+        byte[] frame = new byte[100];
+        sink.write(1, 0, frame, 0, frame.length);
+        sink.write(1, 1, frame, 0, frame.length);
+        try {
+            sink.write(1, 2, frame, 0, frame.length);
+            fail("Wrote past the directory limit");
+        } catch (IOException e) {
+            //  Expected, the exporter keeps the frame spooled and retries it
+        }
+        assertEquals(2, directory.list().length);
+
+        //  The collector takes the oldest frame
+        assertTrue(new File(directory, DirectoryExportSink.frameName(1, 0)).delete());
+        sink.write(1, 2, frame, 0, frame.length);
+        assertTrue(new File(directory, DirectoryExportSink.frameName(1, 2)).isFile());
+    }
+
+    @Test
+    public void restartedExporterKeepsEarlierFrames() throws Exception
+    {
+        File directory = new File(folder.getRoot(), "export");
+        long[] epochs = new long[2];
+        for (int run = 0; run < 2; run++) {
+            ScanExporter exporter = new ScanExporter(new DirectoryExportSink(directory, 1 << 20), new ScanExporter.Options()
+                    .setMaxBatchScans(2).setLingerMillis(60000), null);
+            epochs[run] = exporter.getEpoch();
+            exporter.offer(scan(run * 2, 1000 + run * 2));
+            exporter.offer(scan(run * 2 + 1, 1001 + run * 2));
+            awaitExported(exporter, 2);
+            exporter.close();
+        }
+        assertTrue(epochs[1] > epochs[0]);
+
+        //  Both runs numbered their first frame 0, neither replaced the other and they sort in run order
+        String[] names = directory.list();
+        Arrays.sort(names);
+        assertArrayEquals(new String[] {DirectoryExportSink.frameName(epochs[0], 0), DirectoryExportSink.frameName(epochs[1], 0)}, names);
+    }
+
+    @Test
+    public void socketSinkDeliversToALocalCollector() throws Exception
+    {
+        final ServerSocket server = new ServerSocket(0, 4, InetAddress.getByName("127.0.0.1"));
+        final List<ExportBatchCodec.Batch> received = Collections.synchronizedList(new ArrayList<ExportBatchCodec.Batch>());
+        Thread collector = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    //  The first connection is dropped after one frame without an answer, forcing a reconnect
+                    Socket first = server.accept();
+                    DataInputStream firstIn = new DataInputStream(first.getInputStream());
+                    firstIn.readFully(new byte[firstIn.readInt()]);
+                    first.close();
+
+                    Socket socket = server.accept();
+                    DataInputStream in = new DataInputStream(socket.getInputStream());
+                    DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                    while (received.size() < 3) {
+                        byte[] frame = new byte[in.readInt()];
+                        in.readFully(frame);
+                        ExportBatchCodec.Batch batch = ExportBatchCodec.decode(frame, 0, frame.length);
+                        received.add(batch);
+                        out.writeLong(batch.epoch);
+                        out.writeLong(batch.sequence);
+                        out.flush();
+                    }
+                    socket.close();
+                } catch (IOException e) {
+                    //  Test fails on the count
+                }
+            }
+        });
+        collector.start();
+
+        SocketExportSink sink = new SocketExportSink(server.getLocalPort());
+        ScanExporter exporter = new ScanExporter(sink, new ScanExporter.Options()
+                .setMaxBatchScans(5).setLingerMillis(60000).setRetryMillis(10, 20), null);
+        for (int i = 0; i < 15; i++)
+            exporter.offer(scan(i, 1000 + i));
+        awaitExported(exporter, 15);
+        collector.join(TIMEOUT_MS);
+        exporter.close();
+        server.close();
+
+        assertEquals(3, received.size());
+        assertEquals(0, received.get(0).sequence);
+        assertEquals(2, received.get(2).sequence);
+        assertEquals(2, sink.getConnects());
+        assertEquals(1, exporter.getFailures());
+    }
+
+    @Test
+    public void fullSpoolAppliesBackpressureUntilTheSinkRecovers() throws Exception
+    {
+        MemorySink sink = new MemorySink();
+        sink.bFailing = true;
+        BackpressureLog log = new BackpressureLog();
+        ScanExporter exporter = new ScanExporter(sink, new ScanExporter.Options()
+                .setMaxBatchScans(1).setLingerMillis(0).setMaxPendingScans(4).setMaxSpoolBytes(1)
+                .setRetryMillis(10, 20), log);
+        assertTrue(exporter.offer(scan(0, 1000)));
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!exporter.isBackpressured() && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertTrue(exporter.isBackpressured());
+
+        //  Nothing more is encoded while the spool is full, so the pending limit is reached
+        for (int i = 1; i <= 4; i++)
+            assertTrue(exporter.offer(scan(i, 1000 + i)));
+        assertFalse(exporter.offer(scan(5, 1005)));
+        assertEquals(1, exporter.getScansRefused());
+        assertEquals(4, exporter.getPendingScans());
+        assertEquals(1, exporter.getSpoolBatches());
+        Thread.sleep(50);
+        assertTrue(exporter.getFailures() > 1);
+
+        sink.bFailing = false;
+        awaitExported(exporter, 5);
+        deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (exporter.isBackpressured() && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertFalse(exporter.isBackpressured());
+        assertEquals(Boolean.TRUE, log.changes.get(0));
+        assertEquals(Boolean.FALSE, log.changes.get(log.changes.size() - 1));
+        assertEquals(0, exporter.getSpoolBytes());
+        assertEquals(5, sink.batches.size());
+        exporter.close();
+    }
+}
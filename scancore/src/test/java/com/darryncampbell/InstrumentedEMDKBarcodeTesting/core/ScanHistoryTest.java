@@ -0,0 +1,72 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the primitive scan history ring buffer
+ */
+public class ScanHistoryTest {
+
+    private static byte[] bytes(String s) {return s.getBytes();}
+
+    private static String data(ScanHistory history, int index)
+    {
+        byte[] buffer = new byte[history.length(index)];
+        history.copyData(index, buffer, 0);
+        return new String(buffer);
+    }
+
+    @Test
+    public void appendAndRead() throws Exception {
+        ScanHistory history = new ScanHistory(4, 64);
+        history.append(bytes("0123456789"), Symbology.EAN13, 1000);
+        history.append(bytes("ABC"), Symbology.CODE39, 2000);
+
+        assertEquals(2, history.size());
+        assertEquals("0123456789", data(history, 0));
+        assertEquals(Symbology.EAN13, history.symbology(0));
+        assertEquals(1000, history.timestamp(0));
+        assertEquals("ABC", data(history, 1));
+        assertEquals(Symbology.CODE39, history.symbology(1));
+    }
+
+    @Test
+    public void evictsOldestWhenSlotsRunOut() throws Exception {
+        ScanHistory history = new ScanHistory(3, 1024);
+        for (int i = 0; i < 10; i++)
+            history.append(bytes("scan" + i), Symbology.CODE128, i);
+
+        assertEquals(3, history.size());
+        assertEquals(10, history.totalAppended());
+        assertEquals("scan7", data(history, 0));
+        assertEquals("scan9", data(history, 2));
+        assertEquals(7, history.sequence(0));
+    }
+
+    @Test
+    public void evictsOldestWhenArenaRunsOut() throws Exception {
+        ScanHistory history = new ScanHistory(100, 32);
+        for (int i = 0; i < 50; i++)
+            history.append(bytes("barcode" + (i % 10)), Symbology.CODE128, i);
+
+        //  Every retained scan must still read back intact after many wraps of the arena
+        assertTrue(history.size() > 0);
+        for (int i = 0; i < history.size(); i++) {
+            long sequence = history.sequence(i);
+            assertEquals("barcode" + (sequence % 10), data(history, i));
+            assertEquals(sequence, history.timestamp(i));
+        }
+        assertEquals("barcode9", data(history, history.size() - 1));
+    }
+
+    @Test
+    public void truncatesDataLargerThanArena() throws Exception {
+        ScanHistory history = new ScanHistory(4, 8);
+        history.append(bytes("0123456789ABCDEF"), Symbology.QRCODE, 0);
+
+        assertEquals(1, history.size());
+        assertEquals("01234567", data(history, 0));
+    }
+}
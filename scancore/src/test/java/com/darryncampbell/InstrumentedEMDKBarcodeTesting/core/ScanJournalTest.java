@@ -0,0 +1,242 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ScanJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static class Collector implements ScanJournal.RecordVisitor {
+        final List<Long> sequences = new ArrayList<Long>();
+        final List<String> labels = new ArrayList<String>();
+        final List<String> friendlyNames = new ArrayList<String>();
+        final List<String> charsets = new ArrayList<String>();
+
+        @Override
+        public void onRecord(long sequence, long receivedMillis, byte[] data, String labelType, String charsetName,
+                             String scannerTimestamp, String friendlyName) {
+            sequences.add(sequence);
+            labels.add(Utf8.decode(data, 0, data.length));
+            friendlyNames.add(friendlyName);
+            charsets.add(charsetName);
+        }
+    }
+
+    private static void appendScans(ScanJournal journal, int first, int count)
+    {
+        for (int i = first; i < first + count; i++)
+            journal.append(1000 + i, Utf8.encode("LABEL" + i), "CODE128", i % 2 == 0 ? "UTF-8" : null,
+                    "2017-02-27 12:58:51.238", "2D Barcode Imager");
+    }
+
+    @Test
+    public void recordsSurviveReopening() throws Exception
+    {
+        File directory = folder.newFolder("journal");
+        ScanJournal journal = ScanJournal.open(directory, new ScanJournal.Options(), null);
+        appendScans(journal, 0, 1000);
+        journal.sync();
+        assertEquals(1000, journal.getForcedSequence());
+        journal.close();
+
+        Collector collector = new Collector();
+        ScanJournal reopened = ScanJournal.open(directory, new ScanJournal.Options(), collector);
+        assertEquals(1000, reopened.getRecoveredRecords());
+        assertEquals(0, reopened.getTruncatedBytes());
+        assertEquals("LABEL0", collector.labels.get(0));
+        assertEquals("LABEL999", collector.labels.get(999));
+        assertEquals("UTF-8", collector.charsets.get(0));
+        assertNull(collector.charsets.get(1));
+        assertEquals("2D Barcode Imager", collector.friendlyNames.get(999));
+        for (int i = 0; i < 1000; i++)
+            assertEquals(i, collector.sequences.get(i).longValue());
+
+        //  Sequence numbers carry on from the recovered records
+        assertEquals(1000, reopened.append(0, new byte[] {1}, null, null, null, null));
+        reopened.close();
+    }
+
+    @Test
+    public void tornTailIsTruncated() throws Exception
+    {
+        File directory = folder.newFolder("journal");
+        ScanJournal journal = ScanJournal.open(directory, new ScanJournal.Options(), null);
+        appendScans(journal, 0, 10);
+        journal.close();
+
+        //  Damage the last record's payload as if the write had not completed
+        File segment = directory.listFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        long end = lastRecordEnd(file);
+        file.seek(end - 3);
+        file.write(0x55);
+        file.close();
+
+        Collector collector = new Collector();
+        journal = ScanJournal.open(directory, new ScanJournal.Options(), collector);
+        assertEquals(9, journal.getRecoveredRecords());
+        assertTrue(journal.getTruncatedBytes() > 0);
+        assertEquals("LABEL8", collector.labels.get(8));
+
+        //  New records replace the torn one
+        appendScans(journal, 100, 5);
+        journal.close();
+        collector = new Collector();
+        journal = ScanJournal.open(directory, new ScanJournal.Options(), collector);
+        assertEquals(14, journal.getRecoveredRecords());
+        assertEquals(0, journal.getTruncatedBytes());
+        assertEquals("LABEL100", collector.labels.get(9));
+        assertEquals(9, collector.sequences.get(9).longValue());
+        journal.close();
+    }
+
+    @Test
+    public void recoveryStopsAtATearInAnEarlierSegment() throws Exception
+    {
+        File directory = folder.newFolder("journal");
+        ScanJournal.Options options = new ScanJournal.Options().setSegmentBytes(4096).setMaxSegments(10);
+        ScanJournal journal = ScanJournal.open(directory, options, null);
+        appendScans(journal, 0, 200);
+        journal.close();
+        File[] segments = directory.listFiles();
+        Arrays.sort(segments);
+        assertTrue(segments.length >= 3);
+
+        //  Tear the last record of the first segment, the later segments are intact
+        RandomAccessFile file = new RandomAccessFile(segments[0], "rw");
+        long end = lastRecordEnd(file);
+        file.seek(end - 3);
+        file.write(0x55);
+        file.close();
+
+        Collector collector = new Collector();
+        journal = ScanJournal.open(directory, options, collector);
+        long kept = journal.getRecoveredRecords();
+        assertTrue(kept > 0 && kept < 200);
+        assertTrue(journal.getTruncatedBytes() > 0);
+        assertEquals(segments.length - 1, journal.getDiscardedSegments());
+        assertEquals(1, directory.listFiles().length);
+        for (int i = 0; i < collector.sequences.size(); i++)
+            assertEquals(i, collector.sequences.get(i).longValue());
+
+        //  Appending carries on from the tear, with no gap in the sequence
+        assertEquals(kept, journal.append(0, new byte[] {1}, null, null, null, null));
+        journal.close();
+        collector = new Collector();
+        journal = ScanJournal.open(directory, options, collector);
+        assertEquals(kept + 1, journal.getRecoveredRecords());
+        assertEquals(0, journal.getDiscardedSegments());
+        journal.close();
+    }
+
+    @Test
+    public void segmentAfterAGapIsDiscarded() throws Exception
+    {
+        File directory = folder.newFolder("journal");
+        ScanJournal.Options options = new ScanJournal.Options().setSegmentBytes(4096).setMaxSegments(10);
+        ScanJournal journal = ScanJournal.open(directory, options, null);
+        appendScans(journal, 0, 200);
+        journal.close();
+        File[] segments = directory.listFiles();
+        Arrays.sort(segments);
+        assertTrue(segments.length >= 3);
+
+        //  The first segment's last record never reached storage, as if lost before a force
+        RandomAccessFile file = new RandomAccessFile(segments[0], "rw");
+        long end = lastRecordEnd(file);
+        long position = ScanJournal.MAGIC.length + 8;
+        long lastStart = position;
+        while (position < end) {
+            lastStart = position;
+            file.seek(position);
+            position += 8 + file.readInt();
+        }
+        file.seek(lastStart);
+        file.write(new byte[(int) (end - lastStart)]);
+        file.close();
+
+        Collector collector = new Collector();
+        journal = ScanJournal.open(directory, options, collector);
+        assertEquals(segments.length - 1, journal.getDiscardedSegments());
+        assertEquals(collector.sequences.size(), journal.getRecoveredRecords());
+        assertEquals(journal.getRecoveredRecords(), journal.append(0, new byte[] {1}, null, null, null, null));
+        journal.close();
+    }
+
+    @Test
+    public void segmentsRollOverAndOldestAreDeleted() throws Exception
+    {
+        File directory = folder.newFolder("journal");
+        ScanJournal.Options options = new ScanJournal.Options().setSegmentBytes(4096).setMaxSegments(3);
+        ScanJournal journal = ScanJournal.open(directory, options, null);
+        appendScans(journal, 0, 2000);
+        journal.close();
+        assertEquals(3, journal.getSegmentCount());
+        assertEquals(3, directory.listFiles().length);
+
+        Collector collector = new Collector();
+        journal = ScanJournal.open(directory, options, collector);
+        //  Only the newest segments remain, still in order and ending with the last scan
+        assertTrue(journal.getRecoveredRecords() > 0 && journal.getRecoveredRecords() < 2000);
+        assertEquals("LABEL1999", collector.labels.get(collector.labels.size() - 1));
+        for (int i = 1; i < collector.sequences.size(); i++)
+            assertEquals(collector.sequences.get(i - 1) + 1, collector.sequences.get(i).longValue());
+        journal.close();
+    }
+
+    @Test
+    public void forcedOnceEnoughBytesAreWritten() throws Exception
+    {
+        ScanJournal.Options options = new ScanJournal.Options().setForceBytes(1024).setForceIntervalMillis(60000);
+        ScanJournal journal = ScanJournal.open(folder.newFolder("journal"), options, null);
+        journal.append(0, new byte[16], null, null, null, null);
+        Thread.sleep(100);
+        assertEquals(0, journal.getForcedSequence());
+        journal.append(0, new byte[2048], null, null, null, null);
+        assertTrue(waitForForced(journal, 2));
+        journal.close();
+    }
+
+    @Test
+    public void forcedOnceTheIntervalPasses() throws Exception
+    {
+        ScanJournal.Options options = new ScanJournal.Options().setForceBytes(1024 * 1024).setForceIntervalMillis(50);
+        ScanJournal journal = ScanJournal.open(folder.newFolder("journal"), options, null);
+        appendScans(journal, 0, 100);
+        assertTrue(waitForForced(journal, 100));
+        journal.close();
+    }
+
+    private static boolean waitForForced(ScanJournal journal, long sequence) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (journal.getForcedSequence() < sequence && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        return journal.getForcedSequence() >= sequence;
+    }
+
+    //  Walk the records of a segment to find where the last one ends
+    private static long lastRecordEnd(RandomAccessFile file) throws IOException
+    {
+        long position = ScanJournal.MAGIC.length + 8;
+        while (true) {
+            file.seek(position);
+            int length = file.readInt();
+            if (length == 0)
+                return position;
+            position += 8 + length;
+        }
+    }
+}
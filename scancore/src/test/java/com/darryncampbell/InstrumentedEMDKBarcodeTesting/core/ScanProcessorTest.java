@@ -0,0 +1,47 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ScanProcessorTest {
+
+    @Test
+    public void deliversInSubmissionOrderAcrossWorkers() throws Exception
+    {
+        final List<ScanRecord> delivered = new ArrayList<ScanRecord>();
+        PipelineLatency latency = new PipelineLatency();
+        ScanProcessor processor = new ScanProcessor(4, new ScanProcessor.Sink() {
+            @Override
+            public void onProcessed(ScanRecord record) {
+                delivered.add(record);
+            }
+        }, latency);
+
+        //  Enough to force the reorder window to grow, every fifth scan has a bad check digit
+        int scans = 5000;
+        List<ScanRecord> submitted = new ArrayList<ScanRecord>();
+        for (int i = 0; i < scans; i++) {
+            ScanRecord record = new ScanRecord(Utf8.encode(i % 5 == 0 ? "5012345678901" : "5012345678900"),
+                    Symbology.EAN13, i);
+            record.callbackNanos = System.nanoTime();
+            submitted.add(record);
+            processor.submit(record);
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!processor.isIdle() && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        processor.shutdown();
+
+        assertTrue(processor.isIdle());
+        assertEquals(submitted, delivered);
+        assertEquals(scans, processor.getProcessed());
+        assertEquals(scans / 5, processor.getInvalid());
+        assertEquals(SymbologyValidator.INVALID_CHECK_DIGIT, delivered.get(0).validation);
+        assertEquals(scans, latency.dataValidate.getCount());
+        assertEquals(scans, latency.dataReorder.getCount());
+    }
+}
@@ -0,0 +1,162 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ScanRulesTest {
+
+    private static final String SITE_RULES =
+            "# Own brand and partner GTINs only\n" +
+            "allow EAN13,EAN8 prefix:501\n" +
+            "allow EAN13 prefix:400638\n" +
+            "\n" +
+            "allow CODE128 length:6-10\n" +
+            "block * range:5012345000000-5012345009999\n" +
+            "block CODE39 (TEST|DEMO)-#{3}\n";
+
+    private final ScanRules.Match match = new ScanRules.Match();
+
+    private static ScanRules compile(String rules) throws IOException
+    {
+        return ScanRules.compile(new StringReader(rules));
+    }
+
+    private static int evaluate(ScanRules rules, int symbology, String barcode)
+    {
+        byte[] data = Utf8.encode(barcode);
+        return rules.evaluate(symbology, data, 0, data.length);
+    }
+
+    @Test
+    public void appliesAllowAndBlockRulesBySymbology() throws Exception
+    {
+        ScanRules rules = compile(SITE_RULES);
+        assertEquals(5, rules.size());
+        assertEquals("allow CODE128 length:6-10", rules.source(2));
+
+        assertEquals(ScanRules.ALLOWED, evaluate(rules, Symbology.EAN13, "5019999999999"));
+        assertEquals(ScanRules.ALLOWED, evaluate(rules, Symbology.EAN13, "4006381333931"));
+        assertEquals(ScanRules.NOT_ALLOWED, evaluate(rules, Symbology.EAN13, "9780201379624"));
+        assertEquals(ScanRules.BLOCKED, evaluate(rules, Symbology.EAN13, "5012345000123"));
+        assertEquals(ScanRules.ALLOWED, evaluate(rules, Symbology.EAN8, "50112345"));
+        assertEquals(ScanRules.NOT_ALLOWED, evaluate(rules, Symbology.EAN8, "96385074"));
+
+        assertEquals(ScanRules.ALLOWED, evaluate(rules, Symbology.CODE128, "ABC123"));
+        assertEquals(ScanRules.NOT_ALLOWED, evaluate(rules, Symbology.CODE128, "ABC12"));
+        assertEquals(ScanRules.NOT_ALLOWED, evaluate(rules, Symbology.CODE128, "ABCDEFGHIJK"));
+
+        //  Only the wildcard block rule applies to these
+        assertEquals(ScanRules.ALLOWED, evaluate(rules, Symbology.UPCA, "036000291452"));
+        assertEquals(ScanRules.BLOCKED, evaluate(rules, Symbology.QRCODE, "5012345009999"));
+        assertEquals(ScanRules.BLOCKED, evaluate(rules, Symbology.CODE39, "DEMO-042"));
+        assertEquals(ScanRules.ALLOWED, evaluate(rules, Symbology.CODE39, "DEMO-04"));
+    }
+
+    @Test
+    public void reportsEveryMatchingRule() throws Exception
+    {
+        ScanRules rules = compile(SITE_RULES);
+        byte[] data = Utf8.encode("5012345000123");
+        assertEquals(ScanRules.BLOCKED, rules.match(Symbology.EAN13, data, 0, data.length, match));
+        assertEquals(2, match.count());
+        assertEquals(0, match.rule(0));
+        assertEquals(3, match.rule(1));
+        assertEquals(ScanRules.ACTION_BLOCK, rules.action(match.rule(1)));
+
+        data = Utf8.encode("9780201379624");
+        assertEquals(ScanRules.NOT_ALLOWED, rules.match(Symbology.EAN13, data, 0, data.length, match));
+        assertEquals(0, match.count());
+    }
+
+    @Test
+    public void matchesRangesExactly() throws Exception
+    {
+        ScanRules rules = compile("block * range:120-345\nblock * range:07-07\n");
+        for (int i = 0; i < 1000; i++) {
+            String barcode = String.format("%03d", i);
+            assertEquals(barcode, i >= 120 && i <= 345 ? ScanRules.BLOCKED : ScanRules.ALLOWED,
+                    evaluate(rules, Symbology.EAN13, barcode));
+        }
+        assertEquals(ScanRules.BLOCKED, evaluate(rules, Symbology.EAN13, "07"));
+        assertEquals(ScanRules.ALLOWED, evaluate(rules, Symbology.EAN13, "7"));
+    }
+
+    @Test
+    public void supportsClassesEscapesAndRepeats() throws Exception
+    {
+        ScanRules rules = compile(
+                "allow GS1_DATAMATRIX \\x1D01#{14}*\n" +
+                "allow CODE128 [A-Z]{2}[^0-9]\\*(X|Y){1,}\n");
+        assertEquals(ScanRules.ALLOWED, evaluate(rules, Symbology.GS1_DATAMATRIX, "\u001D0109501101530003" + "10AB"));
+        assertEquals(ScanRules.NOT_ALLOWED, evaluate(rules, Symbology.GS1_DATAMATRIX, "0109501101530003"));
+        assertEquals(ScanRules.ALLOWED, evaluate(rules, Symbology.CODE128, "AB-*XYYX"));
+        assertEquals(ScanRules.NOT_ALLOWED, evaluate(rules, Symbology.CODE128, "AB-*"));
+        assertEquals(ScanRules.NOT_ALLOWED, evaluate(rules, Symbology.CODE128, "AB1*X"));
+    }
+
+    @Test
+    public void thousandsOfPrefixRulesMatchLikeCheckingEachRule() throws Exception
+    {
+        Random random = new Random(24);
+        String[] prefixes = new String[3000];
+        StringBuilder file = new StringBuilder();
+        for (int i = 0; i < prefixes.length; i++) {
+            prefixes[i] = String.valueOf(1000000 + random.nextInt(9000000));
+            file.append(i % 10 == 0 ? "block" : "allow").append(" EAN13 prefix:").append(prefixes[i]).append('\n');
+        }
+        ScanRules rules = compile(file.toString());
+
+        for (int n = 0; n < 20000; n++) {
+            String barcode = (n % 2 == 0) ? prefixes[random.nextInt(prefixes.length)] : String.valueOf(1000000 + random.nextInt(9000000));
+            barcode += "123456";
+            byte[] data = Utf8.encode(barcode);
+            rules.match(Symbology.EAN13, data, 0, data.length, match);
+
+            int expected = ScanRules.NOT_ALLOWED;
+            int matches = 0;
+            for (int i = 0; i < prefixes.length; i++) {
+                if (barcode.startsWith(prefixes[i])) {
+                    assertEquals(i, match.rule(matches++));
+                    if (i % 10 == 0)
+                        expected = ScanRules.BLOCKED;
+                    else if (expected != ScanRules.BLOCKED)
+                        expected = ScanRules.ALLOWED;
+                }
+            }
+            assertEquals(matches, match.count());
+            assertEquals(barcode, expected, match.verdict());
+        }
+    }
+
+    @Test
+    public void reportsTheLineOfABadRule() throws Exception
+    {
+        assertCompileError("allow EAN13 prefix:50\npermit EAN13 prefix:40\n", "Line 2:");
+        assertCompileError("allow EAN99 prefix:50\n", "unknown symbology");
+        assertCompileError("# header\nallow * (AB\n", "Line 2:");
+        assertCompileError("block * range:999-100\n", "range");
+        assertCompileError("allow * length:5-3\n", "length");
+    }
+
+    @Test
+    public void rejectsNestedRepeatsBeforeBuildingThem() throws Exception
+    {
+        //  Some 16 million states if it were built
+        assertCompileError("allow EAN13 ((#{255}){255}){255}\n", "states");
+    }
+
+    private static void assertCompileError(String rules, String expected)
+    {
+        try {
+            compile(rules);
+            fail("Compiled " + rules);
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(expected));
+        }
+    }
+}
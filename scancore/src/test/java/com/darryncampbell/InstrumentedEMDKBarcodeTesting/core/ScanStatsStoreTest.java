@@ -0,0 +1,55 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScanStatsStoreTest {
+
+    private static final long MINUTE = 60000;
+
+    @Test
+    public void aggregatesWithinTheWindow()
+    {
+        ScanStatsStore store = new ScanStatsStore(10000);
+        //  One scan a second for five minutes, alternating symbology and scanner
+        for (int i = 0; i < 300; i++)
+            store.append(i * 1000L, i % 2 == 0 ? Symbology.EAN13 : Symbology.CODE128, i % 3, i);
+
+        assertEquals(300, store.count(0, 5 * MINUTE));
+        assertEquals(60, store.count(MINUTE, 2 * MINUTE));
+
+        long[] bySymbology = new long[Symbology.COUNT];
+        assertEquals(60, store.countBySymbology(4 * MINUTE, 5 * MINUTE, bySymbology));
+        assertEquals(30, bySymbology[Symbology.EAN13]);
+        assertEquals(30, bySymbology[Symbology.CODE128]);
+
+        long[] byScanner = new long[2];
+        assertEquals(60, store.countByScanner(0, MINUTE, byScanner));
+        assertEquals(20, byScanner[0]);
+        assertEquals(20, byScanner[1]);
+
+        long[] perMinute = new long[6];
+        assertEquals(300, store.countPerBucket(0, MINUTE, perMinute));
+        assertArrayEquals(new long[] {60, 60, 60, 60, 60, 0}, perMinute);
+
+        assertEquals(298, store.lastSequence(0, 5 * MINUTE, 1));
+        assertEquals(-1, store.lastSequence(0, 5 * MINUTE, 7));
+    }
+
+    @Test
+    public void oldestRowsAreOverwrittenOnceFull()
+    {
+        ScanStatsStore store = new ScanStatsStore(1500);
+        for (int i = 0; i < 4000; i++)
+            store.append(i, Symbology.EAN8, 0, i);
+        assertEquals(1500, store.getRowCount());
+        assertEquals(4000, store.getAppended());
+        assertEquals(0, store.count(0, 2500));
+        assertEquals(1500, store.count(2500, 4000));
+        assertEquals(3999, store.lastSequence(0, 4000, 0));
+
+        store.clear();
+        assertEquals(0, store.count(0, 4000));
+    }
+}
@@ -0,0 +1,33 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class ScanTimestampTest {
+
+    @Test
+    public void matchesSimpleDateFormat() throws Exception
+    {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String[] timestamps = {"2017-02-27 12:58:51.238", "1970-01-01 00:00:00.000", "2000-02-29 23:59:59.999",
+                "2016-12-31 00:00:00.001", "2100-03-01 06:07:08.009", "1969-12-31 23:59:59.999"};
+        for (String timestamp : timestamps)
+            assertEquals(timestamp, format.parse(timestamp).getTime(), ScanTimestamp.parse(timestamp));
+    }
+
+    @Test
+    public void rejectsMalformedTimestamps()
+    {
+        String[] malformed = {null, "", "2017-02-27 12:58:51", "2017-02-27T12:58:51.238", "2017-13-27 12:58:51.238",
+                "2017-02-29 12:58:51.238", "2017-02-27 24:00:00.000", "2017-02-27 12:60:51.238",
+                "2017-02-27 12:58:5x.238", "0000-01-01 00:00:00.000"};
+        for (String timestamp : malformed)
+            assertEquals(String.valueOf(timestamp), ScanTimestamp.INVALID, ScanTimestamp.parse(timestamp));
+    }
+}
@@ -0,0 +1,61 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScannerFanInTest {
+
+    @Test
+    public void everythingAdmittedBelowCapacity()
+    {
+        ScannerFanIn fanIn = new ScannerFanIn(4, 10, 1000);
+        fanIn.setActiveScanners(2);
+        for (int i = 0; i < 10; i++)
+            assertTrue(fanIn.admit(0, i));
+        assertEquals(10, fanIn.getTotalInFlight());
+        assertEquals(0, fanIn.getDropped(0));
+    }
+
+    @Test
+    public void noisyScannerCannotStarveTheOther()
+    {
+        ScannerFanIn fanIn = new ScannerFanIn(4, 10, 1000);
+        fanIn.setActiveScanners(2);
+        //  The noisy scanner fills the pipeline on its own
+        int noisy = 0;
+        for (int i = 0; i < 100; i++) {
+            if (fanIn.admit(0, i))
+                noisy++;
+        }
+        assertEquals(10, noisy);
+        assertEquals(90, fanIn.getDropped(0));
+
+        //  The quiet scanner still gets its share while the pipeline is saturated
+        for (int i = 0; i < 5; i++)
+            assertTrue(fanIn.admit(1, 100 + i));
+        assertFalse(fanIn.admit(1, 200));
+        assertEquals(5, fanIn.getInFlight(1));
+        assertEquals(91, fanIn.getTotalDropped());
+
+        //  As the pipeline drains the noisy scanner is held to its share
+        for (int i = 0; i < 6; i++)
+            fanIn.release(0);
+        assertEquals(4, fanIn.getInFlight(0));
+        assertTrue(fanIn.admit(0, 300));
+        assertEquals(10, fanIn.getTotalInFlight());
+        assertFalse(fanIn.admit(1, 301));
+    }
+
+    @Test
+    public void outOfRangeScannersShareTheLastSlot()
+    {
+        ScannerFanIn fanIn = new ScannerFanIn(2, 10, 1000);
+        assertTrue(fanIn.admit(7, 0));
+        assertEquals(1, fanIn.getAdmitted(1));
+        fanIn.release(9);
+        assertEquals(0, fanIn.getTotalInFlight());
+        fanIn.release(1);
+        assertEquals(0, fanIn.getTotalInFlight());
+    }
+}
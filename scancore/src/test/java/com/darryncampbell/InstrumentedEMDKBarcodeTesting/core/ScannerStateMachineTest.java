@@ -0,0 +1,65 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScannerStateMachineTest {
+
+    @Test
+    public void latestSnapshotWins()
+    {
+        ScannerStateMachine machine = new ScannerStateMachine(4, 1000);
+        //  A continuous scanning burst, only the last state matters to the UI
+        for (int i = 0; i < 100; i++) {
+            machine.onStatus(0, ScannerStateMachine.WAITING, "Waiting", i * 4, 0, 0);
+            machine.onStatus(0, ScannerStateMachine.SCANNING, "Scanning", i * 4 + 1, 0, 0);
+            machine.onStatus(0, ScannerStateMachine.IDLE, "Idle", i * 4 + 2, 7, 8);
+        }
+        ScannerStateMachine.Snapshot latest = machine.getLatest();
+        assertEquals("Idle", latest.status);
+        assertTrue(latest.bControlsEnabled);
+        assertEquals(7, latest.callbackNanos);
+        assertEquals(8, latest.handoffNanos);
+        assertEquals(300, latest.version);
+        assertEquals(300, machine.getPublished());
+    }
+
+    @Test
+    public void transitionsAreCountedPerScanner()
+    {
+        ScannerStateMachine machine = new ScannerStateMachine(4, 1000);
+        machine.onStatus(0, ScannerStateMachine.IDLE, "a", 0, 0, 0);
+        machine.onStatus(1, ScannerStateMachine.IDLE, "b", 1, 0, 0);
+        machine.onStatus(0, ScannerStateMachine.WAITING, "c", 2, 0, 0);
+        //  A repeated state is not a transition
+        machine.onStatus(0, ScannerStateMachine.WAITING, "d", 3, 0, 0);
+        machine.onStatus(1, ScannerStateMachine.WAITING, "e", 4, 0, 0);
+        machine.onStatus(0, ScannerStateMachine.IDLE, "f", 5, 0, 0);
+
+        assertEquals(2, machine.getTransitions(ScannerStateMachine.UNKNOWN, ScannerStateMachine.IDLE));
+        assertEquals(2, machine.getTransitions(ScannerStateMachine.IDLE, ScannerStateMachine.WAITING));
+        assertEquals(1, machine.getTransitions(ScannerStateMachine.WAITING, ScannerStateMachine.IDLE));
+        assertEquals(5, machine.getTotalTransitions());
+        assertEquals(ScannerStateMachine.WAITING, machine.getState(1));
+
+        machine.onReleased(1);
+        assertEquals(ScannerStateMachine.UNKNOWN, machine.getState(1));
+        assertTrue(machine.report().contains("IDLE->WAITING 2"));
+    }
+
+    @Test
+    public void messagesKeepControlsAndControlsKeepMessages()
+    {
+        ScannerStateMachine machine = new ScannerStateMachine(1, 1000);
+        machine.onStatus(0, ScannerStateMachine.SCANNING, "Scanning...", 0, 0, 0);
+        machine.onMessage("RS6000:CONNECTED");
+        assertFalse(machine.getLatest().bControlsEnabled);
+        assertEquals("RS6000:CONNECTED", machine.getLatest().status);
+
+        machine.setControlsEnabled(true);
+        assertTrue(machine.getLatest().bControlsEnabled);
+        assertEquals("RS6000:CONNECTED", machine.getLatest().status);
+        assertEquals(1, machine.getTotalTransitions());
+    }
+}
@@ -0,0 +1,52 @@
+package com.darryncampbell.InstrumentedEMDKBarcodeTesting.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SymbologyValidatorTest {
+
+    private static int validate(int symbology, String text) throws Exception
+    {
+        byte[] data = text.getBytes("ISO-8859-1");
+        return SymbologyValidator.validate(symbology, data, 0, data.length);
+    }
+
+    @Test
+    public void eanCheckDigits() throws Exception
+    {
+        assertEquals(SymbologyValidator.VALID, validate(Symbology.EAN13, "5012345678900"));
+        assertEquals(SymbologyValidator.VALID, validate(Symbology.EAN13, "4006381333931"));
+        assertEquals(SymbologyValidator.INVALID_CHECK_DIGIT, validate(Symbology.EAN13, "4006381333932"));
+        assertEquals(SymbologyValidator.VALID, validate(Symbology.EAN8, "96385074"));
+        assertEquals(SymbologyValidator.INVALID_CHECK_DIGIT, validate(Symbology.EAN8, "96385075"));
+        assertEquals(SymbologyValidator.VALID, validate(Symbology.UPCA, "036000291452"));
+        assertEquals(SymbologyValidator.INVALID_LENGTH, validate(Symbology.EAN8, "9638507"));
+        assertEquals(SymbologyValidator.INVALID_CHARACTER, validate(Symbology.EAN8, "9638A074"));
+    }
+
+    @Test
+    public void lengthRules() throws Exception
+    {
+        assertEquals(SymbologyValidator.VALID, validate(Symbology.CODE39, "ABC-123"));
+        assertEquals(SymbologyValidator.INVALID_LENGTH, validate(Symbology.CODE39, ""));
+        StringBuilder longCode = new StringBuilder();
+        for (int i = 0; i <= SymbologyValidator.CODE128_MAX_LENGTH; i++)
+            longCode.append('A');
+        assertEquals(SymbologyValidator.INVALID_LENGTH, validate(Symbology.CODE128, longCode.toString()));
+        assertEquals(SymbologyValidator.VALID, validate(Symbology.CODE128, "]C1" + (char) 0x1D + "0101234"));
+        assertEquals(SymbologyValidator.INVALID_CHARACTER, validate(Symbology.CODE128, "caf\u00E9"));
+    }
+
+    @Test
+    public void utf8Encoding() throws Exception
+    {
+        byte[] good = Utf8.encode("\u00E9\u4E2D\uD83D\uDE00");
+        assertEquals(SymbologyValidator.VALID, SymbologyValidator.validate(Symbology.QRCODE, good, 0, good.length));
+        assertEquals(SymbologyValidator.INVALID_ENCODING, SymbologyValidator.validate(Symbology.QRCODE, good, 0, good.length - 1));
+        byte[] overlong = {(byte) 0xE0, (byte) 0x80, (byte) 0xAF};
+        assertEquals(SymbologyValidator.INVALID_ENCODING, SymbologyValidator.validate(Symbology.DATAMATRIX, overlong, 0, 3));
+        byte[] surrogate = {(byte) 0xED, (byte) 0xA0, (byte) 0x80};
+        assertEquals(SymbologyValidator.INVALID_ENCODING, SymbologyValidator.validate(Symbology.DATAMATRIX, surrogate, 0, 3));
+    }
+}